@@ -4,9 +4,11 @@ CREATE TABLE IF NOT EXISTS settings (
     userId TEXT,
     key TEXT,
     value TEXT,
-    objectId TEXT
+    objectId TEXT NOT NULL DEFAULT ''
 );
 
+CREATE UNIQUE INDEX IF NOT EXISTS settings_userId_objectId_key_index ON settings (userId, objectId, key);
+
 CREATE TABLE IF NOT EXISTS tracking (
     _id INTEGER PRIMARY KEY AUTOINCREMENT,
     userId TEXT NOT NULL,
@@ -16,6 +18,8 @@ CREATE TABLE IF NOT EXISTS tracking (
     addInfo TEXT NULL
 );
 
+CREATE INDEX IF NOT EXISTS tracking_userId_index ON tracking (userId, _id);
+
 CREATE TABLE IF NOT EXISTS mylibrary (
 	_id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL,
 	name TEXT NOT NULL,
@@ -30,7 +34,20 @@ CREATE TABLE IF NOT EXISTS mylibrary (
 	download_date DATETIME,
 	uniqueId TEXT NOT NULL,
 	md5sum TEXT,
-	state TEXT
+	state TEXT,
+	md5Verification TEXT
+);
+
+CREATE INDEX IF NOT EXISTS mylibrary_uniqueId_index ON mylibrary (uniqueId);
+
+CREATE TABLE IF NOT EXISTS download_queue (
+	_id INTEGER PRIMARY KEY AUTOINCREMENT,
+	uniqueId TEXT NOT NULL UNIQUE,
+	packageItem TEXT NOT NULL,
+	state TEXT NOT NULL,
+	filePath TEXT,
+	isExtracted INTEGER NOT NULL DEFAULT 0,
+	md5Verification TEXT
 );
 
 CREATE TABLE IF NOT EXISTS log (
@@ -60,6 +60,7 @@ import com.tribal.mobile.api.packages.PackageManager;
 import com.tribal.mobile.base.BroadcastActions;
 import com.tribal.mobile.base.IntentParameterConstants;
 import com.tribal.mobile.download.DownloadBroadcastActions;
+import com.tribal.mobile.download.PackageManifest;
 import com.tribal.mobile.fragments.BaseFragment;
 import com.tribal.mobile.model.Package;
 import com.tribal.mobile.util.AsyncTaskHelper;
@@ -68,6 +69,8 @@ import com.tribal.mobile.util.FileHelper;
 import com.tribal.mobile.util.PackageHelper;
 import com.tribal.mobile.util.PackageWorkerCompleted;
 import com.tribal.mobile.util.PackageXmlWorkerTask;
+import com.tribal.mobile.util.concurrent.WorkerPool;
+import com.tribal.mobile.util.concurrent.Workers;
 import com.tribal.mobile.util.database.BaseDatabaseHelper;
 
 /**
@@ -269,7 +272,7 @@ public class LibraryFragment extends BaseFragment implements PackageWorkerComple
 		LibraryItem libraryItem = new LibraryItem(selectedPackageUniqueId, selectedPackageName);
 
 		PackageXmlWorkerTask task = new PackageXmlWorkerTask();
-		AsyncTaskHelper.executeAsyncTask(task, packageXMLPath, packagePath, libraryItem, this);
+		Workers.executeAsyncTask(WorkerPool.CPU, task, packageXMLPath, packagePath, libraryItem, this);
 	}
 
 	private void deletePackage(String packageFolderPath) {
@@ -282,6 +285,8 @@ public class LibraryFragment extends BaseFragment implements PackageWorkerComple
 			// Remove directory and all nodes under it
 			FileHelper.deleteFilesRecursive(filedir, true);
 		}
+		
+		PackageManifest.delete(filedir);
 
 		// Remove Image
 		String imagePath = Environment.getExternalStorageDirectory() + getString(R.string.external_storage_images_path);
@@ -102,6 +102,7 @@ public class LoginActivity extends SystemMenuProviderActivity implements LoginCo
 		// start the sync service
 		syncServiceIntent.setFlags(Service.START_NOT_STICKY);
 		syncServiceIntent.putExtra(IntentParameterConstants.Url, getString(R.string.syncUrl));
+		syncServiceIntent.putExtra(IntentParameterConstants.SyncBatchSize, getResources().getInteger(R.integer.syncBatchSize));
 		startService(syncServiceIntent);
 
 		super.onCreate(savedInstanceState);
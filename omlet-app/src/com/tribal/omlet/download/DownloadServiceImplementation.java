@@ -45,6 +45,7 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.Intent;
 import android.os.Environment;
+import android.os.SystemClock;
 import android.util.Log;
 import android.widget.RemoteViews;
 import android.widget.Toast;
@@ -63,12 +64,15 @@ import com.tribal.mobile.download.DownloadService;
 public class DownloadServiceImplementation extends DownloadService {
 	/* Fields */
 
+	private final static long MIN_NOTIFICATION_INTERVAL_MILLISECONDS = 1000;
+
 	private NotificationManager notificationManager;
 
 	private Map<String, Integer> activeDownloadNotificationIds;
 	private Map<Integer, Notification> activeDownloadNotifications;
 	private Map<Integer, DownloadNotificationStatus> activeDownloadNotificationStatuses;
 	private Map<Integer, PackageItem> activeDownloads;
+	private Map<String, Long> lastDownloadNotificationTimes;
 
 	private String downloadDestinationPath;
 
@@ -105,6 +109,9 @@ public class DownloadServiceImplementation extends DownloadService {
 		// create active downloads map
 		activeDownloads = new HashMap<Integer, PackageItem>();
 
+		// create last notification times map
+		lastDownloadNotificationTimes = new HashMap<String, Long>();
+
 		addBroadcastReceiver(DownloadBroadcastActions.DownloadListRequest);
 	}
 
@@ -118,6 +125,20 @@ public class DownloadServiceImplementation extends DownloadService {
 	}
 
 	private void raiseDownloadProgressNotification(String fileUrl, PackageItem packageItem, long progress, long max) {
+		// rebuilding and re-posting a notification is costly, so limit in-progress updates to one per interval
+		if (progress > 0 && progress < max) {
+			long now = SystemClock.elapsedRealtime();
+			Long lastNotificationTime = lastDownloadNotificationTimes.get(fileUrl);
+
+			if (lastNotificationTime != null && now - lastNotificationTime < MIN_NOTIFICATION_INTERVAL_MILLISECONDS) {
+				return;
+			}
+
+			lastDownloadNotificationTimes.put(fileUrl, now);
+		} else if (progress >= max) {
+			lastDownloadNotificationTimes.remove(fileUrl);
+		}
+
 		Notification notification;
 
 		// get the notification id
@@ -257,7 +278,7 @@ public class DownloadServiceImplementation extends DownloadService {
 			notificationManager.cancel(notificationId);
 
 			// clear old notification id from the map
-			activeDownloadNotificationIds.remove(notificationId);
+			activeDownloadNotificationIds.remove(fileUrl);
 
 			// clear old notification from the map
 			activeDownloadNotifications.remove(notificationId);
@@ -380,6 +401,9 @@ public class DownloadServiceImplementation extends DownloadService {
 		// get the existing notification ID
 		String packageItemId = packageItem.getFileUrl();
 
+		// clear the last notification time
+		lastDownloadNotificationTimes.remove(packageItemId);
+
 		if (activeDownloadNotificationIds.containsKey(packageItemId)) {
 			// remove the notification id
 			int notificationId = activeDownloadNotificationIds.remove(packageItemId);
@@ -441,6 +465,9 @@ public class DownloadServiceImplementation extends DownloadService {
 		// get the existing notification ID
 		String packageItemId = packageItem.getFileUrl();
 
+		// clear the last notification time
+		lastDownloadNotificationTimes.remove(packageItemId);
+
 		if (activeDownloadNotificationIds.containsKey(packageItemId)) {
 			// remove the notification id
 			int notificationId = activeDownloadNotificationIds.remove(packageItemId);
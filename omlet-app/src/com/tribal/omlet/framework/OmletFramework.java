@@ -66,6 +66,8 @@ import com.tribal.mobile.util.FileHelper;
 import com.tribal.mobile.util.NativeSettingsHelper;
 import com.tribal.mobile.util.PackageHelper;
 import com.tribal.mobile.util.ServiceLayerExceptionHelper;
+import com.tribal.mobile.util.concurrent.WorkerPool;
+import com.tribal.mobile.util.concurrent.Workers;
 import com.tribal.mobile.util.database.BaseDatabaseHelper;
 
 /**
@@ -218,6 +220,9 @@ public class OmletFramework extends AbstractFramework implements OmletServer {
 	 */
 	@Override
 	public void logout() {
+		// make queued tracking entries durable before the user changes
+		databaseHelper.flushTrackingEntries();
+		
 		try {
 			NativeSettingsHelper.getInstance(context).removePreferenceValue(MFSettingsKeys.LAST_LOGGED_IN_USER);
 		} catch (Exception e) {
@@ -467,12 +472,19 @@ public class OmletFramework extends AbstractFramework implements OmletServer {
 					localPathRoot = Environment.getExternalStorageDirectory() + externalStorageCoursePath;
 				}
 
-				callback.onGetCourseLocalPathRootCompleted(courseId, localPathRoot, error, phoneGapCallback);
+				final String finalLocalPathRoot = localPathRoot;
+				final String finalError = error;
+
+				Workers.runOnMainThread(new Runnable() {
+					@Override
+					public void run() {
+						callback.onGetCourseLocalPathRootCompleted(courseId, finalLocalPathRoot, finalError, phoneGapCallback);
+					}
+				});
 			}
 		};
 
-		Thread thread = new Thread(runnable);
-		thread.start();
+		Workers.execute(WorkerPool.IO, runnable);
 	}
 
 	/**
@@ -506,13 +518,21 @@ public class OmletFramework extends AbstractFramework implements OmletServer {
 					localPathRoot = Environment.getExternalStorageDirectory() + externalStorageCoursePath;
 				}
 
-				callback.onGetCourseLocalPathRootCompleted(courseId,
-						localPathRoot, error, phoneGapCallback);
+				final String finalCourseId = courseId;
+				final String finalLocalPathRoot = localPathRoot;
+				final String finalError = error;
+
+				Workers.runOnMainThread(new Runnable() {
+					@Override
+					public void run() {
+						callback.onGetCourseLocalPathRootCompleted(finalCourseId,
+								finalLocalPathRoot, finalError, phoneGapCallback);
+					}
+				});
 			}
 		};
 
-		Thread thread = new Thread(runnable);
-		thread.start();
+		Workers.execute(WorkerPool.IO, runnable);
 	}
 
 	/**
@@ -573,13 +593,20 @@ public class OmletFramework extends AbstractFramework implements OmletServer {
 					}
 				}
 
-				callback.onInitialiseCurrentCourseLocalTempFolderCompleted(
-						tempFolderPath, error, phoneGapCallback);
+				final String finalTempFolderPath = tempFolderPath;
+				final String finalError = error;
+
+				Workers.runOnMainThread(new Runnable() {
+					@Override
+					public void run() {
+						callback.onInitialiseCurrentCourseLocalTempFolderCompleted(
+								finalTempFolderPath, finalError, phoneGapCallback);
+					}
+				});
 			}
 		};
 
-		Thread thread = new Thread(runnable);
-		thread.start();
+		Workers.execute(WorkerPool.IO, runnable);
 	}
 
 	/**
@@ -637,12 +664,18 @@ public class OmletFramework extends AbstractFramework implements OmletServer {
 					}
 				}
 
-				callback.onPhoneGapOperationNoResultCompleted(error, phoneGapCallback);
+				final String finalError = error;
+
+				Workers.runOnMainThread(new Runnable() {
+					@Override
+					public void run() {
+						callback.onPhoneGapOperationNoResultCompleted(finalError, phoneGapCallback);
+					}
+				});
 			}
 		};
 
-		Thread thread = new Thread(runnable);
-		thread.start();
+		Workers.execute(WorkerPool.IO, runnable);
 	}
 
 	@Override
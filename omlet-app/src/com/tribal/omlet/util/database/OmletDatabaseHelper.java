@@ -44,6 +44,9 @@ public class OmletDatabaseHelper extends BaseDatabaseHelper {
 	/* Fields */
 
 	private static CursorFactory cursorFactory = new SQLiteCursorFactory(false);
+	
+	// the last schema migration that tables_create.sql includes
+	private final static int createDatabaseSchemaVersion = 6;
 
 	/* Constructor */
 
@@ -76,6 +79,11 @@ public class OmletDatabaseHelper extends BaseDatabaseHelper {
 		return "";
 	}
 
+	@Override
+	protected int getCreateDatabaseSchemaVersion() {
+		return createDatabaseSchemaVersion;
+	}
+
 	@Override
 	protected String getUpdateDatabaseSql(int oldVersion, int newVersion) {
 		InputStream inputStream;
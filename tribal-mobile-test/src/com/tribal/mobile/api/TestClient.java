@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.api;
+
+import com.tribal.mobile.api.packages.PackageCatalogueRetrieved;
+import com.tribal.mobile.model.BaseContentItem;
+import com.tribal.mobile.model.MenuItem;
+import com.tribal.mobile.phonegap.GetCourseLocalPathRootCompleted;
+import com.tribal.mobile.phonegap.InitialiseCurrentCourseLocalTempFolderCompleted;
+import com.tribal.mobile.phonegap.PhoneGapOperationNoResultCompleted;
+
+/**
+ * {@link Client} for tests, which has a signed in user and otherwise does nothing.
+ * 
+ * @author Jon Brasted
+ */
+public class TestClient implements Client {
+	/* Fields */
+	
+	private String username;
+	private String passwordHash;
+	
+	/* Constructor */
+	
+	public TestClient(String username) {
+		this.username = username;
+	}
+	
+	/* Methods */
+	
+	@Override
+	public String getUserId() {
+		return username;
+	}
+
+	@Override
+	public String getUserUsername() {
+		return username;
+	}
+
+	@Override
+	public String getUserPassword() {
+		return null;
+	}
+
+	@Override
+	public String getUserPasswordHash() {
+		return passwordHash;
+	}
+
+	@Override
+	public void setUserPasswordHash(String passwordHash) {
+		this.passwordHash = passwordHash;
+	}
+
+	@Override
+	public void setUserUsername(String username) {
+		this.username = username;
+	}
+
+	@Override
+	public void logout() {
+	}
+
+	@Override
+	public void setMenuItem(MenuItem menuItem) {
+	}
+
+	@Override
+	public void setResourceItem(BaseContentItem resourceItem) {
+	}
+
+	@Override
+	public void openResource(String resourcePath) {
+	}
+
+	@Override
+	public String getValue(String type, String key) {
+		return null;
+	}
+
+	@Override
+	public boolean setValue(String type, String key, String value) {
+		return false;
+	}
+
+	@Override
+	public void sync() {
+	}
+
+	@Override
+	public void track(String sender, String additionalInfo) {
+	}
+
+	@Override
+	public void track(String sender, String objectId, String additionalInfo) {
+	}
+
+	@Override
+	public void getPackageCatalogue(PackageCatalogueRetrieved callback) {
+	}
+
+	@Override
+	public void getCourseLocalPathRoot(String courseId, String phoneGapCallback, GetCourseLocalPathRootCompleted callback) {
+	}
+
+	@Override
+	public void getCurrentCourseLocalPathRoot(String phoneGapCallback, GetCourseLocalPathRootCompleted callback) {
+	}
+
+	@Override
+	public void initialiseCurrentCourseLocalTempFolder(String phoneGapCallback, InitialiseCurrentCourseLocalTempFolderCompleted callback) {
+	}
+
+	@Override
+	public void clearCurrentCourseLocalTempFolder(String phoneGapCallback, PhoneGapOperationNoResultCompleted callback) {
+	}
+}
\ No newline at end of file
@@ -0,0 +1,337 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.download;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import android.test.AndroidTestCase;
+
+import com.tribal.mobile.util.FileHelper;
+
+/**
+ * Tests for updating an installed package folder from only the changed entries of its new zip with {@link DeltaPackageUpdater}.
+ * 
+ * @author Jon Brasted
+ */
+public class DeltaPackageUpdaterTest extends AndroidTestCase {
+	/* Fields */
+	
+	private final static String CHANGED_PATH = "pages/1/index.html";
+	private final static String REMOVED_PATH = "pages/2/index.html";
+	private final static String ADDED_PATH = "pages/3/index.html";
+	private final static String APP_PATH = "bookmarks.json";
+	
+	private Map<String, byte[]> installedEntries;
+	private Map<String, byte[]> updatedEntries;
+	private File folder;
+	
+	private long servedBytes;
+	
+	/* Methods */
+	
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		
+		installedEntries = TestZipHelper.createPackageEntries();
+		
+		updatedEntries = new LinkedHashMap<String, byte[]>(installedEntries);
+		updatedEntries.put(CHANGED_PATH, "<html>1, second version</html>".getBytes());
+		updatedEntries.remove(REMOVED_PATH);
+		updatedEntries.put(ADDED_PATH, "<html>3</html>".getBytes());
+		
+		folder = new File(getContext().getCacheDir(), "package");
+		deleteUpdateFiles();
+		
+		// install the first version and record it, as a full install does
+		File zipFile = new File(getContext().getCacheDir(), "package.zip");
+		TestZipHelper.createZip(installedEntries, zipFile);
+		
+		try {
+			assertTrue(ZipExtractor.extract(zipFile, folder, null, null));
+		} finally {
+			zipFile.delete();
+		}
+		
+		PackageManifest manifest = PackageManifest.load(folder);
+		
+		for (Map.Entry<String, byte[]> entry : installedEntries.entrySet()) {
+			if (entry.getValue() != null) {
+				File file = new File(folder, entry.getKey());
+				manifest.put(entry.getKey(), file, PackageManifest.computeChecksum(file));
+			}
+		}
+		
+		manifest.save();
+		
+		// a file the app added to the folder, which is not part of the package
+		TestZipHelper.writeFile(new File(folder, APP_PATH), "[]".getBytes());
+	}
+	
+	@Override
+	protected void tearDown() throws Exception {
+		deleteUpdateFiles();
+		
+		super.tearDown();
+	}
+	
+	public void testAppliesOnlyChangedEntries() throws Exception {
+		byte[] zipData = TestZipHelper.createZip(updatedEntries);
+		
+		DeltaPackageUpdater updater = createUpdater(zipData);
+		
+		assertTrue(updater.update());
+		assertEquals(2, updater.getChangedEntryCount());
+		assertEquals(1, updater.getRemovedFileCount());
+		
+		TestZipHelper.assertExtracted(updatedEntries, folder);
+		assertFalse(new File(folder, REMOVED_PATH).exists());
+		assertTrue(new File(folder, APP_PATH).exists());
+		
+		// the large unchanged entry was not fetched
+		assertTrue(servedBytes < zipData.length / 2);
+		
+		assertEquals(getFilePaths(updatedEntries), PackageManifest.load(folder).getPaths());
+		assertFalse(getJournalFile().exists());
+		assertFalse(getStagingFolder().exists());
+	}
+	
+	public void testUpdatingAgainFetchesNothing() throws Exception {
+		byte[] zipData = TestZipHelper.createZip(updatedEntries);
+		
+		assertTrue(createUpdater(zipData).update());
+		
+		DeltaPackageUpdater updater = createUpdater(zipData);
+		
+		assertTrue(updater.update());
+		assertEquals(0, updater.getChangedEntryCount());
+		assertEquals(0, updater.getRemovedFileCount());
+		
+		TestZipHelper.assertExtracted(updatedEntries, folder);
+	}
+	
+	public void testLeavesFolderUnchangedOnChecksumMismatch() throws Exception {
+		byte[] zipData = TestZipHelper.createZip(updatedEntries);
+		
+		// the central directory claims a different CRC-32 from the data that is served for the changed entry
+		byte[] corruptZipData = zipData.clone();
+		corruptZipData[findCentralHeader(corruptZipData, CHANGED_PATH) + 16] ^= 0x01;
+		
+		try {
+			createUpdater(corruptZipData).update();
+			fail("Expected a checksum mismatch to fail the update so the whole zip is downloaded");
+		} catch (IOException e) {
+			// expected
+		}
+		
+		assertInstalledVersion();
+		assertFalse(getJournalFile().exists());
+		assertFalse(getStagingFolder().exists());
+	}
+	
+	public void testFailsWithoutRangeSupport() throws Exception {
+		final byte[] zipData = TestZipHelper.createZip(updatedEntries);
+		
+		DeltaPackageUpdater updater = new DeltaPackageUpdater(folder, new DeltaPackageUpdater.RangeConnectionFactory() {
+			@Override
+			public HttpURLConnection openRangeConnection(long firstByte, long lastByte, String validator) throws IOException {
+				return new FakeRangeConnection(zipData);
+			}
+		}, new Progress(false));
+		
+		try {
+			updater.update();
+			fail("Expected a server without byte ranges to fail the update");
+		} catch (IOException e) {
+			// expected
+		}
+		
+		assertInstalledVersion();
+	}
+	
+	public void testLeavesFolderUnchangedWhenCancelled() throws Exception {
+		byte[] zipData = TestZipHelper.createZip(updatedEntries);
+		
+		DeltaPackageUpdater updater = new DeltaPackageUpdater(folder, new RangeConnections(zipData), new Progress(true));
+		
+		assertFalse(updater.update());
+		
+		assertInstalledVersion();
+		assertFalse(getJournalFile().exists());
+		assertFalse(getStagingFolder().exists());
+	}
+	
+	public void testRecoversInterruptedApply() throws Exception {
+		byte[] zipData = TestZipHelper.createZip(updatedEntries);
+		
+		// a folder in the way of the added file stops the update after the changed file has been replaced
+		File obstacle = new File(folder, ADDED_PATH);
+		TestZipHelper.writeFile(new File(obstacle, "index.html"), new byte[1]);
+		
+		try {
+			createUpdater(zipData).update();
+			fail("Expected the update to be interrupted");
+		} catch (IOException e) {
+			// expected
+		}
+		
+		// the folder is part way between the versions until the journal is applied again
+		assertTrue(getJournalFile().exists());
+		TestZipHelper.assertExtracted(singleEntry(CHANGED_PATH, updatedEntries), folder);
+		TestZipHelper.assertExtracted(singleEntry(REMOVED_PATH, installedEntries), folder);
+		
+		FileHelper.deleteFilesRecursive(obstacle, true);
+		
+		DeltaPackageUpdater.recover(folder);
+		
+		TestZipHelper.assertExtracted(updatedEntries, folder);
+		assertFalse(new File(folder, REMOVED_PATH).exists());
+		assertFalse(getJournalFile().exists());
+		assertFalse(getStagingFolder().exists());
+	}
+	
+	public void testDiscardsUpdateInterruptedBeforeApply() throws Exception {
+		TestZipHelper.writeFile(new File(getStagingFolder(), CHANGED_PATH), "<html>partly staged</html>".getBytes());
+		
+		DeltaPackageUpdater.recover(folder);
+		
+		assertInstalledVersion();
+		assertFalse(getStagingFolder().exists());
+	}
+	
+	private DeltaPackageUpdater createUpdater(byte[] zipData) {
+		return new DeltaPackageUpdater(folder, new RangeConnections(zipData), new Progress(false));
+	}
+	
+	private void assertInstalledVersion() throws IOException {
+		TestZipHelper.assertExtracted(installedEntries, folder);
+		assertFalse(new File(folder, ADDED_PATH).exists());
+		assertEquals(getFilePaths(installedEntries), PackageManifest.load(folder).getPaths());
+	}
+	
+	private File getStagingFolder() {
+		return new File(folder.getParentFile(), folder.getName() + ".delta");
+	}
+	
+	private File getJournalFile() {
+		return new File(folder.getParentFile(), folder.getName() + ".delta.journal");
+	}
+	
+	private void deleteUpdateFiles() {
+		FileHelper.deleteFilesRecursive(folder, true);
+		FileHelper.deleteFilesRecursive(getStagingFolder(), true);
+		getJournalFile().delete();
+		PackageManifest.delete(folder);
+	}
+	
+	private static Set<String> getFilePaths(Map<String, byte[]> entries) {
+		Set<String> paths = new HashSet<String>();
+		
+		for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+			if (entry.getValue() != null) {
+				paths.add(entry.getKey());
+			}
+		}
+		
+		return paths;
+	}
+	
+	private static Map<String, byte[]> singleEntry(String path, Map<String, byte[]> entries) {
+		Map<String, byte[]> entry = new LinkedHashMap<String, byte[]>();
+		entry.put(path, entries.get(path));
+		
+		return entry;
+	}
+	
+	/**
+	 * Returns the offset of the central directory header of an entry.
+	 */
+	private static int findCentralHeader(byte[] zipData, String name) {
+		byte[] nameBytes = name.getBytes();
+		
+		for (int i = zipData.length - 46 - nameBytes.length; i >= 0; i--) {
+			if (zipData[i] == 0x50 && zipData[i + 1] == 0x4b && zipData[i + 2] == 0x01 && zipData[i + 3] == 0x02
+					&& regionMatches(zipData, i + 46, nameBytes)) {
+				return i;
+			}
+		}
+		
+		throw new AssertionError("No central directory header for " + name);
+	}
+	
+	private static boolean regionMatches(byte[] data, int offset, byte[] region) {
+		for (int i = 0; i < region.length; i++) {
+			if (data[offset + i] != region[i]) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Serves byte ranges of a zip, counting the bytes served.
+	 */
+	private class RangeConnections implements DeltaPackageUpdater.RangeConnectionFactory {
+		private final byte[] zipData;
+		
+		RangeConnections(byte[] zipData) {
+			this.zipData = zipData;
+		}
+		
+		@Override
+		public HttpURLConnection openRangeConnection(long firstByte, long lastByte, String validator) throws IOException {
+			servedBytes += lastByte - firstByte + 1;
+			
+			return new FakeRangeConnection(zipData, firstByte, lastByte, HttpURLConnection.HTTP_PARTIAL, -1);
+		}
+	}
+	
+	private static class Progress implements SegmentedDownloader.Listener {
+		private final boolean isCancelled;
+		
+		Progress(boolean isCancelled) {
+			this.isCancelled = isCancelled;
+		}
+		
+		@Override
+		public boolean isCancelled() {
+			return isCancelled;
+		}
+		
+		@Override
+		public void onProgress(long downloadedBytes, long totalBytes) {
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.download;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * An {@link HttpURLConnection} that serves a byte range of an in-memory file, for testing downloads without a server.
+ * 
+ * @author Jon Brasted
+ */
+public class FakeRangeConnection extends HttpURLConnection {
+	/* Fields */
+	
+	public final static String FILE_URL = "http://localhost/package.zip";
+	public final static String ETAG = "\"test-etag\"";
+	
+	private final byte[] data;
+	private final int firstByte;
+	private final int lastByte;
+	private final int responseCode;
+	private final int failAfterBytes;
+	
+	private String acceptRanges = "bytes";
+	private String eTag = ETAG;
+	
+	/* Properties */
+	
+	public void setAcceptRanges(String acceptRanges) {
+		this.acceptRanges = acceptRanges;
+	}
+	
+	public void setETag(String eTag) {
+		this.eTag = eTag;
+	}
+	
+	@Override
+	public int getResponseCode() {
+		return responseCode;
+	}
+	
+	@Override
+	public int getContentLength() {
+		return lastByte - firstByte + 1;
+	}
+	
+	@Override
+	public String getHeaderField(String name) {
+		if ("Accept-Ranges".equalsIgnoreCase(name)) {
+			return acceptRanges;
+		} else if ("ETag".equalsIgnoreCase(name)) {
+			return eTag;
+		} else if ("Content-Length".equalsIgnoreCase(name)) {
+			return String.valueOf(getContentLength());
+		} else if ("Content-Range".equalsIgnoreCase(name) && responseCode == HTTP_PARTIAL) {
+			return "bytes " + firstByte + "-" + lastByte + "/" + data.length;
+		}
+		
+		return null;
+	}
+	
+	@Override
+	public InputStream getInputStream() throws IOException {
+		return new FailingInputStream(data, firstByte, lastByte - firstByte + 1, failAfterBytes);
+	}
+	
+	/* Constructor */
+	
+	/**
+	 * Creates a connection for a whole file, as returned for a plain GET.
+	 * 
+	 * @param data	the file
+	 */
+	public FakeRangeConnection(byte[] data) throws IOException {
+		this(data, 0, data.length - 1, HTTP_OK, -1);
+	}
+	
+	/**
+	 * Creates a connection for an inclusive byte range of a file.
+	 * 
+	 * @param data				the file
+	 * @param firstByte			the first byte served
+	 * @param lastByte			the last byte served
+	 * @param responseCode		the response code
+	 * @param failAfterBytes	the number of bytes after which reading fails, or -1 to serve the whole range
+	 */
+	public FakeRangeConnection(byte[] data, long firstByte, long lastByte, int responseCode, int failAfterBytes) throws IOException {
+		super(new URL(FILE_URL));
+		
+		this.data = data;
+		this.firstByte = (int) firstByte;
+		this.lastByte = (int) lastByte;
+		this.responseCode = responseCode;
+		this.failAfterBytes = failAfterBytes;
+	}
+	
+	/* Methods */
+	
+	@Override
+	public void connect() {
+		connected = true;
+	}
+	
+	@Override
+	public void disconnect() {
+		connected = false;
+	}
+	
+	@Override
+	public boolean usingProxy() {
+		return false;
+	}
+	
+	private static class FailingInputStream extends FilterInputStream {
+		private int remainingBeforeFailure;
+		
+		FailingInputStream(byte[] data, int offset, int length, int failAfterBytes) {
+			super(new ByteArrayInputStream(data, offset, length));
+			
+			remainingBeforeFailure = (failAfterBytes < 0) ? Integer.MAX_VALUE : failAfterBytes;
+		}
+		
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			if (remainingBeforeFailure == 0) {
+				throw new IOException("Connection reset");
+			}
+			
+			int read = super.read(buffer, offset, Math.min(length, remainingBeforeFailure));
+			
+			if (read > 0) {
+				remainingBeforeFailure -= read;
+			}
+			
+			return read;
+		}
+	}
+}
\ No newline at end of file
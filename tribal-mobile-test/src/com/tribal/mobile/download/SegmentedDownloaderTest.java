@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.download;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import android.test.AndroidTestCase;
+
+/**
+ * Tests that {@link SegmentedDownloader} leaves a file that {@link DownloadResumeState} can resume from when a segmented download
+ * completes, fails or is cancelled.
+ * 
+ * @author Jon Brasted
+ */
+public class SegmentedDownloaderTest extends AndroidTestCase {
+	/* Fields */
+	
+	private final static int CHUNK_SIZE = SegmentedDownloader.CHUNK_SIZE;
+	private final static int FILE_SIZE = 4 * CHUNK_SIZE + CHUNK_SIZE / 2;
+	
+	private byte[] data;
+	private File destinationFile;
+	
+	/* Methods */
+	
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		
+		data = new byte[FILE_SIZE];
+		new Random(42).nextBytes(data);
+		
+		destinationFile = new File(getContext().getCacheDir(), "package.zip");
+		DownloadResumeState.load(destinationFile).discard();
+		destinationFile.delete();
+	}
+	
+	@Override
+	protected void tearDown() throws Exception {
+		DownloadResumeState.load(destinationFile).discard();
+		destinationFile.delete();
+		
+		super.tearDown();
+	}
+	
+	public void testDownloadsAndDigestsWholeFile() throws Exception {
+		DownloadResumeState state = DownloadResumeState.load(destinationFile);
+		state.save(FakeRangeConnection.FILE_URL, FakeRangeConnection.ETAG, null, FILE_SIZE, true);
+		
+		SegmentedDownloader downloader = new SegmentedDownloader(state.getPartialFile(), FILE_SIZE, new RangeConnections(-1, HttpURLConnection.HTTP_PARTIAL), new Progress(-1));
+		
+		MessageDigest digest = MessageDigest.getInstance("MD5");
+		downloader.setDigest(digest);
+		
+		assertTrue(downloader.download(new FakeRangeConnection(data)));
+		assertTrue(Arrays.equals(data, readFile(state.getPartialFile())));
+		assertTrue(Arrays.equals(MessageDigest.getInstance("MD5").digest(data), digest.digest()));
+		
+		assertTrue(state.complete());
+		assertTrue(destinationFile.exists());
+		assertFalse(state.getPartialFile().exists());
+	}
+	
+	public void testTruncatesToContiguousChunksWhenRangeFails() throws Exception {
+		File partialFile = DownloadResumeState.load(destinationFile).getPartialFile();
+		
+		SegmentedDownloader downloader = new SegmentedDownloader(partialFile, FILE_SIZE, new RangeConnections(3, HttpURLConnection.HTTP_PARTIAL), new Progress(-1));
+		
+		try {
+			downloader.download(new FakeRangeConnection(data));
+			fail("Expected the failed range to fail the download");
+		} catch (IOException e) {
+			// expected
+		}
+		
+		assertResumablePrefix(partialFile, 3);
+	}
+	
+	public void testTruncatesToContiguousChunksWhenRangeIsIgnored() throws Exception {
+		File partialFile = DownloadResumeState.load(destinationFile).getPartialFile();
+		
+		SegmentedDownloader downloader = new SegmentedDownloader(partialFile, FILE_SIZE, new RangeConnections(2, HttpURLConnection.HTTP_OK), new Progress(-1));
+		
+		try {
+			downloader.download(new FakeRangeConnection(data));
+			fail("Expected a full response to a range request to fail the download");
+		} catch (IOException e) {
+			// expected
+		}
+		
+		assertResumablePrefix(partialFile, 2);
+	}
+	
+	public void testTruncatesToContiguousChunksWhenCancelled() throws Exception {
+		File partialFile = DownloadResumeState.load(destinationFile).getPartialFile();
+		
+		SegmentedDownloader downloader = new SegmentedDownloader(partialFile, FILE_SIZE, new RangeConnections(-1, HttpURLConnection.HTTP_PARTIAL), new Progress(CHUNK_SIZE + CHUNK_SIZE / 2));
+		
+		assertFalse(downloader.download(new FakeRangeConnection(data)));
+		
+		assertResumablePrefix(partialFile, 2);
+	}
+	
+	public void testResumesOnlyOnceSegmentedDownloadHasStopped() throws Exception {
+		DownloadResumeState state = DownloadResumeState.load(destinationFile);
+		state.save(FakeRangeConnection.FILE_URL, FakeRangeConnection.ETAG, null, FILE_SIZE, true);
+		
+		SegmentedDownloader downloader = new SegmentedDownloader(state.getPartialFile(), FILE_SIZE, new RangeConnections(-1, HttpURLConnection.HTTP_PARTIAL), new Progress(2 * CHUNK_SIZE));
+		assertFalse(downloader.download(new FakeRangeConnection(data)));
+		
+		// a segmented state left behind by a killed process may have gaps
+		state = DownloadResumeState.load(destinationFile);
+		assertTrue(state.isSegmented());
+		assertFalse(state.canResume(FakeRangeConnection.FILE_URL));
+		
+		// once truncated the partial file is contiguous and is resumed like any other
+		state.save(FakeRangeConnection.FILE_URL, FakeRangeConnection.ETAG, null, FILE_SIZE, false);
+		
+		state = DownloadResumeState.load(destinationFile);
+		assertFalse(state.isSegmented());
+		assertTrue(state.canResume(FakeRangeConnection.FILE_URL));
+		assertFalse(state.canResume("http://localhost/other.zip"));
+		assertEquals(FakeRangeConnection.ETAG, state.getValidator());
+		assertEquals(state.getPartialFile().length(), state.getDownloadedBytes());
+		assertEquals(0, state.getDownloadedBytes() % CHUNK_SIZE);
+	}
+	
+	public void testDoesNotResumeWithoutValidator() throws Exception {
+		DownloadResumeState state = DownloadResumeState.load(destinationFile);
+		state.save(FakeRangeConnection.FILE_URL, null, null, FILE_SIZE, false);
+		
+		SegmentedDownloader downloader = new SegmentedDownloader(state.getPartialFile(), FILE_SIZE, new RangeConnections(1, HttpURLConnection.HTTP_PARTIAL), new Progress(-1));
+		
+		try {
+			downloader.download(new FakeRangeConnection(data));
+			fail("Expected the failed range to fail the download");
+		} catch (IOException e) {
+			// expected
+		}
+		
+		assertFalse(DownloadResumeState.load(destinationFile).canResume(FakeRangeConnection.FILE_URL));
+	}
+	
+	public void testIsSupported() throws Exception {
+		FakeRangeConnection connection = new FakeRangeConnection(data);
+		assertTrue(SegmentedDownloader.isSupported(connection, FILE_SIZE));
+		assertFalse(SegmentedDownloader.isSupported(connection, SegmentedDownloader.MIN_SEGMENTED_FILE_SIZE - 1));
+		
+		connection.setETag(null);
+		assertFalse(SegmentedDownloader.isSupported(connection, FILE_SIZE));
+		
+		connection.setETag(FakeRangeConnection.ETAG);
+		connection.setAcceptRanges("none");
+		assertFalse(SegmentedDownloader.isSupported(connection, FILE_SIZE));
+	}
+	
+	/**
+	 * Asserts that the partial file holds whole chunks matching the start of the file, no more than the specified number of chunks.
+	 */
+	private void assertResumablePrefix(File partialFile, int maxChunkCount) throws IOException {
+		byte[] partialData = readFile(partialFile);
+		
+		assertEquals(0, partialData.length % CHUNK_SIZE);
+		assertTrue(partialData.length <= maxChunkCount * CHUNK_SIZE);
+		assertTrue(Arrays.equals(Arrays.copyOf(data, partialData.length), partialData));
+	}
+	
+	private static byte[] readFile(File file) throws IOException {
+		byte[] fileData = new byte[(int) file.length()];
+		FileInputStream inputStream = new FileInputStream(file);
+		
+		try {
+			int offset = 0;
+			
+			while (offset < fileData.length) {
+				int length = inputStream.read(fileData, offset, fileData.length - offset);
+				
+				if (length < 0) {
+					break;
+				}
+				
+				offset += length;
+			}
+		} finally {
+			inputStream.close();
+		}
+		
+		return fileData;
+	}
+	
+	/**
+	 * Serves ranges of the test file, failing the range of one chunk.
+	 */
+	private class RangeConnections implements SegmentedDownloader.RangeConnectionFactory {
+		private final int failingChunk;
+		private final int failingResponseCode;
+		
+		RangeConnections(int failingChunk, int failingResponseCode) {
+			this.failingChunk = failingChunk;
+			this.failingResponseCode = failingResponseCode;
+		}
+		
+		@Override
+		public HttpURLConnection openRangeConnection(long firstByte, long lastByte) throws IOException {
+			if (firstByte / CHUNK_SIZE == failingChunk) {
+				if (failingResponseCode == HttpURLConnection.HTTP_PARTIAL) {
+					// drop the connection half way through the chunk
+					return new FakeRangeConnection(data, firstByte, lastByte, HttpURLConnection.HTTP_PARTIAL, CHUNK_SIZE / 2);
+				}
+				
+				return new FakeRangeConnection(data, 0, data.length - 1, failingResponseCode, -1);
+			}
+			
+			return new FakeRangeConnection(data, firstByte, lastByte, HttpURLConnection.HTTP_PARTIAL, -1);
+		}
+	}
+	
+	/**
+	 * Cancels the download once a number of bytes have been downloaded.
+	 */
+	private static class Progress implements SegmentedDownloader.Listener {
+		private final long cancelAfterBytes;
+		private volatile long downloadedBytes;
+		
+		Progress(long cancelAfterBytes) {
+			this.cancelAfterBytes = cancelAfterBytes;
+		}
+		
+		@Override
+		public boolean isCancelled() {
+			return cancelAfterBytes >= 0 && downloadedBytes >= cancelAfterBytes;
+		}
+		
+		@Override
+		public void onProgress(long downloadedBytes, long totalBytes) {
+			this.downloadedBytes = downloadedBytes;
+		}
+	}
+}
\ No newline at end of file
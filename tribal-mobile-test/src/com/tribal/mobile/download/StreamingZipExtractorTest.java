@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.download;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+import android.test.AndroidTestCase;
+
+import com.tribal.mobile.util.FileHelper;
+
+/**
+ * Tests for the extraction of packages while they download by {@link StreamingZipExtractor}.
+ * 
+ * @author Jon Brasted
+ */
+public class StreamingZipExtractorTest extends AndroidTestCase {
+	/* Fields */
+	
+	private final static int WRITE_SIZE = 8 * 1024;
+	
+	private Map<String, byte[]> entries;
+	private byte[] zipData;
+	private File folder;
+	
+	/* Methods */
+	
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		
+		entries = TestZipHelper.createPackageEntries();
+		zipData = TestZipHelper.createZip(entries);
+		
+		folder = new File(getContext().getCacheDir(), "package.staging");
+		FileHelper.deleteFilesRecursive(folder, true);
+	}
+	
+	@Override
+	protected void tearDown() throws Exception {
+		FileHelper.deleteFilesRecursive(folder, true);
+		
+		super.tearDown();
+	}
+	
+	public void testExtractsWhileWritten() throws Exception {
+		StreamingZipExtractor extractor = new StreamingZipExtractor(folder, null);
+		
+		write(extractor.start(), zipData.length);
+		
+		assertTrue(extractor.finish());
+		assertTrue(extractor.isFinished());
+		
+		TestZipHelper.assertExtracted(entries, folder);
+	}
+	
+	public void testReportsCancellation() throws Exception {
+		StreamingZipExtractor extractor = new StreamingZipExtractor(folder, new ZipExtractor.Cancellable() {
+			@Override
+			public boolean isCancelled() {
+				return true;
+			}
+		});
+		
+		try {
+			write(extractor.start(), zipData.length);
+		} catch (IOException e) {
+			// the extraction thread has stopped reading, which the downloader sees as a failed write
+			assertTrue(extractor.isFinished());
+		}
+		
+		assertFalse(extractor.finish());
+	}
+	
+	public void testFailsOnTruncatedStream() throws Exception {
+		StreamingZipExtractor extractor = new StreamingZipExtractor(folder, null);
+		
+		// end the stream part way through the largest entry, as an interrupted download would
+		write(extractor.start(), zipData.length / 2);
+		
+		try {
+			extractor.finish();
+			fail("Expected a truncated zip stream to fail extraction");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+	
+	/**
+	 * Writes the start of the zip file in pieces, as the downloader does.
+	 */
+	private void write(OutputStream outputStream, int length) throws IOException {
+		for (int offset = 0; offset < length; offset += WRITE_SIZE) {
+			outputStream.write(zipData, offset, Math.min(WRITE_SIZE, length - offset));
+		}
+	}
+}
\ No newline at end of file
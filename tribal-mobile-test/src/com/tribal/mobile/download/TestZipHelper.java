@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.download;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.Assert;
+
+/**
+ * Builds zip files for tests and checks the folders they are extracted into.
+ * 
+ * @author Jon Brasted
+ */
+public class TestZipHelper {
+	/* Methods */
+	
+	/**
+	 * Returns the entries of a small package: files at the root and in nested folders, an empty folder and an entry large enough to
+	 * need many buffers. Folders are names ending with <code>/</code> and have <code>null</code> contents.
+	 * 
+	 * @return	the entries, in zip order
+	 */
+	public static Map<String, byte[]> createPackageEntries() {
+		Random random = new Random(7);
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		
+		entries.put("package.xml", "<package id=\"test\"/>".getBytes());
+		entries.put("images/", null);
+		entries.put("images/large.bin", randomBytes(random, 600 * 1024));
+		entries.put("pages/1/index.html", "<html>1</html>".getBytes());
+		entries.put("pages/2/index.html", "<html>2</html>".getBytes());
+		entries.put("empty/", null);
+		entries.put("empty.txt", new byte[0]);
+		
+		for (int i = 0; i < 20; i++) {
+			entries.put("pages/small/" + i + ".bin", randomBytes(random, 1 + random.nextInt(16 * 1024)));
+		}
+		
+		return entries;
+	}
+	
+	/**
+	 * Returns the total size of the files in a set of entries.
+	 * 
+	 * @param entries	the entries
+	 * @return			the total size in bytes
+	 */
+	public static long getTotalBytes(Map<String, byte[]> entries) {
+		long totalBytes = 0;
+		
+		for (byte[] data : entries.values()) {
+			totalBytes += (data != null) ? data.length : 0;
+		}
+		
+		return totalBytes;
+	}
+	
+	/**
+	 * Zips a set of entries.
+	 * 
+	 * @param entries	the entries
+	 * @return			the zip file contents
+	 * @throws IOException
+	 */
+	public static byte[] createZip(Map<String, byte[]> entries) throws IOException {
+		ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+		ZipOutputStream zipOutputStream = new ZipOutputStream(byteArrayOutputStream);
+		
+		try {
+			for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+				zipOutputStream.putNextEntry(new ZipEntry(entry.getKey()));
+				
+				if (entry.getValue() != null) {
+					zipOutputStream.write(entry.getValue());
+				}
+				
+				zipOutputStream.closeEntry();
+			}
+		} finally {
+			zipOutputStream.close();
+		}
+		
+		return byteArrayOutputStream.toByteArray();
+	}
+	
+	/**
+	 * Zips a set of entries into a file.
+	 * 
+	 * @param entries	the entries
+	 * @param file		the file
+	 * @throws IOException
+	 */
+	public static void createZip(Map<String, byte[]> entries, File file) throws IOException {
+		writeFile(file, createZip(entries));
+	}
+	
+	/**
+	 * Asserts that a folder holds every entry with the expected contents.
+	 * 
+	 * @param entries	the entries
+	 * @param folder	the folder
+	 * @throws IOException
+	 */
+	public static void assertExtracted(Map<String, byte[]> entries, File folder) throws IOException {
+		for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+			File file = new File(folder, entry.getKey());
+			
+			if (entry.getValue() == null) {
+				Assert.assertTrue(entry.getKey() + " should be a folder", file.isDirectory());
+			} else {
+				Assert.assertTrue(entry.getKey() + " should be a file", file.isFile());
+				Assert.assertTrue(entry.getKey() + " has the wrong contents", Arrays.equals(entry.getValue(), readFile(file)));
+			}
+		}
+	}
+	
+	public static byte[] readFile(File file) throws IOException {
+		byte[] data = new byte[(int) file.length()];
+		FileInputStream inputStream = new FileInputStream(file);
+		
+		try {
+			int offset = 0;
+			
+			while (offset < data.length) {
+				int length = inputStream.read(data, offset, data.length - offset);
+				
+				if (length < 0) {
+					break;
+				}
+				
+				offset += length;
+			}
+		} finally {
+			inputStream.close();
+		}
+		
+		return data;
+	}
+	
+	public static void writeFile(File file, byte[] data) throws IOException {
+		File parentFile = file.getParentFile();
+		
+		if (parentFile != null && !parentFile.isDirectory()) {
+			parentFile.mkdirs();
+		}
+		
+		FileOutputStream outputStream = new FileOutputStream(file);
+		
+		try {
+			outputStream.write(data);
+		} finally {
+			outputStream.close();
+		}
+	}
+	
+	private static byte[] randomBytes(Random random, int length) {
+		byte[] data = new byte[length];
+		random.nextBytes(data);
+		
+		return data;
+	}
+}
\ No newline at end of file
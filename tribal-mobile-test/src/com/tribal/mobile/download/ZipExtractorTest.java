@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.download;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipInputStream;
+
+import android.test.AndroidTestCase;
+
+import com.tribal.mobile.util.FileHelper;
+
+/**
+ * Tests for the extraction of packages by {@link ZipExtractor}.
+ * 
+ * @author Jon Brasted
+ */
+public class ZipExtractorTest extends AndroidTestCase {
+	/* Fields */
+	
+	private Map<String, byte[]> entries;
+	private File zipFile;
+	private File folder;
+	
+	/* Methods */
+	
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		
+		entries = TestZipHelper.createPackageEntries();
+		
+		zipFile = new File(getContext().getCacheDir(), "package.zip");
+		TestZipHelper.createZip(entries, zipFile);
+		
+		folder = new File(getContext().getCacheDir(), "package");
+		FileHelper.deleteFilesRecursive(folder, true);
+	}
+	
+	@Override
+	protected void tearDown() throws Exception {
+		zipFile.delete();
+		FileHelper.deleteFilesRecursive(folder, true);
+		
+		super.tearDown();
+	}
+	
+	public void testExtractsFile() throws Exception {
+		final long totalBytes = TestZipHelper.getTotalBytes(entries);
+		final AtomicLong lastExtractedBytes = new AtomicLong();
+		final AtomicInteger progressErrorCount = new AtomicInteger();
+		
+		boolean isExtracted = ZipExtractor.extract(zipFile, folder, null, new ZipExtractor.ProgressListener() {
+			@Override
+			public void onProgress(long extractedBytes, long total) {
+				if (total != totalBytes || extractedBytes > totalBytes) {
+					progressErrorCount.incrementAndGet();
+				}
+				
+				// progress is reported from several workers, so keep the highest
+				synchronized (lastExtractedBytes) {
+					lastExtractedBytes.set(Math.max(lastExtractedBytes.get(), extractedBytes));
+				}
+			}
+		});
+		
+		assertTrue(isExtracted);
+		TestZipHelper.assertExtracted(entries, folder);
+		
+		assertEquals(0, progressErrorCount.get());
+		assertEquals(totalBytes, lastExtractedBytes.get());
+	}
+	
+	public void testExtractsStream() throws Exception {
+		ZipInputStream inputStream = new ZipInputStream(new ByteArrayInputStream(TestZipHelper.createZip(entries)));
+		
+		try {
+			assertTrue(ZipExtractor.extract(inputStream, folder, null));
+		} finally {
+			inputStream.close();
+		}
+		
+		TestZipHelper.assertExtracted(entries, folder);
+	}
+	
+	public void testReplacesExistingFiles() throws Exception {
+		TestZipHelper.writeFile(new File(folder, "package.xml"), "<package id=\"previous\" version=\"1\"/>".getBytes());
+		TestZipHelper.writeFile(new File(folder, "images/large.bin"), new byte[1024 * 1024]);
+		
+		assertTrue(ZipExtractor.extract(zipFile, folder, null, null));
+		
+		TestZipHelper.assertExtracted(entries, folder);
+	}
+	
+	public void testStopsBeforeEntriesWhenCancelled() throws Exception {
+		boolean isExtracted = ZipExtractor.extract(zipFile, folder, new ZipExtractor.Cancellable() {
+			@Override
+			public boolean isCancelled() {
+				return true;
+			}
+		}, null);
+		
+		assertFalse(isExtracted);
+		
+		for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+			if (entry.getValue() != null) {
+				assertFalse(entry.getKey() + " should not have been extracted", new File(folder, entry.getKey()).exists());
+			}
+		}
+	}
+	
+	public void testStopsWithinEntryWhenCancelled() throws Exception {
+		final AtomicLong lastExtractedBytes = new AtomicLong();
+		
+		boolean isExtracted = ZipExtractor.extract(zipFile, folder, new ZipExtractor.Cancellable() {
+			@Override
+			public boolean isCancelled() {
+				return lastExtractedBytes.get() >= 128 * 1024;
+			}
+		}, new ZipExtractor.ProgressListener() {
+			@Override
+			public void onProgress(long extractedBytes, long totalBytes) {
+				lastExtractedBytes.set(extractedBytes);
+			}
+		});
+		
+		assertFalse(isExtracted);
+		
+		// the largest entry is started first and is abandoned part way through
+		assertTrue(new File(folder, "images/large.bin").length() < entries.get("images/large.bin").length);
+		assertTrue(lastExtractedBytes.get() < TestZipHelper.getTotalBytes(entries));
+	}
+	
+	public void testFailsOnCorruptFile() throws Exception {
+		TestZipHelper.writeFile(zipFile, "not a zip file".getBytes());
+		
+		try {
+			ZipExtractor.extract(zipFile, folder, null, null);
+			fail("Expected a corrupt zip file to fail extraction");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,379 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.download.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.util.Log;
+
+/**
+ * A minimal HTTP/1.1 server on the loopback interface that serves a single file, standing in for the package server in benchmarks.
+ * It supports <code>GET</code> and <code>HEAD</code>, single byte ranges, <code>ETag</code> and <code>Last-Modified</code> validators,
+ * and can simulate a slower network with a shared bandwidth limit and a per-request latency. All other paths return 404.
+ * 
+ * @author Jon Brasted
+ */
+public class BenchmarkHttpServer {
+	/* Fields */
+	
+	private final static String LOG_TAG = "BenchmarkHttpServer";
+	
+	private final static int BUFFER_SIZE = 16 * 1024;
+	
+	private final File file;
+	private final String path;
+	private final String eTag;
+	private final String lastModified;
+	
+	private ServerSocket serverSocket;
+	private Thread acceptThread;
+	private volatile boolean isRunning = false;
+	
+	private long bandwidthLimitBytesPerSecond = 0;
+	private long latencyMilliseconds = 0;
+	
+	private final AtomicInteger requestCount = new AtomicInteger();
+	private final AtomicLong sentBytes = new AtomicLong();
+	private final AtomicLong firstByteSentTime = new AtomicLong();
+	private long startTime;
+	
+	/* Properties */
+	
+	/**
+	 * Limits the rate at which the server sends response bodies, shared across all connections.
+	 * 
+	 * @param bandwidthLimitBytesPerSecond	the limit in bytes per second, or 0 for no limit
+	 */
+	public void setBandwidthLimit(long bandwidthLimitBytesPerSecond) {
+		this.bandwidthLimitBytesPerSecond = bandwidthLimitBytesPerSecond;
+	}
+	
+	/**
+	 * Delays every response by a fixed time before its headers are sent.
+	 * 
+	 * @param latencyMilliseconds	the delay in milliseconds
+	 */
+	public void setLatency(long latencyMilliseconds) {
+		this.latencyMilliseconds = latencyMilliseconds;
+	}
+	
+	/**
+	 * Returns the URL the file is served at. Only valid once the server has started.
+	 * 
+	 * @return	the URL
+	 */
+	public String getUrl() {
+		return "http://127.0.0.1:" + serverSocket.getLocalPort() + path;
+	}
+	
+	public int getRequestCount() {
+		return requestCount.get();
+	}
+	
+	public long getSentBytes() {
+		return sentBytes.get();
+	}
+	
+	/**
+	 * Returns the time at which the first byte of a response body was sent since the counters were last reset, as
+	 * {@link System#nanoTime()}, or 0 if nothing has been sent.
+	 * 
+	 * @return	the time the first body byte was sent
+	 */
+	public long getFirstByteSentTime() {
+		return firstByteSentTime.get();
+	}
+	
+	/* Constructor */
+	
+	/**
+	 * @param file	the file to serve
+	 * @param path	the path to serve it at, starting with <code>/</code>
+	 */
+	public BenchmarkHttpServer(File file, String path) {
+		this.file = file;
+		this.path = path;
+		this.eTag = "\"" + Long.toHexString(file.length()) + "-" + Long.toHexString(file.lastModified()) + "\"";
+		
+		Calendar lastModifiedCalendar = Calendar.getInstance(TimeZone.getTimeZone("GMT"), Locale.US);
+		lastModifiedCalendar.setTimeInMillis(file.lastModified());
+		this.lastModified = String.format(Locale.US, "%1$ta, %1$td %1$tb %1$tY %1$tT GMT", lastModifiedCalendar);
+	}
+	
+	/* Methods */
+	
+	/**
+	 * Starts listening on an ephemeral loopback port.
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void start() throws IOException {
+		serverSocket = new ServerSocket(0, 16, InetAddress.getByName("127.0.0.1"));
+		isRunning = true;
+		resetCounters();
+		
+		acceptThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				acceptConnections();
+			}
+		}, LOG_TAG);
+		
+		acceptThread.setDaemon(true);
+		acceptThread.start();
+	}
+	
+	/**
+	 * Stops the server. Connections that are being served are closed as their next write fails.
+	 */
+	public synchronized void stop() {
+		isRunning = false;
+		
+		if (serverSocket != null) {
+			try {
+				serverSocket.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+	
+	/**
+	 * Resets the request, byte and first byte counters, and restarts the bandwidth limit window.
+	 */
+	public void resetCounters() {
+		requestCount.set(0);
+		sentBytes.set(0);
+		firstByteSentTime.set(0);
+		startTime = System.nanoTime();
+	}
+	
+	private void acceptConnections() {
+		while (isRunning) {
+			try {
+				final Socket socket = serverSocket.accept();
+				
+				Thread connectionThread = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						serveConnection(socket);
+					}
+				}, LOG_TAG + " connection");
+				
+				connectionThread.setDaemon(true);
+				connectionThread.start();
+			} catch (IOException e) {
+				if (isRunning) {
+					Log.e(LOG_TAG, "Error accepting connection", e);
+				}
+			}
+		}
+	}
+	
+	private void serveConnection(Socket socket) {
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
+			OutputStream outputStream = socket.getOutputStream();
+			
+			// one request per connection
+			String requestLine = reader.readLine();
+			
+			if (requestLine == null) {
+				return;
+			}
+			
+			String range = null;
+			String ifRange = null;
+			String line;
+			
+			while ((line = reader.readLine()) != null && line.length() > 0) {
+				int separatorIndex = line.indexOf(':');
+				
+				if (separatorIndex > 0) {
+					String name = line.substring(0, separatorIndex).trim();
+					String value = line.substring(separatorIndex + 1).trim();
+					
+					if ("Range".equalsIgnoreCase(name)) {
+						range = value;
+					} else if ("If-Range".equalsIgnoreCase(name)) {
+						ifRange = value;
+					}
+				}
+			}
+			
+			requestCount.incrementAndGet();
+			
+			if (latencyMilliseconds > 0) {
+				Thread.sleep(latencyMilliseconds);
+			}
+			
+			String[] requestParts = requestLine.split(" ");
+			String method = requestParts[0];
+			
+			// the query string is ignored, so that clients can tell copies of the file apart
+			String requestPath = (requestParts.length > 1) ? requestParts[1].replaceFirst("\\?.*$", "") : null;
+			
+			if (!path.equals(requestPath) || !("GET".equals(method) || "HEAD".equals(method))) {
+				writeHeaders(outputStream, "404 Not Found", 0, null);
+				return;
+			}
+			
+			long totalBytes = file.length();
+			long firstByte = 0;
+			long lastByte = totalBytes - 1;
+			boolean isPartial = false;
+			
+			// honour a single byte range unless the validator it is conditional on has changed
+			if (range != null && range.startsWith("bytes=") && range.indexOf(',') < 0 && (ifRange == null || ifRange.equals(eTag))) {
+				String[] rangeParts = range.substring("bytes=".length()).split("-", -1);
+				
+				try {
+					if (rangeParts[0].length() == 0) {
+						firstByte = Math.max(0, totalBytes - Long.parseLong(rangeParts[1]));
+					} else {
+						firstByte = Long.parseLong(rangeParts[0]);
+						
+						if (rangeParts[1].length() > 0) {
+							lastByte = Math.min(lastByte, Long.parseLong(rangeParts[1]));
+						}
+					}
+				} catch (NumberFormatException e) {
+					writeHeaders(outputStream, "400 Bad Request", 0, null);
+					return;
+				}
+				
+				if (firstByte >= totalBytes || firstByte > lastByte) {
+					writeHeaders(outputStream, "416 Requested Range Not Satisfiable", 0, "Content-Range: bytes */" + totalBytes + "\r\n");
+					return;
+				}
+				
+				isPartial = true;
+			}
+			
+			long contentLength = lastByte - firstByte + 1;
+			
+			String extraHeaders = "Accept-Ranges: bytes\r\n"
+					+ "ETag: " + eTag + "\r\n"
+					+ "Last-Modified: " + lastModified + "\r\n"
+					+ "Content-Type: application/zip\r\n"
+					+ (isPartial ? "Content-Range: bytes " + firstByte + "-" + lastByte + "/" + totalBytes + "\r\n" : "");
+			
+			writeHeaders(outputStream, isPartial ? "206 Partial Content" : "200 OK", contentLength, extraHeaders);
+			
+			if ("GET".equals(method)) {
+				writeBody(outputStream, firstByte, contentLength);
+			}
+		} catch (SocketException e) {
+			// the client closed the connection, for example when a download is cancelled or paused
+		} catch (Exception e) {
+			Log.e(LOG_TAG, "Error serving request", e);
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+	
+	private void writeHeaders(OutputStream outputStream, String status, long contentLength, String extraHeaders) throws IOException {
+		String headers = "HTTP/1.1 " + status + "\r\n"
+				+ "Content-Length: " + contentLength + "\r\n"
+				+ "Connection: close\r\n"
+				+ ((extraHeaders != null) ? extraHeaders : "")
+				+ "\r\n";
+		
+		outputStream.write(headers.getBytes("ISO-8859-1"));
+		outputStream.flush();
+	}
+	
+	private void writeBody(OutputStream outputStream, long firstByte, long contentLength) throws IOException, InterruptedException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		
+		try {
+			randomAccessFile.seek(firstByte);
+			
+			byte[] buffer = new byte[BUFFER_SIZE];
+			long remainingBytes = contentLength;
+			
+			while (remainingBytes > 0 && isRunning) {
+				int length = randomAccessFile.read(buffer, 0, (int) Math.min(buffer.length, remainingBytes));
+				
+				if (length < 0) {
+					break;
+				}
+				
+				throttle(length);
+				
+				firstByteSentTime.compareAndSet(0, System.nanoTime());
+				
+				outputStream.write(buffer, 0, length);
+				remainingBytes -= length;
+			}
+			
+			outputStream.flush();
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+	
+	/**
+	 * Accounts for bytes about to be sent, sleeping for as long as the bandwidth limit requires.
+	 * 
+	 * @param length	the number of bytes about to be sent
+	 * @throws InterruptedException
+	 */
+	private void throttle(int length) throws InterruptedException {
+		long totalSentBytes = sentBytes.addAndGet(length);
+		
+		if (bandwidthLimitBytesPerSecond <= 0) {
+			return;
+		}
+		
+		long dueTime = startTime + totalSentBytes * 1000000000L / bandwidthLimitBytesPerSecond;
+		long delayNanoseconds = dueTime - System.nanoTime();
+		
+		if (delayNanoseconds > 0) {
+			Thread.sleep(delayNanoseconds / 1000000, (int) (delayNanoseconds % 1000000));
+		}
+	}
+}
\ No newline at end of file
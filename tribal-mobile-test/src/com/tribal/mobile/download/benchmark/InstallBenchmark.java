@@ -0,0 +1,549 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.download.benchmark;
+
+import java.io.File;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.AsyncTask;
+import android.os.Debug;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.tribal.mobile.api.packages.PackageItem;
+import com.tribal.mobile.base.BaseApplication;
+import com.tribal.mobile.base.IntentParameterConstants;
+import com.tribal.mobile.download.DownloadBroadcastActions;
+import com.tribal.mobile.download.DownloadFileAsync;
+import com.tribal.mobile.download.DownloadFileAsyncCancelled;
+import com.tribal.mobile.download.DownloadFileAsyncCompleted;
+import com.tribal.mobile.download.DownloadFileAsyncFailed;
+import com.tribal.mobile.download.DownloadFileAsyncProgressUpdate;
+import com.tribal.mobile.download.PackageManifest;
+import com.tribal.mobile.download.UnzipFileAsync;
+import com.tribal.mobile.download.UnzipFileAsyncCompleted;
+import com.tribal.mobile.util.AsyncTaskHelper;
+import com.tribal.mobile.util.FileHelper;
+import com.tribal.mobile.util.resources.ResourceHelper;
+import com.tribal.mobile.util.resources.ResourceItemType;
+import com.tribal.mobile.util.resources.StringResourceLookups;
+
+/**
+ * Measures the package install path end to end against a {@link BenchmarkHttpServer} serving a {@link SyntheticPackage}, so that
+ * changes to downloading and extraction can be checked for regressions on a device. The benchmark is kept in the test project rather
+ * than the library and is run by <code>InstallBenchmarkTest</code>.
+ * <p>
+ * A run first drives {@link DownloadFileAsync} and {@link UnzipFileAsync} directly, timing each, and then, unless disabled, installs a
+ * second copy of the package through the application's download service by broadcasting
+ * {@link DownloadBroadcastActions#AddPackageToLibrary}, which requires the service to be running. Heap, allocation and garbage
+ * collection figures cover the whole run and the whole process. Installed copies are removed from the library afterwards.
+ * <p>
+ * A run must be started on the main thread and reports its {@link InstallBenchmarkResult} there, for example:
+ * 
+ * <pre>
+ * InstallBenchmark benchmark = new InstallBenchmark(application);
+ * benchmark.setFileCount(500);
+ * benchmark.setPackageBytes(50 * 1024 * 1024);
+ * benchmark.start(callback);
+ * </pre>
+ * 
+ * @author Jon Brasted
+ */
+public class InstallBenchmark {
+	/* Fields */
+	
+	private final static String LOG_TAG = "InstallBenchmark";
+	
+	private final static String PACKAGE_PATH = "/benchmark/package.zip";
+	private final static String UNIQUE_ID_PREFIX = "benchmark-";
+	
+	private final static long HEAP_SAMPLE_INTERVAL_MILLISECONDS = 20;
+	
+	private final BaseApplication application;
+	private final Context context;
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	
+	private int fileCount = 200;
+	private long packageBytes = 20 * 1024 * 1024;
+	private boolean isCompressible = true;
+	private long seed = 1;
+	private long bandwidthLimitBytesPerSecond = 0;
+	private long latencyMilliseconds = 0;
+	private boolean isStreamingInstall = false;
+	private boolean isServiceInstallIncluded = true;
+	private long serviceTimeoutMilliseconds = 5 * 60 * 1000;
+	
+	private boolean isRunning = false;
+	private InstallBenchmarkCompleted callback;
+	private InstallBenchmarkResult result;
+	private File workFolder;
+	private File packagesFolder;
+	private SyntheticPackage syntheticPackage;
+	private BenchmarkHttpServer server;
+	private HeapSampler heapSampler;
+	private long phaseStartTime;
+	private BroadcastReceiver serviceReceiver;
+	
+	private final Runnable serviceTimeoutRunnable = new Runnable() {
+		@Override
+		public void run() {
+			finish("The download service did not install the package within " + serviceTimeoutMilliseconds + " ms");
+		}
+	};
+	
+	/* Properties */
+	
+	/**
+	 * Sets the number of content files in the generated package. The default is 200.
+	 * 
+	 * @param fileCount	the number of files
+	 */
+	public void setFileCount(int fileCount) {
+		this.fileCount = fileCount;
+	}
+	
+	/**
+	 * Sets the approximate extracted size of the generated package. The default is 20 MB.
+	 * 
+	 * @param packageBytes	the size in bytes
+	 */
+	public void setPackageBytes(long packageBytes) {
+		this.packageBytes = packageBytes;
+	}
+	
+	/**
+	 * Sets whether the generated content compresses like text, or is random like images. The default is compressible.
+	 * 
+	 * @param isCompressible	whether the content is compressible
+	 */
+	public void setCompressible(boolean isCompressible) {
+		this.isCompressible = isCompressible;
+	}
+	
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+	
+	/**
+	 * Limits the bandwidth of the local server to simulate a slower network. The default is no limit.
+	 * 
+	 * @param bandwidthLimitBytesPerSecond	the limit in bytes per second, or 0 for no limit
+	 */
+	public void setBandwidthLimit(long bandwidthLimitBytesPerSecond) {
+		this.bandwidthLimitBytesPerSecond = bandwidthLimitBytesPerSecond;
+	}
+	
+	/**
+	 * Delays every response of the local server to simulate network latency. The default is no delay.
+	 * 
+	 * @param latencyMilliseconds	the delay in milliseconds
+	 */
+	public void setLatency(long latencyMilliseconds) {
+		this.latencyMilliseconds = latencyMilliseconds;
+	}
+	
+	/**
+	 * Sets whether the directly driven download extracts the package while it downloads. The default is to extract it afterwards, so
+	 * that download and extraction are timed separately.
+	 * 
+	 * @param isStreamingInstall	whether to extract while downloading
+	 */
+	public void setStreamingInstall(boolean isStreamingInstall) {
+		this.isStreamingInstall = isStreamingInstall;
+	}
+	
+	/**
+	 * Sets whether a run also installs the package through the download service. The default is to include it.
+	 * 
+	 * @param isServiceInstallIncluded	whether to install through the download service
+	 */
+	public void setServiceInstallIncluded(boolean isServiceInstallIncluded) {
+		this.isServiceInstallIncluded = isServiceInstallIncluded;
+	}
+	
+	public void setServiceTimeout(long serviceTimeoutMilliseconds) {
+		this.serviceTimeoutMilliseconds = serviceTimeoutMilliseconds;
+	}
+	
+	public boolean isRunning() {
+		return isRunning;
+	}
+	
+	/* Constructor */
+	
+	public InstallBenchmark(BaseApplication application) {
+		this.application = application;
+		this.context = application.getApplicationContext();
+	}
+	
+	/* Methods */
+	
+	/**
+	 * Starts a run. Must be invoked on the main thread.
+	 * 
+	 * @param callback	the callback to receive the result
+	 */
+	public void start(InstallBenchmarkCompleted callback) {
+		if (isRunning) {
+			throw new IllegalStateException("The benchmark is already running");
+		}
+		
+		isRunning = true;
+		
+		this.callback = callback;
+		this.result = new InstallBenchmarkResult();
+		
+		AsyncTaskHelper.executeAsyncTask(new PreparePackageTask());
+	}
+	
+	private void startDownload() {
+		result.setPackageBytes(syntheticPackage.getCompressedBytes());
+		result.setUncompressedBytes(syntheticPackage.getUncompressedBytes());
+		result.setFileCount(syntheticPackage.getFileCount());
+		
+		startMeasuring();
+		
+		server.resetCounters();
+		phaseStartTime = System.nanoTime();
+		
+		DirectInstallCallbacks callbacks = new DirectInstallCallbacks(createPackageItem());
+		
+		AsyncTaskHelper.executeAsyncTask(callbacks.downloadTask, packagesFolder.getAbsolutePath(), server.getUrl(), callbacks.packageItem,
+				callbacks, callbacks, callbacks, callbacks, context, application, isStreamingInstall, false, false);
+	}
+	
+	private void onDownloadCompleted(DirectInstallCallbacks callbacks, File file) {
+		long firstByteSentTime = server.getFirstByteSentTime();
+		
+		result.setDownloadMilliseconds(getElapsedMilliseconds(phaseStartTime));
+		result.setTimeToFirstByteMilliseconds((firstByteSentTime > 0) ? (firstByteSentTime - phaseStartTime) / 1000000 : 0);
+		result.setRequestCount(server.getRequestCount());
+		result.setChecksumVerification(callbacks.downloadTask.getChecksumVerification());
+		
+		phaseStartTime = System.nanoTime();
+		
+		AsyncTaskHelper.executeAsyncTask(new UnzipFileAsync(), file, application, callbacks, callbacks.packageItem,
+				callbacks.downloadTask.isExtracted(), callbacks.downloadTask.getChecksumVerification());
+	}
+	
+	private void onUnzipCompleted(DirectInstallCallbacks callbacks, boolean isSuccessful, String errorMessage) {
+		result.setExtractionMilliseconds(getElapsedMilliseconds(phaseStartTime));
+		
+		removeInstalledPackage(packagesFolder, callbacks.packageItem.getUniqueId());
+		
+		if (!isSuccessful) {
+			finish("The package could not be extracted: " + errorMessage);
+		} else if (isServiceInstallIncluded) {
+			startServiceInstall();
+		} else {
+			finish(null);
+		}
+	}
+	
+	private void startServiceInstall() {
+		final PackageItem packageItem = createPackageItem();
+		
+		serviceReceiver = new BroadcastReceiver() {
+			@Override
+			public void onReceive(Context context, Intent intent) {
+				PackageItem receivedPackageItem = (PackageItem) intent.getSerializableExtra(IntentParameterConstants.PackageItem);
+				
+				if (receivedPackageItem != null && packageItem.getUniqueId().equals(receivedPackageItem.getUniqueId())) {
+					onServiceInstallCompleted(packageItem, intent.getAction());
+				}
+			}
+		};
+		
+		IntentFilter intentFilter = new IntentFilter();
+		intentFilter.addAction(DownloadBroadcastActions.PackageProcessingCompleted);
+		intentFilter.addAction(DownloadBroadcastActions.PackageDownloadFailed);
+		intentFilter.addAction(DownloadBroadcastActions.PackageDownloadCancelled);
+		
+		context.registerReceiver(serviceReceiver, intentFilter);
+		
+		server.resetCounters();
+		phaseStartTime = System.nanoTime();
+		
+		Intent addPackageToLibraryIntent = new Intent();
+		addPackageToLibraryIntent.setAction(DownloadBroadcastActions.AddPackageToLibrary);
+		addPackageToLibraryIntent.putExtra(IntentParameterConstants.PackageItem, packageItem);
+		
+		context.sendBroadcast(addPackageToLibraryIntent);
+		
+		handler.postDelayed(serviceTimeoutRunnable, serviceTimeoutMilliseconds);
+	}
+	
+	private void onServiceInstallCompleted(PackageItem packageItem, String action) {
+		result.setServiceInstallMilliseconds(getElapsedMilliseconds(phaseStartTime));
+		
+		// the service reports processing completed whether or not the package was added to the library
+		boolean isInstalled = DownloadBroadcastActions.PackageProcessingCompleted.equals(action)
+				&& application.getDatabaseHelper().getLibraryItemByUniqueId(packageItem.getUniqueId()) != null;
+		
+		int packagesPathResourceId = ResourceHelper.getResourceIdByName(context, ResourceItemType.string, StringResourceLookups.ExternalStoragePackagesPathFormatString);
+		String packagesPath = Environment.getExternalStorageDirectory() + String.format(context.getString(packagesPathResourceId), "");
+		
+		removeInstalledPackage(new File(packagesPath), packageItem.getUniqueId());
+		
+		finish(isInstalled ? null : "The download service did not install the package");
+	}
+	
+	private void finish(String errorMessage) {
+		if (!isRunning) {
+			return;
+		}
+		
+		isRunning = false;
+		
+		stopMeasuring();
+		
+		handler.removeCallbacks(serviceTimeoutRunnable);
+		
+		if (serviceReceiver != null) {
+			context.unregisterReceiver(serviceReceiver);
+			serviceReceiver = null;
+		}
+		
+		if (server != null) {
+			server.stop();
+			server = null;
+		}
+		
+		if (workFolder != null) {
+			FileHelper.deleteFilesRecursive(workFolder, true);
+		}
+		
+		result.setSuccessful(errorMessage == null);
+		result.setErrorMessage(errorMessage);
+		
+		Log.i(LOG_TAG, result.toString());
+		
+		if (callback != null) {
+			callback.onInstallBenchmarkCompleted(result);
+		}
+	}
+	
+	@SuppressWarnings("deprecation")
+	private void startMeasuring() {
+		Debug.resetGlobalAllocSize();
+		Debug.resetGlobalGcInvocationCount();
+		Debug.startAllocCounting();
+		
+		heapSampler = new HeapSampler();
+		heapSampler.start();
+	}
+	
+	@SuppressWarnings("deprecation")
+	private void stopMeasuring() {
+		if (heapSampler == null) {
+			return;
+		}
+		
+		Debug.stopAllocCounting();
+		heapSampler.stop();
+		
+		result.setPeakHeapBytes(heapSampler.getPeakHeapBytes());
+		result.setAllocatedBytes(Debug.getGlobalAllocSize());
+		result.setGcCount(Debug.getGlobalGcInvocationCount());
+		
+		heapSampler = null;
+	}
+	
+	private PackageItem createPackageItem() {
+		String uniqueId = UNIQUE_ID_PREFIX + System.currentTimeMillis();
+		
+		PackageItem packageItem = new PackageItem();
+		packageItem.setUniqueId(uniqueId);
+		packageItem.setName("Benchmark " + uniqueId);
+		packageItem.setVersion("1");
+		packageItem.setFileUrl(server.getUrl() + "?id=" + uniqueId);
+		packageItem.setFileSize(String.valueOf(syntheticPackage.getCompressedBytes() / 1024.0));
+		packageItem.setMD5sum(syntheticPackage.getMD5sum());
+		
+		return packageItem;
+	}
+	
+	/**
+	 * Removes an installed copy of the benchmark package from the library and storage.
+	 * 
+	 * @param packagesFolder	the folder the package was downloaded to
+	 * @param uniqueId			the package unique id
+	 */
+	private void removeInstalledPackage(File packagesFolder, String uniqueId) {
+		File courseFolder = new File(packagesFolder, uniqueId);
+		
+		if (courseFolder.exists()) {
+			FileHelper.deleteFilesRecursive(courseFolder, true);
+		}
+		
+		PackageManifest.delete(courseFolder);
+		new File(packagesFolder, uniqueId + ".zip").delete();
+		
+		int imagesPathResourceId = ResourceHelper.getResourceIdByName(context, ResourceItemType.string, StringResourceLookups.ExternalStorageImagesPath);
+		new File(Environment.getExternalStorageDirectory() + context.getString(imagesPathResourceId), uniqueId + ".png").delete();
+		
+		application.getDatabaseHelper().removeLibraryEntry(uniqueId);
+		application.getDatabaseHelper().removeDownloadQueueEntry(uniqueId);
+	}
+	
+	private static long getElapsedMilliseconds(long startTime) {
+		return (System.nanoTime() - startTime) / 1000000;
+	}
+	
+	/**
+	 * Generates the package and starts the server off the main thread.
+	 */
+	private class PreparePackageTask extends AsyncTask<Object, Void, Exception> {
+		
+		@Override
+		protected Exception doInBackground(Object... params) {
+			try {
+				workFolder = new File(context.getCacheDir(), "benchmark");
+				FileHelper.deleteFilesRecursive(workFolder, true);
+				
+				packagesFolder = new File(workFolder, "packages");
+				packagesFolder.mkdirs();
+				
+				syntheticPackage = SyntheticPackage.generate(new File(workFolder, "source.zip"), fileCount, packageBytes, isCompressible, seed);
+				
+				server = new BenchmarkHttpServer(syntheticPackage.getFile(), PACKAGE_PATH);
+				server.setBandwidthLimit(bandwidthLimitBytesPerSecond);
+				server.setLatency(latencyMilliseconds);
+				server.start();
+			} catch (Exception e) {
+				return e;
+			}
+			
+			return null;
+		}
+		
+		@Override
+		protected void onPostExecute(Exception exception) {
+			if (exception != null) {
+				finish("The package could not be prepared: " + exception.getMessage());
+			} else {
+				startDownload();
+			}
+		}
+	}
+	
+	/**
+	 * Receives the callbacks of the directly driven download and unzip tasks of one package.
+	 */
+	private class DirectInstallCallbacks implements DownloadFileAsyncProgressUpdate, DownloadFileAsyncCompleted, DownloadFileAsyncCancelled,
+			DownloadFileAsyncFailed, UnzipFileAsyncCompleted {
+		
+		private final PackageItem packageItem;
+		private final DownloadFileAsync downloadTask = new DownloadFileAsync();
+		
+		public DirectInstallCallbacks(PackageItem packageItem) {
+			this.packageItem = packageItem;
+		}
+		
+		@Override
+		public void onDownloadFileAsyncProgressUpdate(String fileUrl, Object payload, long progress, long max) {
+		}
+		
+		@Override
+		public void onDownloadFileAsyncCompleted(String fileUrl, Object payload, File file) {
+			onDownloadCompleted(this, file);
+		}
+		
+		@Override
+		public void onDownloadFileAsyncCancelled(String fileUrl, Object payload) {
+			removeInstalledPackage(packagesFolder, packageItem.getUniqueId());
+			finish("The download was cancelled");
+		}
+		
+		@Override
+		public void onDownloadFileAsyncFailed(String fileUrl, Object payload, Exception exception) {
+			removeInstalledPackage(packagesFolder, packageItem.getUniqueId());
+			finish("The download failed: " + ((exception != null) ? exception.getMessage() : null));
+		}
+		
+		@Override
+		public void onUnzipFileAsyncCompleted(File file, Boolean successful, String errorMessage) {
+			onUnzipCompleted(this, Boolean.TRUE.equals(successful), errorMessage);
+		}
+	}
+	
+	/**
+	 * Samples the Java heap in use on a background thread and keeps the peak.
+	 */
+	private static class HeapSampler implements Runnable {
+		
+		private volatile boolean isRunning = false;
+		private volatile long peakHeapBytes = 0;
+		private Thread thread;
+		
+		public long getPeakHeapBytes() {
+			return peakHeapBytes;
+		}
+		
+		public void start() {
+			isRunning = true;
+			
+			thread = new Thread(this, LOG_TAG + " heap sampler");
+			thread.setDaemon(true);
+			thread.start();
+		}
+		
+		public void stop() {
+			isRunning = false;
+			thread.interrupt();
+			sample();
+		}
+		
+		@Override
+		public void run() {
+			while (isRunning) {
+				sample();
+				
+				try {
+					Thread.sleep(HEAP_SAMPLE_INTERVAL_MILLISECONDS);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+		
+		private synchronized void sample() {
+			Runtime runtime = Runtime.getRuntime();
+			long usedHeapBytes = runtime.totalMemory() - runtime.freeMemory();
+			
+			if (usedHeapBytes > peakHeapBytes) {
+				peakHeapBytes = usedHeapBytes;
+			}
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.download.benchmark;
+
+import java.util.Locale;
+
+import com.tribal.mobile.download.ChecksumVerification;
+
+/**
+ * The measurements of one {@link InstallBenchmark} run. Times are in milliseconds and rates in bytes per second. Service measurements
+ * are 0 if the run did not install through the download service.
+ * 
+ * @author Jon Brasted
+ */
+public class InstallBenchmarkResult {
+	/* Fields */
+	
+	private boolean isSuccessful = false;
+	private String errorMessage;
+	
+	private long packageBytes;
+	private long uncompressedBytes;
+	private int fileCount;
+	
+	private long downloadMilliseconds;
+	private long timeToFirstByteMilliseconds;
+	private int requestCount;
+	private ChecksumVerification checksumVerification;
+	private long extractionMilliseconds;
+	private long serviceInstallMilliseconds;
+	
+	private long peakHeapBytes;
+	private long allocatedBytes;
+	private int gcCount;
+	
+	/* Properties */
+	
+	public boolean isSuccessful() {
+		return isSuccessful;
+	}
+	
+	void setSuccessful(boolean isSuccessful) {
+		this.isSuccessful = isSuccessful;
+	}
+	
+	public String getErrorMessage() {
+		return errorMessage;
+	}
+	
+	void setErrorMessage(String errorMessage) {
+		this.errorMessage = errorMessage;
+	}
+	
+	/**
+	 * Returns the size of the package zip as downloaded.
+	 * 
+	 * @return	the size in bytes
+	 */
+	public long getPackageBytes() {
+		return packageBytes;
+	}
+	
+	void setPackageBytes(long packageBytes) {
+		this.packageBytes = packageBytes;
+	}
+	
+	/**
+	 * Returns the size of the package once extracted.
+	 * 
+	 * @return	the size in bytes
+	 */
+	public long getUncompressedBytes() {
+		return uncompressedBytes;
+	}
+	
+	void setUncompressedBytes(long uncompressedBytes) {
+		this.uncompressedBytes = uncompressedBytes;
+	}
+	
+	public int getFileCount() {
+		return fileCount;
+	}
+	
+	void setFileCount(int fileCount) {
+		this.fileCount = fileCount;
+	}
+	
+	public long getDownloadMilliseconds() {
+		return downloadMilliseconds;
+	}
+	
+	void setDownloadMilliseconds(long downloadMilliseconds) {
+		this.downloadMilliseconds = downloadMilliseconds;
+	}
+	
+	/**
+	 * Returns the time from starting the download task to the server sending the first byte of the package.
+	 * 
+	 * @return	the time to first byte in milliseconds
+	 */
+	public long getTimeToFirstByteMilliseconds() {
+		return timeToFirstByteMilliseconds;
+	}
+	
+	void setTimeToFirstByteMilliseconds(long timeToFirstByteMilliseconds) {
+		this.timeToFirstByteMilliseconds = timeToFirstByteMilliseconds;
+	}
+	
+	/**
+	 * Returns the number of HTTP requests the download made, which is more than one for a segmented download.
+	 * 
+	 * @return	the number of requests
+	 */
+	public int getRequestCount() {
+		return requestCount;
+	}
+	
+	void setRequestCount(int requestCount) {
+		this.requestCount = requestCount;
+	}
+	
+	public ChecksumVerification getChecksumVerification() {
+		return checksumVerification;
+	}
+	
+	void setChecksumVerification(ChecksumVerification checksumVerification) {
+		this.checksumVerification = checksumVerification;
+	}
+	
+	/**
+	 * Returns the time the unzip task took, which covers extraction unless the package was extracted while it downloaded.
+	 * 
+	 * @return	the extraction time in milliseconds
+	 */
+	public long getExtractionMilliseconds() {
+		return extractionMilliseconds;
+	}
+	
+	void setExtractionMilliseconds(long extractionMilliseconds) {
+		this.extractionMilliseconds = extractionMilliseconds;
+	}
+	
+	/**
+	 * Returns the time from asking the download service to add the package to the library to the service reporting it processed.
+	 * 
+	 * @return	the install time in milliseconds
+	 */
+	public long getServiceInstallMilliseconds() {
+		return serviceInstallMilliseconds;
+	}
+	
+	void setServiceInstallMilliseconds(long serviceInstallMilliseconds) {
+		this.serviceInstallMilliseconds = serviceInstallMilliseconds;
+	}
+	
+	/**
+	 * Returns the most Java heap in use at any sample during the run.
+	 * 
+	 * @return	the peak heap in bytes
+	 */
+	public long getPeakHeapBytes() {
+		return peakHeapBytes;
+	}
+	
+	void setPeakHeapBytes(long peakHeapBytes) {
+		this.peakHeapBytes = peakHeapBytes;
+	}
+	
+	/**
+	 * Returns the bytes allocated by the whole process during the run.
+	 * 
+	 * @return	the allocated bytes
+	 */
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+	
+	void setAllocatedBytes(long allocatedBytes) {
+		this.allocatedBytes = allocatedBytes;
+	}
+	
+	/**
+	 * Returns the number of garbage collections in the whole process during the run.
+	 * 
+	 * @return	the number of garbage collections
+	 */
+	public int getGcCount() {
+		return gcCount;
+	}
+	
+	void setGcCount(int gcCount) {
+		this.gcCount = gcCount;
+	}
+	
+	public long getDownloadThroughput() {
+		return getRate(packageBytes, downloadMilliseconds);
+	}
+	
+	public long getExtractionRate() {
+		return getRate(uncompressedBytes, extractionMilliseconds);
+	}
+	
+	public long getServiceInstallThroughput() {
+		return getRate(packageBytes, serviceInstallMilliseconds);
+	}
+	
+	/* Methods */
+	
+	private static long getRate(long bytes, long milliseconds) {
+		return (milliseconds > 0) ? bytes * 1000 / milliseconds : 0;
+	}
+	
+	@Override
+	public String toString() {
+		if (!isSuccessful) {
+			return "Install benchmark failed: " + errorMessage;
+		}
+		
+		return String.format(Locale.US,
+				"Install benchmark: %d files, %d KB zip, %d KB extracted; download %d ms (%d KB/s, first byte %d ms, %d requests, checksum %s); "
+						+ "extraction %d ms (%d KB/s); service install %d ms (%d KB/s); peak heap %d KB, allocated %d KB, %d GCs",
+				fileCount, packageBytes / 1024, uncompressedBytes / 1024,
+				downloadMilliseconds, getDownloadThroughput() / 1024, timeToFirstByteMilliseconds, requestCount, checksumVerification,
+				extractionMilliseconds, getExtractionRate() / 1024,
+				serviceInstallMilliseconds, getServiceInstallThroughput() / 1024,
+				peakHeapBytes / 1024, allocatedBytes / 1024, gcCount);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.download.benchmark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.tribal.mobile.Framework;
+import com.tribal.mobile.api.TestClient;
+import com.tribal.mobile.base.BaseApplication;
+import com.tribal.mobile.download.ChecksumVerification;
+
+/**
+ * Runs the {@link InstallBenchmark} on a small synthetic package, checking that the install path succeeds and logging its timings. The
+ * tests are large, so they can be left out of quick runs with <code>-e size small</code> or <code>-e size medium</code>, and the
+ * package size can be raised here when comparing changes on a device.
+ * 
+ * @author Jon Brasted
+ */
+public class InstallBenchmarkTest extends AndroidTestCase {
+	/* Fields */
+	
+	private final static String LOG_TAG = "InstallBenchmarkTest";
+	
+	private final static int FILE_COUNT = 100;
+	private final static long PACKAGE_BYTES = 4 * 1024 * 1024;
+	private final static long TIMEOUT_SECONDS = 120;
+	
+	/* Methods */
+	
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		
+		Framework.setClient(new TestClient("benchmark"));
+	}
+	
+	@Override
+	protected void tearDown() throws Exception {
+		Framework.setClient(null);
+		
+		super.tearDown();
+	}
+	
+	@LargeTest
+	public void testInstallsAfterDownload() throws Exception {
+		InstallBenchmarkResult result = run(false);
+		
+		assertTrue(result.getErrorMessage(), result.isSuccessful());
+		assertEquals(ChecksumVerification.VERIFIED, result.getChecksumVerification());
+	}
+	
+	@LargeTest
+	public void testInstallsWhileDownloading() throws Exception {
+		InstallBenchmarkResult result = run(true);
+		
+		assertTrue(result.getErrorMessage(), result.isSuccessful());
+		assertEquals(ChecksumVerification.VERIFIED, result.getChecksumVerification());
+	}
+	
+	/**
+	 * Runs the benchmark on the main thread, as it requires, and waits for its result.
+	 */
+	private InstallBenchmarkResult run(boolean isStreamingInstall) throws InterruptedException {
+		BaseApplication application = (BaseApplication) getContext().getApplicationContext();
+		
+		final InstallBenchmark benchmark = new InstallBenchmark(application);
+		benchmark.setFileCount(FILE_COUNT);
+		benchmark.setPackageBytes(PACKAGE_BYTES);
+		benchmark.setStreamingInstall(isStreamingInstall);
+		
+		// the test application does not run the download service
+		benchmark.setServiceInstallIncluded(false);
+		
+		final CountDownLatch latch = new CountDownLatch(1);
+		final InstallBenchmarkResult[] result = new InstallBenchmarkResult[1];
+		
+		new Handler(Looper.getMainLooper()).post(new Runnable() {
+			@Override
+			public void run() {
+				benchmark.start(new InstallBenchmarkCompleted() {
+					@Override
+					public void onInstallBenchmarkCompleted(InstallBenchmarkResult installBenchmarkResult) {
+						result[0] = installBenchmarkResult;
+						latch.countDown();
+					}
+				});
+			}
+		});
+		
+		assertTrue("The benchmark did not finish within " + TIMEOUT_SECONDS + " s", latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		
+		Log.i(LOG_TAG, result[0].toString());
+		
+		return result[0];
+	}
+}
\ No newline at end of file
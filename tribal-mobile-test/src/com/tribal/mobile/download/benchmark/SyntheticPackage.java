@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.download.benchmark;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.tribal.mobile.util.ChecksumHelper;
+
+/**
+ * A generated course zip of a given size and file count, for benchmarking the install path without a real package server. The zip
+ * holds a <code>package.xml</code> and the requested number of content files, whose contents are derived from a seed so that runs with
+ * the same settings produce the same package.
+ * 
+ * @author Jon Brasted
+ */
+public class SyntheticPackage {
+	/* Fields */
+	
+	private final static String PACKAGE_XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<package><title>Benchmark package</title></package>\n";
+	
+	private final static String[] WORDS = { "course", "lesson", "page", "question", "answer", "module", "learning", "content", "the", "and", "of", "to" };
+	
+	private final static int BUFFER_SIZE = 16 * 1024;
+	
+	private final File file;
+	private final int fileCount;
+	private final long uncompressedBytes;
+	private final String md5sum;
+	
+	/* Properties */
+	
+	public File getFile() {
+		return file;
+	}
+	
+	public int getFileCount() {
+		return fileCount;
+	}
+	
+	/**
+	 * Returns the total size of the files in the zip once they are extracted.
+	 * 
+	 * @return	the extracted size in bytes
+	 */
+	public long getUncompressedBytes() {
+		return uncompressedBytes;
+	}
+	
+	public long getCompressedBytes() {
+		return file.length();
+	}
+	
+	public String getMD5sum() {
+		return md5sum;
+	}
+	
+	/* Constructor */
+	
+	private SyntheticPackage(File file, int fileCount, long uncompressedBytes, String md5sum) {
+		this.file = file;
+		this.fileCount = fileCount;
+		this.uncompressedBytes = uncompressedBytes;
+		this.md5sum = md5sum;
+	}
+	
+	/* Methods */
+	
+	/**
+	 * Generates a package. File sizes vary around the average so that extraction sees a realistic mix of large and small entries.
+	 * 
+	 * @param file				the zip file to write
+	 * @param fileCount			the number of content files
+	 * @param totalBytes		the approximate total extracted size of the content files
+	 * @param isCompressible	whether the content is text-like, or random bytes that do not compress
+	 * @param seed				the seed for the file sizes and contents
+	 * @return					the package
+	 * @throws IOException
+	 */
+	public static SyntheticPackage generate(File file, int fileCount, long totalBytes, boolean isCompressible, long seed) throws IOException {
+		Random random = new Random(seed);
+		long averageFileBytes = Math.max(1, totalBytes / Math.max(1, fileCount));
+		long uncompressedBytes = 0;
+		
+		byte[] buffer = new byte[BUFFER_SIZE];
+		ZipOutputStream outputStream = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+		
+		try {
+			byte[] packageXml = PACKAGE_XML.getBytes("UTF-8");
+			outputStream.putNextEntry(new ZipEntry("package.xml"));
+			outputStream.write(packageXml);
+			outputStream.closeEntry();
+			uncompressedBytes += packageXml.length;
+			
+			for (int i = 0; i < fileCount; i++) {
+				// between half and one and a half times the average size
+				long fileBytes = averageFileBytes / 2 + (long) (random.nextDouble() * averageFileBytes);
+				
+				// spread the files over a few folders as real packages do
+				outputStream.putNextEntry(new ZipEntry("content/section" + (i % 8) + "/file" + i + (isCompressible ? ".html" : ".jpg")));
+				
+				for (long remainingBytes = fileBytes; remainingBytes > 0; ) {
+					int length = (int) Math.min(buffer.length, remainingBytes);
+					
+					if (isCompressible) {
+						fillWithWords(buffer, length, random);
+					} else {
+						random.nextBytes(buffer);
+					}
+					
+					outputStream.write(buffer, 0, length);
+					remainingBytes -= length;
+				}
+				
+				outputStream.closeEntry();
+				uncompressedBytes += fileBytes;
+			}
+		} finally {
+			outputStream.close();
+		}
+		
+		MessageDigest digest = ChecksumHelper.createMD5Digest();
+		ChecksumHelper.updateDigest(digest, file, file.length());
+		
+		return new SyntheticPackage(file, fileCount, uncompressedBytes, ChecksumHelper.toHexString(digest.digest()));
+	}
+	
+	private static void fillWithWords(byte[] buffer, int length, Random random) {
+		int position = 0;
+		
+		while (position < length) {
+			String word = WORDS[random.nextInt(WORDS.length)];
+			
+			for (int i = 0; i < word.length() && position < length; i++) {
+				buffer[position++] = (byte) word.charAt(i);
+			}
+			
+			if (position < length) {
+				buffer[position++] = ' ';
+			}
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import android.test.AndroidTestCase;
+
+/**
+ * Tests that a {@link PackageIndex} reads back the package it was written from, and that it is ignored once the package XML, version or
+ * external root path it was built for no longer match.
+ * 
+ * @author Jon Brasted
+ */
+public class PackageIndexTest extends AndroidTestCase {
+	/* Fields */
+	
+	private final static String EXTERNAL_ROOT_PATH = "/sdcard/courses/package/";
+	
+	private final static String VERSION = "1.0";
+	
+	private final static String PACKAGE_XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<package id=\"index\" entry-point=\"main\">\n"
+			+ "\t<html id=\"intro\" path=\"intro/index.html\" title=\"Introduction\" icon=\"icons/intro.png\" />\n"
+			+ "\t<book id=\"manual\" path=\"manual.pdf\" title=\"Manual\" />\n"
+			+ "\t<menu-item id=\"main\" type=\"menu\" title=\"Main\" layout=\"tile\">\n"
+			+ "\t\t<menu-item id=\"first\" type=\"link\" link=\"index.intro\" />\n"
+			+ "\t\t<menu-item id=\"sub\" type=\"menu\" title=\"Sub\" layout=\"list\">\n"
+			+ "\t\t\t<menu-item id=\"deep\" type=\"link\" link=\"index.manual\" />\n"
+			+ "\t\t</menu-item>\n"
+			+ "\t</menu-item>\n"
+			+ "</package>\n";
+	
+	private File packageFolder;
+	private File packageXml;
+	
+	/* Methods */
+	
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		
+		packageFolder = new File(getContext().getCacheDir(), "package-index-test");
+		packageFolder.mkdirs();
+		
+		packageXml = new File(packageFolder, "package.xml");
+		writeFile(packageXml, PACKAGE_XML);
+	}
+	
+	@Override
+	protected void tearDown() throws Exception {
+		File[] files = packageFolder.listFiles();
+		
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		
+		packageFolder.delete();
+		
+		super.tearDown();
+	}
+	
+	public void testReadsWrittenPackage() throws Exception {
+		Package packageObject = readPackageXml(EXTERNAL_ROOT_PATH);
+		
+		assertTrue(PackageIndex.write(packageObject, packageXml, VERSION));
+		assertTrue(PackageIndex.getIndexFile(packageXml).exists());
+		assertFalse(new File(PackageIndex.getIndexFile(packageXml).getPath() + ".tmp").exists());
+		
+		Package indexedPackage = PackageIndex.read(packageXml, EXTERNAL_ROOT_PATH, VERSION);
+		
+		assertNotNull(indexedPackage);
+		assertEquals("index", indexedPackage.getId());
+		assertEquals("main", indexedPackage.getEntryPoint());
+		assertEquals(2, indexedPackage.getContentItems().size());
+		assertTrue("The packages differ", Arrays.equals(writeIndex(packageObject), writeIndex(indexedPackage)));
+	}
+	
+	public void testReturnsNullWithoutIndex() throws Exception {
+		assertNull(PackageIndex.read(packageXml, EXTERNAL_ROOT_PATH, VERSION));
+	}
+	
+	public void testIgnoresIndexWhenXmlLengthChanges() throws Exception {
+		writeIndexFile(VERSION);
+		
+		long lastModified = packageXml.lastModified();
+		writeFile(packageXml, PACKAGE_XML + "\n");
+		packageXml.setLastModified(lastModified);
+		
+		assertNull(PackageIndex.read(packageXml, EXTERNAL_ROOT_PATH, VERSION));
+	}
+	
+	public void testIgnoresIndexWhenXmlModified() throws Exception {
+		writeIndexFile(VERSION);
+		
+		assertTrue(packageXml.setLastModified(packageXml.lastModified() - 60 * 1000));
+		
+		assertNull(PackageIndex.read(packageXml, EXTERNAL_ROOT_PATH, VERSION));
+	}
+	
+	public void testIgnoresIndexWhenVersionChanges() throws Exception {
+		writeIndexFile(VERSION);
+		
+		assertNull(PackageIndex.read(packageXml, EXTERNAL_ROOT_PATH, "2.0"));
+	}
+	
+	public void testAcceptsIndexWhenVersionUnknown() throws Exception {
+		writeIndexFile(VERSION);
+		
+		assertNotNull(PackageIndex.read(packageXml, EXTERNAL_ROOT_PATH, null));
+		
+		writeIndexFile(null);
+		
+		assertNotNull(PackageIndex.read(packageXml, EXTERNAL_ROOT_PATH, VERSION));
+		assertNotNull(PackageIndex.read(packageXml, EXTERNAL_ROOT_PATH, ""));
+	}
+	
+	public void testIgnoresIndexWhenExternalRootPathChanges() throws Exception {
+		writeIndexFile(VERSION);
+		
+		assertNull(PackageIndex.read(packageXml, "/sdcard/moved/package/", VERSION));
+	}
+	
+	public void testIgnoresIndexWithWrongMagic() throws Exception {
+		writeIndexFile(VERSION);
+		
+		RandomAccessFile indexFile = new RandomAccessFile(PackageIndex.getIndexFile(packageXml), "rw");
+		
+		try {
+			indexFile.writeInt(0);
+		} finally {
+			indexFile.close();
+		}
+		
+		assertNull(PackageIndex.read(packageXml, EXTERNAL_ROOT_PATH, VERSION));
+	}
+	
+	public void testIgnoresTruncatedIndex() throws Exception {
+		writeIndexFile(VERSION);
+		
+		File indexFile = PackageIndex.getIndexFile(packageXml);
+		RandomAccessFile randomAccessFile = new RandomAccessFile(indexFile, "rw");
+		
+		try {
+			randomAccessFile.setLength(indexFile.length() / 2);
+		} finally {
+			randomAccessFile.close();
+		}
+		
+		assertNull(PackageIndex.read(packageXml, EXTERNAL_ROOT_PATH, VERSION));
+	}
+	
+	public void testDeletesIndex() throws Exception {
+		writeIndexFile(VERSION);
+		
+		PackageIndex.delete(packageXml);
+		
+		assertFalse(PackageIndex.getIndexFile(packageXml).exists());
+		assertTrue(packageXml.exists());
+		assertNull(PackageIndex.read(packageXml, EXTERNAL_ROOT_PATH, VERSION));
+	}
+	
+	private void writeIndexFile(String version) throws Exception {
+		assertTrue(PackageIndex.write(readPackageXml(EXTERNAL_ROOT_PATH), packageXml, version));
+	}
+	
+	private Package readPackageXml(String externalRootPath) throws Exception {
+		Package packageObject = PackageXmlReader.read(packageXml);
+		packageObject.setExternalRootPath(externalRootPath);
+		packageObject.processItems();
+		
+		return packageObject;
+	}
+	
+	private static byte[] writeIndex(Package packageObject) throws IOException {
+		ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+		DataOutputStream outputStream = new DataOutputStream(byteArrayOutputStream);
+		
+		packageObject.writeIndex(outputStream);
+		outputStream.close();
+		
+		return byteArrayOutputStream.toByteArray();
+	}
+	
+	private static void writeFile(File file, String contents) throws IOException {
+		FileOutputStream outputStream = new FileOutputStream(file);
+		
+		try {
+			outputStream.write(contents.getBytes("UTF-8"));
+		} finally {
+			outputStream.close();
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.simpleframework.xml.core.Persister;
+
+import android.test.AndroidTestCase;
+
+import com.tribal.mobile.util.PackageXmlBenchmark;
+
+/**
+ * Tests that {@link PackageXmlReader} reads <code>package.xml</code> into the same package as the Simple-XML annotations on the model
+ * classes, which it replaced. Packages are compared by their {@link PackageIndex} contents once processed, which cover every field
+ * that is read from the XML or derived from it.
+ * 
+ * @author Jon Brasted
+ */
+public class PackageXmlReaderTest extends AndroidTestCase {
+	/* Fields */
+	
+	private final static String EXTERNAL_ROOT_PATH = "/sdcard/courses/package/";
+	
+	private final static String PACKAGE_XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<!-- a package using every attribute -->\n"
+			+ "<package id=\"parity\" entry-point=\"main\">\n"
+			+ "\t<html id=\"intro\" path=\"intro/index.html\" title=\"Fish &amp; chips &quot;today&quot;\" label=\"Introduction\" icon=\"icons/intro.png\" keywords=\"a b c\" />\n"
+			+ "\t<html id=\"disabled\" path=\"disabled.html\" title=\"Disabled\" enabled=\"false\" />\n"
+			+ "\t<html id=\"quiz\" path=\"quiz.html\" title=\"Quiz\" mimeType=\"quiz\" />\n"
+			+ "\t<book id=\"manual\" path=\"manual.pdf\" title=\"Manual\" />\n"
+			+ "\t<video id=\"film\" path=\"film.mp4\" title=\"Film\" icon=\"icons/film.png\" />\n"
+			+ "\t<menu-item id=\"main\" type=\"menu\" title=\"Main\" layout=\"tile\" icon=\"icons/main.png\" header-background=\"#ff0000\">\n"
+			+ "\t\t<menu-item id=\"first\" type=\"link\" link=\"parity.intro\" />\n"
+			+ "\t\t<menu-item type=\"link\" link=\"parity.manual\" title=\"Untitled link\" />\n"
+			+ "\t\t<menu-item id=\"sub\" type=\"menu\" title=\"Sub\" layout=\"minilist\" enabled=\"false\">\n"
+			+ "\t\t\t<menu-item id=\"deep\" type=\"link\" link=\"parity.film\" />\n"
+			+ "\t\t\t<menu-item id=\"missing\" type=\"link\" link=\"parity.none\" />\n"
+			+ "\t\t</menu-item>\n"
+			+ "\t</menu-item>\n"
+			+ "\t<menu-item id=\"second\" type=\"menu\" title=\"Second\" layout=\"list\">\n"
+			+ "\t\t<menu-item id=\"quiz-link\" type=\"link\" link=\"parity.quiz\" />\n"
+			+ "\t</menu-item>\n"
+			+ "</package>\n";
+	
+	/* Methods */
+	
+	public void testMatchesSimpleXmlOnEveryAttribute() throws Exception {
+		Package packageObject = readWithPullParser(PACKAGE_XML);
+		
+		assertEquals("parity", packageObject.getId());
+		assertEquals("main", packageObject.getEntryPoint());
+		assertEquals(5, packageObject.getContentItems().size());
+		
+		assertSameIndex(readWithSimpleXml(PACKAGE_XML), packageObject);
+	}
+	
+	public void testMatchesSimpleXmlWithoutEntryPoint() throws Exception {
+		String xml = PACKAGE_XML.replace(" entry-point=\"main\"", "");
+		
+		Package packageObject = readWithPullParser(xml);
+		
+		assertNull(packageObject.getEntryPoint());
+		assertSameIndex(readWithSimpleXml(xml), packageObject);
+	}
+	
+	public void testMatchesSimpleXmlOnSyntheticPackage() throws Exception {
+		File packageXml = new File(getContext().getCacheDir(), "package.xml");
+		
+		try {
+			PackageXmlBenchmark.writeSyntheticPackageXml(packageXml, 200, 3, 4);
+			
+			Package packageObject = process(PackageXmlReader.read(packageXml));
+			
+			assertEquals(200, packageObject.getContentItems().size());
+			assertSameIndex(process(new Persister().read(Package.class, packageXml)), packageObject);
+		} finally {
+			packageXml.delete();
+		}
+	}
+	
+	public void testRejectsMissingRequiredAttributeLikeSimpleXml() throws Exception {
+		String xml = PACKAGE_XML.replace(" title=\"Manual\"", "");
+		
+		try {
+			readWithSimpleXml(xml);
+			fail("Expected Simple-XML to reject a content item without a title");
+		} catch (Exception e) {
+			// expected
+		}
+		
+		try {
+			readWithPullParser(xml);
+			fail("Expected the pull parser to reject a content item without a title");
+		} catch (Exception e) {
+			// expected
+		}
+	}
+	
+	private static Package readWithPullParser(String xml) throws Exception {
+		return process(PackageXmlReader.read(new ByteArrayInputStream(xml.getBytes("UTF-8"))));
+	}
+	
+	private static Package readWithSimpleXml(String xml) throws Exception {
+		return process(new Persister().read(Package.class, new ByteArrayInputStream(xml.getBytes("UTF-8"))));
+	}
+	
+	private static Package process(Package packageObject) {
+		packageObject.setExternalRootPath(EXTERNAL_ROOT_PATH);
+		packageObject.processItems();
+		
+		return packageObject;
+	}
+	
+	private static void assertSameIndex(Package expected, Package actual) throws IOException {
+		byte[] expectedIndex = writeIndex(expected);
+		byte[] actualIndex = writeIndex(actual);
+		
+		assertTrue("The packages differ", Arrays.equals(expectedIndex, actualIndex));
+	}
+	
+	private static byte[] writeIndex(Package packageObject) throws IOException {
+		ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+		DataOutputStream outputStream = new DataOutputStream(byteArrayOutputStream);
+		
+		packageObject.writeIndex(outputStream);
+		outputStream.close();
+		
+		return byteArrayOutputStream.toByteArray();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
+
+import org.simpleframework.xml.core.Persister;
+
+import com.tribal.mobile.model.Package;
+import com.tribal.mobile.model.PackageXmlReader;
+
+/**
+ * Compares reading <code>package.xml</code> with {@link PackageXmlReader} against binding it with a Simple-XML {@link Persister}, both
+ * created per read as {@link XmlHelper} used to and shared, on synthetic packages of a chosen size. Only parsing is timed, as
+ * {@link Package#processItems()} is the same for all of them. It is kept in the test project and run by
+ * <code>PackageXmlBenchmarkTest</code>. It has no Android dependencies, so it can also be run on a JVM with the library's classes and
+ * the Simple-XML and kXML jars on the class path:
+ * 
+ * <pre>
+ * java com.tribal.mobile.util.PackageXmlBenchmark [contentItemCount] [menuDepth] [menuBreadth] [iterations]
+ * </pre>
+ * 
+ * @author Jon Brasted
+ */
+public class PackageXmlBenchmark {
+	/* Fields */
+	
+	private final static int WARMUP_ITERATIONS = 5;
+	
+	/* Methods */
+	
+	public static void main(String[] args) throws Exception {
+		int contentItemCount = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+		int menuDepth = (args.length > 1) ? Integer.parseInt(args[1]) : 4;
+		int menuBreadth = (args.length > 2) ? Integer.parseInt(args[2]) : 6;
+		int iterations = (args.length > 3) ? Integer.parseInt(args[3]) : 20;
+		
+		File packageXml = File.createTempFile("package", ".xml");
+		
+		try {
+			writeSyntheticPackageXml(packageXml, contentItemCount, menuDepth, menuBreadth);
+			
+			System.out.println(run(packageXml, iterations));
+		} finally {
+			packageXml.delete();
+		}
+	}
+	
+	/**
+	 * Reads a package XML file with both readers, after a warm up, and reports the mean time of each.
+	 * 
+	 * @param packageXml	the package XML file
+	 * @param iterations	the number of timed reads with each reader
+	 * @return				a summary of the results
+	 * @throws Exception	if either reader fails
+	 */
+	public static String run(File packageXml, int iterations) throws Exception {
+		Persister sharedPersister = new Persister();
+		
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			new Persister().read(Package.class, packageXml);
+			sharedPersister.read(Package.class, packageXml);
+			PackageXmlReader.read(packageXml);
+		}
+		
+		long persisterNanoseconds = 0;
+		long sharedPersisterNanoseconds = 0;
+		long pullParserNanoseconds = 0;
+		
+		// alternate the readers so that none benefits from running later
+		for (int i = 0; i < iterations; i++) {
+			long startTime = System.nanoTime();
+			new Persister().read(Package.class, packageXml);
+			persisterNanoseconds += System.nanoTime() - startTime;
+			
+			startTime = System.nanoTime();
+			sharedPersister.read(Package.class, packageXml);
+			sharedPersisterNanoseconds += System.nanoTime() - startTime;
+			
+			startTime = System.nanoTime();
+			PackageXmlReader.read(packageXml);
+			pullParserNanoseconds += System.nanoTime() - startTime;
+		}
+		
+		double persisterMilliseconds = persisterNanoseconds / 1000000.0 / iterations;
+		double sharedPersisterMilliseconds = sharedPersisterNanoseconds / 1000000.0 / iterations;
+		double pullParserMilliseconds = pullParserNanoseconds / 1000000.0 / iterations;
+		
+		return String.format(Locale.US, "%s (%d KB): Simple-XML %.2f ms, shared Simple-XML %.2f ms, pull parser %.2f ms (%.1fx faster)",
+				packageXml.getName(), packageXml.length() / 1024, persisterMilliseconds, sharedPersisterMilliseconds, pullParserMilliseconds,
+				persisterMilliseconds / pullParserMilliseconds);
+	}
+	
+	/**
+	 * Writes a synthetic package XML file. Content items are html, with every fifth a book and every seventh a video. The menu is a
+	 * tree of the given depth and breadth whose leaves link to the content items in turn.
+	 * 
+	 * @param file				the file to write
+	 * @param contentItemCount	the number of content items
+	 * @param menuDepth			the number of menu levels above the leaves
+	 * @param menuBreadth		the number of children of each menu
+	 * @throws IOException
+	 */
+	public static void writeSyntheticPackageXml(File file, int contentItemCount, int menuDepth, int menuBreadth) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+		
+		try {
+			writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+			writer.write("<package id=\"benchmark\" entry-point=\"m\">\n");
+			
+			for (int i = 0; i < contentItemCount; i++) {
+				String element = (i % 7 == 6) ? "video" : (i % 5 == 4) ? "book" : "html";
+				String mimeType = "video".equals(element) ? " mimeType=\"video\"" : "book".equals(element) ? " mimeType=\"book\"" : "";
+				
+				writer.write("\t<" + element + " id=\"c" + i + "\" path=\"content/c" + i + ".html\" title=\"Content item " + i
+						+ "\" icon=\"icons/c" + i + ".png\" keywords=\"benchmark synthetic item " + i + "\"" + mimeType + " />\n");
+			}
+			
+			int[] nextContentItem = new int[1];
+			writeMenuItem(writer, "m", menuDepth, menuBreadth, contentItemCount, nextContentItem, "\t");
+			
+			writer.write("</package>\n");
+		} finally {
+			writer.close();
+		}
+	}
+	
+	private static void writeMenuItem(Writer writer, String id, int depth, int breadth, int contentItemCount, int[] nextContentItem, String indent) throws IOException {
+		if (depth == 0) {
+			int contentItem = nextContentItem[0]++ % Math.max(1, contentItemCount);
+			
+			writer.write(indent + "<menu-item id=\"" + id + "\" type=\"link\" link=\"benchmark.c" + contentItem + "\" />\n");
+			return;
+		}
+		
+		writer.write(indent + "<menu-item id=\"" + id + "\" type=\"menu\" title=\"Menu " + id + "\" layout=\"list\" icon=\"icons/" + id + ".png\">\n");
+		
+		for (int i = 0; i < breadth; i++) {
+			writeMenuItem(writer, id + "_" + i, depth - 1, breadth, contentItemCount, nextContentItem, indent + "\t");
+		}
+		
+		writer.write(indent + "</menu-item>\n");
+	}
+}
\ No newline at end of file
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.util;
+
+import java.io.File;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+/**
+ * Runs the {@link PackageXmlBenchmark} on a synthetic package and logs its timings. The test is large, so it can be left out of quick
+ * runs with <code>-e size small</code> or <code>-e size medium</code>.
+ * 
+ * @author Jon Brasted
+ */
+public class PackageXmlBenchmarkTest extends AndroidTestCase {
+	/* Fields */
+	
+	private final static String LOG_TAG = "PackageXmlBenchmarkTest";
+	
+	private final static int CONTENT_ITEM_COUNT = 2000;
+	private final static int MENU_DEPTH = 4;
+	private final static int MENU_BREADTH = 6;
+	private final static int ITERATIONS = 10;
+	
+	/* Methods */
+	
+	@LargeTest
+	public void testReadsSyntheticPackage() throws Exception {
+		File packageXml = new File(getContext().getCacheDir(), "package.xml");
+		
+		try {
+			PackageXmlBenchmark.writeSyntheticPackageXml(packageXml, CONTENT_ITEM_COUNT, MENU_DEPTH, MENU_BREADTH);
+			
+			Log.i(LOG_TAG, PackageXmlBenchmark.run(packageXml, ITERATIONS));
+		} finally {
+			packageXml.delete();
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.util.database;
+
+import java.util.List;
+
+import android.content.Context;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+/**
+ * Tests for the schema migrations applied by {@link DatabaseHelper} and defined by {@link BaseDatabaseHelper}.
+ * 
+ * @author Jon Brasted
+ */
+public class DatabaseMigrationTest extends AndroidTestCase {
+	/* Fields */
+	
+	private DatabaseHelper databaseHelper;
+	
+	/* Methods */
+	
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		
+		TestDatabaseHelper.deleteDatabase(getContext());
+	}
+	
+	@Override
+	protected void tearDown() throws Exception {
+		if (databaseHelper != null) {
+			databaseHelper.close();
+		}
+		
+		TestDatabaseHelper.deleteDatabase(getContext());
+		
+		super.tearDown();
+	}
+	
+	public void testMigratesVersion0Database() {
+		SQLiteDatabase db = TestDatabaseHelper.createVersion0Database(getContext());
+		
+		try {
+			// duplicates, as written by the old update-then-insert code, including global settings with a null object id
+			db.execSQL("INSERT INTO settings (userId, key, value, objectId) VALUES ('user', 'global', 'old', NULL)");
+			db.execSQL("INSERT INTO settings (userId, key, value, objectId) VALUES ('user', 'global', 'new', NULL)");
+			db.execSQL("INSERT INTO settings (userId, key, value, objectId) VALUES ('user', 'course', 'old', 'course.1')");
+			db.execSQL("INSERT INTO settings (userId, key, value, objectId) VALUES ('user', 'course', 'new', 'course.1')");
+			db.execSQL("INSERT INTO settings (userId, key, value, objectId) VALUES ('other', 'course', 'other', 'course.1')");
+			
+			db.execSQL("INSERT INTO tracking (userId, objectId, sender) VALUES ('user', 'course.1', 'sender')");
+			
+			db.execSQL("INSERT INTO mylibrary (name, organization, fileUrl, published_date, uniqueId, state) "
+					+ "VALUES ('Course', 'Organisation', 'http://localhost/course.zip', CURRENT_TIMESTAMP, 'course', 'installed')");
+		} finally {
+			db.close();
+		}
+		
+		databaseHelper = new TestDatabaseHelper(getContext());
+		db = databaseHelper.getWritableDatabase();
+		
+		assertEquals(getLatestMigrationVersion(databaseHelper), databaseHelper.getSchemaVersion(db));
+		
+		// global settings are stored with the empty object id and only the newest of each duplicate is kept
+		assertEquals(0, TestDatabaseHelper.queryInt(db, "SELECT COUNT(*) FROM settings WHERE objectId IS NULL"));
+		assertEquals(3, TestDatabaseHelper.queryInt(db, "SELECT COUNT(*) FROM settings"));
+		assertEquals("new", TestDatabaseHelper.queryString(db, "SELECT value FROM settings WHERE userId = 'user' AND objectId = '' AND key = 'global'"));
+		assertEquals("new", TestDatabaseHelper.queryString(db, "SELECT value FROM settings WHERE userId = 'user' AND objectId = 'course.1' AND key = 'course'"));
+		assertEquals("other", TestDatabaseHelper.queryString(db, "SELECT value FROM settings WHERE userId = 'other' AND objectId = 'course.1' AND key = 'course'"));
+		
+		assertTrue(TestDatabaseHelper.hasIndex(db, "settings_userId_objectId_key_index"));
+		assertTrue(TestDatabaseHelper.hasIndex(db, "tracking_userId_index"));
+		assertTrue(TestDatabaseHelper.hasIndex(db, "mylibrary_uniqueId_index"));
+		
+		assertEquals(1, TestDatabaseHelper.queryInt(db, "SELECT COUNT(*) FROM tracking WHERE userId = 'user'"));
+		assertEquals(1, TestDatabaseHelper.queryInt(db, "SELECT COUNT(*) FROM mylibrary WHERE uniqueId = 'course'"));
+		assertTrue(TestDatabaseHelper.hasColumn(db, "mylibrary", "md5Verification"));
+		assertTrue(TestDatabaseHelper.hasColumn(db, "download_queue", "uniqueId"));
+	}
+	
+	public void testUniqueIndexRejectsDuplicateSettings() {
+		databaseHelper = new TestDatabaseHelper(getContext());
+		SQLiteDatabase db = databaseHelper.getWritableDatabase();
+		
+		db.execSQL("INSERT INTO settings (userId, key, value, objectId) VALUES ('user', 'global', 'first', '')");
+		
+		try {
+			db.execSQL("INSERT INTO settings (userId, key, value, objectId) VALUES ('user', 'global', 'second', '')");
+			fail("a duplicate setting was inserted");
+		} catch (SQLException e) {
+			// expected
+		}
+	}
+	
+	public void testAppliesMigrationsOnce() {
+		databaseHelper = new TestDatabaseHelper(getContext());
+		databaseHelper.close();
+		
+		// reopening must not apply any migration again, which would fail on the column added by the mylibrary migration
+		databaseHelper = new TestDatabaseHelper(getContext());
+		SQLiteDatabase db = databaseHelper.getWritableDatabase();
+		
+		assertEquals(getLatestMigrationVersion(databaseHelper), TestDatabaseHelper.queryInt(db, "SELECT COUNT(*) FROM schema_migrations"));
+	}
+	
+	public void testRecordsMigrationsIncludedInCreateSql() {
+		databaseHelper = new CurrentSchemaDatabaseHelper(getContext());
+		SQLiteDatabase db = databaseHelper.getWritableDatabase();
+		
+		// none of the migrations ran against the new database, or the mylibrary migration would have failed to add its column again
+		assertEquals(getLatestMigrationVersion(databaseHelper), databaseHelper.getSchemaVersion(db));
+		assertEquals(getLatestMigrationVersion(databaseHelper), TestDatabaseHelper.queryInt(db, "SELECT COUNT(*) FROM schema_migrations"));
+		assertTrue(TestDatabaseHelper.hasIndex(db, "settings_userId_objectId_key_index"));
+	}
+	
+	public void testRollsBackFailedMigrationAndRefusesToOpen() {
+		try {
+			databaseHelper = new FailingMigrationDatabaseHelper(getContext());
+			fail("the database was opened although a migration failed");
+		} catch (SQLException e) {
+			// expected
+		}
+		
+		databaseHelper = new TestDatabaseHelper(getContext());
+		SQLiteDatabase db = databaseHelper.getWritableDatabase();
+		
+		// the migrations before the failed one were kept and the failed one left nothing behind
+		assertEquals(getLatestMigrationVersion(databaseHelper), databaseHelper.getSchemaVersion(db));
+		assertEquals(0, TestDatabaseHelper.queryInt(db, "SELECT COUNT(*) FROM sqlite_master WHERE name = 'failed_migration'"));
+	}
+	
+	private static int getLatestMigrationVersion(DatabaseHelper databaseHelper) {
+		int version = 0;
+		
+		for (DatabaseMigration migration : databaseHelper.getMigrations()) {
+			version = Math.max(version, migration.getVersion());
+		}
+		
+		return version;
+	}
+	
+	/**
+	 * Creates the database with the schema of every migration, the way an application's up to date create sql does.
+	 */
+	private static class CurrentSchemaDatabaseHelper extends TestDatabaseHelper {
+		/* Constructor */
+		
+		public CurrentSchemaDatabaseHelper(Context context) {
+			super(context);
+		}
+		
+		/* Methods */
+		
+		@Override
+		protected String getCreateDatabaseSql() {
+			StringBuilder stringBuilder = new StringBuilder(VERSION_0_CREATE_DATABASE_SQL);
+			
+			for (DatabaseMigration migration : getMigrations()) {
+				stringBuilder.append(';').append(migration.getSql());
+			}
+			
+			return stringBuilder.toString();
+		}
+		
+		@Override
+		protected int getCreateDatabaseSchemaVersion() {
+			return getLatestMigrationVersion(this);
+		}
+	}
+	
+	/**
+	 * Adds a migration that fails part way through.
+	 */
+	private static class FailingMigrationDatabaseHelper extends TestDatabaseHelper {
+		/* Constructor */
+		
+		public FailingMigrationDatabaseHelper(Context context) {
+			super(context);
+		}
+		
+		/* Methods */
+		
+		@Override
+		protected List<DatabaseMigration> getMigrations() {
+			List<DatabaseMigration> migrations = super.getMigrations();
+			
+			migrations.add(new DatabaseMigration(Integer.MAX_VALUE, "Fail", "CREATE TABLE failed_migration (_id INTEGER); INSERT INTO missing_table VALUES (1)"));
+			
+			return migrations;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.util.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+import com.tribal.mobile.Framework;
+import com.tribal.mobile.api.TestClient;
+
+/**
+ * Tests for the single statement create or update of settings in {@link BaseDatabaseHelper}.
+ * 
+ * @author Jon Brasted
+ */
+public class SettingsUpsertTest extends AndroidTestCase {
+	/* Fields */
+	
+	private final static String USERNAME = "user";
+	
+	private BaseDatabaseHelper databaseHelper;
+	
+	/* Methods */
+	
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		
+		Framework.setClient(new TestClient(USERNAME));
+		TestDatabaseHelper.deleteDatabase(getContext());
+	}
+	
+	@Override
+	protected void tearDown() throws Exception {
+		if (databaseHelper != null) {
+			databaseHelper.close();
+		}
+		
+		TestDatabaseHelper.deleteDatabase(getContext());
+		Framework.setClient(null);
+		
+		super.tearDown();
+	}
+	
+	public void testUpdatesGlobalSettingInPlace() {
+		databaseHelper = new TestDatabaseHelper(getContext());
+		
+		assertTrue(databaseHelper.createOrUpdateSetting("key", "first"));
+		assertTrue(databaseHelper.createOrUpdateSetting("key", "second"));
+		
+		SQLiteDatabase db = databaseHelper.getWritableDatabase();
+		
+		assertEquals(1, TestDatabaseHelper.queryInt(db, "SELECT COUNT(*) FROM settings WHERE userId = ? AND key = 'key'", USERNAME));
+		assertEquals("second", TestDatabaseHelper.queryString(db, "SELECT value FROM settings WHERE userId = ? AND objectId = '' AND key = 'key'", USERNAME));
+		assertEquals("second", databaseHelper.getSetting("key"));
+	}
+	
+	public void testKeepsGlobalAndObjectSettingsApart() {
+		databaseHelper = new TestDatabaseHelper(getContext());
+		
+		assertTrue(databaseHelper.createOrUpdateSetting("key", "global"));
+		assertTrue(databaseHelper.createOrUpdateSettingWithObjectId("key", "first", "course.1"));
+		assertTrue(databaseHelper.createOrUpdateSettingWithObjectId("key", "second", "course.1"));
+		assertTrue(databaseHelper.createOrUpdateSettingWithObjectId("key", "other", "course.2"));
+		
+		SQLiteDatabase db = databaseHelper.getWritableDatabase();
+		
+		assertEquals(3, TestDatabaseHelper.queryInt(db, "SELECT COUNT(*) FROM settings WHERE userId = ?", USERNAME));
+		
+		// read back from the database rather than the cache
+		databaseHelper.clearSettingsCache();
+		
+		assertEquals("global", databaseHelper.getSetting("key"));
+		assertEquals("second", databaseHelper.getSettingByObjectId("key", "course.1"));
+		assertEquals("other", databaseHelper.getSettingByObjectId("key", "course.2"));
+	}
+	
+	public void testKeepsSettingsOfUsersApart() {
+		databaseHelper = new TestDatabaseHelper(getContext());
+		
+		assertTrue(databaseHelper.createOrUpdateSetting("key", "user"));
+		
+		Framework.setClient(new TestClient("other"));
+		databaseHelper.clearSettingsCache();
+		
+		assertNull(databaseHelper.getSetting("key"));
+		assertTrue(databaseHelper.createOrUpdateSetting("key", "other"));
+		
+		Framework.setClient(new TestClient(USERNAME));
+		databaseHelper.clearSettingsCache();
+		
+		assertEquals("user", databaseHelper.getSetting("key"));
+	}
+	
+	public void testReplacesGlobalSettingWrittenBeforeMigration() {
+		SQLiteDatabase db = TestDatabaseHelper.createVersion0Database(getContext());
+		
+		try {
+			db.execSQL("INSERT INTO settings (userId, key, value, objectId) VALUES (?, 'key', 'old', NULL)", new Object[] { USERNAME });
+		} finally {
+			db.close();
+		}
+		
+		databaseHelper = new TestDatabaseHelper(getContext());
+		
+		assertEquals("old", databaseHelper.getSetting("key"));
+		assertTrue(databaseHelper.createOrUpdateSetting("key", "new"));
+		
+		db = databaseHelper.getWritableDatabase();
+		
+		assertEquals(1, TestDatabaseHelper.queryInt(db, "SELECT COUNT(*) FROM settings WHERE userId = ? AND key = 'key'", USERNAME));
+		assertEquals("new", TestDatabaseHelper.queryString(db, "SELECT value FROM settings WHERE userId = ? AND key = 'key'", USERNAME));
+	}
+	
+	public void testRejectsObjectSettingWithoutObjectId() {
+		databaseHelper = new TestDatabaseHelper(getContext());
+		
+		assertFalse(databaseHelper.createOrUpdateSettingWithObjectId("key", "value", null));
+		assertEquals(0, TestDatabaseHelper.queryInt(databaseHelper.getWritableDatabase(), "SELECT COUNT(*) FROM settings"));
+	}
+}
\ No newline at end of file
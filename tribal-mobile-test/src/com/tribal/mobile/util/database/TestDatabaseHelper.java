@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.util.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * {@link BaseDatabaseHelper} over a private test database, created with the schema that precedes every migration.
+ * 
+ * @author Jon Brasted
+ */
+public class TestDatabaseHelper extends BaseDatabaseHelper {
+	/* Fields */
+	
+	public final static String DATABASE_NAME = "test.sqlite";
+	
+	// the schema of tables_create.sql before any migration
+	public final static String VERSION_0_CREATE_DATABASE_SQL =
+			"CREATE TABLE IF NOT EXISTS settings (_id INTEGER PRIMARY KEY AUTOINCREMENT, userId TEXT, key TEXT, value TEXT, objectId TEXT);"
+			+ "CREATE TABLE IF NOT EXISTS tracking (_id INTEGER PRIMARY KEY AUTOINCREMENT, userId TEXT NOT NULL, objectId TEXT NOT NULL, sender TEXT NOT NULL, "
+			+ "deviceTimestamp DATETIME NOT NULL DEFAULT (CURRENT_TIMESTAMP), addInfo TEXT NULL);"
+			+ "CREATE TABLE IF NOT EXISTS mylibrary (_id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, name TEXT NOT NULL, organization TEXT NOT NULL, "
+			+ "fileUrl TEXT NOT NULL, imagePath TEXT, description TEXT, published_date DATETIME NOT NULL, localFolder TEXT, courseCode TEXT, "
+			+ "version TEXT, download_date DATETIME, uniqueId TEXT NOT NULL, md5sum TEXT, state TEXT)";
+	
+	/* Constructor */
+	
+	public TestDatabaseHelper(Context context) {
+		super(context, DATABASE_NAME, null, 1);
+	}
+	
+	/* Methods */
+	
+	@Override
+	protected String getCreateDatabaseSql() {
+		return VERSION_0_CREATE_DATABASE_SQL;
+	}
+	
+	/**
+	 * Creates the test database with the schema that precedes every migration, without applying any, so that it can be seeded
+	 * before it is opened by a {@link TestDatabaseHelper}.
+	 * 
+	 * @param context	the context
+	 * @return			the open database, which the caller must close
+	 */
+	public static SQLiteDatabase createVersion0Database(Context context) {
+		SQLiteDatabase db = context.openOrCreateDatabase(DATABASE_NAME, Context.MODE_PRIVATE, null);
+		
+		for (String sqlString : VERSION_0_CREATE_DATABASE_SQL.split("[;]")) {
+			db.execSQL(sqlString);
+		}
+		
+		// the version the helper opens with, so that it neither creates nor upgrades the database
+		db.setVersion(1);
+		
+		return db;
+	}
+	
+	public static void deleteDatabase(Context context) {
+		context.deleteDatabase(DATABASE_NAME);
+	}
+	
+	public static int queryInt(SQLiteDatabase db, String sql, String... selectionArgs) {
+		Cursor cursor = db.rawQuery(sql, selectionArgs);
+		
+		try {
+			return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+		} finally {
+			cursor.close();
+		}
+	}
+	
+	public static String queryString(SQLiteDatabase db, String sql, String... selectionArgs) {
+		Cursor cursor = db.rawQuery(sql, selectionArgs);
+		
+		try {
+			return (cursor.moveToFirst() && !cursor.isNull(0)) ? cursor.getString(0) : null;
+		} finally {
+			cursor.close();
+		}
+	}
+	
+	public static boolean hasIndex(SQLiteDatabase db, String indexName) {
+		return queryInt(db, "SELECT COUNT(*) FROM sqlite_master WHERE type = 'index' AND name = ?", indexName) == 1;
+	}
+	
+	public static boolean hasColumn(SQLiteDatabase db, String tableName, String columnName) {
+		Cursor cursor = db.rawQuery("PRAGMA table_info(" + tableName + ")", null);
+		
+		try {
+			int nameIndex = cursor.getColumnIndex("name");
+			
+			while (cursor.moveToNext()) {
+				if (columnName.equals(cursor.getString(nameIndex))) {
+					return true;
+				}
+			}
+		} finally {
+			cursor.close();
+		}
+		
+		return false;
+	}
+}
\ No newline at end of file
@@ -181,6 +181,9 @@ public abstract class BaseActivity extends SherlockFragmentActivity implements C
 		// keep track of if app is in background or not
 		getBaseApplication().setRunning(false);
 
+		// make queued tracking entries durable
+		getDatabaseHelper().flushTrackingEntries();
+
 		// unsubscribe from the prelogout broadcast
 		if (isBroadcastReceiverActionRegistered(BroadcastActions.PreLogout)) {
 			removeBroadcastReceiver(BroadcastActions.PreLogout);
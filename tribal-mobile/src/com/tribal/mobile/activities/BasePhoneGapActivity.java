@@ -263,6 +263,9 @@ public abstract class BasePhoneGapActivity extends DroidGapActionBar implements
 
 		getBaseApplication().setRunning(false);
 
+		// make queued tracking entries durable
+		getDatabaseHelper().flushTrackingEntries();
+
 		if (isBroadcastReceiverActionRegistered(BroadcastActions.OpenMenuItem)) {
 			removeBroadcastReceiver(BroadcastActions.OpenMenuItem);
 		}
@@ -30,12 +30,15 @@ package com.tribal.mobile.api.packages;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
+import android.app.ActivityManager;
 import android.content.Context;
 import android.database.Cursor;
 import android.os.Environment;
-import android.os.Looper;
+import android.support.v4.util.LruCache;
+import android.text.TextUtils;
 
 import com.tribal.mobile.Framework;
 import com.tribal.mobile.R;
@@ -45,12 +48,13 @@ import com.tribal.mobile.model.MenuItemType;
 import com.tribal.mobile.model.Package;
 import com.tribal.mobile.net.ConnectivityMode;
 import com.tribal.mobile.phonegap.MFSettingsKeys;
-import com.tribal.mobile.util.AsyncTaskHelper;
 import com.tribal.mobile.util.ConnectivityUtils;
 import com.tribal.mobile.util.NativeSettingsHelper;
 import com.tribal.mobile.util.PackageHelper;
 import com.tribal.mobile.util.PackageWorkerCompleted;
 import com.tribal.mobile.util.PackageXmlWorkerTask;
+import com.tribal.mobile.util.concurrent.WorkerPool;
+import com.tribal.mobile.util.concurrent.Workers;
 import com.tribal.mobile.util.database.BaseDatabaseHelper;
 import com.tribal.mobile.util.resources.ResourceHelper;
 import com.tribal.mobile.util.resources.ResourceItemType;
@@ -66,17 +70,27 @@ public class PackageManager implements GetPackageCompleted {
 	
 	private static PackageManager instance;
 	
+	// opened packages may take up to this share of the application's memory class
+	private final static int OPENED_PACKAGES_MEMORY_CLASS_DIVISOR = 8;
+	
+	// estimated memory held by each item in an opened package, including its strings and index entries
+	private final static int ESTIMATED_BYTES_PER_PACKAGE_ITEM = 2048;
+	
 	/* Fields */
 	
 	private Context context;
 	private BaseDatabaseHelper databaseHelper;
 	
 	private Package currentlyOpenedPackage;
-	private Map<String, Package> openedPackages;
+	private LruCache<String, Package> openedPackages;
 	
 	private LibraryItem currentlyOpenedLibraryItem;
 	private List<LibraryItem> libraryItemList;
 	
+	// library items keyed by lower case unique id, and the library version they were loaded at
+	private Map<String, LibraryItem> libraryItemsByUniqueId;
+	private int libraryItemsVersion = -1;
+	
 	/* Properties */
 	
 	public static PackageManager getInstance(Context context, BaseDatabaseHelper databaseHelper) {
@@ -104,14 +118,8 @@ public class PackageManager implements GetPackageCompleted {
 	public void setCurrentlyOpenedPackage(Package packageObject) {
 		currentlyOpenedPackage = packageObject;
 		
-		String packageId = packageObject.getId();
-		
-		if (openedPackages.containsKey(packageId)) {
-			openedPackages.remove(packageId);
-		}
-
 		// add to openedPackages
-		openedPackages.put(packageId, packageObject);
+		openedPackages.put(toKey(packageObject.getId()), packageObject);
 	}
 	
 	/**
@@ -137,12 +145,11 @@ public class PackageManager implements GetPackageCompleted {
 	 * 
 	 * @param	the unique id
 	 */
-	public void setCurrentlyOpenedLibraryItemByUniqueId(String uniqueId) {
-		for (LibraryItem libraryItem : libraryItemList) {
-			if (libraryItem.getUniqueId().equalsIgnoreCase(uniqueId)) {
-				currentlyOpenedLibraryItem = libraryItem;
-				break;
-			}
+	public synchronized void setCurrentlyOpenedLibraryItemByUniqueId(String uniqueId) {
+		LibraryItem libraryItem = libraryItemsByUniqueId.get(toKey(uniqueId));
+		
+		if (libraryItem != null) {
+			currentlyOpenedLibraryItem = libraryItem;
 		}
 	}
 	
@@ -151,7 +158,7 @@ public class PackageManager implements GetPackageCompleted {
 	 * 
 	 * @return	the list of {@link LibraryItem} objects
 	 */
-	public List<LibraryItem> getLibraryItemList() {
+	public synchronized List<LibraryItem> getLibraryItemList() {
 		return libraryItemList;
 	}
 	
@@ -160,8 +167,40 @@ public class PackageManager implements GetPackageCompleted {
 	 * 
 	 * @param libraryItemList	the list of {@link LibraryItem} objects
 	 */
-	public void setLibraryItemList(List<LibraryItem> libraryItemList) {
+	public synchronized void setLibraryItemList(List<LibraryItem> libraryItemList) {
 		this.libraryItemList = libraryItemList;
+		
+		Map<String, LibraryItem> previousLibraryItemsByUniqueId = libraryItemsByUniqueId;
+		
+		// index the library items, keeping the first for each unique id as a search of the list would
+		libraryItemsByUniqueId = new HashMap<String, LibraryItem>();
+		
+		for (LibraryItem libraryItem : libraryItemList) {
+			String key = toKey(libraryItem.getUniqueId());
+			
+			if (!libraryItemsByUniqueId.containsKey(key)) {
+				libraryItemsByUniqueId.put(key, libraryItem);
+			}
+		}
+		
+		if (previousLibraryItemsByUniqueId != null) {
+			// release opened packages that have since been deleted or installed again
+			for (Map.Entry<String, LibraryItem> entry : previousLibraryItemsByUniqueId.entrySet()) {
+				LibraryItem previousLibraryItem = entry.getValue();
+				LibraryItem libraryItem = libraryItemsByUniqueId.get(entry.getKey());
+				
+				if (libraryItem == null || !isSameInstall(previousLibraryItem, libraryItem)) {
+					openedPackages.remove(entry.getKey());
+					
+					// the current package is held outside the cache, so it has to be released as well
+					Package currentPackage = currentlyOpenedPackage;
+					
+					if (currentPackage != null && entry.getKey().equals(toKey(currentPackage.getId()))) {
+						currentlyOpenedPackage = null;
+					}
+				}
+			}
+		}
 	}
 	
 	/* Constructor */
@@ -170,13 +209,80 @@ public class PackageManager implements GetPackageCompleted {
 		this.context = context;
 		this.databaseHelper = databaseHelper;
 		
-		openedPackages = new HashMap<String, Package>();
-		libraryItemList = new ArrayList<LibraryItem>();
+		openedPackages = createOpenedPackagesCache(context);
+		setLibraryItemList(new ArrayList<LibraryItem>());
 	}
 	
 	/* Methods */
 	
-	private void updateLibraryItemList() {
+	/**
+	 * Creates the cache of opened packages, weighed by their number of items so that large packages are evicted sooner than small ones.
+	 * 
+	 * @param context	the context
+	 * @return			the cache of opened packages
+	 */
+	private static LruCache<String, Package> createOpenedPackagesCache(Context context) {
+		ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+		int memoryClassBytes = activityManager.getMemoryClass() * 1024 * 1024;
+		int maxItems = memoryClassBytes / OPENED_PACKAGES_MEMORY_CLASS_DIVISOR / ESTIMATED_BYTES_PER_PACKAGE_ITEM;
+		
+		return new LruCache<String, Package>(maxItems) {
+			@Override
+			protected int sizeOf(String key, Package value) {
+				return Math.max(1, value.getItemCount());
+			}
+		};
+	}
+	
+	private static boolean isSameInstall(LibraryItem first, LibraryItem second) {
+		return TextUtils.equals(first.getVersion(), second.getVersion()) && TextUtils.equals(first.getLocalFolder(), second.getLocalFolder())
+				&& TextUtils.equals(first.getPublishedDate(), second.getPublishedDate());
+	}
+	
+	private static String toKey(String uniqueId) {
+		return uniqueId == null ? null : uniqueId.toLowerCase(Locale.ENGLISH);
+	}
+	
+	/**
+	 * Returns the {@link LibraryItem} with the specified unique id, reloading the library only if an entry has been added, removed or
+	 * changed state since it was last loaded.
+	 * 
+	 * @param uniqueId	the unique id
+	 * @return			the {@link LibraryItem}, or <code>null</code> if the package is not in the library
+	 */
+	private synchronized LibraryItem getLibraryItemByUniqueId(String uniqueId) {
+		if (libraryItemsVersion != databaseHelper.getLibraryVersion()) {
+			updateLibraryItemList();
+		}
+		
+		return libraryItemsByUniqueId.get(toKey(uniqueId));
+	}
+	
+	/**
+	 * Returns the opened {@link Package} with the specified id, if it is still cached.
+	 * 
+	 * @param packageId	the package id
+	 * @return			the {@link Package}, or <code>null</code> if it has not been opened or has been evicted
+	 */
+	private Package getOpenedPackage(String packageId) {
+		Package packageObject = openedPackages.get(toKey(packageId));
+		
+		// the current package may be too large to cache but is held regardless
+		if (packageObject == null) {
+			Package currentPackage = currentlyOpenedPackage;
+			
+			if (currentPackage != null && TextUtils.equals(toKey(currentPackage.getId()), toKey(packageId))) {
+				packageObject = currentPackage;
+			}
+		}
+		
+		return packageObject;
+	}
+	
+	private synchronized void updateLibraryItemList() {
+		// read the version first so that a change made while the library is being read causes another reload
+		libraryItemsVersion = databaseHelper.getLibraryVersion();
+		
 		// get cursor
 		Cursor libraryCursor = databaseHelper.getMyLibrary();
 		
@@ -208,8 +314,7 @@ public class PackageManager implements GetPackageCompleted {
 			}
 		};
 		
-		Thread thread = new Thread(runnable);
-		thread.start();
+		Workers.execute(WorkerPool.IO, runnable);
 	}
 	
 	/**
@@ -228,8 +333,7 @@ public class PackageManager implements GetPackageCompleted {
 			}
 		};
 		
-		Thread thread = new Thread(runnable);
-		thread.start();
+		Workers.execute(WorkerPool.IO, runnable);
 	}
 	
 	/**
@@ -260,43 +364,32 @@ public class PackageManager implements GetPackageCompleted {
 				PackageItemResult result = new PackageItemResult("It appears that no course has been loaded yet.");
 				
 				// invoke callback
-				if (callback != null) {
-					callback.onPackageItemRetrieveCompleted(result, phonegapCallback);
-				}
+				invokePackageItemRetrieveCompleted(callback, result, phonegapCallback);
 				
 				return;
 			}
 		}
 		
-		// ensure that we have the latest library item list
-		updateLibraryItemList();
+		// search the library, which is only reloaded if it has changed
+		LibraryItem libraryItem = getLibraryItemByUniqueId(uniqueId);
 		
 		// check whether the package has already been opened
-		if (openedPackages.containsKey(uniqueId)) {
-			for (LibraryItem libraryItem : this.libraryItemList) {
-				if (libraryItem.getUniqueId().equalsIgnoreCase(uniqueId)) {
-					// get the package item
-					onGetPackageCompleted(openedPackages.get(uniqueId), itemType, itemId, callback, phonegapCallback, libraryItem);
-				}
-			}
+		Package openedPackage = getOpenedPackage(uniqueId);
+		
+		if (openedPackage != null && libraryItem == null) {
+			// the package has been removed from the library since it was opened
+			openedPackages.remove(toKey(uniqueId));
+			openedPackage = null;
+		}
+		
+		if (openedPackage != null) {
+			// get the package item
+			onGetPackageCompleted(openedPackage, itemType, itemId, callback, phonegapCallback, libraryItem);
 		} else {
-			// search the library
-			
-			boolean foundLibraryItem = false;
-			
-			for (LibraryItem libraryItem : this.libraryItemList) {
-				if (libraryItem.getUniqueId().equalsIgnoreCase(uniqueId)) {
-					// found the library item
-					foundLibraryItem = true;
-					
-					// open the package
-					openPackageAsync(itemType, itemId, libraryItem.getLocalFolder(), this, callback, phonegapCallback, libraryItem);
-					
-					break;
-				}
-			}
-			
-			if (!foundLibraryItem) {
+			if (libraryItem != null) {
+				// open the package
+				openPackageAsync(itemType, itemId, libraryItem.getLocalFolder(), this, callback, phonegapCallback, libraryItem);
+			} else {
 				// TODO: Put error strings into a resources file
 				// Error: could not find menu item
 				
@@ -306,62 +399,86 @@ public class PackageManager implements GetPackageCompleted {
 				
 				boolean canConnect = ConnectivityUtils.canConnect(context, connectivityMode);
 				
-				final String tempUniqueId = uniqueId;
-				
 				if (canConnect) {
-					Looper.prepare();
+					// the catalogue request delivers its result to the thread that made it, so make it from the main thread
+					final String tempUniqueId = uniqueId;
 					
-					Framework.getClient().getPackageCatalogue(new PackageCatalogueRetrieved() {
-						
+					Workers.runOnMainThread(new Runnable() {
 						@Override
-						public void onCatalogueRetrieved(Catalogue catalogue) {
-							PackageItemResult result = null;
-							
-							// TODO: Get the package catalogue and check whether it contains the unique id.
-							if (catalogue != null) {
-								List<PackageItem> packageList = catalogue.getPackages();
-								
-								if (packageList.size() > 0) {
-									for (PackageItem packageItem : packageList) {
-										if (tempUniqueId.equalsIgnoreCase(packageItem.getUniqueId())) {
-											result = new PackageItemResult(packageItem);
-											break;
-										}
-									}
-								}
-							}
-							
-							if (result == null) {
-								result = new PackageItemResult("Referenced course is not on the device and has not been published to the m-Learning Suite.");
-							}
-							
-							// invoke callback
-							if (callback != null) {
-								callback.onPackageItemRetrieveCompleted(result, phonegapCallback);
-							}
+						public void run() {
+							findPackageInCatalogue(tempUniqueId, callback, phonegapCallback);
 						}
 					});
-					
-					Looper.loop();
 				} else {
 					PackageItemResult result = new PackageItemResult("Referenced course has not been downloaded to the device and the device is offline.");
 					
 					// invoke callback
-					if (callback != null) {
-						callback.onPackageItemRetrieveCompleted(result, phonegapCallback);
+					invokePackageItemRetrieveCompleted(callback, result, phonegapCallback);
+				}
+			}
+		}
+	}
+	
+	private void findPackageInCatalogue(final String uniqueId, final PackageItemRetrieveCompleted callback, final String phonegapCallback) {
+		Framework.getClient().getPackageCatalogue(new PackageCatalogueRetrieved() {
+			
+			@Override
+			public void onCatalogueRetrieved(Catalogue catalogue) {
+				PackageItemResult result = null;
+				
+				// TODO: Get the package catalogue and check whether it contains the unique id.
+				if (catalogue != null) {
+					List<PackageItem> packageList = catalogue.getPackages();
+					
+					if (packageList.size() > 0) {
+						for (PackageItem packageItem : packageList) {
+							if (uniqueId.equalsIgnoreCase(packageItem.getUniqueId())) {
+								result = new PackageItemResult(packageItem);
+								break;
+							}
+						}
 					}
 				}
+				
+				if (result == null) {
+					result = new PackageItemResult("Referenced course is not on the device and has not been published to the m-Learning Suite.");
+				}
+				
+				// invoke callback
+				invokePackageItemRetrieveCompleted(callback, result, phonegapCallback);
 			}
+		});
+	}
+	
+	/**
+	 * Invokes the specified {@link PackageItemRetrieveCompleted} callback on the main thread.
+	 * 
+	 * @param callback			the {@link PackageItemRetrieveCompleted} callback, may be <code>null</code>
+	 * @param result			the {@link PackageItemResult}
+	 * @param phonegapCallback	the PhoneGap callback
+	 */
+	private void invokePackageItemRetrieveCompleted(final PackageItemRetrieveCompleted callback, final PackageItemResult result, final String phonegapCallback) {
+		if (callback != null) {
+			Workers.runOnMainThread(new Runnable() {
+				@Override
+				public void run() {
+					callback.onPackageItemRetrieveCompleted(result, phonegapCallback);
+				}
+			});
 		}
 	}
 	
 	/**
-	 * Provides functionality to clear the current opened {@link Package} and current opened {@link LibraryItem}.
+	 * Provides functionality to clear the current opened {@link Package}, current opened {@link LibraryItem} and the cache of opened
+	 * {@link Package} objects.
 	 */
 	public void clear() {
 		// clear currently opened items
 		currentlyOpenedPackage = null;
 		currentlyOpenedLibraryItem = null;
+		
+		// release the opened packages
+		openedPackages.evictAll();
 	}
 	
 	private void openPackageAsync(MenuItemType itemType, String itemId, String packagePath, GetPackageCompleted getPackageCompletedCallback, PackageItemRetrieveCompleted packageItemRetrieveCompletedCallback,
@@ -374,10 +491,17 @@ public class PackageManager implements GetPackageCompleted {
 		String externalStoragePackagesPath = String.format(externalStoragePackagesPathFormatString, packagePath);
 		String selectedPackagePath = Environment.getExternalStorageDirectory() + externalStoragePackagesPath;
 
-		String packageXMLPath = String.format(context.getString(R.string.package_path_format_string), selectedPackagePath);
+		final Object[] taskParameters = new Object[] {
+				String.format(context.getString(R.string.package_path_format_string), selectedPackagePath), selectedPackagePath, payload, worker };
 
-		PackageXmlWorkerTask task = new PackageXmlWorkerTask();
-		AsyncTaskHelper.executeAsyncTask(task, packageXMLPath, selectedPackagePath, payload, worker);
+		// async tasks must be started from the main thread. Parsing keeps a core busy, so it runs on the cpu pool
+		Workers.runOnMainThread(new Runnable() {
+			@Override
+			public void run() {
+				PackageXmlWorkerTask task = new PackageXmlWorkerTask();
+				Workers.executeAsyncTask(WorkerPool.CPU, task, taskParameters);
+			}
+		});
 	}
 	
 	/**
@@ -385,14 +509,8 @@ public class PackageManager implements GetPackageCompleted {
 	 */
 	@Override
 	public void onGetPackageCompleted(Package packageItem, MenuItemType itemType, String itemId, PackageItemRetrieveCompleted callback, String phonegapCallback, Object payload) {
-		String packageId = packageItem.getId();
-		
 		// persist the package item
-		if (openedPackages.containsKey(packageId)) {
-			openedPackages.remove(packageId);
-		}
-		
-		openedPackages.put(packageId, packageItem);
+		openedPackages.put(toKey(packageItem.getId()), packageItem);
 		
 		PackageItemResult result = null;
 		
@@ -425,9 +543,7 @@ public class PackageManager implements GetPackageCompleted {
 		}
 		
 		// invoke callback
-		if (callback != null) {
-			callback.onPackageItemRetrieveCompleted(result, phonegapCallback);
-		}
+		invokePackageItemRetrieveCompleted(callback, result, phonegapCallback);
 	}
 	
 	/**
@@ -88,13 +88,24 @@ public class TrackingEntry {
 	}
 	
 	/**
-	 * Provides the JSON content string for the object. 
+	 * Provides the JSON object for the entry. 
 	 * 
-	 * @return	the JSON content string for the object
+	 * @return	the JSON object for the entry
 	 */
-	public String getJsonContentString() {
-		JSONArray jsonArray = new JSONArray();
-		
+	public JSONObject getJsonObject() {
+		return createJsonObject(objectId, sender, deviceTimestamp, additionalInfo);
+	}
+	
+	/**
+	 * Provides the JSON object for a tracking entry from its individual values, so that rows can be serialised without creating a {@link TrackingEntry}.
+	 * 
+	 * @param objectId			the object id
+	 * @param sender			the sender
+	 * @param deviceTimestamp	the device timestamp
+	 * @param additionalInfo	the additional info
+	 * @return					the JSON object for the entry
+	 */
+	public static JSONObject createJsonObject(String objectId, String sender, String deviceTimestamp, String additionalInfo) {
 		JSONObject jsonObject = new JSONObject();
 		
 		try {
@@ -108,7 +119,18 @@ public class TrackingEntry {
 			e.printStackTrace();
 		}
 		
-		jsonArray.put(jsonObject);
+		return jsonObject;
+	}
+	
+	/**
+	 * Provides the JSON content string for the object. 
+	 * 
+	 * @return	the JSON content string for the object
+	 */
+	public String getJsonContentString() {
+		JSONArray jsonArray = new JSONArray();
+		
+		jsonArray.put(getJsonObject());
 		
 		return jsonArray.toString();
 	}
@@ -147,6 +147,42 @@ public abstract class BaseApplication extends Application {
 		BroadcastUtils.initialiseBroadcastActions(getApplicationContext());
 	}
 
+	@Override
+	public void onLowMemory() {
+		flushTrackingEntries();
+		
+		super.onLowMemory();
+	}
+	
+	@Override
+	public void onTrimMemory(int level) {
+		// once the UI is hidden the process can be killed at any time
+		if (level >= TRIM_MEMORY_UI_HIDDEN) {
+			flushTrackingEntries();
+		}
+		
+		super.onTrimMemory(level);
+	}
+	
+	@Override
+	public void onTerminate() {
+		flushTrackingEntries();
+		
+		super.onTerminate();
+	}
+	
+	/**
+	 * Writes the tracking entries queued by the database helper, if it has been created. Invoked when the application is
+	 * hidden, low on memory or terminated, and by services as they are destroyed.
+	 */
+	public void flushTrackingEntries() {
+		BaseDatabaseHelper databaseHelper = this.databaseHelper;
+		
+		if (databaseHelper != null) {
+			databaseHelper.flushTrackingEntries();
+		}
+	}
+
 	/**
 	 * Provides an override method to create an instance of {@link BaseDatabaseHelper}. Intended to be overriden. 
 	 * 
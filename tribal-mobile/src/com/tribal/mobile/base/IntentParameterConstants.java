@@ -56,6 +56,7 @@ public final class IntentParameterConstants {
 	public final static String ResourceItemId = "ResourceItemId";
 	public final static String PackageName = "PackageName";
 	public final static String Url = "Url";	
+	public final static String SyncBatchSize = "SyncBatchSize";
 	
 	public final static String PackageFolderPath = "PackageFolderPath";
 	public final static String SkipConfirmation = "SkipConfirmation";
@@ -81,6 +81,11 @@ public abstract class ServiceBase extends Service {
 			}
 		}
 
+		// entries tracked by the service are queued, so write them before the process can be killed
+		if (getApplication() instanceof BaseApplication) {
+			((BaseApplication) getApplication()).flushTrackingEntries();
+		}
+		
 		super.onDestroy();
 	}
 	
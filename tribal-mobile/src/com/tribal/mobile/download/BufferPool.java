@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.download;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A fixed size pool of equally sized byte buffers, so that workers copying large amounts of data reuse buffers rather than allocating
+ * new ones.
+ * 
+ * @author Jon Brasted
+ */
+public class BufferPool {
+	/* Fields */
+	
+	private final int bufferSize;
+	private final BlockingQueue<byte[]> buffers;
+	
+	/* Properties */
+	
+	public int getBufferSize() {
+		return bufferSize;
+	}
+	
+	/* Constructor */
+	
+	public BufferPool(int bufferCount, int bufferSize) {
+		this.bufferSize = bufferSize;
+		
+		buffers = new ArrayBlockingQueue<byte[]>(bufferCount);
+		
+		for (int i = 0; i < bufferCount; i++) {
+			buffers.add(new byte[bufferSize]);
+		}
+	}
+	
+	/* Methods */
+	
+	/**
+	 * Takes a buffer from the pool, waiting until one is returned if none are available.
+	 * 
+	 * @return	the buffer
+	 * @throws InterruptedException
+	 */
+	public byte[] acquire() throws InterruptedException {
+		return buffers.take();
+	}
+	
+	/**
+	 * Returns a buffer to the pool.
+	 * 
+	 * @param buffer	the buffer
+	 */
+	public void release(byte[] buffer) {
+		buffers.offer(buffer);
+	}
+}
\ No newline at end of file
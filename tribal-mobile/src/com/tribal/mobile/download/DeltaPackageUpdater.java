@@ -0,0 +1,711 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.download;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.tribal.mobile.util.FileHelper;
+
+/**
+ * Updates an installed package folder to a new version of its zip by fetching only the entries that changed. The remote zip's central
+ * directory is read with <code>Range</code> requests and compared with the {@link PackageManifest} of the installed folder. Changed
+ * entries are then fetched with ranged reads, merging neighbouring entries into a single request, and inflated into a staging folder.
+ * 
+ * <p>
+ * Once every changed entry has been staged and has matched its CRC-32, a journal of the replacements and deletions is written and then
+ * applied. If the update is interrupted while the journal is being applied, {@link #recover(File)} rolls it forward, so a package
+ * folder is never left with a mix of versions once recovery has run.
+ * </p>
+ * 
+ * <p>
+ * Updates fail with an {@link IOException} when the server does not support byte ranges, sends no validator, or the zip uses features
+ * the updater does not read (ZIP64, compression other than stored or deflated), in which case the whole zip should be downloaded.
+ * </p>
+ * 
+ * @author Jon Brasted
+ */
+public class DeltaPackageUpdater {
+	/* Fields */
+	
+	/**
+	 * Provides connections for byte ranges of the remote zip.
+	 */
+	public interface RangeConnectionFactory {
+		/**
+		 * Opens a connection for an inclusive byte range of the zip.
+		 * 
+		 * @param firstByte		the first byte
+		 * @param lastByte		the last byte
+		 * @param validator		the validator the range is conditional on, or <code>null</code>
+		 * @return				the connected connection
+		 * @throws IOException
+		 */
+		HttpURLConnection openRangeConnection(long firstByte, long lastByte, String validator) throws IOException;
+	}
+	
+	private final static String LOG_TAG = "DeltaPackageUpdater";
+	private final static String STAGING_EXTENSION = ".delta";
+	private final static String JOURNAL_EXTENSION = ".delta.journal";
+	
+	private final static int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	private final static int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+	private final static int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+	private final static int LOCAL_HEADER_SIZE = 30;
+	private final static int CENTRAL_HEADER_SIZE = 46;
+	private final static int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+	private final static int MAX_COMMENT_LENGTH = 0xffff;
+	private final static int METHOD_STORED = 0;
+	private final static int METHOD_DEFLATED = 8;
+	
+	/**
+	 * Changed entries separated by fewer unchanged bytes than this are fetched with a single request.
+	 */
+	private final static long MAX_RANGE_GAP = 64 * 1024;
+	private final static int BUFFER_SIZE = 64 * 1024;
+	
+	private final File folder;
+	private final File stagingFolder;
+	private final File journalFile;
+	private final RangeConnectionFactory connectionFactory;
+	private final SegmentedDownloader.Listener listener;
+	
+	private long fetchedBytes;
+	private long bytesToFetch;
+	private int changedEntryCount;
+	private int removedFileCount;
+	
+	/* Properties */
+	
+	public int getChangedEntryCount() {
+		return changedEntryCount;
+	}
+	
+	public int getRemovedFileCount() {
+		return removedFileCount;
+	}
+	
+	/* Constructor */
+	
+	public DeltaPackageUpdater(File folder, RangeConnectionFactory connectionFactory, SegmentedDownloader.Listener listener) {
+		this.folder = folder;
+		this.stagingFolder = getStagingFolder(folder);
+		this.journalFile = getJournalFile(folder);
+		this.connectionFactory = connectionFactory;
+		this.listener = listener;
+	}
+	
+	/* Methods */
+	
+	/**
+	 * Updates the package folder to the remote zip.
+	 * 
+	 * @return				<code>true</code> if the folder was updated, <code>false</code> if the update was cancelled before it was
+	 * 						applied
+	 * @throws IOException	if the update could not be made, in which case the folder is unchanged
+	 */
+	public boolean update() throws IOException {
+		recover(folder);
+		
+		// find the size of the zip and a validator that keeps the ranged reads consistent
+		HttpURLConnection connection = connectionFactory.openRangeConnection(0, 0, null);
+		
+		long totalBytes = 0;
+		String validator = null;
+		
+		try {
+			if (connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+				throw new IOException("Server does not support byte ranges");
+			}
+			
+			totalBytes = getContentRangeTotal(connection);
+			validator = !TextUtils.isEmpty(connection.getHeaderField("ETag")) ? connection.getHeaderField("ETag") : connection.getHeaderField("Last-Modified");
+		} finally {
+			connection.disconnect();
+		}
+		
+		if (totalBytes < END_OF_CENTRAL_DIRECTORY_SIZE || TextUtils.isEmpty(validator)) {
+			throw new IOException("Server did not send the size and a validator of the zip");
+		}
+		
+		List<RemoteEntry> remoteEntries = readCentralDirectory(totalBytes, validator);
+		
+		// compare the remote entries with the installed files
+		PackageManifest manifest = PackageManifest.load(folder);
+		
+		// only files recorded as part of the installed version may be removed, as the app adds its own files to the folder
+		Set<String> installedPaths = manifest.getPaths();
+		
+		List<RemoteEntry> changedEntries = new ArrayList<RemoteEntry>();
+		
+		for (RemoteEntry remoteEntry : remoteEntries) {
+			File localFile = new File(folder, remoteEntry.name);
+			installedPaths.remove(remoteEntry.name);
+			
+			// only files of the same size need their checksums compared
+			if (!localFile.isFile() || localFile.length() != remoteEntry.size || manifest.getChecksum(remoteEntry.name, localFile) != remoteEntry.crc) {
+				changedEntries.add(remoteEntry);
+				bytesToFetch += remoteEntry.dataEnd - remoteEntry.localHeaderOffset;
+			}
+		}
+		
+		List<String> removedPaths = new ArrayList<String>();
+		
+		for (String path : installedPaths) {
+			if (new File(folder, path).isFile()) {
+				removedPaths.add(path);
+			}
+		}
+		
+		changedEntryCount = changedEntries.size();
+		removedFileCount = removedPaths.size();
+		
+		Log.d(LOG_TAG, "Updating " + folder + ": " + changedEntryCount + " of " + remoteEntries.size() + " entries changed, "
+				+ removedFileCount + " files removed, " + bytesToFetch + " of " + totalBytes + " bytes to fetch");
+		
+		// fetch the changed entries into the staging folder
+		FileHelper.deleteFilesRecursive(stagingFolder, true);
+		
+		try {
+			if (!fetchEntries(changedEntries, validator)) {
+				return false;
+			}
+			
+			writeJournal(changedEntries, removedPaths);
+		} finally {
+			if (!journalFile.exists()) {
+				FileHelper.deleteFilesRecursive(stagingFolder, true);
+			}
+		}
+		
+		applyJournal(folder);
+		
+		// record the new version of the folder
+		manifest.clear();
+		
+		for (RemoteEntry remoteEntry : remoteEntries) {
+			manifest.put(remoteEntry.name, new File(folder, remoteEntry.name), remoteEntry.crc);
+		}
+		
+		manifest.save();
+		
+		return true;
+	}
+	
+	/**
+	 * Completes an update of a package folder that was interrupted while it was being applied, or discards one that was interrupted
+	 * before. Does nothing if the folder has no update in progress.
+	 * 
+	 * @param folder	the package folder
+	 * @throws IOException
+	 */
+	public static void recover(File folder) throws IOException {
+		if (getJournalFile(folder).exists()) {
+			Log.d(LOG_TAG, "Completing interrupted update of " + folder);
+			
+			applyJournal(folder);
+		} else {
+			FileHelper.deleteFilesRecursive(getStagingFolder(folder), true);
+		}
+	}
+	
+	/**
+	 * Completes any interrupted updates of the package folders in a directory.
+	 * 
+	 * @param directory	the directory
+	 */
+	public static void recoverAll(File directory) {
+		File[] journalFiles = directory.listFiles();
+		
+		if (journalFiles == null) {
+			return;
+		}
+		
+		for (File journalFile : journalFiles) {
+			String name = journalFile.getName();
+			
+			if (name.endsWith(JOURNAL_EXTENSION)) {
+				try {
+					recover(new File(directory, name.substring(0, name.length() - JOURNAL_EXTENSION.length())));
+				} catch (IOException e) {
+					Log.e(LOG_TAG, "Could not complete interrupted update " + journalFile, e);
+				}
+			}
+		}
+	}
+	
+	private static File getStagingFolder(File folder) {
+		return new File(folder.getParentFile(), folder.getName() + STAGING_EXTENSION);
+	}
+	
+	private static File getJournalFile(File folder) {
+		return new File(folder.getParentFile(), folder.getName() + JOURNAL_EXTENSION);
+	}
+	
+	/**
+	 * Reads the file entries of the remote zip's central directory.
+	 */
+	private List<RemoteEntry> readCentralDirectory(long totalBytes, String validator) throws IOException {
+		// the end of central directory record is followed by a comment of up to 64 KB
+		int tailLength = (int) Math.min(totalBytes, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_LENGTH);
+		long tailOffset = totalBytes - tailLength;
+		byte[] tail = readRange(tailOffset, totalBytes - 1, validator);
+		
+		int endOfCentralDirectory = -1;
+		
+		for (int i = tailLength - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--) {
+			if (readInt(tail, i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+				endOfCentralDirectory = i;
+				break;
+			}
+		}
+		
+		if (endOfCentralDirectory < 0) {
+			throw new IOException("End of central directory not found");
+		}
+		
+		int entryCount = readShort(tail, endOfCentralDirectory + 10);
+		long centralDirectorySize = readInt(tail, endOfCentralDirectory + 12) & 0xffffffffL;
+		long centralDirectoryOffset = readInt(tail, endOfCentralDirectory + 16) & 0xffffffffL;
+		
+		if (entryCount == 0xffff || centralDirectorySize == 0xffffffffL || centralDirectoryOffset == 0xffffffffL) {
+			throw new IOException("ZIP64 archives are not supported");
+		}
+		
+		byte[] centralDirectory;
+		
+		if (centralDirectoryOffset >= tailOffset) {
+			// the central directory was read with the tail
+			centralDirectory = new byte[(int) centralDirectorySize];
+			System.arraycopy(tail, (int) (centralDirectoryOffset - tailOffset), centralDirectory, 0, centralDirectory.length);
+		} else {
+			centralDirectory = readRange(centralDirectoryOffset, centralDirectoryOffset + centralDirectorySize - 1, validator);
+		}
+		
+		List<RemoteEntry> allEntries = new ArrayList<RemoteEntry>(entryCount);
+		int position = 0;
+		
+		for (int i = 0; i < entryCount; i++) {
+			if (position + CENTRAL_HEADER_SIZE > centralDirectory.length || readInt(centralDirectory, position) != CENTRAL_HEADER_SIGNATURE) {
+				throw new IOException("Invalid central directory");
+			}
+			
+			int nameLength = readShort(centralDirectory, position + 28);
+			int extraLength = readShort(centralDirectory, position + 30);
+			int commentLength = readShort(centralDirectory, position + 32);
+			
+			RemoteEntry entry = new RemoteEntry();
+			entry.method = readShort(centralDirectory, position + 10);
+			entry.crc = readInt(centralDirectory, position + 16) & 0xffffffffL;
+			entry.compressedSize = readInt(centralDirectory, position + 20) & 0xffffffffL;
+			entry.size = readInt(centralDirectory, position + 24) & 0xffffffffL;
+			entry.localHeaderOffset = readInt(centralDirectory, position + 42) & 0xffffffffL;
+			entry.name = new String(centralDirectory, position + CENTRAL_HEADER_SIZE, nameLength, "UTF-8");
+			
+			if (entry.name.startsWith("/") || ("/" + entry.name + "/").contains("/../")) {
+				throw new IOException("Invalid entry name " + entry.name);
+			}
+			
+			allEntries.add(entry);
+			position += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+		}
+		
+		// the data of each entry ends where the next one starts
+		Collections.sort(allEntries, new Comparator<RemoteEntry>() {
+			@Override
+			public int compare(RemoteEntry lhs, RemoteEntry rhs) {
+				return (lhs.localHeaderOffset < rhs.localHeaderOffset) ? -1 : ((lhs.localHeaderOffset == rhs.localHeaderOffset) ? 0 : 1);
+			}
+		});
+		
+		List<RemoteEntry> fileEntries = new ArrayList<RemoteEntry>(entryCount);
+		
+		for (int i = 0; i < allEntries.size(); i++) {
+			RemoteEntry entry = allEntries.get(i);
+			entry.dataEnd = (i + 1 < allEntries.size()) ? allEntries.get(i + 1).localHeaderOffset : centralDirectoryOffset;
+			
+			if (!entry.name.endsWith("/")) {
+				if (entry.method != METHOD_STORED && entry.method != METHOD_DEFLATED) {
+					throw new IOException("Compression method " + entry.method + " of " + entry.name + " is not supported");
+				}
+				
+				fileEntries.add(entry);
+			}
+		}
+		
+		return fileEntries;
+	}
+	
+	/**
+	 * Fetches the changed entries into the staging folder, in order of their position in the zip.
+	 * 
+	 * @return	<code>true</code> if all entries were staged, <code>false</code> if the update was cancelled
+	 */
+	private boolean fetchEntries(List<RemoteEntry> entries, String validator) throws IOException {
+		int index = 0;
+		
+		while (index < entries.size()) {
+			// merge neighbouring entries into one range
+			int end = index + 1;
+			
+			while (end < entries.size() && entries.get(end).localHeaderOffset - entries.get(end - 1).dataEnd <= MAX_RANGE_GAP) {
+				end++;
+			}
+			
+			long firstByte = entries.get(index).localHeaderOffset;
+			long lastByte = entries.get(end - 1).dataEnd - 1;
+			
+			HttpURLConnection connection = openRange(firstByte, lastByte, validator);
+			
+			try {
+				InputStream inputStream = connection.getInputStream();
+				long position = firstByte;
+				
+				for (int i = index; i < end; i++) {
+					if (listener.isCancelled()) {
+						return false;
+					}
+					
+					RemoteEntry entry = entries.get(i);
+					
+					skipFully(inputStream, entry.localHeaderOffset - position);
+					stageEntry(inputStream, entry);
+					
+					position = entry.dataEnd;
+					fetchedBytes += entry.dataEnd - entry.localHeaderOffset;
+					listener.onProgress(fetchedBytes, bytesToFetch);
+				}
+			} finally {
+				connection.disconnect();
+			}
+			
+			index = end;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Reads an entry from its local header to the end of its data, inflating it into the staging folder and verifying its CRC-32.
+	 */
+	private void stageEntry(InputStream inputStream, RemoteEntry entry) throws IOException {
+		byte[] localHeader = new byte[LOCAL_HEADER_SIZE];
+		readFully(inputStream, localHeader, LOCAL_HEADER_SIZE);
+		
+		if (readInt(localHeader, 0) != LOCAL_HEADER_SIGNATURE) {
+			throw new IOException("Invalid local header for " + entry.name);
+		}
+		
+		int headerLength = LOCAL_HEADER_SIZE + readShort(localHeader, 26) + readShort(localHeader, 28);
+		skipFully(inputStream, headerLength - LOCAL_HEADER_SIZE);
+		
+		File stagedFile = new File(stagingFolder, entry.name);
+		stagedFile.getParentFile().mkdirs();
+		
+		CRC32 crc = new CRC32();
+		OutputStream outputStream = new FileOutputStream(stagedFile);
+		
+		try {
+			if (entry.method == METHOD_STORED) {
+				copy(inputStream, entry.compressedSize, outputStream, crc);
+			} else {
+				inflate(inputStream, entry.compressedSize, outputStream, crc);
+			}
+		} finally {
+			outputStream.close();
+		}
+		
+		if (crc.getValue() != entry.crc) {
+			throw new IOException("Checksum mismatch for " + entry.name);
+		}
+		
+		// skip the data descriptor, if there is one
+		skipFully(inputStream, entry.dataEnd - entry.localHeaderOffset - headerLength - entry.compressedSize);
+	}
+	
+	private void copy(InputStream inputStream, long length, OutputStream outputStream, CRC32 crc) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		long remaining = length;
+		
+		while (remaining > 0) {
+			if (listener.isCancelled()) {
+				throw new IOException("Cancelled");
+			}
+			
+			int count = inputStream.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+			
+			if (count == -1) {
+				throw new EOFException();
+			}
+			
+			outputStream.write(buffer, 0, count);
+			crc.update(buffer, 0, count);
+			remaining -= count;
+		}
+	}
+	
+	private void inflate(InputStream inputStream, long compressedSize, OutputStream outputStream, CRC32 crc) throws IOException {
+		Inflater inflater = new Inflater(true);
+		
+		byte[] input = new byte[BUFFER_SIZE];
+		byte[] output = new byte[BUFFER_SIZE];
+		long remaining = compressedSize;
+		boolean hasSentPadding = false;
+		
+		try {
+			while (!inflater.finished()) {
+				if (inflater.needsInput()) {
+					if (listener.isCancelled()) {
+						throw new IOException("Cancelled");
+					}
+					
+					if (remaining > 0) {
+						int count = inputStream.read(input, 0, (int) Math.min(input.length, remaining));
+						
+						if (count == -1) {
+							throw new EOFException();
+						}
+						
+						inflater.setInput(input, 0, count);
+						remaining -= count;
+					} else if (!hasSentPadding) {
+						// a raw inflater may need one byte past the end of the data to finish
+						inflater.setInput(new byte[1]);
+						hasSentPadding = true;
+					} else {
+						throw new EOFException();
+					}
+				}
+				
+				int count = inflater.inflate(output);
+				
+				if (count > 0) {
+					outputStream.write(output, 0, count);
+					crc.update(output, 0, count);
+				} else if (inflater.needsDictionary() || (!inflater.needsInput() && !inflater.finished())) {
+					throw new IOException("Invalid deflate data");
+				}
+			}
+			
+			// compressed data the inflater did not need
+			skipFully(inputStream, remaining);
+		} catch (DataFormatException e) {
+			throw new IOException(e.getMessage());
+		} finally {
+			inflater.end();
+		}
+	}
+	
+	/**
+	 * Writes the journal of replacements and deletions. The journal is written to a temporary file and renamed, so it is either
+	 * complete or absent.
+	 */
+	private void writeJournal(List<RemoteEntry> changedEntries, Iterable<String> removedPaths) throws IOException {
+		File temporaryFile = new File(journalFile.getPath() + ".tmp");
+		Writer writer = new FileWriter(temporaryFile);
+		
+		try {
+			for (RemoteEntry entry : changedEntries) {
+				writer.write("R\t" + entry.name + "\n");
+			}
+			
+			for (String path : removedPaths) {
+				writer.write("D\t" + path + "\n");
+			}
+		} finally {
+			writer.close();
+		}
+		
+		if (!temporaryFile.renameTo(journalFile)) {
+			throw new IOException("Could not write " + journalFile);
+		}
+	}
+	
+	/**
+	 * Applies a journal to a package folder. Applying a journal again after it was interrupted completes it.
+	 */
+	private static void applyJournal(File folder) throws IOException {
+		File stagingFolder = getStagingFolder(folder);
+		File journalFile = getJournalFile(folder);
+		
+		BufferedReader reader = new BufferedReader(new FileReader(journalFile));
+		
+		try {
+			String line = null;
+			
+			while ((line = reader.readLine()) != null) {
+				if (line.length() < 3) {
+					continue;
+				}
+				
+				String path = line.substring(2);
+				File file = new File(folder, path);
+				
+				if (line.charAt(0) == 'R') {
+					File stagedFile = new File(stagingFolder, path);
+					
+					// a staged file that is missing has already been moved
+					if (stagedFile.exists()) {
+						file.getParentFile().mkdirs();
+						
+						if (file.exists() && !file.delete()) {
+							throw new IOException("Could not replace " + file);
+						}
+						
+						if (!stagedFile.renameTo(file)) {
+							throw new IOException("Could not move " + stagedFile + " to " + file);
+						}
+					}
+				} else if (line.charAt(0) == 'D') {
+					file.delete();
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		
+		journalFile.delete();
+		FileHelper.deleteFilesRecursive(stagingFolder, true);
+	}
+	
+	private byte[] readRange(long firstByte, long lastByte, String validator) throws IOException {
+		HttpURLConnection connection = openRange(firstByte, lastByte, validator);
+		
+		try {
+			byte[] bytes = new byte[(int) (lastByte - firstByte + 1)];
+			readFully(connection.getInputStream(), bytes, bytes.length);
+			
+			return bytes;
+		} finally {
+			connection.disconnect();
+		}
+	}
+	
+	private HttpURLConnection openRange(long firstByte, long lastByte, String validator) throws IOException {
+		HttpURLConnection connection = connectionFactory.openRangeConnection(firstByte, lastByte, validator);
+		
+		// anything but the requested range means the zip changed since the update started
+		if (connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+			connection.disconnect();
+			throw new IOException("Server did not send bytes " + firstByte + "-" + lastByte);
+		}
+		
+		return connection;
+	}
+	
+	/**
+	 * Returns the total size from a <code>Content-Range: bytes first-last/total</code> response header.
+	 */
+	private static long getContentRangeTotal(HttpURLConnection connection) {
+		String contentRange = connection.getHeaderField("Content-Range");
+		
+		if (contentRange == null || contentRange.indexOf('/') < 0) {
+			return -1;
+		}
+		
+		try {
+			return Long.parseLong(contentRange.substring(contentRange.indexOf('/') + 1).trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+	
+	private static void readFully(InputStream inputStream, byte[] buffer, int length) throws IOException {
+		int offset = 0;
+		
+		while (offset < length) {
+			int count = inputStream.read(buffer, offset, length - offset);
+			
+			if (count == -1) {
+				throw new EOFException();
+			}
+			
+			offset += count;
+		}
+	}
+	
+	private static void skipFully(InputStream inputStream, long length) throws IOException {
+		long remaining = length;
+		
+		while (remaining > 0) {
+			long count = inputStream.skip(remaining);
+			
+			if (count <= 0) {
+				// skip may return 0 before the end of the stream, so read to tell the two apart
+				if (inputStream.read() == -1) {
+					throw new EOFException();
+				}
+				
+				count = 1;
+			}
+			
+			remaining -= count;
+		}
+	}
+	
+	private static int readShort(byte[] bytes, int offset) {
+		return (bytes[offset] & 0xff) | ((bytes[offset + 1] & 0xff) << 8);
+	}
+	
+	private static int readInt(byte[] bytes, int offset) {
+		return (bytes[offset] & 0xff) | ((bytes[offset + 1] & 0xff) << 8) | ((bytes[offset + 2] & 0xff) << 16) | ((bytes[offset + 3] & 0xff) << 24);
+	}
+	
+	/**
+	 * A file entry of the remote zip's central directory.
+	 */
+	private static class RemoteEntry {
+		String name;
+		int method;
+		long crc;
+		long compressedSize;
+		long size;
+		long localHeaderOffset;
+		long dataEnd;
+	}
+}
\ No newline at end of file
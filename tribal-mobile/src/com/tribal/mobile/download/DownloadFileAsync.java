@@ -29,14 +29,21 @@ package com.tribal.mobile.download;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.security.MessageDigest;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.net.ssl.HttpsURLConnection;
 
 import android.content.Context;
 import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
 import android.util.Log;
 
 import com.tribal.mobile.api.packages.PackageItem;
@@ -45,6 +52,8 @@ import com.tribal.mobile.net.AuthHttpConnection;
 import com.tribal.mobile.net.HttpMethod;
 import com.tribal.mobile.net.URLConnectionUtils;
 import com.tribal.mobile.preferences.PrivateSettingsKeys;
+import com.tribal.mobile.util.ChecksumHelper;
+import com.tribal.mobile.util.FileHelper;
 import com.tribal.mobile.util.NativeSettingsHelper;
 import com.tribal.mobile.util.ServiceLayerExceptionHelper;
 
@@ -53,13 +62,43 @@ import com.tribal.mobile.util.ServiceLayerExceptionHelper;
  * 
  * @author Jon Brasted
  */
-public class DownloadFileAsync extends AsyncTask<Object, Double, File> {
+public class DownloadFileAsync extends AsyncTask<Object, Void, File> {
 
 	private String LOG_TAG = "Downloader";
-	private static final int bufferSize = 1024;
+	private static final int bufferSize = 8 * 1024;
+	private static final int HTTP_REQUESTED_RANGE_NOT_SATISFIABLE = 416;
+	private static final int MAX_DOWNLOAD_ATTEMPTS = 2;
+	private static final String STAGING_EXTENSION = ".staging";
+	private static final String PREVIOUS_EXTENSION = ".previous";
+	private static final int CONNECT_TIMEOUT_MILLISECONDS = 15000;
+	private static final int READ_TIMEOUT_MILLISECONDS = 25000;
 	private String fileUrl;
 	private Object payload;
-	private int lastPublishedPercentage = -1;
+	private final ProgressThrottle progressThrottle = new ProgressThrottle();
+	private final Handler progressHandler = new Handler(Looper.getMainLooper());
+	private final AtomicBoolean isProgressUpdatePending = new AtomicBoolean();
+	private long progress = 0;
+	private long progressMax = 0;
+	
+	// delivers the latest reported progress on the main thread; posted at most once until it has run
+	private final Runnable progressUpdateRunnable = new Runnable() {
+		@Override
+		public void run() {
+			isProgressUpdatePending.set(false);
+			
+			long currentProgress;
+			long currentProgressMax;
+			
+			synchronized (progressThrottle) {
+				currentProgress = progress;
+				currentProgressMax = progressMax;
+			}
+			
+			if (progressUpdateCallback != null && !isCancelled()) {
+				progressUpdateCallback.onDownloadFileAsyncProgressUpdate(fileUrl, payload, currentProgress, currentProgressMax);
+			}
+		}
+	};
 	private DownloadFileAsyncProgressUpdate progressUpdateCallback = null;
 	private DownloadFileAsyncCompleted completedCallback = null;
 	private DownloadFileAsyncCancelled cancelledCallback = null;
@@ -67,6 +106,51 @@ public class DownloadFileAsync extends AsyncTask<Object, Double, File> {
 	private Context context = null;
 	private BaseApplication application;
 	private PackageItem packageItem = null;
+	private long resumedFromBytes = 0;
+	private boolean isStreamingInstall = false;
+	private boolean keepRawCopyForResume = true;
+	private boolean isDeltaUpdate = false;
+	private boolean acceptSelfSignedCertificates = false;
+	private boolean isExtracted = false;
+	private ChecksumVerification checksumVerification = ChecksumVerification.UNVERIFIED;
+	private volatile boolean isPaused = false;
+	private volatile long transferredBytes = 0;
+
+	/**
+	 * Returns whether the file was extracted into its course folder while it was downloaded, in which case the returned file may not
+	 * exist and only needs post-processing.
+	 * 
+	 * @return	whether the file was extracted while it was downloaded
+	 */
+	public boolean isExtracted() {
+		return isExtracted;
+	}
+
+	/**
+	 * Returns the number of bytes received so far, for measuring throughput.
+	 * 
+	 * @return	the number of bytes received
+	 */
+	public long getTransferredBytes() {
+		return transferredBytes;
+	}
+	
+	public boolean isPaused() {
+		return isPaused;
+	}
+	
+	public ChecksumVerification getChecksumVerification() {
+		return checksumVerification;
+	}
+	
+	/**
+	 * Returns the number of bytes of a previous partial download that this download resumed from, or 0 if it started from the beginning.
+	 * 
+	 * @return	the number of bytes resumed from
+	 */
+	public long getResumedFromBytes() {
+		return resumedFromBytes;
+	}
 
 	@Override
 	protected File doInBackground(Object... params) {
@@ -99,6 +183,15 @@ public class DownloadFileAsync extends AsyncTask<Object, Double, File> {
 			// ninth param will be application
 			application = (BaseApplication)params[8];
 			
+			// tenth param, if present, will be whether to extract the file while it downloads
+			isStreamingInstall = (params.length > 9) && Boolean.TRUE.equals(params[9]);
+			
+			// eleventh param, if present, will be whether to keep a raw copy of a streamed file so an interrupted download can be resumed
+			keepRawCopyForResume = (params.length <= 10) || !Boolean.FALSE.equals(params[10]);
+			
+			// twelfth param, if present, will be whether an installed package is updated by fetching only its changed files
+			isDeltaUpdate = (params.length > 11) && Boolean.TRUE.equals(params[11]);
+			
 			packageItem = (PackageItem) payload;
 			
 			//Set Package status to updating if it already exists
@@ -111,7 +204,7 @@ public class DownloadFileAsync extends AsyncTask<Object, Double, File> {
 			URL url = new URL(fileUrl);
 			
 			boolean isUrlHttps = url.getProtocol().toLowerCase().equals("https"); 
-			final boolean acceptSelfSignedCertificates = NativeSettingsHelper.getInstance(context).checkAndGetPrivateBooleanSetting(PrivateSettingsKeys.ACCEPT_SSL_SELF_SIGNED_CERTS, false);
+			acceptSelfSignedCertificates = NativeSettingsHelper.getInstance(context).checkAndGetPrivateBooleanSetting(PrivateSettingsKeys.ACCEPT_SSL_SELF_SIGNED_CERTS, false);
 			
 			if (isUrlHttps) {
 				if (acceptSelfSignedCertificates) {
@@ -122,115 +215,583 @@ public class DownloadFileAsync extends AsyncTask<Object, Double, File> {
 				}
 			}
 
-			HttpURLConnection connection = null;
+			String fileName = packageItem.getUniqueId() + ".zip";
+
+			File file = new File(destinationFolderPath, fileName);
 			
-			if (isUrlHttps) {
-				HttpsURLConnection https = (HttpsURLConnection)url.openConnection();
-                https.setHostnameVerifier(URLConnectionUtils.DO_NOT_VERIFY);
-                connection = https;
-			} else {
-				connection = (HttpURLConnection) url.openConnection();
+			File courseFolder = new File(FileHelper.removeExtensionFromPath(file.getAbsolutePath()));
+			
+			// complete or discard an update of the installed package that was interrupted
+			DeltaPackageUpdater.recover(courseFolder);
+			
+			if (isDeltaUpdate && courseFolder.isDirectory()) {
+				if (updateFromDelta(url, isUrlHttps, courseFolder) || isStopped()) {
+					return isStopped() ? null : file;
+				}
 			}
 			
-			connection.setRequestMethod("GET");
+			String expectedChecksum = packageItem.getMD5sum();
 			
-			final AuthHttpConnection result = new AuthHttpConnection(HttpMethod.GET, fileUrl, null, null, null);
-			connection.setRequestProperty("X-AUTH", result.getAuthorisationHeader(false));
-			connection.connect();
+			for (int attempt = 1; ; attempt++) {
+				try {
+					return downloadFile(url, isUrlHttps, file, expectedChecksum);
+				} catch (ChecksumMismatchException e) {
+					if (attempt >= MAX_DOWNLOAD_ATTEMPTS) {
+						checksumVerification = ChecksumVerification.MISMATCH;
+						
+						throw e;
+					}
+					
+					Log.w(LOG_TAG, e.getMessage() + ", downloading again");
+				}
+			}
+		} catch (Exception e) {
+			ServiceLayerExceptionHelper.getInstance().processException(e, context);
+
+			// a paused download may fail as it is stopped, but it will be resumed rather than reported
+			if (failedCallback != null && !isPaused) {
+				failedCallback.onDownloadFileAsyncFailed(fileUrl, payload, e);
+			}
+		}
+
+		return null;
+	}
 
-			double lengthOfFile = 0;
+	/**
+	 * Updates an installed package folder by fetching only the entries of the zip that changed. The per-entry CRC-32s are verified
+	 * instead of the MD5 checksum of the whole zip, which is never downloaded.
+	 * 
+	 * @param url			the url
+	 * @param isUrlHttps	whether the url is https
+	 * @param courseFolder	the installed package folder
+	 * @return				whether the folder was updated; if not, the whole zip should be downloaded
+	 */
+	private boolean updateFromDelta(final URL url, final boolean isUrlHttps, File courseFolder) {
+		DeltaPackageUpdater deltaPackageUpdater = new DeltaPackageUpdater(courseFolder, new DeltaPackageUpdater.RangeConnectionFactory() {
+			@Override
+			public HttpURLConnection openRangeConnection(long firstByte, long lastByte, String validator) throws IOException {
+				return openConnection(url, isUrlHttps, firstByte, lastByte, validator);
+			}
+		}, new SegmentedDownloader.Listener() {
+			@Override
+			public boolean isCancelled() {
+				return DownloadFileAsync.this.isStopped();
+			}
 			
-			//if we can't get file length from the connection then use the one stored on the object.
-			try {
-				double packageSize = Double.parseDouble(packageItem.getFileSize());
+			@Override
+			public void onProgress(long downloadedBytes, long totalBytes) {
+				transferredBytes = downloadedBytes;
+				reportProgress(downloadedBytes, totalBytes);
+			}
+		});
+		
+		// publish progress of 0 to inform that the download has started
+		progressThrottle.reset();
+		reportProgress(0, 100);
+		
+		try {
+			if (deltaPackageUpdater.update()) {
+				Log.d(LOG_TAG, "Updated " + fileUrl + " with " + deltaPackageUpdater.getChangedEntryCount() + " changed and "
+						+ deltaPackageUpdater.getRemovedFileCount() + " removed files");
 				
-				// Convert from kb to bytes
-				lengthOfFile = (long)(packageSize * 1024);
+				reportProgress(100, 100);
 				
-				if (lengthOfFile <= 0) {
-					// lengthOfFile is used for calculating download progress
-					lengthOfFile = connection.getContentLength();
-				}				
-			} catch (Exception e) {
-				Log.e(LOG_TAG, "Error parsing fileSize", e);
+				isExtracted = true;
+				checksumVerification = ChecksumVerification.UNVERIFIED;
+				
+				return true;
 			}
+		} catch (IOException e) {
+			Log.d(LOG_TAG, "Could not update " + fileUrl + " from changed files, downloading the whole package: " + e.getMessage());
+		}
+		
+		return false;
+	}
 
-			String fileName = packageItem.getUniqueId() + ".zip";
+	/**
+	 * Downloads the file, resuming a previous partial download if possible, and verifies it against the expected checksum as it is
+	 * read.
+	 * 
+	 * @param url				the url
+	 * @param isUrlHttps		whether the url is https
+	 * @param file				the destination file
+	 * @param expectedChecksum	the expected MD5 checksum, or <code>null</code> if the file cannot be verified
+	 * @return					the downloaded file, or <code>null</code> if the download was cancelled
+	 * @throws IOException
+	 * @throws ChecksumMismatchException	if the downloaded file does not match the expected checksum
+	 */
+	private File downloadFile(URL url, boolean isUrlHttps, File file, String expectedChecksum) throws IOException {
+		isExtracted = false;
+		
+		// a failed attempt may have reported progress up to 100%, so report this attempt from the start
+		progressThrottle.reset();
+		
+		// resume from a previous partial download if there is one
+		DownloadResumeState resumeState = DownloadResumeState.load(file);
+		
+		if (!resumeState.canResume(fileUrl)) {
+			resumeState.discard();
+		}
 
-			File file = new File(destinationFolderPath, fileName);
+		HttpURLConnection connection = openConnection(url, isUrlHttps, resumeState);
+		
+		if (connection.getResponseCode() == HTTP_REQUESTED_RANGE_NOT_SATISFIABLE
+				|| (connection.getResponseCode() == HttpURLConnection.HTTP_PARTIAL && getContentRangeStart(connection) != resumeState.getDownloadedBytes())) {
+			// the partial file does not match the file on the server, so start again
+			connection.disconnect();
+			resumeState.discard();
+			
+			connection = openConnection(url, isUrlHttps, resumeState);
+		}
+		
+		long offset = 0;
+		
+		if (connection.getResponseCode() == HttpURLConnection.HTTP_PARTIAL) {
+			offset = resumeState.getDownloadedBytes();
+			
+			Log.d(LOG_TAG, "Resuming " + fileUrl + " from byte " + offset);
+		} else if (resumeState.getDownloadedBytes() > 0) {
+			// the server ignored the range or the file has changed, so the whole file is being sent
+			Log.d(LOG_TAG, "Server did not resume " + fileUrl + ", starting again");
+		}
+		
+		resumedFromBytes = offset;
+		
+		long responseTotalBytes = (connection.getContentLength() > 0) ? offset + connection.getContentLength() : 0;
+		
+		String eTag = connection.getHeaderField("ETag");
+		String lastModified = connection.getHeaderField("Last-Modified");
+		
+		// extracting while downloading needs the whole file in order, so it is only possible from the start and without segments
+		boolean isStreaming = isStreamingInstall && (offset == 0);
+		
+		boolean isSegmented = !isStreaming && (offset == 0) && SegmentedDownloader.isSupported(connection, responseTotalBytes);
+		
+		// persist the validators so that the download can be resumed if it is interrupted
+		resumeState.save(fileUrl, eTag, lastModified, responseTotalBytes, isSegmented);
 
-			// this is where the file will be seen after the download
-			FileOutputStream f = new FileOutputStream(file);
+		double lengthOfFile = 0;
+		
+		//if we can't get file length from the connection then use the one stored on the object.
+		try {
+			double packageSize = Double.parseDouble(packageItem.getFileSize());
+			
+			// Convert from kb to bytes
+			lengthOfFile = (long)(packageSize * 1024);
+			
+			if (lengthOfFile <= 0) {
+				// lengthOfFile is used for calculating download progress
+				lengthOfFile = responseTotalBytes;
+			}				
+		} catch (Exception e) {
+			Log.e(LOG_TAG, "Error parsing fileSize", e);
+		}
 
-			// file input is from the url
-			InputStream in = connection.getInputStream();
+		// digest the file as it is read. The state of a digest cannot be saved with the partial file, so the bytes downloaded before
+		// the download was interrupted are read once more to resume it
+		MessageDigest digest = ChecksumHelper.hasChecksum(expectedChecksum) ? ChecksumHelper.createMD5Digest() : null;
+		
+		if (digest != null && offset > 0) {
+			ChecksumHelper.updateDigest(digest, resumeState.getPartialFile(), offset);
+		}
 
-			// here's the download code
-			byte[] buffer = new byte[bufferSize];
-			int len1 = 0;
-			long total = 0;
+		if (isSegmented) {
+			return downloadSegmented(connection, url, isUrlHttps, resumeState, file, lengthOfFile, digest, expectedChecksum);
+		}
+
+		// this is where the file will be written during the download, appending if resuming. A streamed file is only written if it
+		// may need to be resumed, which needs the server to support byte ranges
+		boolean isRawCopyKept = keepRawCopyForResume && isResumeSupported(connection);
+		FileOutputStream f = (isStreaming && !isRawCopyKept) ? null : new FileOutputStream(resumeState.getPartialFile(), offset > 0);
+		
+		File courseFolder = new File(FileHelper.removeExtensionFromPath(file.getAbsolutePath()));
+		File stagingFolder = getStagingFolder(courseFolder);
+		
+		StreamingZipExtractor streamingZipExtractor = null;
+		OutputStream extractorOutputStream = null;
+		
+		if (isStreaming) {
+			// extract into a staging folder as the bytes arrive, so the installed package is untouched until the download is verified
+			FileHelper.deleteFilesRecursive(stagingFolder, true);
+			
+			streamingZipExtractor = new StreamingZipExtractor(stagingFolder, new ZipExtractor.Cancellable() {
+				@Override
+				public boolean isCancelled() {
+					return DownloadFileAsync.this.isStopped();
+				}
+			});
+			
+			extractorOutputStream = streamingZipExtractor.start();
+		}
 
-			// publish progress of 0 to inform that the download has started
-			publishProgress((double) 0, (double) 100);
+		// file input is from the url
+		InputStream in = connection.getInputStream();
 
+		// here's the download code
+		byte[] buffer = new byte[bufferSize];
+		int len1 = 0;
+		long total = offset;
+
+		// publish progress of 0 to inform that the download has started
+		reportProgress(0, 100);
+
+		try {
 			while ((len1 = in.read(buffer)) > 0) {
-				// Stop loop if cancelled (e.g back button press)
-				if (isCancelled()) {
-					f.close();
+				// Stop loop if cancelled (e.g back button press) or paused
+				if (isStopped()) {
 					return null;
 				}
-
+	
 				total += len1;
-
-				// check that we have not already publishes this percentage
-				// publish progress
-				publishProgress((double) total, lengthOfFile);
-
-				f.write(buffer, 0, len1);
+				transferredBytes += len1;
+	
+				// report progress, which is sampled here rather than on the main thread
+				reportProgress(total, (long) lengthOfFile);
+	
+				if (digest != null) {
+					digest.update(buffer, 0, len1);
+				}
+	
+				if (f != null) {
+					f.write(buffer, 0, len1);
+				}
+				
+				if (extractorOutputStream != null) {
+					extractorOutputStream.write(buffer, 0, len1);
+				}
 			}
 			
-			// if file has finished downloading but the total is smaller than length of file, publish another progress update
-			// so file registers as having been downloaded
-			if (total < lengthOfFile) {				
-				publishProgress(lengthOfFile, lengthOfFile);
+			if (streamingZipExtractor != null) {
+				isExtracted = streamingZipExtractor.finish();
+				
+				if (!isExtracted) {
+					return null;
+				}
 			}
+		} catch (IOException e) {
+			if (streamingZipExtractor != null && streamingZipExtractor.isFinished()) {
+				// a write to the extractor fails if extraction failed, so report the cause of that instead
+				streamingZipExtractor.finish();
+			}
+			
+			throw e;
+		} finally {
+			if (f != null) {
+				f.close();
+			}
+			
+			if (streamingZipExtractor != null && !isExtracted) {
+				streamingZipExtractor.cancel();
+				
+				FileHelper.deleteFilesRecursive(stagingFolder, true);
+			}
+		}
+		
+		// if file has finished downloading but the total is smaller than length of file, publish another progress update
+		// so file registers as having been downloaded
+		if (total < lengthOfFile) {				
+			reportProgress((long) lengthOfFile, (long) lengthOfFile);
+		}
+		
+		verifyChecksum(digest, expectedChecksum, resumeState, file);
+		
+		if (isExtracted) {
+			replaceFolder(courseFolder, stagingFolder);
+			
+			// the raw copy was only needed in case the download had to be resumed
+			resumeState.discard();
+			
+			return file;
+		}
+		
+		// this is where the file will be seen after the download
+		if (!resumeState.complete()) {
+			throw new IOException("Could not move " + resumeState.getPartialFile() + " to " + file);
+		}
 
-			f.close();
+		return file;
+	}
 
-			return file;
+	/**
+	 * Downloads the file over several connections with a {@link SegmentedDownloader}, starting with the body of the already open
+	 * connection.
+	 * 
+	 * @param connection		the open connection of a full GET response
+	 * @param url				the url
+	 * @param isUrlHttps		whether the url is https
+	 * @param resumeState		the resume state
+	 * @param file				the destination file
+	 * @param lengthOfFile		the length of the file used for progress
+	 * @param digest			the digest to verify the file with, or <code>null</code> if the file cannot be verified
+	 * @param expectedChecksum	the expected MD5 checksum
+	 * @return					the downloaded file, or <code>null</code> if the download was cancelled
+	 * @throws IOException
+	 * @throws ChecksumMismatchException	if the downloaded file does not match the expected checksum
+	 */
+	private File downloadSegmented(HttpURLConnection connection, final URL url, final boolean isUrlHttps, final DownloadResumeState resumeState, File file, final double lengthOfFile,
+			MessageDigest digest, String expectedChecksum) throws IOException {
+		final String validator = resumeState.getValidator();
+		
+		SegmentedDownloader segmentedDownloader = new SegmentedDownloader(resumeState.getPartialFile(), resumeState.getTotalBytes(),
+				new SegmentedDownloader.RangeConnectionFactory() {
+					@Override
+					public HttpURLConnection openRangeConnection(long firstByte, long lastByte) throws IOException {
+						return openConnection(url, isUrlHttps, firstByte, lastByte, validator);
+					}
+				}, new SegmentedDownloader.Listener() {
+					@Override
+					public boolean isCancelled() {
+						return DownloadFileAsync.this.isStopped();
+					}
+					
+					@Override
+					public void onProgress(long downloadedBytes, long totalBytes) {
+						transferredBytes = downloadedBytes;
+						reportProgress(downloadedBytes, (lengthOfFile > 0) ? (long) lengthOfFile : totalBytes);
+					}
+				});
+		
+		// digest the chunks in order while later chunks are still downloading
+		segmentedDownloader.setDigest(digest);
+		
+		// publish progress of 0 to inform that the download has started
+		reportProgress(0, 100);
+		
+		boolean isCompleted = false;
+		
+		try {
+			isCompleted = segmentedDownloader.download(connection);
+		} finally {
+			// the partial file no longer has gaps, so it can be resumed normally
+			resumeState.save(resumeState.getFileUrl(), resumeState.getETag(), resumeState.getLastModified(), resumeState.getTotalBytes(), false);
+		}
+		
+		if (!isCompleted) {
+			return null;
+		}
+		
+		if (lengthOfFile > resumeState.getTotalBytes()) {
+			reportProgress((long) lengthOfFile, (long) lengthOfFile);
+		}
+		
+		verifyChecksum(digest, expectedChecksum, resumeState, file);
+		
+		if (!resumeState.complete()) {
+			throw new IOException("Could not move " + resumeState.getPartialFile() + " to " + file);
+		}
+		
+		return file;
+	}
 
-		} catch (Exception e) {
-			ServiceLayerExceptionHelper.getInstance().processException(e, context);
+	/**
+	 * Compares the digest of a downloaded file with the expected checksum and records the result. If they do not match, the partial
+	 * file and the staging folder it was extracted into are deleted so that the file is downloaded again from the beginning.
+	 * 
+	 * @param digest			the digest of the downloaded file, or <code>null</code> if the file cannot be verified
+	 * @param expectedChecksum	the expected MD5 checksum
+	 * @param resumeState		the resume state
+	 * @param file				the destination file
+	 * @throws ChecksumMismatchException	if the downloaded file does not match the expected checksum
+	 */
+	private void verifyChecksum(MessageDigest digest, String expectedChecksum, DownloadResumeState resumeState, File file) throws ChecksumMismatchException {
+		if (digest == null) {
+			checksumVerification = ChecksumVerification.UNVERIFIED;
+			return;
+		}
+		
+		String actualChecksum = ChecksumHelper.toHexString(digest.digest());
+		
+		if (ChecksumHelper.matches(expectedChecksum, actualChecksum)) {
+			checksumVerification = ChecksumVerification.VERIFIED;
+			return;
+		}
+		
+		resumeState.discard();
+		
+		if (isExtracted) {
+			// only the staging folder has been extracted to, so the installed package is kept
+			FileHelper.deleteFilesRecursive(getStagingFolder(new File(FileHelper.removeExtensionFromPath(file.getAbsolutePath()))), true);
+			isExtracted = false;
+		}
+		
+		throw new ChecksumMismatchException("Checksum of " + fileUrl + " was " + actualChecksum + " but expected " + expectedChecksum);
+	}
 
-			if (failedCallback != null) {
-				failedCallback.onDownloadFileAsyncFailed(fileUrl, payload, e);
+	/**
+	 * Replaces the installed package folder with the staging folder a streamed download was extracted into. The installed folder is
+	 * moved aside first and restored if the staging folder cannot be moved into its place.
+	 * 
+	 * @param courseFolder	the installed package folder, which may not exist yet
+	 * @param stagingFolder	the staging folder
+	 * @throws IOException	if the staging folder could not be moved into place
+	 */
+	private void replaceFolder(File courseFolder, File stagingFolder) throws IOException {
+		File previousFolder = new File(courseFolder.getParentFile(), courseFolder.getName() + PREVIOUS_EXTENSION);
+		FileHelper.deleteFilesRecursive(previousFolder, true);
+		
+		if ((courseFolder.exists() && !courseFolder.renameTo(previousFolder)) || !stagingFolder.renameTo(courseFolder)) {
+			if (previousFolder.exists()) {
+				previousFolder.renameTo(courseFolder);
 			}
+			
+			FileHelper.deleteFilesRecursive(stagingFolder, true);
+			isExtracted = false;
+			
+			throw new IOException("Could not move " + stagingFolder + " to " + courseFolder);
 		}
+		
+		FileHelper.deleteFilesRecursive(previousFolder, true);
+	}
+	
+	private static File getStagingFolder(File courseFolder) {
+		return new File(courseFolder.getParentFile(), courseFolder.getName() + STAGING_EXTENSION);
+	}
 
-		return null;
+	/**
+	 * Opens a GET connection to the url, requesting only the bytes after the partial file if the download can be resumed.
+	 * 
+	 * @param url			the url
+	 * @param isUrlHttps	whether the url is https
+	 * @param resumeState	the resume state
+	 * @return				the connection
+	 * @throws IOException
+	 */
+	private HttpURLConnection openConnection(URL url, boolean isUrlHttps, DownloadResumeState resumeState) throws IOException {
+		if (resumeState.canResume(fileUrl)) {
+			return openConnection(url, isUrlHttps, resumeState.getDownloadedBytes(), -1, resumeState.getValidator());
+		}
+		
+		return openConnection(url, isUrlHttps, -1, -1, null);
+	}
+	
+	/**
+	 * Opens a GET connection to the url, optionally for a byte range of the file.
+	 * 
+	 * @param url			the url
+	 * @param isUrlHttps	whether the url is https
+	 * @param firstByte		the first byte of the range, or -1 for the whole file
+	 * @param lastByte		the inclusive last byte of the range, or -1 for the rest of the file
+	 * @param validator		the validator the range is conditional on
+	 * @return				the connection
+	 * @throws IOException
+	 */
+	private HttpURLConnection openConnection(URL url, boolean isUrlHttps, long firstByte, long lastByte, String validator) throws IOException {
+		HttpURLConnection connection = null;
+		
+		if (isUrlHttps) {
+			HttpsURLConnection https = (HttpsURLConnection)url.openConnection();
+			
+			// a self-signed certificate cannot name the host, so only skip the host check when those are accepted
+			if (acceptSelfSignedCertificates) {
+				https.setHostnameVerifier(URLConnectionUtils.DO_NOT_VERIFY);
+			}
+			
+			connection = https;
+		} else {
+			connection = (HttpURLConnection) url.openConnection();
+		}
+		
+		connection.setRequestMethod("GET");
+		
+		// fail a stalled connection rather than blocking the download slot indefinitely
+		connection.setConnectTimeout(CONNECT_TIMEOUT_MILLISECONDS);
+		connection.setReadTimeout(READ_TIMEOUT_MILLISECONDS);
+		
+		// byte ranges refer to the unencoded file
+		connection.setRequestProperty("Accept-Encoding", "identity");
+		
+		if (firstByte >= 0) {
+			connection.setRequestProperty("Range", "bytes=" + firstByte + "-" + ((lastByte >= 0) ? String.valueOf(lastByte) : ""));
+			
+			// only honour the range if the file has not changed
+			if (validator != null) {
+				connection.setRequestProperty("If-Range", validator);
+			}
+		}
+		
+		final AuthHttpConnection result = new AuthHttpConnection(HttpMethod.GET, fileUrl, null, null, null);
+		connection.setRequestProperty("X-AUTH", result.getAuthorisationHeader(false));
+		connection.connect();
+		
+		return connection;
+	}
+	
+	/**
+	 * Returns whether a download from a response could be resumed with a <code>Range</code> request: the server accepts byte ranges
+	 * and the response has a validator to check that the file has not changed in the meantime.
+	 * 
+	 * @param connection	the connection
+	 * @return				whether the download could be resumed
+	 */
+	private boolean isResumeSupported(HttpURLConnection connection) {
+		return "bytes".equalsIgnoreCase(connection.getHeaderField("Accept-Ranges"))
+				&& (!TextUtils.isEmpty(connection.getHeaderField("ETag")) || !TextUtils.isEmpty(connection.getHeaderField("Last-Modified")));
 	}
 
-	@Override
-	protected void onProgressUpdate(Double... values) {
-		Log.d(LOG_TAG, "" + values[0]);
+	/**
+	 * Returns the first byte position of a <code>Content-Range: bytes first-last/total</code> response header.
+	 * 
+	 * @param connection	the connection
+	 * @return				the first byte position, or -1 if the header is missing or invalid
+	 */
+	private long getContentRangeStart(HttpURLConnection connection) {
+		String contentRange = connection.getHeaderField("Content-Range");
+		
+		if (contentRange == null || !contentRange.startsWith("bytes ")) {
+			return -1;
+		}
+		
+		int dashIndex = contentRange.indexOf('-');
+		
+		if (dashIndex < 0) {
+			return -1;
+		}
+		
+		try {
+			return Long.parseLong(contentRange.substring("bytes ".length(), dashIndex).trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
 
-		double percentageDownloaded = values[0] / values[1] * 100;
-		int percentage = (int) percentageDownloaded;
+	/**
+	 * Stops the download without cancelling it, keeping the partial file so that the download can be resumed later. Neither the
+	 * completed, cancelled nor failed callback is invoked for a paused download.
+	 */
+	public void pause() {
+		isPaused = true;
+	}
+	
+	private boolean isStopped() {
+		return isPaused || isCancelled();
+	}
 
-		// check that we have not already publishes this percentage
-		if (lastPublishedPercentage < percentage) {
-			// send progress update
-			if (progressUpdateCallback != null) {
-				progressUpdateCallback.onDownloadFileAsyncProgressUpdate(fileUrl, payload, Double.valueOf(values[0]).longValue(), Double.valueOf(values[1]).longValue());
+	/**
+	 * Reports download progress from the worker thread. Values are sampled by a {@link ProgressThrottle} and only the latest is
+	 * delivered to the progress callback on the main thread, so that reading a chunk neither allocates nor posts a message.
+	 * 
+	 * @param progress	the number of bytes downloaded
+	 * @param max		the total number of bytes
+	 */
+	private void reportProgress(long progress, long max) {
+		synchronized (progressThrottle) {
+			if (!progressThrottle.shouldReport(progress, max)) {
+				return;
 			}
-
-			lastPublishedPercentage = percentage;
+			
+			this.progress = progress;
+			this.progressMax = max;
+		}
+		
+		if (isProgressUpdatePending.compareAndSet(false, true)) {
+			progressHandler.post(progressUpdateRunnable);
 		}
 	}
 
 	@Override
 	protected void onPostExecute(File file) {
-		if (file != null && completedCallback != null) {
+		// a download paused as it completed is resumed rather than reported, as the service has already put it back in the queue
+		if (file != null && completedCallback != null && !isPaused) {
 			completedCallback.onDownloadFileAsyncCompleted(fileUrl, payload, file);
 		}
 	}
@@ -256,4 +817,15 @@ public class DownloadFileAsync extends AsyncTask<Object, Double, File> {
 			cancelledCallback.onDownloadFileAsyncCancelled(fileUrl, payload);
 		}
 	}
+	
+	/**
+	 * Thrown when a downloaded file does not match its expected checksum.
+	 */
+	private static class ChecksumMismatchException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		public ChecksumMismatchException(String message) {
+			super(message);
+		}
+	}
 }
\ No newline at end of file
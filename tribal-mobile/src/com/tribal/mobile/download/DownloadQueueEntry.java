@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.download;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import android.util.Base64;
+import android.util.Log;
+
+import com.tribal.mobile.api.packages.PackageItem;
+
+/**
+ * Class that represents a package in the persisted download queue.
+ * 
+ * @author Jon Brasted
+ */
+public class DownloadQueueEntry {
+	/* Fields */
+	
+	private final static String LOG_TAG = "DownloadQueueEntry";
+	
+	private PackageItem packageItem;
+	private DownloadQueueState state;
+	private File file;
+	private boolean isExtracted;
+	private ChecksumVerification checksumVerification;
+	
+	/* Properties */
+	
+	public PackageItem getPackageItem() {
+		return packageItem;
+	}
+	
+	public DownloadQueueState getState() {
+		return state;
+	}
+	
+	public File getFile() {
+		return file;
+	}
+	
+	public boolean isExtracted() {
+		return isExtracted;
+	}
+	
+	public ChecksumVerification getChecksumVerification() {
+		return checksumVerification;
+	}
+	
+	/* Constructor */
+	
+	public DownloadQueueEntry(PackageItem packageItem, DownloadQueueState state, File file, boolean isExtracted, ChecksumVerification checksumVerification) {
+		this.packageItem = packageItem;
+		this.state = state;
+		this.file = file;
+		this.isExtracted = isExtracted;
+		this.checksumVerification = checksumVerification;
+	}
+	
+	/* Methods */
+	
+	/**
+	 * Serializes a package item into a string that can be stored in the database.
+	 * 
+	 * @param packageItem	the package item
+	 * @return				the serialized package item
+	 */
+	public static String serializePackageItem(PackageItem packageItem) {
+		try {
+			ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+			ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteArrayOutputStream);
+			
+			try {
+				objectOutputStream.writeObject(packageItem);
+			} finally {
+				objectOutputStream.close();
+			}
+			
+			return Base64.encodeToString(byteArrayOutputStream.toByteArray(), Base64.NO_WRAP);
+		} catch (IOException e) {
+			// writing to memory does not fail
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * Deserializes a package item stored with {@link #serializePackageItem(PackageItem)}.
+	 * 
+	 * @param serializedPackageItem	the serialized package item
+	 * @return						the package item, or <code>null</code> if it could not be read, e.g. because the class has changed
+	 */
+	public static PackageItem deserializePackageItem(String serializedPackageItem) {
+		try {
+			ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(Base64.decode(serializedPackageItem, Base64.NO_WRAP)));
+			
+			try {
+				return (PackageItem) objectInputStream.readObject();
+			} finally {
+				objectInputStream.close();
+			}
+		} catch (Exception e) {
+			Log.e(LOG_TAG, "Could not read queued package item", e);
+			
+			return null;
+		}
+	}
+}
\ No newline at end of file
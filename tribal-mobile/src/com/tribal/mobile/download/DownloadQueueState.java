@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.download;
+
+/**
+ * Enumeration that represents the state of a package in the persisted download queue. A package moves through the states in order and
+ * is removed from the queue once it has been processed, cancelled or has failed, unless it failed its checksum before it was first
+ * installed.
+ * 
+ * @author Jon Brasted
+ */
+public enum DownloadQueueState {
+	/**
+	 * The package is waiting to be downloaded.
+	 */
+	QUEUED,
+	
+	/**
+	 * The package is being downloaded. A package found in this state at startup is downloaded again, resuming any partial file.
+	 */
+	DOWNLOADING,
+	
+	/**
+	 * The package has been downloaded and is waiting to be processed.
+	 */
+	DOWNLOADED,
+	
+	/**
+	 * The package is being unzipped and added to the library. A package found in this state at startup is processed again.
+	 */
+	PROCESSING,
+	
+	/**
+	 * The package was not installed because it did not match its checksum. It has no library entry to record the mismatch on, so the
+	 * entry is kept as the record until the package is queued again. A package found in this state at startup is not downloaded.
+	 */
+	FAILED
+}
\ No newline at end of file
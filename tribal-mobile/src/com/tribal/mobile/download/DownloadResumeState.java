@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.download;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+import android.text.TextUtils;
+
+/**
+ * Persisted state of a partially downloaded file, used to resume the download with an HTTP <code>Range</code> request. The partial
+ * file is stored next to the destination file with a <code>.part</code> suffix, and the url and validators (<code>ETag</code> and
+ * <code>Last-Modified</code>) of the response it came from are stored in a <code>.resume</code> properties file.
+ * 
+ * @author Jon Brasted
+ */
+public class DownloadResumeState {
+	/* Fields */
+	
+	private final static String PARTIAL_FILE_SUFFIX = ".part";
+	private final static String STATE_FILE_SUFFIX = ".resume";
+	
+	private final static String FILE_URL_KEY = "fileUrl";
+	private final static String ETAG_KEY = "eTag";
+	private final static String LAST_MODIFIED_KEY = "lastModified";
+	private final static String TOTAL_BYTES_KEY = "totalBytes";
+	private final static String SEGMENTED_KEY = "segmented";
+	
+	private final File destinationFile;
+	private final File partialFile;
+	private final File stateFile;
+	
+	private String fileUrl;
+	private String eTag;
+	private String lastModified;
+	private long totalBytes;
+	private boolean isSegmented;
+	
+	/* Properties */
+	
+	public File getDestinationFile() {
+		return destinationFile;
+	}
+	
+	public File getPartialFile() {
+		return partialFile;
+	}
+	
+	public String getFileUrl() {
+		return fileUrl;
+	}
+	
+	public String getETag() {
+		return eTag;
+	}
+	
+	public String getLastModified() {
+		return lastModified;
+	}
+	
+	/**
+	 * Returns the total size of the file, or 0 if it is not known.
+	 * 
+	 * @return	the total size of the file in bytes
+	 */
+	public long getTotalBytes() {
+		return totalBytes;
+	}
+	
+	/**
+	 * Returns whether a segmented download was writing to the partial file. Such a file is preallocated and may have gaps, so if this
+	 * is still set when the state is loaded the download was not stopped cleanly and cannot be resumed.
+	 * 
+	 * @return	whether a segmented download was writing to the partial file
+	 */
+	public boolean isSegmented() {
+		return isSegmented;
+	}
+	
+	/**
+	 * Returns the number of bytes already downloaded.
+	 * 
+	 * @return	the number of bytes already downloaded
+	 */
+	public long getDownloadedBytes() {
+		return partialFile.exists() ? partialFile.length() : 0;
+	}
+	
+	/**
+	 * Returns the validator to send in an <code>If-Range</code> header, preferring the <code>ETag</code>.
+	 * 
+	 * @return	the validator, or <code>null</code> if there is none
+	 */
+	public String getValidator() {
+		return !TextUtils.isEmpty(eTag) ? eTag : lastModified;
+	}
+	
+	/**
+	 * Returns whether the download of the specified url can be resumed from the partial file.
+	 * 
+	 * @param fileUrl	the url being downloaded
+	 * @return			whether the download can be resumed
+	 */
+	public boolean canResume(String fileUrl) {
+		return !isSegmented && getDownloadedBytes() > 0 && TextUtils.equals(this.fileUrl, fileUrl) && !TextUtils.isEmpty(getValidator());
+	}
+	
+	/* Constructor */
+	
+	private DownloadResumeState(File destinationFile) {
+		this.destinationFile = destinationFile;
+		this.partialFile = new File(destinationFile.getPath() + PARTIAL_FILE_SUFFIX);
+		this.stateFile = new File(destinationFile.getPath() + STATE_FILE_SUFFIX);
+	}
+	
+	/* Methods */
+	
+	/**
+	 * Loads the resume state for a destination file. If no state has been persisted, the returned state cannot be resumed.
+	 * 
+	 * @param destinationFile	the file the download is written to once complete
+	 * @return					the resume state
+	 */
+	public static DownloadResumeState load(File destinationFile) {
+		DownloadResumeState state = new DownloadResumeState(destinationFile);
+		
+		if (state.stateFile.exists()) {
+			Properties properties = new Properties();
+			FileInputStream inputStream = null;
+			
+			try {
+				inputStream = new FileInputStream(state.stateFile);
+				properties.load(inputStream);
+				
+				state.fileUrl = properties.getProperty(FILE_URL_KEY);
+				state.eTag = properties.getProperty(ETAG_KEY);
+				state.lastModified = properties.getProperty(LAST_MODIFIED_KEY);
+				state.totalBytes = Long.parseLong(properties.getProperty(TOTAL_BYTES_KEY, "0"));
+				state.isSegmented = Boolean.parseBoolean(properties.getProperty(SEGMENTED_KEY));
+			} catch (Exception e) {
+				// treat unreadable state as no state
+				e.printStackTrace();
+				
+				state.fileUrl = null;
+			} finally {
+				if (inputStream != null) {
+					try {
+						inputStream.close();
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			}
+		}
+		
+		return state;
+	}
+	
+	/**
+	 * Records the url and validators of the response the partial file is being written from.
+	 * 
+	 * @param fileUrl		the url
+	 * @param eTag			the <code>ETag</code> response header, may be <code>null</code>
+	 * @param lastModified	the <code>Last-Modified</code> response header, may be <code>null</code>
+	 * @param totalBytes	the total size of the file, or 0 if it is not known
+	 * @throws IOException
+	 */
+	public void save(String fileUrl, String eTag, String lastModified, long totalBytes) throws IOException {
+		save(fileUrl, eTag, lastModified, totalBytes, false);
+	}
+	
+	/**
+	 * Records the url and validators of the response the partial file is being written from, and whether it is being written by a
+	 * segmented download.
+	 * 
+	 * @param fileUrl		the url
+	 * @param eTag			the <code>ETag</code> response header, may be <code>null</code>
+	 * @param lastModified	the <code>Last-Modified</code> response header, may be <code>null</code>
+	 * @param totalBytes	the total size of the file, or 0 if it is not known
+	 * @param isSegmented	whether a segmented download is writing the partial file
+	 * @throws IOException
+	 */
+	public void save(String fileUrl, String eTag, String lastModified, long totalBytes, boolean isSegmented) throws IOException {
+		this.fileUrl = fileUrl;
+		this.eTag = eTag;
+		this.lastModified = lastModified;
+		this.totalBytes = totalBytes;
+		this.isSegmented = isSegmented;
+		
+		Properties properties = new Properties();
+		properties.setProperty(FILE_URL_KEY, fileUrl);
+		
+		if (eTag != null) {
+			properties.setProperty(ETAG_KEY, eTag);
+		}
+		
+		if (lastModified != null) {
+			properties.setProperty(LAST_MODIFIED_KEY, lastModified);
+		}
+		
+		properties.setProperty(TOTAL_BYTES_KEY, String.valueOf(totalBytes));
+		properties.setProperty(SEGMENTED_KEY, String.valueOf(isSegmented));
+		
+		FileOutputStream outputStream = new FileOutputStream(stateFile);
+		
+		try {
+			properties.store(outputStream, null);
+		} finally {
+			outputStream.close();
+		}
+	}
+	
+	/**
+	 * Moves the completed partial file to the destination file and deletes the persisted state.
+	 * 
+	 * @return	whether the partial file was moved
+	 */
+	public boolean complete() {
+		if (destinationFile.exists()) {
+			destinationFile.delete();
+		}
+		
+		boolean isRenamed = partialFile.renameTo(destinationFile);
+		
+		stateFile.delete();
+		
+		return isRenamed;
+	}
+	
+	/**
+	 * Deletes the partial file and the persisted state so that the next download starts from the beginning.
+	 */
+	public void discard() {
+		partialFile.delete();
+		stateFile.delete();
+		
+		fileUrl = null;
+		eTag = null;
+		lastModified = null;
+		totalBytes = 0;
+		isSegmented = false;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.download;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.tribal.mobile.net.ConnectivityMode;
+import com.tribal.mobile.phonegap.MFSettingsKeys;
+import com.tribal.mobile.util.NativeSettingsHelper;
+
+/**
+ * Decides how many packages {@link DownloadService} downloads and unzips at once.
+ * 
+ * <p>
+ * The download limit depends on the connection and the user's data use preference: downloads are paused when there is no connection
+ * the preference allows, throttled to {@link #MAX_CELLULAR_DOWNLOADS} on cellular data, and start at {@link #MIN_WIFI_DOWNLOADS} on
+ * wifi. While downloads are waiting and the limit is reached, the throughput of each download is sampled every
+ * {@link #SAMPLE_INTERVAL_MILLISECONDS}; the limit is raised by one, up to {@link #MAX_WIFI_DOWNLOADS}, and lowered again if doing so
+ * did not increase the aggregate throughput by at least {@link #MIN_THROUGHPUT_GAIN}.
+ * </p>
+ * 
+ * @author Jon Brasted
+ */
+public class DownloadScheduler {
+	/* Fields */
+	
+	public final static int MAX_CELLULAR_DOWNLOADS = 1;
+	public final static int MIN_WIFI_DOWNLOADS = 2;
+	public final static int MAX_WIFI_DOWNLOADS = 4;
+	public final static long SAMPLE_INTERVAL_MILLISECONDS = 2000;
+	public final static double MIN_THROUGHPUT_GAIN = 1.1;
+	
+	private final static String LOG_TAG = "DownloadScheduler";
+	
+	/**
+	 * Unzips use several threads each, so a second one only runs alongside on devices with this many processors.
+	 */
+	private final static int MIN_PROCESSORS_FOR_CONCURRENT_UNZIPS = 4;
+	
+	private final Context context;
+	
+	private boolean isPaused = true;
+	private boolean isCellular;
+	private int maxConcurrentDownloads;
+	private int ceiling;
+	
+	private boolean isJudgingRaise;
+	private double throughputBeforeRaise;
+	
+	private long lastSampleTime;
+	private final Map<String, Long> lastTransferredBytes = new HashMap<String, Long>();
+	private final Map<String, Double> throughputs = new HashMap<String, Double>();
+	private double aggregateThroughput;
+	
+	/* Properties */
+	
+	/**
+	 * Returns whether downloads are paused because there is no connection the user's data use preference allows.
+	 * 
+	 * @return	whether downloads are paused
+	 */
+	public boolean isPaused() {
+		return isPaused;
+	}
+	
+	/**
+	 * Returns whether downloads are throttled because they use cellular data.
+	 * 
+	 * @return	whether downloads are throttled
+	 */
+	public boolean isThrottled() {
+		return !isPaused && isCellular;
+	}
+	
+	public int getMaxConcurrentDownloads() {
+		return isPaused ? 0 : maxConcurrentDownloads;
+	}
+	
+	public int getMaxConcurrentUnzips() {
+		return (Runtime.getRuntime().availableProcessors() >= MIN_PROCESSORS_FOR_CONCURRENT_UNZIPS) ? 2 : 1;
+	}
+	
+	/**
+	 * Returns the most recently sampled throughput of a download.
+	 * 
+	 * @param fileUrl	the url of the download
+	 * @return			the throughput in bytes per second, or 0 if it has not been sampled
+	 */
+	public double getThroughput(String fileUrl) {
+		Double throughput = throughputs.get(fileUrl);
+		
+		return (throughput != null) ? throughput : 0;
+	}
+	
+	/**
+	 * Returns the most recently sampled throughput of all downloads.
+	 * 
+	 * @return	the throughput in bytes per second
+	 */
+	public double getAggregateThroughput() {
+		return aggregateThroughput;
+	}
+	
+	/* Constructor */
+	
+	public DownloadScheduler(Context context) {
+		this.context = context;
+		
+		updateConnectivity();
+	}
+	
+	/* Methods */
+	
+	/**
+	 * Reads the active connection and the user's data use preference, resetting the download limit if they have changed.
+	 * 
+	 * @return	whether the pause or throttle state changed
+	 */
+	public boolean updateConnectivity() {
+		ConnectivityMode connectivityMode = ConnectivityMode.wifiAndCellularData;
+		
+		try {
+			String connectivityModeString = NativeSettingsHelper.getInstance(context).checkAndGetNativeSetting(MFSettingsKeys.DATA_USE,
+					ConnectivityMode.wifiAndCellularData.toString());
+			
+			connectivityMode = Enum.valueOf(ConnectivityMode.class, connectivityModeString);
+		} catch (Exception exception) {
+			exception.printStackTrace();
+		}
+		
+		ConnectivityManager connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+		NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+		
+		boolean isConnected = (networkInfo != null && networkInfo.isConnected());
+		boolean isWifi = isConnected && (networkInfo.getType() == ConnectivityManager.TYPE_WIFI || networkInfo.getType() == ConnectivityManager.TYPE_ETHERNET);
+		boolean isMobile = isConnected && networkInfo.getType() == ConnectivityManager.TYPE_MOBILE;
+		
+		boolean isAllowed = (isWifi && connectivityMode != ConnectivityMode.cellularDataOnly)
+				|| (isMobile && connectivityMode != ConnectivityMode.wifiOnly);
+		
+		boolean wasPaused = isPaused;
+		boolean wasCellular = isCellular;
+		
+		isPaused = !isAllowed;
+		isCellular = isMobile;
+		
+		if (isPaused == wasPaused && isCellular == wasCellular) {
+			return false;
+		}
+		
+		// start again from the base limit of the new connection
+		ceiling = isCellular ? MAX_CELLULAR_DOWNLOADS : MAX_WIFI_DOWNLOADS;
+		maxConcurrentDownloads = isCellular ? MAX_CELLULAR_DOWNLOADS : MIN_WIFI_DOWNLOADS;
+		isJudgingRaise = false;
+		
+		Log.d(LOG_TAG, isPaused ? "Downloads paused" : ("Downloading " + maxConcurrentDownloads + " at once on " + (isCellular ? "cellular data" : "wifi")));
+		
+		return true;
+	}
+	
+	/**
+	 * Samples the throughput of the running downloads and adapts the download limit.
+	 * 
+	 * @param transferredBytes	the number of bytes each running download has received, by url
+	 * @param hasWaitingDownloads	whether downloads are waiting for the limit to be raised
+	 */
+	public void sample(Map<String, Long> transferredBytes, boolean hasWaitingDownloads) {
+		long now = SystemClock.elapsedRealtime();
+		long elapsedMilliseconds = now - lastSampleTime;
+		
+		lastSampleTime = now;
+		
+		double sampledAggregateThroughput = 0;
+		Map<String, Double> sampledThroughputs = new HashMap<String, Double>();
+		
+		for (Map.Entry<String, Long> entry : transferredBytes.entrySet()) {
+			Long lastBytes = lastTransferredBytes.get(entry.getKey());
+			
+			if (lastBytes != null && elapsedMilliseconds > 0) {
+				double throughput = Math.max(0, entry.getValue() - lastBytes) * 1000.0 / elapsedMilliseconds;
+				
+				sampledThroughputs.put(entry.getKey(), throughput);
+				sampledAggregateThroughput += throughput;
+			}
+		}
+		
+		lastTransferredBytes.clear();
+		lastTransferredBytes.putAll(transferredBytes);
+		
+		throughputs.clear();
+		throughputs.putAll(sampledThroughputs);
+		
+		// only adapt once every running download has been sampled at the current limit
+		if (isPaused || sampledThroughputs.size() < transferredBytes.size() || transferredBytes.size() < maxConcurrentDownloads) {
+			return;
+		}
+		
+		aggregateThroughput = sampledAggregateThroughput;
+		
+		if (isJudgingRaise) {
+			isJudgingRaise = false;
+			
+			if (aggregateThroughput < throughputBeforeRaise * MIN_THROUGHPUT_GAIN) {
+				// the extra download did not help, so go back and stay there
+				maxConcurrentDownloads--;
+				ceiling = maxConcurrentDownloads;
+				
+				Log.d(LOG_TAG, "Lowered download limit to " + maxConcurrentDownloads + " at " + (long) aggregateThroughput + " bytes/s");
+			}
+		} else if (hasWaitingDownloads && maxConcurrentDownloads < ceiling) {
+			throughputBeforeRaise = aggregateThroughput;
+			maxConcurrentDownloads++;
+			isJudgingRaise = true;
+			
+			Log.d(LOG_TAG, "Raised download limit to " + maxConcurrentDownloads + " at " + (long) aggregateThroughput + " bytes/s");
+		}
+	}
+}
\ No newline at end of file
@@ -29,30 +29,36 @@ package com.tribal.mobile.download;
 
 import java.io.File;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 
 import android.content.Intent;
+import android.net.ConnectivityManager;
+import android.os.Handler;
 import android.os.IBinder;
 import android.util.Log;
 
 import com.tribal.mobile.api.packages.PackageItem;
+import com.tribal.mobile.base.BaseApplication;
 import com.tribal.mobile.base.IntentParameterConstants;
 import com.tribal.mobile.base.ServiceBase;
 import com.tribal.mobile.util.AsyncTaskHelper;
+import com.tribal.mobile.util.database.BaseDatabaseHelper;
 
 /**
  * Class provides the logic required to queue up and download a file.
  * 
  * @author Jon Brasted
  */
-public abstract class DownloadService extends ServiceBase implements DownloadFileAsyncProgressUpdate, DownloadFileAsyncCompleted, DownloadFileAsyncCancelled, DownloadFileAsyncFailed, UnzipFileAsyncCompleted {
+public abstract class DownloadService extends ServiceBase implements DownloadFileAsyncProgressUpdate, DownloadFileAsyncCompleted, DownloadFileAsyncCancelled, DownloadFileAsyncFailed, UnzipFileAsyncCompleted, UnzipFileAsyncProgressUpdate {
 	/* Fields */
 
-	private final static int MAX_CONCURRENT_DOWNLOADS = 3;
-
 	protected Queue<PackageItem> downloadQueue;
 
 	private Map<String, PackageItem> currentDownloads;
@@ -60,9 +66,26 @@ public abstract class DownloadService extends ServiceBase implements DownloadFil
 
 	protected Queue<File> unzipQueue;
 	protected Map<File, PackageItem> unzipFileMap;
+	
+	// files that were extracted while they downloaded and only need post-processing
+	private Set<File> extractedFiles;
+	
+	// the result of verifying each downloaded file against its checksum
+	private Map<File, ChecksumVerification> checksumVerifications;
 
 	private int concurrentDownloads = 0;
-	private File currentFileToUnzip = null;
+	private Set<File> currentFilesToUnzip;
+	
+	// decides how many packages are downloaded and unzipped at once
+	private DownloadScheduler downloadScheduler;
+	
+	private Handler handler;
+	private final Runnable sampleDownloadsRunnable = new Runnable() {
+		@Override
+		public void run() {
+			sampleDownloads();
+		}
+	};
 
 	/* Properties */
 
@@ -75,6 +98,36 @@ public abstract class DownloadService extends ServiceBase implements DownloadFil
 		return null;
 	}
 
+	/**
+	 * Returns whether packages are extracted while they download rather than after. Intended to be overriden.
+	 * 
+	 * @return whether packages are extracted while they download
+	 */
+	protected boolean isStreamingInstallEnabled() {
+		return true;
+	}
+	
+	/**
+	 * Returns whether an installed package is updated by fetching only the files that changed in its new version, rather than the
+	 * whole package. Requires the server to support byte ranges; otherwise the whole package is downloaded. Intended to be overriden.
+	 * 
+	 * @return whether installed packages are updated with only their changed files
+	 */
+	protected boolean isDeltaUpdateEnabled() {
+		return true;
+	}
+	
+	/**
+	 * Returns whether a raw copy of a package that is extracted while it downloads is kept until the install completes, so that an
+	 * interrupted download can be resumed. The copy is only kept if the server supports byte ranges and sends a validator, since
+	 * otherwise the download could not be resumed from it. Intended to be overriden.
+	 * 
+	 * @return whether a raw copy is kept
+	 */
+	protected boolean isRawCopyKeptForResume() {
+		return true;
+	}
+
 	/**
 	 * Returns a {@link java.util.Map} of the current downloads in progress.
 	 * 
@@ -93,6 +146,31 @@ public abstract class DownloadService extends ServiceBase implements DownloadFil
 		return currentDownloadTasks;
 	}
 
+	/**
+	 * Returns the scheduler that decides how many packages are downloaded and unzipped at once, e.g. to show the throughput of a
+	 * download.
+	 * 
+	 * @return	the download scheduler
+	 */
+	protected DownloadScheduler getDownloadScheduler() {
+		return downloadScheduler;
+	}
+
+	/**
+	 * Returns the resume state of a package's download, which describes any partially downloaded file left by an interrupted or
+	 * cancelled download.
+	 * 
+	 * @param packageItem	the package item
+	 * @return				the resume state
+	 */
+	protected DownloadResumeState getDownloadResumeState(PackageItem packageItem) {
+		return DownloadResumeState.load(new File(getDownloadDestinationPath(), packageItem.getUniqueId() + ".zip"));
+	}
+
+	private BaseDatabaseHelper getDatabaseHelper() {
+		return ((BaseApplication) getApplication()).getDatabaseHelper();
+	}
+
 	/* Methods */
 
 	@Override
@@ -100,6 +178,19 @@ public abstract class DownloadService extends ServiceBase implements DownloadFil
 		return null;
 	}
 
+	@Override
+	public void onDestroy() {
+		handler.removeCallbacks(sampleDownloadsRunnable);
+		
+		super.onDestroy();
+	}
+
+	@Override
+	public int onStartCommand(Intent intent, int flags, int startId) {
+		// restart the service if its process is killed so that the persisted queue is resumed
+		return START_STICKY;
+	}
+
 	@Override
 	public void onCreate() {
 		super.onCreate();
@@ -118,11 +209,80 @@ public abstract class DownloadService extends ServiceBase implements DownloadFil
 
 		// create unzipFileMap
 		unzipFileMap = new HashMap<File, PackageItem>();
+		
+		// create extractedFiles
+		extractedFiles = new HashSet<File>();
+		
+		// create checksumVerifications
+		checksumVerifications = new HashMap<File, ChecksumVerification>();
+		
+		// create currentFilesToUnzip
+		currentFilesToUnzip = new HashSet<File>();
+		
+		// create downloadScheduler
+		downloadScheduler = new DownloadScheduler(getApplicationContext());
+		
+		handler = new Handler();
+		
+		// complete any package updates that were interrupted, which only needs a directory listing if there are none
+		if (getDownloadDestinationPath() != null) {
+			DeltaPackageUpdater.recoverAll(new File(getDownloadDestinationPath()));
+		}
 
 		// add broadcast receivers
 		addBroadcastReceiver(DownloadBroadcastActions.AddPackageToLibrary);
 		addBroadcastReceiver(DownloadBroadcastActions.PackageDownloadCancelRequest);
 		addBroadcastReceiver(DownloadBroadcastActions.PackageDownloadCancelAllRequest);
+		addBroadcastReceiver(ConnectivityManager.CONNECTIVITY_ACTION);
+		
+		// resume the work that was queued or in progress when the service last stopped
+		restoreQueue();
+	}
+
+	/**
+	 * Restores the persisted download queue. Packages that were downloaded are processed, unless their file has gone, packages that
+	 * failed their checksum are left alone and all other packages are downloaded again, resuming any partial file. Library entries left in the updating state by work that is no longer
+	 * queued are then reset.
+	 */
+	private void restoreQueue() {
+		BaseDatabaseHelper databaseHelper = getDatabaseHelper();
+		
+		if (databaseHelper == null) {
+			return;
+		}
+		
+		List<DownloadQueueEntry> downloadQueueEntries = databaseHelper.getDownloadQueueEntries();
+		
+		for (DownloadQueueEntry downloadQueueEntry : downloadQueueEntries) {
+			PackageItem packageItem = downloadQueueEntry.getPackageItem();
+			File file = downloadQueueEntry.getFile();
+			
+			boolean isDownloaded = (downloadQueueEntry.getState() == DownloadQueueState.DOWNLOADED || downloadQueueEntry.getState() == DownloadQueueState.PROCESSING)
+					&& file != null && (downloadQueueEntry.isExtracted() || file.exists());
+			
+			if (downloadQueueEntry.getState() == DownloadQueueState.FAILED) {
+				// only kept to record why the package was not installed
+				continue;
+			}
+			
+			Log.d("Download service", "Restoring " + packageItem.getUniqueId() + " from state " + downloadQueueEntry.getState());
+			
+			if (isDownloaded) {
+				if (downloadQueueEntry.isExtracted()) {
+					extractedFiles.add(file);
+				}
+				
+				if (downloadQueueEntry.getChecksumVerification() != null) {
+					checksumVerifications.put(file, downloadQueueEntry.getChecksumVerification());
+				}
+				
+				queueFileForUnzip(file, packageItem);
+			} else {
+				queuePackageItemForDownload(packageItem);
+			}
+		}
+		
+		databaseHelper.resetStaleLibraryEntryStates(DownloadBroadcastActions.PackageUpdate, DownloadBroadcastActions.PackageProcessingCompleted);
 	}
 
 	/**
@@ -145,6 +305,8 @@ public abstract class DownloadService extends ServiceBase implements DownloadFil
 			cancelPackageDownload(intent);
 		} else if (DownloadBroadcastActions.PackageDownloadCancelAllRequest.equalsIgnoreCase(action)) {
 			cancelAllDownloads();
+		} else if (ConnectivityManager.CONNECTIVITY_ACTION.equals(action)) {
+			onConnectivityChanged();
 		} else {
 			onBroadcastReceiveOverride(intent);
 		}
@@ -174,22 +336,106 @@ public abstract class DownloadService extends ServiceBase implements DownloadFil
 	private void queuePackageItemForDownload(PackageItem packageItem) {
 		if (!downloadQueue.contains(packageItem)) {
 			downloadQueue.add(packageItem);
+			
+			// persist the queued package
+			getDatabaseHelper().createDownloadQueueEntry(packageItem);
 
 			// send downloading queued broadcast
 			sendBroadcast(DownloadBroadcastActions.PackageDownloadQueued,
 					packageItem);
 
-			if (concurrentDownloads < MAX_CONCURRENT_DOWNLOADS) {
-				// start new download
-				startNextDownload();
-			}
+			// start new downloads
+			startQueuedDownloads();
+		}
+	}
+
+	/**
+	 * Starts downloads from the queue until the scheduler's limit is reached.
+	 */
+	private void startQueuedDownloads() {
+		while (!downloadQueue.isEmpty() && concurrentDownloads < downloadScheduler.getMaxConcurrentDownloads()) {
+			startNextDownload();
+		}
+		
+		if (concurrentDownloads > 0) {
+			handler.removeCallbacks(sampleDownloadsRunnable);
+			handler.postDelayed(sampleDownloadsRunnable, DownloadScheduler.SAMPLE_INTERVAL_MILLISECONDS);
 		}
 	}
 
+	/**
+	 * Samples the throughput of the running downloads so that the scheduler can adapt its limit, then starts or pauses downloads to
+	 * match it.
+	 */
+	private void sampleDownloads() {
+		Map<String, Long> transferredBytes = new HashMap<String, Long>();
+		
+		for (Map.Entry<String, DownloadFileAsync> entry : currentDownloadTasks.entrySet()) {
+			transferredBytes.put(entry.getKey(), entry.getValue().getTransferredBytes());
+		}
+		
+		downloadScheduler.sample(transferredBytes, !downloadQueue.isEmpty());
+		
+		// the data use preference may have changed
+		downloadScheduler.updateConnectivity();
+		
+		applyDownloadLimit();
+	}
+
+	private void onConnectivityChanged() {
+		if (downloadScheduler.updateConnectivity()) {
+			applyDownloadLimit();
+		}
+	}
+
+	/**
+	 * Pauses the most recently started downloads while more are running than the scheduler allows, e.g. because the connection has
+	 * changed to one the user's data use preference does not allow, and starts queued downloads while fewer are.
+	 */
+	private void applyDownloadLimit() {
+		List<String> fileUrls = new ArrayList<String>(currentDownloadTasks.keySet());
+		
+		for (int index = fileUrls.size() - 1; index >= 0 && concurrentDownloads > downloadScheduler.getMaxConcurrentDownloads(); index--) {
+			pauseDownload(fileUrls.get(index));
+		}
+		
+		startQueuedDownloads();
+	}
+
+	/**
+	 * Pauses a running download and puts it back at the front of the queue. Its partial file is kept so that it resumes where it
+	 * stopped.
+	 * 
+	 * @param fileUrl	the url of the download
+	 */
+	private void pauseDownload(String fileUrl) {
+		DownloadFileAsync task = currentDownloadTasks.remove(fileUrl);
+		PackageItem packageItem = currentDownloads.remove(fileUrl);
+		
+		if (task == null || packageItem == null) {
+			return;
+		}
+		
+		Log.d("Download service", "Pausing " + fileUrl);
+		
+		task.pause();
+		concurrentDownloads--;
+		
+		getDatabaseHelper().updateDownloadQueueEntry(packageItem.getUniqueId(), DownloadQueueState.QUEUED, null, false, null);
+		
+		// resume it before the packages that have not started
+		List<PackageItem> queuedPackageItems = new ArrayList<PackageItem>(downloadQueue);
+		downloadQueue.clear();
+		downloadQueue.add(packageItem);
+		downloadQueue.addAll(queuedPackageItems);
+		
+		sendBroadcast(DownloadBroadcastActions.PackageDownloadQueued, packageItem);
+	}
+
 	private void startNextDownload() {
 		DownloadFileAsync downloadFileAsyncTask = null;
 
-		if (concurrentDownloads < MAX_CONCURRENT_DOWNLOADS) {
+		if (concurrentDownloads < downloadScheduler.getMaxConcurrentDownloads()) {
 			downloadFileAsyncTask = new DownloadFileAsync();
 
 			concurrentDownloads++;
@@ -210,16 +456,28 @@ public abstract class DownloadService extends ServiceBase implements DownloadFil
 
 		// send downloading broadcast
 		sendBroadcast(DownloadBroadcastActions.PackageDownloading, packageItem);
+		
+		getDatabaseHelper().updateDownloadQueueEntry(packageItem.getUniqueId(), DownloadQueueState.DOWNLOADING, null, false, null);
+		
+		DownloadResumeState resumeState = getDownloadResumeState(packageItem);
+		
+		if (resumeState.canResume(packageItem.getFileUrl())) {
+			Log.d("Download service", "Resuming " + packageItem.getFileUrl() + " from " + resumeState.getDownloadedBytes() + " bytes.");
+		}
 
 		// execute task
 		AsyncTaskHelper.executeAsyncTask(downloadFileAsyncTask,
 				getDownloadDestinationPath(), packageItem.getFileUrl(),
 				packageItem, this, this, this, this, getApplicationContext(),
-				getApplication());
+				getApplication(), isStreamingInstallEnabled(), isRawCopyKeptForResume(), isDeltaUpdateEnabled());
 	}
 
 	private void cancelAllDownloads() {
 		// First clear the download queue
+		for (PackageItem packageItem : downloadQueue) {
+			getDatabaseHelper().removeDownloadQueueEntry(packageItem.getUniqueId());
+		}
+		
 		downloadQueue.clear();
 
 		// Cancel all the courses that are being downloaded
@@ -244,6 +502,8 @@ public abstract class DownloadService extends ServiceBase implements DownloadFil
 	private void cancelDownload(PackageItem packageItem) {
 		if (packageItem != null) {
 			String packageFileUrl = packageItem.getFileUrl();
+			
+			getDatabaseHelper().removeDownloadQueueEntry(packageItem.getUniqueId());
 
 			if (currentDownloads.containsKey(packageFileUrl)) {
 				packageItem = currentDownloads.get(packageFileUrl);
@@ -262,9 +522,7 @@ public abstract class DownloadService extends ServiceBase implements DownloadFil
 					concurrentDownloads--;
 
 					// check to see if there is anymore items to download
-					if (!downloadQueue.isEmpty()) {
-						startNextDownload();
-					}
+					startQueuedDownloads();
 				}
 
 			} else if (downloadQueue.contains(packageItem)) {
@@ -296,12 +554,26 @@ public abstract class DownloadService extends ServiceBase implements DownloadFil
 	public final void onDownloadFileAsyncCompleted(String fileUrl,
 			Object payload, File file) {
 
+		// remove the download. One that was paused or cancelled as it completed has already been removed and counted, and is resumed
+		// or discarded instead
+		DownloadFileAsync task = currentDownloadTasks.remove(fileUrl);
+		
+		if (task == null) {
+			return;
+		}
+		
 		// send download completed broadcast
 		sendBroadcast(DownloadBroadcastActions.PackageDownloaded,
 				(PackageItem) payload);
 
-		// remove the download
-		currentDownloadTasks.remove(fileUrl);
+		if (task.isExtracted()) {
+			extractedFiles.add(file);
+		}
+		
+		checksumVerifications.put(file, task.getChecksumVerification());
+		
+		getDatabaseHelper().updateDownloadQueueEntry(((PackageItem) payload).getUniqueId(), DownloadQueueState.DOWNLOADED, file,
+				extractedFiles.contains(file), checksumVerifications.get(file));
 
 		// invoke the on download file completed method
 		onDownloadFileCompleted(fileUrl, file);
@@ -310,9 +582,7 @@ public abstract class DownloadService extends ServiceBase implements DownloadFil
 		concurrentDownloads--;
 
 		// check to see if there is anymore items to download
-		if (!downloadQueue.isEmpty()) {
-			startNextDownload();
-		}
+		startQueuedDownloads();
 
 		// do the unzip
 		queueFileForUnzip(file, (PackageItem) payload);
@@ -358,6 +628,15 @@ public abstract class DownloadService extends ServiceBase implements DownloadFil
 	@Override
 	public final void onDownloadFileAsyncFailed(String fileUrl, Object payload,
 			Exception exception) {
+		// remove the download. One that was paused or cancelled as it failed has already been removed and counted
+		DownloadFileAsync task = currentDownloadTasks.remove(fileUrl);
+		
+		if (task == null) {
+			return;
+		}
+		
+		currentDownloads.remove(fileUrl);
+		
 		// create intent to broadcast package download failed
 		Intent failedIntent = new Intent();
 		failedIntent.setAction(DownloadBroadcastActions.PackageDownloadFailed);
@@ -366,14 +645,25 @@ public abstract class DownloadService extends ServiceBase implements DownloadFil
 		sendBroadcast(failedIntent);
 
 		onDownloadFileFailed(fileUrl, payload, exception);
+		
+		// the package is no longer queued or updating
+		PackageItem packageItem = (PackageItem) payload;
+		
+		if (task.getChecksumVerification() == ChecksumVerification.MISMATCH
+				&& !getDatabaseHelper().updateLibraryEntryChecksumVerification(packageItem.getUniqueId(), ChecksumVerification.MISMATCH)) {
+			// a first install has no library entry yet, so keep the mismatch on the queue entry instead
+			getDatabaseHelper().updateDownloadQueueEntry(packageItem.getUniqueId(), DownloadQueueState.FAILED, null, false, ChecksumVerification.MISMATCH);
+		} else {
+			getDatabaseHelper().removeDownloadQueueEntry(packageItem.getUniqueId());
+		}
+		
+		getDatabaseHelper().updateLibraryEntryStatus(packageItem.getUniqueId(), DownloadBroadcastActions.PackageProcessingCompleted);
 
 		// decrement current downloads
 		concurrentDownloads--;
 
 		// check to see if there is anymore items to download
-		if (!downloadQueue.isEmpty()) {
-			startNextDownload();
-		}
+		startQueuedDownloads();
 	}
 
 	private void queueFileForUnzip(File file, PackageItem packageItem) {
@@ -385,10 +675,17 @@ public abstract class DownloadService extends ServiceBase implements DownloadFil
 			sendBroadcast(DownloadBroadcastActions.PackageProcessingQueued,
 					packageItem);
 
-			if (currentFileToUnzip == null) {
-				// start new unzip
-				startNextUnzip();
-			}
+			// start new unzips
+			startQueuedUnzips();
+		}
+	}
+
+	/**
+	 * Starts unzips from the queue until the scheduler's limit is reached. Unzips run alongside downloads.
+	 */
+	private void startQueuedUnzips() {
+		while (!unzipQueue.isEmpty() && currentFilesToUnzip.size() < downloadScheduler.getMaxConcurrentUnzips()) {
+			startNextUnzip();
 		}
 	}
 
@@ -396,8 +693,8 @@ public abstract class DownloadService extends ServiceBase implements DownloadFil
 		// get the top file off the queue
 		File file = unzipQueue.poll();
 
-		// set currentFileToUnzip
-		currentFileToUnzip = file;
+		// add to currentFilesToUnzip
+		currentFilesToUnzip.add(file);
 
 		// get package item for file
 		PackageItem packageItem = unzipFileMap.get(file);
@@ -407,11 +704,16 @@ public abstract class DownloadService extends ServiceBase implements DownloadFil
 
 		// call onProcessFileStarted
 		onProcessFileStarted(file, packageItem);
+		
+		boolean isExtracted = extractedFiles.remove(file);
+		ChecksumVerification checksumVerification = checksumVerifications.remove(file);
+		
+		getDatabaseHelper().updateDownloadQueueEntry(packageItem.getUniqueId(), DownloadQueueState.PROCESSING, file, isExtracted, checksumVerification);
 
 		// execute task
 		UnzipFileAsync unzipFileAsyncTask = new UnzipFileAsync();
 		AsyncTaskHelper.executeAsyncTask(unzipFileAsyncTask, file,
-				getApplication(), this, packageItem);
+				getApplication(), this, packageItem, isExtracted, checksumVerification);
 	}
 
 	/**
@@ -423,10 +725,27 @@ public abstract class DownloadService extends ServiceBase implements DownloadFil
 	protected void onProcessFileStarted(File file, PackageItem packageItem) {
 	}
 
+	@Override
+	public void onUnzipFileAsyncProgressUpdate(File file, long progress, long max) {
+		// invoke override
+		onProcessFileProgressUpdate(file, unzipFileMap.get(file), progress, max);
+	}
+	
+	/**
+	 * Provides an override method for handling when the extraction of a file progresses.
+	 * 
+	 * @param file			the file
+	 * @param packageItem	the package item
+	 * @param progress		the number of bytes extracted
+	 * @param max			the total number of bytes to extract
+	 */
+	protected void onProcessFileProgressUpdate(File file, PackageItem packageItem, long progress, long max) {
+	}
+
 	@Override
 	public void onUnzipFileAsyncCompleted(File file, Boolean successful,
 			String errorMessage) {
-		currentFileToUnzip = null;
+		currentFilesToUnzip.remove(file);
 
 		// do the other processing stuff
 
@@ -436,14 +755,15 @@ public abstract class DownloadService extends ServiceBase implements DownloadFil
 		// send processing completed broadcast
 		sendBroadcast(DownloadBroadcastActions.PackageProcessingCompleted,
 				packageItem);
+		
+		// the package has left the queue
+		getDatabaseHelper().removeDownloadQueueEntry(packageItem.getUniqueId());
 
 		// pretend we have done that
 		onProcessFileCompleted(file);
 
 		// check to see if there is anymore files to unzip
-		if (!unzipQueue.isEmpty()) {
-			startNextUnzip();
-		}
+		startQueuedUnzips();
 	}
 
 	/**
@@ -462,6 +782,15 @@ public abstract class DownloadService extends ServiceBase implements DownloadFil
 		onFileDownloadCancelledOverride(packageItem);
 	}
 
+	/**
+	 * Deletes any partially downloaded file for a package so that its next download starts from the beginning.
+	 * 
+	 * @param packageItem	the package item
+	 */
+	protected void discardPartialDownload(PackageItem packageItem) {
+		getDownloadResumeState(packageItem).discard();
+	}
+
 	/**
 	 * Provides an override method for handling when a file download is cancelled.
 	 * 
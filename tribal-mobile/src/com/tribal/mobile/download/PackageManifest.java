@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.download;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * A per-file manifest of an installed package folder, mapping each relative path to its size and CRC-32. The manifest is kept next to
+ * the package folder so that checksums only need to be recomputed for files whose size or modification time has changed since they
+ * were last recorded.
+ * 
+ * @author Jon Brasted
+ */
+public class PackageManifest {
+	/* Fields */
+	
+	private static final String MANIFEST_EXTENSION = ".manifest";
+	private static final int bufferSize = 64 * 1024;
+	
+	private final File folder;
+	private final File manifestFile;
+	private final Properties entries = new Properties();
+	
+	/* Properties */
+	
+	public File getFolder() {
+		return folder;
+	}
+	
+	/* Constructor */
+	
+	private PackageManifest(File folder) {
+		this.folder = folder;
+		this.manifestFile = new File(folder.getParentFile(), folder.getName() + MANIFEST_EXTENSION);
+	}
+	
+	/* Methods */
+	
+	/**
+	 * Loads the manifest of a package folder, returning an empty manifest if there is none or it cannot be read.
+	 * 
+	 * @param folder	the package folder
+	 * @return			the manifest
+	 */
+	public static PackageManifest load(File folder) {
+		PackageManifest manifest = new PackageManifest(folder);
+		
+		if (manifest.manifestFile.exists()) {
+			try {
+				InputStream inputStream = new FileInputStream(manifest.manifestFile);
+				
+				try {
+					manifest.entries.load(inputStream);
+				} finally {
+					inputStream.close();
+				}
+			} catch (IOException e) {
+				manifest.entries.clear();
+			}
+		}
+		
+		return manifest;
+	}
+	
+	/**
+	 * Deletes the manifest of a package folder, e.g. when the package is removed.
+	 * 
+	 * @param folder	the package folder
+	 */
+	public static void delete(File folder) {
+		new PackageManifest(folder).manifestFile.delete();
+	}
+	
+	/**
+	 * Returns the CRC-32 of a file in the package folder, using the recorded value if the file has not changed since it was recorded.
+	 * 
+	 * @param path	the path relative to the package folder
+	 * @param file	the file
+	 * @return		the CRC-32
+	 * @throws IOException
+	 */
+	public long getChecksum(String path, File file) throws IOException {
+		String entry = entries.getProperty(path);
+		
+		if (entry != null) {
+			String[] values = entry.split(",");
+			
+			try {
+				if (values.length == 3 && Long.parseLong(values[0]) == file.length() && Long.parseLong(values[2]) == file.lastModified()) {
+					return Long.parseLong(values[1]);
+				}
+			} catch (NumberFormatException e) {
+				// recompute below
+			}
+		}
+		
+		long checksum = computeChecksum(file);
+		put(path, file, checksum);
+		
+		return checksum;
+	}
+	
+	/**
+	 * Returns the relative paths of the recorded files, i.e. the files installed from the package's zip.
+	 * 
+	 * @return	a new set of the paths
+	 */
+	public Set<String> getPaths() {
+		Set<String> paths = new HashSet<String>();
+		
+		for (Object path : entries.keySet()) {
+			paths.add((String) path);
+		}
+		
+		return paths;
+	}
+	
+	/**
+	 * Records the CRC-32 of a file in the package folder.
+	 * 
+	 * @param path		the path relative to the package folder
+	 * @param file		the file
+	 * @param checksum	the CRC-32
+	 */
+	public void put(String path, File file, long checksum) {
+		entries.setProperty(path, file.length() + "," + checksum + "," + file.lastModified());
+	}
+	
+	/**
+	 * Removes all recorded files.
+	 */
+	public void clear() {
+		entries.clear();
+	}
+	
+	/**
+	 * Saves the manifest next to the package folder.
+	 * 
+	 * @throws IOException
+	 */
+	public void save() throws IOException {
+		OutputStream outputStream = new FileOutputStream(manifestFile);
+		
+		try {
+			entries.store(outputStream, null);
+		} finally {
+			outputStream.close();
+		}
+	}
+	
+	/**
+	 * Computes the CRC-32 of a file.
+	 * 
+	 * @param file	the file
+	 * @return		the CRC-32
+	 * @throws IOException
+	 */
+	public static long computeChecksum(File file) throws IOException {
+		CRC32 crc = new CRC32();
+		InputStream inputStream = new FileInputStream(file);
+		
+		try {
+			byte[] buffer = new byte[bufferSize];
+			int count = 0;
+			
+			while ((count = inputStream.read(buffer)) != -1) {
+				crc.update(buffer, 0, count);
+			}
+		} finally {
+			inputStream.close();
+		}
+		
+		return crc.getValue();
+	}
+}
\ No newline at end of file
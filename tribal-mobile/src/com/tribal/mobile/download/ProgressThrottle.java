@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.download;
+
+import android.os.SystemClock;
+
+/**
+ * Decides on the worker thread which progress values are worth reporting, so that a long transfer reports at most one value per
+ * percentage point and no more often than a minimum interval. The first value and the value that completes the transfer are always
+ * reported. Progress never goes backwards.
+ * 
+ * @author Jon Brasted
+ */
+public class ProgressThrottle {
+	/* Fields */
+	
+	public final static long DEFAULT_MIN_INTERVAL_MILLISECONDS = 250;
+	
+	private final long minIntervalMilliseconds;
+	
+	private int lastPercentage = -1;
+	private long lastReportTime;
+	
+	/* Constructor */
+	
+	public ProgressThrottle() {
+		this(DEFAULT_MIN_INTERVAL_MILLISECONDS);
+	}
+	
+	public ProgressThrottle(long minIntervalMilliseconds) {
+		this.minIntervalMilliseconds = minIntervalMilliseconds;
+	}
+	
+	/* Methods */
+	
+	/**
+	 * Returns whether a progress value should be reported, recording it as reported if so. May be invoked from several threads.
+	 * 
+	 * @param progress	the progress value
+	 * @param max		the progress max
+	 * @return			whether the value should be reported
+	 */
+	public synchronized boolean shouldReport(long progress, long max) {
+		int percentage = getPercentage(progress, max);
+		
+		if (percentage <= lastPercentage) {
+			return false;
+		}
+		
+		long now = SystemClock.elapsedRealtime();
+		
+		if (lastPercentage >= 0 && percentage < 100 && now - lastReportTime < minIntervalMilliseconds) {
+			return false;
+		}
+		
+		lastPercentage = percentage;
+		lastReportTime = now;
+		
+		return true;
+	}
+	
+	/**
+	 * Forgets the values reported so far, e.g. when a transfer is started again, so that its progress can be reported from the start.
+	 */
+	public synchronized void reset() {
+		lastPercentage = -1;
+		lastReportTime = 0;
+	}
+	
+	/**
+	 * Returns a progress value as a whole percentage between 0 and 100.
+	 * 
+	 * @param progress	the progress value
+	 * @param max		the progress max
+	 * @return			the percentage, or 0 if the max is not known
+	 */
+	public static int getPercentage(long progress, long max) {
+		return (max > 0) ? (int) Math.min(100, progress * 100 / max) : 0;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,390 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.download;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.Log;
+
+/**
+ * Downloads a file over several HTTP connections in parallel. The file is split into fixed size chunks that connections claim in
+ * order and fetch with <code>Range</code> requests, writing straight into a preallocated file with {@link FileChannel} positional
+ * writes, so no reassembly step is needed.
+ * 
+ * <p>
+ * The download starts with a single connection. Every {@link #ADAPT_INTERVAL_MILLISECONDS} another connection is added, up to
+ * {@link #MAX_CONNECTIONS}, for as long as doing so increased the observed throughput by at least {@link #MIN_THROUGHPUT_GAIN}.
+ * </p>
+ * 
+ * <p>
+ * If the download is cancelled or fails, the file is truncated to the chunks completed without gaps from its start, so that it can
+ * be resumed as a normal partial download.
+ * </p>
+ * 
+ * @author Jon Brasted
+ */
+public class SegmentedDownloader {
+	/* Fields */
+	
+	/**
+	 * Provides connections for byte ranges of the file being downloaded.
+	 */
+	public interface RangeConnectionFactory {
+		/**
+		 * Opens a connection for an inclusive byte range of the file.
+		 * 
+		 * @param firstByte		the first byte
+		 * @param lastByte		the last byte
+		 * @return				the connected connection
+		 * @throws IOException
+		 */
+		HttpURLConnection openRangeConnection(long firstByte, long lastByte) throws IOException;
+	}
+	
+	/**
+	 * Receives progress and is polled for cancellation.
+	 */
+	public interface Listener {
+		boolean isCancelled();
+		
+		void onProgress(long downloadedBytes, long totalBytes);
+	}
+	
+	public final static long MIN_SEGMENTED_FILE_SIZE = 4 * 1024 * 1024;
+	public final static int CHUNK_SIZE = 1024 * 1024;
+	public final static int MAX_CONNECTIONS = 4;
+	public final static long ADAPT_INTERVAL_MILLISECONDS = 2000;
+	public final static double MIN_THROUGHPUT_GAIN = 1.1;
+	
+	private final static String LOG_TAG = "SegmentedDownloader";
+	private final static int BUFFER_SIZE = 32 * 1024;
+	private final static long POLL_INTERVAL_MILLISECONDS = 100;
+	
+	private final File file;
+	private final long totalBytes;
+	private final int chunkCount;
+	private final RangeConnectionFactory connectionFactory;
+	private final Listener listener;
+	
+	private final AtomicInteger nextChunk = new AtomicInteger();
+	private final boolean[] completedChunks;
+	private final AtomicLong downloadedBytes = new AtomicLong();
+	
+	private volatile boolean isStopped;
+	private volatile Exception failure;
+	
+	private FileChannel fileChannel;
+	
+	private MessageDigest digest;
+	private int digestedChunkCount;
+	
+	/* Properties */
+	
+	/**
+	 * Sets a digest to update with the bytes of the file in order. Each chunk is digested by the coordinating thread as soon as every
+	 * chunk before it has completed, while later chunks are still downloading, so the file is not read again once it is complete.
+	 * 
+	 * @param digest	the digest, or <code>null</code> if the file is not digested
+	 */
+	public void setDigest(MessageDigest digest) {
+		this.digest = digest;
+	}
+	
+	/* Constructor */
+	
+	public SegmentedDownloader(File file, long totalBytes, RangeConnectionFactory connectionFactory, Listener listener) {
+		this.file = file;
+		this.totalBytes = totalBytes;
+		this.connectionFactory = connectionFactory;
+		this.listener = listener;
+		
+		chunkCount = (int) ((totalBytes + CHUNK_SIZE - 1) / CHUNK_SIZE);
+		completedChunks = new boolean[chunkCount];
+	}
+	
+	/* Methods */
+	
+	/**
+	 * Returns whether a response indicates that the file can be downloaded in segments: the server accepts byte ranges, the file is
+	 * large enough to benefit and the response has a validator that keeps the segments consistent.
+	 * 
+	 * @param connection	the connection of a full GET response
+	 * @param totalBytes	the size of the file, or 0 if it is not known
+	 * @return				whether the file can be downloaded in segments
+	 */
+	public static boolean isSupported(HttpURLConnection connection, long totalBytes) {
+		return totalBytes >= MIN_SEGMENTED_FILE_SIZE
+				&& "bytes".equalsIgnoreCase(connection.getHeaderField("Accept-Ranges"))
+				&& (!TextUtils.isEmpty(connection.getHeaderField("ETag")) || !TextUtils.isEmpty(connection.getHeaderField("Last-Modified")));
+	}
+	
+	/**
+	 * Downloads the file. The first chunk is read from the body of an already open full GET response, which is then disconnected.
+	 * 
+	 * @param firstConnection	the connection of a full GET response for the file
+	 * @return					<code>true</code> if the download completed, <code>false</code> if it was cancelled
+	 * @throws IOException
+	 */
+	public boolean download(HttpURLConnection firstConnection) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		ExecutorService executor = Executors.newFixedThreadPool(MAX_CONNECTIONS);
+		
+		try {
+			// preallocate the file
+			randomAccessFile.setLength(totalBytes);
+			fileChannel = randomAccessFile.getChannel();
+			
+			List<Future<?>> workers = new ArrayList<Future<?>>();
+			
+			// the first connection already has the start of the file
+			nextChunk.set(1);
+			workers.add(executor.submit(new Worker(firstConnection)));
+			
+			double lastThroughput = 0;
+			long lastDownloadedBytes = 0;
+			long lastAdaptTime = SystemClock.elapsedRealtime();
+			boolean isAdapting = true;
+			
+			while (!isFinished(workers)) {
+				if (listener.isCancelled()) {
+					isStopped = true;
+				}
+				
+				long now = SystemClock.elapsedRealtime();
+				
+				if (isAdapting && !isStopped && now - lastAdaptTime >= ADAPT_INTERVAL_MILLISECONDS) {
+					long currentDownloadedBytes = downloadedBytes.get();
+					double throughput = (double) (currentDownloadedBytes - lastDownloadedBytes) / (now - lastAdaptTime);
+					
+					if (workers.size() < MAX_CONNECTIONS && nextChunk.get() < chunkCount && throughput >= lastThroughput * MIN_THROUGHPUT_GAIN) {
+						// the last connection added helped, so try another
+						workers.add(executor.submit(new Worker(null)));
+						
+						Log.d(LOG_TAG, String.format("%.1f KB/s, using %d connections", throughput * 1000 / 1024, workers.size()));
+					} else {
+						isAdapting = false;
+					}
+					
+					lastThroughput = throughput;
+					lastDownloadedBytes = currentDownloadedBytes;
+					lastAdaptTime = now;
+				}
+				
+				digestContiguousChunks();
+				
+				try {
+					Thread.sleep(POLL_INTERVAL_MILLISECONDS);
+				} catch (InterruptedException e) {
+					isStopped = true;
+				}
+			}
+			
+			boolean isCompleted = (failure == null) && !isStopped && getContiguousChunkCount() == chunkCount;
+			
+			if (isCompleted) {
+				digestContiguousChunks();
+			}
+			
+			if (!isCompleted) {
+				// keep only what can be resumed
+				randomAccessFile.setLength(Math.min((long) getContiguousChunkCount() * CHUNK_SIZE, totalBytes));
+			}
+			
+			if (failure != null) {
+				throw (failure instanceof IOException) ? (IOException) failure : new IOException(failure.getMessage());
+			}
+			
+			return isCompleted;
+		} finally {
+			executor.shutdownNow();
+			randomAccessFile.close();
+		}
+	}
+	
+	private boolean isFinished(List<Future<?>> workers) {
+		for (Future<?> worker : workers) {
+			if (!worker.isDone()) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	private synchronized int getContiguousChunkCount() {
+		int count = 0;
+		
+		while (count < chunkCount && completedChunks[count]) {
+			count++;
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Digests the completed chunks that follow the chunks already digested without a gap. The chunks were written moments ago, so they
+	 * are usually read back from the page cache.
+	 * 
+	 * @throws IOException
+	 */
+	private void digestContiguousChunks() throws IOException {
+		if (digest == null) {
+			return;
+		}
+		
+		int contiguousChunkCount = getContiguousChunkCount();
+		
+		if (digestedChunkCount >= contiguousChunkCount) {
+			return;
+		}
+		
+		byte[] buffer = new byte[BUFFER_SIZE];
+		ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+		
+		long position = (long) digestedChunkCount * CHUNK_SIZE;
+		long end = Math.min((long) contiguousChunkCount * CHUNK_SIZE, totalBytes);
+		
+		while (position < end) {
+			byteBuffer.clear();
+			byteBuffer.limit((int) Math.min(buffer.length, end - position));
+			
+			int length = fileChannel.read(byteBuffer, position);
+			
+			if (length < 0) {
+				throw new IOException("Unexpected end of " + file + " at byte " + position);
+			}
+			
+			digest.update(buffer, 0, length);
+			position += length;
+		}
+		
+		digestedChunkCount = contiguousChunkCount;
+	}
+	
+	private synchronized void onChunkCompleted(int chunk) {
+		completedChunks[chunk] = true;
+	}
+	
+	/**
+	 * Claims and downloads chunks until there are none left, the download is stopped or a chunk fails.
+	 */
+	private class Worker implements Runnable {
+		private HttpURLConnection firstConnection;
+		
+		Worker(HttpURLConnection firstConnection) {
+			this.firstConnection = firstConnection;
+		}
+		
+		@Override
+		public void run() {
+			try {
+				if (firstConnection != null) {
+					downloadChunk(0, firstConnection);
+					firstConnection = null;
+				}
+				
+				int chunk;
+				
+				while (!isStopped && (chunk = nextChunk.getAndIncrement()) < chunkCount) {
+					long firstByte = (long) chunk * CHUNK_SIZE;
+					long lastByte = Math.min(firstByte + CHUNK_SIZE, totalBytes) - 1;
+					
+					HttpURLConnection connection = connectionFactory.openRangeConnection(firstByte, lastByte);
+					
+					if (connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+						connection.disconnect();
+						throw new IOException("Server did not honour range request for bytes " + firstByte + "-" + lastByte + ": " + connection.getResponseCode());
+					}
+					
+					downloadChunk(chunk, connection);
+				}
+			} catch (Exception e) {
+				if (failure == null) {
+					failure = e;
+				}
+				
+				isStopped = true;
+			}
+		}
+		
+		private void downloadChunk(int chunk, HttpURLConnection connection) throws IOException {
+			long position = (long) chunk * CHUNK_SIZE;
+			long remaining = Math.min(position + CHUNK_SIZE, totalBytes) - position;
+			
+			byte[] buffer = new byte[BUFFER_SIZE];
+			ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+			
+			try {
+				InputStream inputStream = connection.getInputStream();
+				
+				while (remaining > 0) {
+					if (isStopped || listener.isCancelled()) {
+						return;
+					}
+					
+					int length = inputStream.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+					
+					if (length < 0) {
+						throw new IOException("Unexpected end of stream for chunk " + chunk);
+					}
+					
+					byteBuffer.clear();
+					byteBuffer.limit(length);
+					
+					while (byteBuffer.hasRemaining()) {
+						position += fileChannel.write(byteBuffer, position);
+					}
+					
+					remaining -= length;
+					
+					listener.onProgress(downloadedBytes.addAndGet(length), totalBytes);
+				}
+				
+				onChunkCompleted(chunk);
+			} finally {
+				connection.disconnect();
+			}
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.download;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Extracts a zip file while it is being downloaded. The downloader writes the raw bytes to the stream returned by {@link #start()},
+ * which feeds a {@link ZipInputStream} on a separate extraction thread through a buffered pipe, so downloading and extracting
+ * overlap and the install takes roughly as long as the slower of the two.
+ * 
+ * @author Jon Brasted
+ */
+public class StreamingZipExtractor {
+	/* Fields */
+	
+	private static final int PIPE_BUFFER_SIZE = 256 * 1024;
+	
+	private final File folder;
+	private final ZipExtractor.Cancellable cancellable;
+	
+	private ExecutorService executor;
+	private Future<Boolean> extraction;
+	private PipedOutputStream pipedOutputStream;
+	
+	/* Constructor */
+	
+	public StreamingZipExtractor(File folder, ZipExtractor.Cancellable cancellable) {
+		this.folder = folder;
+		this.cancellable = cancellable;
+	}
+	
+	/* Methods */
+	
+	/**
+	 * Starts the extraction thread.
+	 * 
+	 * @return	the stream to write the raw zip bytes to
+	 * @throws IOException
+	 */
+	public OutputStream start() throws IOException {
+		final PipedInputStream pipedInputStream = new PipedInputStream(PIPE_BUFFER_SIZE);
+		pipedOutputStream = new PipedOutputStream(pipedInputStream);
+		
+		executor = Executors.newSingleThreadExecutor();
+		
+		extraction = executor.submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws Exception {
+				ZipInputStream zipInputStream = new ZipInputStream(pipedInputStream);
+				
+				try {
+					boolean isExtracted = ZipExtractor.extract(zipInputStream, folder, cancellable);
+					
+					// drain any trailing bytes (e.g. the central directory) so the writer is never blocked
+					byte[] buffer = new byte[8 * 1024];
+					while (isExtracted && pipedInputStream.read(buffer) != -1) {
+					}
+					
+					return isExtracted;
+				} finally {
+					zipInputStream.close();
+				}
+			}
+		});
+		
+		executor.shutdown();
+		
+		return pipedOutputStream;
+	}
+	
+	/**
+	 * Signals the end of the zip stream and waits for extraction to finish.
+	 * 
+	 * @return	<code>true</code> if all entries were extracted, <code>false</code> if extraction was cancelled
+	 * @throws IOException	if extraction failed
+	 */
+	public boolean finish() throws IOException {
+		pipedOutputStream.close();
+		
+		try {
+			return extraction.get();
+		} catch (InterruptedException e) {
+			extraction.cancel(true);
+			throw new IOException("Interrupted while extracting to " + folder);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			throw (cause instanceof IOException) ? (IOException) cause : new IOException(String.valueOf(cause));
+		}
+	}
+	
+	/**
+	 * Returns whether extraction has finished, successfully or not.
+	 * 
+	 * @return	whether extraction has finished
+	 */
+	public boolean isFinished() {
+		return extraction != null && extraction.isDone();
+	}
+	
+	/**
+	 * Stops extraction without waiting for it to finish.
+	 */
+	public void cancel() {
+		if (extraction != null) {
+			extraction.cancel(true);
+		}
+		
+		try {
+			if (pipedOutputStream != null) {
+				pipedOutputStream.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
\ No newline at end of file
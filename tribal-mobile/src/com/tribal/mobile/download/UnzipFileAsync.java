@@ -27,24 +27,24 @@
 
 package com.tribal.mobile.download;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
 
 import android.content.Context;
 import android.os.AsyncTask;
 import android.os.Environment;
+import android.util.Log;
 import android.widget.ProgressBar;
 
 import com.tribal.mobile.R;
 import com.tribal.mobile.api.packages.PackageItem;
 import com.tribal.mobile.base.BaseApplication;
+import com.tribal.mobile.model.Package;
+import com.tribal.mobile.model.PackageIndex;
+import com.tribal.mobile.model.PackageXmlReader;
 import com.tribal.mobile.util.FileHelper;
 import com.tribal.mobile.util.PackageHelper;
 import com.tribal.mobile.util.resources.ResourceHelper;
@@ -56,8 +56,9 @@ import com.tribal.mobile.util.resources.StringResourceLookups;
  * 
  * @author Jon Brasted
  */
-public class UnzipFileAsync extends AsyncTask<Object, String, Boolean> {
+public class UnzipFileAsync extends AsyncTask<Object, Long, Boolean> {
 
+	private static final String LOG_TAG = "UnzipFileAsync";
 	private static final int bufferSize = 1024;
 	private UnzipFileAsyncCompleted callback = null;
 	private ProgressBar progressBar;
@@ -67,6 +68,7 @@ public class UnzipFileAsync extends AsyncTask<Object, String, Boolean> {
 	private Context context;
 	private BaseApplication application;
 	private PackageItem packageItem;
+	private final ProgressThrottle progressThrottle = new ProgressThrottle();
 
 	@Override
 	protected Boolean doInBackground(Object... params) {
@@ -86,79 +88,35 @@ public class UnzipFileAsync extends AsyncTask<Object, String, Boolean> {
 			// fourth param will be package
 			packageItem = (PackageItem)params[3];
 
-			final FileInputStream fin = new FileInputStream(file);
-			final ZipInputStream inputStream = new ZipInputStream(fin);
+			// fifth param, if present, will be whether the file has already been extracted while it was downloaded
+			boolean isExtracted = (params.length > 4) && Boolean.TRUE.equals(params[4]);
+			
+			// sixth param, if present, will be the result of verifying the download against its checksum
+			ChecksumVerification checksumVerification = (params.length > 5 && params[5] != null) ? (ChecksumVerification)params[5] : ChecksumVerification.UNVERIFIED;
 
 			// construct a path for the unzipped folder with the same name
 			// as the zip
 			courseFolderPath = FileHelper.removeExtensionFromPath(file.getAbsolutePath());
 
-			// create the folder
 			File courseFolder = new File(courseFolderPath);
 
-			if (!courseFolder.exists()) {
-				courseFolder.mkdir();
-			}
-
-			// course folder
-
-			// Loop through all the files and folders
-			for (ZipEntry entry = inputStream.getNextEntry(); entry != null; entry = inputStream
-					.getNextEntry()) {
-				File innerFile = new File(courseFolderPath, entry.getName());
-
-				if (innerFile.exists()) {
-					innerFile.delete();
-				}
-				
-				// Check if it is a folder
-				if (entry.isDirectory()) {
-					// Its a folder, create that folder
-					innerFile.mkdirs();
-
-				} else {
-					// ZipEntry thinks this is a file
-					// However, if this fails, we should take the parent and try and make it
-					if (!innerFile.isDirectory() && !innerFile.isFile()) {
-						// parent
-						File parentFile = innerFile.getParentFile();
-						
-						if (parentFile != null) {
-							parentFile.mkdirs();
-						}						
+			if (!isExtracted) {
+				boolean isCompleted = ZipExtractor.extract(file, courseFolder, new ZipExtractor.Cancellable() {
+					@Override
+					public boolean isCancelled() {
+						return UnzipFileAsync.this.isCancelled();
 					}
-					
-					// Create a file output stream
-					FileOutputStream outputStream = new FileOutputStream(innerFile);
-
-					// Buffer the ouput to the file
-					BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(outputStream, bufferSize);
-
-					// Write the contents
-					int count = 0;
-
-					byte[] buff = new byte[bufferSize];
-					
-					while ((count = inputStream.read(buff, 0, bufferSize)) != -1) {
-
-						// Back button is pressed stop reading.
-						if (isCancelled()) {
-							break;
-						}
-
-						bufferedOutputStream.write(buff, 0, count);
+				}, new ZipExtractor.ProgressListener() {
+					@Override
+					public void onProgress(long extractedBytes, long totalBytes) {
+						publishExtractionProgress(extractedBytes, totalBytes);
 					}
-
-					// Flush and close the buffers
-					bufferedOutputStream.flush();
-					bufferedOutputStream.close();
+				});
+				
+				if (!isCompleted) {
+					return false;
 				}
-
-				// Close the current entry
-				inputStream.closeEntry();
 			}
-			
-			inputStream.close();
 
 			// Copy Image to SDCard
 			int externalStorageImagesPathResourceId = ResourceHelper.getResourceIdByName(context, ResourceItemType.string, StringResourceLookups.ExternalStorageImagesPath); 
@@ -173,6 +131,7 @@ public class UnzipFileAsync extends AsyncTask<Object, String, Boolean> {
 			
 			//Add package to library database table
 			application.getDatabaseHelper().createMyLibraryEntry(packageItem, imagePath + "/"+ courseImageFileName, folderName);
+			application.getDatabaseHelper().updateLibraryEntryChecksumVerification(packageItem.getUniqueId(), checksumVerification);
 			
 			
 			// find the package xml inside the folder
@@ -182,16 +141,61 @@ public class UnzipFileAsync extends AsyncTask<Object, String, Boolean> {
 				// Copy js files will return true if successful
 				copyJsFiles(packageXml.getParent());
 			}
+			
+			// compile the package index now, so that the package opens quickly the first time
+			compilePackageIndex();
 		} catch (Exception e) {
 			return false;
 		}
 
 		return true;
 	}
+	
+	/**
+	 * Parses and processes the package XML at the root of the course folder and writes its {@link PackageIndex}. A failure is not an
+	 * error, as the index is then built when the package is first opened.
+	 */
+	private void compilePackageIndex() {
+		File packageXml = new File(String.format(context.getString(R.string.package_path_format_string), courseFolderPath));
+		
+		if (!packageXml.exists()) {
+			return;
+		}
+		
+		try {
+			Package packageObject = PackageXmlReader.read(packageXml);
+			packageObject.setExternalRootPath(courseFolderPath);
+			packageObject.processItems();
+			
+			PackageIndex.write(packageObject, packageXml, packageItem.getVersion());
+		} catch (Exception e) {
+			Log.w(LOG_TAG, "Could not compile the package index for " + packageXml + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Publishes extraction progress when the {@link ProgressThrottle} allows. May be invoked from several threads.
+	 * 
+	 * @param extractedBytes	the number of bytes extracted
+	 * @param totalBytes		the total number of bytes to extract
+	 */
+	private void publishExtractionProgress(long extractedBytes, long totalBytes) {
+		if (!progressThrottle.shouldReport(extractedBytes, totalBytes)) {
+			return;
+		}
+		
+		publishProgress(extractedBytes, totalBytes);
+	}
 
 	@Override
-	protected void onProgressUpdate(String... progress) {
-		progressBar.setProgress(Integer.parseInt(progress[0]));
+	protected void onProgressUpdate(Long... progress) {
+		if (progressBar != null && progress[1] > 0) {
+			progressBar.setProgress((int) (progress[0] * 100 / progress[1]));
+		}
+		
+		if (callback instanceof UnzipFileAsyncProgressUpdate) {
+			((UnzipFileAsyncProgressUpdate) callback).onUnzipFileAsyncProgressUpdate(file, progress[0], progress[1]);
+		}
 	}
 
 	@Override
@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.download;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Utility class that extracts the entries of a zip file into a folder, either from a stream as the entries are read, or from a file
+ * on disk using its central directory to inflate entries in parallel.
+ * 
+ * @author Jon Brasted
+ */
+public class ZipExtractor {
+	/* Fields */
+	
+	/**
+	 * Polled between writes to allow extraction to be stopped.
+	 */
+	public interface Cancellable {
+		boolean isCancelled();
+	}
+	
+	/**
+	 * Receives the number of uncompressed bytes extracted so far. May be invoked from several threads.
+	 */
+	public interface ProgressListener {
+		void onProgress(long extractedBytes, long totalBytes);
+	}
+	
+	private static final int bufferSize = 8 * 1024;
+	
+	private static final int MAX_WORKERS = 4;
+	private static final int POOLED_BUFFER_SIZE = 64 * 1024;
+	
+	/* Methods */
+	
+	/**
+	 * Extracts all entries of a zip stream into a folder, replacing existing files.
+	 * 
+	 * @param inputStream		the zip stream
+	 * @param folder			the folder
+	 * @param cancellable		polled between writes, may be <code>null</code>
+	 * @return					<code>true</code> if all entries were extracted, <code>false</code> if extraction was cancelled
+	 * @throws IOException
+	 */
+	public static boolean extract(ZipInputStream inputStream, File folder, Cancellable cancellable) throws IOException {
+		if (!folder.exists()) {
+			folder.mkdirs();
+		}
+		
+		byte[] buff = new byte[bufferSize];
+		
+		// Loop through all the files and folders
+		for (ZipEntry entry = inputStream.getNextEntry(); entry != null; entry = inputStream.getNextEntry()) {
+			File innerFile = new File(folder, entry.getName());
+
+			if (innerFile.exists()) {
+				innerFile.delete();
+			}
+			
+			// Check if it is a folder
+			if (entry.isDirectory()) {
+				// Its a folder, create that folder
+				innerFile.mkdirs();
+			} else {
+				// ZipEntry thinks this is a file
+				// However, if this fails, we should take the parent and try and make it
+				File parentFile = innerFile.getParentFile();
+				
+				if (parentFile != null && !parentFile.isDirectory()) {
+					parentFile.mkdirs();
+				}
+				
+				// Buffer the ouput to the file
+				BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(new FileOutputStream(innerFile), bufferSize);
+
+				try {
+					// Write the contents
+					int count = 0;
+					
+					while ((count = inputStream.read(buff, 0, bufferSize)) != -1) {
+						// Back button is pressed stop reading.
+						if (cancellable != null && cancellable.isCancelled()) {
+							return false;
+						}
+
+						bufferedOutputStream.write(buff, 0, count);
+					}
+				} finally {
+					// Flush and close the buffers
+					bufferedOutputStream.close();
+				}
+			}
+
+			// Close the current entry
+			inputStream.closeEntry();
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Extracts all entries of a zip file into a folder, replacing existing files. Directories are created once up front and file
+	 * entries, largest first, are inflated on a small worker pool using pooled buffers. Cancellation is checked before each entry and
+	 * between writes.
+	 * 
+	 * @param file					the zip file
+	 * @param folder				the folder
+	 * @param cancellable			polled between entries and writes, may be <code>null</code>
+	 * @param progressListener		receives the number of bytes extracted, may be <code>null</code>
+	 * @return						<code>true</code> if all entries were extracted, <code>false</code> if extraction was cancelled
+	 * @throws IOException
+	 */
+	public static boolean extract(File file, final File folder, final Cancellable cancellable, final ProgressListener progressListener) throws IOException {
+		final ZipFile zipFile = new ZipFile(file);
+		
+		int workerCount = Math.max(1, Math.min(MAX_WORKERS, Runtime.getRuntime().availableProcessors()));
+		ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+		final BufferPool bufferPool = new BufferPool(workerCount, POOLED_BUFFER_SIZE);
+		
+		final ExtractionState state = new ExtractionState(cancellable);
+		
+		try {
+			List<ZipEntry> fileEntries = new ArrayList<ZipEntry>();
+			Set<File> directories = new HashSet<File>();
+			directories.add(folder);
+			
+			long totalBytes = 0;
+			
+			// read the central directory
+			Enumeration<? extends ZipEntry> entries = zipFile.entries();
+			
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+				File innerFile = new File(folder, entry.getName());
+				
+				if (entry.isDirectory()) {
+					directories.add(innerFile);
+				} else {
+					fileEntries.add(entry);
+					
+					if (innerFile.getParentFile() != null) {
+						directories.add(innerFile.getParentFile());
+					}
+					
+					totalBytes += Math.max(0, entry.getSize());
+				}
+			}
+			
+			// create the directories once, up front
+			for (File directory : directories) {
+				if (!directory.isDirectory()) {
+					directory.mkdirs();
+				}
+			}
+			
+			// start the largest entries first so the workers finish together
+			Collections.sort(fileEntries, new Comparator<ZipEntry>() {
+				@Override
+				public int compare(ZipEntry lhs, ZipEntry rhs) {
+					return (lhs.getSize() > rhs.getSize()) ? -1 : ((lhs.getSize() == rhs.getSize()) ? 0 : 1);
+				}
+			});
+			
+			final long total = totalBytes;
+			List<Future<Void>> futures = new ArrayList<Future<Void>>(fileEntries.size());
+			
+			for (final ZipEntry entry : fileEntries) {
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						if (!state.isStopped()) {
+							extractEntry(zipFile, entry, new File(folder, entry.getName()), bufferPool, state, progressListener, total);
+						}
+						
+						return null;
+					}
+				}));
+			}
+			
+			for (Future<Void> future : futures) {
+				try {
+					future.get();
+				} catch (InterruptedException e) {
+					state.stop();
+					throw new IOException("Interrupted while extracting " + file);
+				} catch (ExecutionException e) {
+					state.stop();
+					
+					Throwable cause = e.getCause();
+					throw (cause instanceof IOException) ? (IOException) cause : new IOException(String.valueOf(cause));
+				}
+			}
+			
+			return !state.isStopped();
+		} finally {
+			executor.shutdownNow();
+			zipFile.close();
+		}
+	}
+	
+	private static void extractEntry(ZipFile zipFile, ZipEntry entry, File innerFile, BufferPool bufferPool, ExtractionState state,
+			ProgressListener progressListener, long totalBytes) throws IOException, InterruptedException {
+		byte[] buffer = bufferPool.acquire();
+		
+		InputStream inputStream = null;
+		FileOutputStream outputStream = null;
+		
+		try {
+			inputStream = zipFile.getInputStream(entry);
+			outputStream = new FileOutputStream(innerFile);
+			
+			int count = 0;
+			
+			while ((count = inputStream.read(buffer)) != -1) {
+				if (state.isStopped()) {
+					return;
+				}
+				
+				outputStream.write(buffer, 0, count);
+				
+				long extractedBytes = state.extractedBytes.addAndGet(count);
+				
+				if (progressListener != null) {
+					progressListener.onProgress(extractedBytes, totalBytes);
+				}
+			}
+		} finally {
+			bufferPool.release(buffer);
+			
+			if (inputStream != null) {
+				inputStream.close();
+			}
+			
+			if (outputStream != null) {
+				outputStream.close();
+			}
+		}
+	}
+	
+	/**
+	 * State shared by the workers of a parallel extraction.
+	 */
+	private static class ExtractionState {
+		final AtomicLong extractedBytes = new AtomicLong();
+		private final Cancellable cancellable;
+		private volatile boolean isStopped;
+		
+		ExtractionState(Cancellable cancellable) {
+			this.cancellable = cancellable;
+		}
+		
+		boolean isStopped() {
+			if (!isStopped && cancellable != null && cancellable.isCancelled()) {
+				isStopped = true;
+			}
+			
+			return isStopped;
+		}
+		
+		void stop() {
+			isStopped = true;
+		}
+	}
+}
\ No newline at end of file
@@ -9,8 +9,7 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.WeakHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.net.ssl.HttpsURLConnection;
 
@@ -23,6 +22,8 @@ import android.os.Handler;
 import android.os.Message;
 import android.widget.ImageView;
 
+import com.tribal.mobile.net.ConnectionManager;
+import com.tribal.mobile.net.RequestPriority;
 import com.tribal.mobile.net.URLConnectionUtils;
 import com.tribal.mobile.preferences.PrivateSettingsKeys;
 import com.tribal.mobile.util.NativeSettingsHelper;
@@ -35,16 +36,19 @@ import com.tribal.mobile.util.resources.ResourceItemType;
  * Class to facilitate downloading drawables on a background thread and facilitate caching.
  * Taken from http://stackoverflow.com/a/7861011, which is based on Ben's solution found at http://negativeprobability.blogspot.co.uk/2011/08/lazy-loading-of-images-in-listview.html
  * Not sure what license the code is under but I assume it is Apache 2.
+ * 
+ * Downloads are scheduled by {@link ConnectionManager} as {@link RequestPriority#PREFETCH} requests, so that they do not hold up
+ * requests the user is waiting on.
  */
 public class DrawableBackgroundDownloader {
 
 	private final Map<String, SoftReference<Drawable>> mCache = new HashMap<String, SoftReference<Drawable>>();
 	private final LinkedList<Drawable> mChacheController = new LinkedList<Drawable>();
-	private ExecutorService mThreadPool;
+	// incremented by Reset, so that downloads queued before it are skipped
+	private final AtomicInteger mGeneration = new AtomicInteger();
 	private final Map<ImageView, String> mImageViews = Collections.synchronizedMap(new WeakHashMap<ImageView, String>());
 
 	public static int MAX_CACHE_SIZE = 80;
-	public int THREAD_POOL_SIZE = 3;
 
 	private Context context;
 
@@ -52,17 +56,14 @@ public class DrawableBackgroundDownloader {
 	 * Constructor
 	 */
 	public DrawableBackgroundDownloader(Context context) {
-		mThreadPool = Executors.newFixedThreadPool(THREAD_POOL_SIZE);
 		this.context = context;
 	}
 
 	/**
-	 * Clears all instance data and stops running threads
+	 * Clears all instance data and skips any downloads that have not started yet
 	 */
 	public void Reset() {
-		ExecutorService oldThreadPool = mThreadPool;
-		mThreadPool = Executors.newFixedThreadPool(THREAD_POOL_SIZE);
-		oldThreadPool.shutdownNow();
+		mGeneration.incrementAndGet();
 
 		mChacheController.clear();
 		mCache.clear();
@@ -143,9 +144,16 @@ public class DrawableBackgroundDownloader {
 			}
 		};
 
-		mThreadPool.submit(new Runnable() {
+		final int generation = mGeneration.get();
+		
+		ConnectionManager.getInstance().push(new Runnable() {
 			@Override
 			public void run() {
+				if (generation != mGeneration.get()) {
+					// reset since it was queued
+					return;
+				}
+				
 				final Drawable bmp = downloadDrawable(url);
 				// if the view is not visible anymore, the image will be ready
 				// for next time in cache
@@ -157,7 +165,7 @@ public class DrawableBackgroundDownloader {
 					handler.sendMessage(message);
 				}
 			}
-		});
+		}, RequestPriority.PREFETCH);
 	}
 
 	private Drawable downloadDrawable(String url) {
@@ -27,9 +27,14 @@
 
 package com.tribal.mobile.model;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
 
 import org.simpleframework.xml.Attribute;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 
 /**
  * Class that represents a content item in a content package. Could be of type <code>html</code>, <code>video</code> or <code>book</code>. 
@@ -192,4 +197,59 @@ public abstract class BaseContentItem implements Serializable {
 		
 		return fullItemIdPath;
 	}
+	
+	/**
+	 * Reads the item's attributes from the start tag the parser is positioned on, as bound by the annotations on the fields.
+	 * 
+	 * @param parser	the parser
+	 * @throws XmlPullParserException	if a required attribute is missing
+	 */
+	void readXml(XmlPullParser parser) throws XmlPullParserException {
+		id = PackageXmlReader.getAttribute(parser, "id", true);
+		path = PackageXmlReader.getAttribute(parser, "path", false);
+		keywords = PackageXmlReader.getAttribute(parser, "keywords", false);
+		iconPath = PackageXmlReader.getAttribute(parser, "icon", false);
+		title = PackageXmlReader.getAttribute(parser, "title", true);
+		label = PackageXmlReader.getAttribute(parser, "label", false);
+		isEnabled = PackageXmlReader.getBooleanAttribute(parser, "enabled", isEnabled);
+		mimeTypeString = PackageXmlReader.getAttribute(parser, "mimeType", false);
+	}
+	
+	/**
+	 * Writes the item to a {@link PackageIndex}. The parent menu item is not written, as it is restored when the menu items are read.
+	 * 
+	 * @param outputStream	the output stream
+	 * @throws IOException
+	 */
+	void writeIndex(DataOutputStream outputStream) throws IOException {
+		PackageIndex.writeString(outputStream, id);
+		PackageIndex.writeString(outputStream, path);
+		PackageIndex.writeString(outputStream, keywords);
+		PackageIndex.writeString(outputStream, iconPath);
+		PackageIndex.writeString(outputStream, title);
+		PackageIndex.writeString(outputStream, label);
+		outputStream.writeBoolean(isEnabled);
+		PackageIndex.writeString(outputStream, mimeTypeString);
+		outputStream.writeByte((mimeType != null) ? mimeType.ordinal() : -1);
+		PackageIndex.writeString(outputStream, packageId);
+	}
+	
+	/**
+	 * Reads the item from a {@link PackageIndex}.
+	 * 
+	 * @param inputStream	the input stream
+	 * @throws IOException
+	 */
+	void readIndex(DataInputStream inputStream) throws IOException {
+		id = PackageIndex.readString(inputStream);
+		path = PackageIndex.readString(inputStream);
+		keywords = PackageIndex.readString(inputStream);
+		iconPath = PackageIndex.readString(inputStream);
+		title = PackageIndex.readString(inputStream);
+		label = PackageIndex.readString(inputStream);
+		isEnabled = inputStream.readBoolean();
+		mimeTypeString = PackageIndex.readString(inputStream);
+		mimeType = PackageIndex.readEnum(inputStream, MimeType.values());
+		packageId = PackageIndex.readString(inputStream);
+	}
 }
\ No newline at end of file
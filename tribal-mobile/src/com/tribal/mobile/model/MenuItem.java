@@ -27,12 +27,19 @@
 
 package com.tribal.mobile.model;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.simpleframework.xml.Attribute;
 import org.simpleframework.xml.Element;
 import org.simpleframework.xml.ElementList;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 
 /**
  * Class that represents a <code>menu-item</code> in a content package.
@@ -316,4 +323,116 @@ public class MenuItem implements Serializable {
 		
 		return null;
 	}
+	
+	/**
+	 * Reads the menu item and its child menu items from the start tag the parser is positioned on, leaving the parser on the matching
+	 * end tag.
+	 * 
+	 * @param parser	the parser
+	 * @throws XmlPullParserException	if the XML is invalid or a required attribute is missing
+	 * @throws IOException
+	 */
+	void readXml(XmlPullParser parser) throws XmlPullParserException, IOException {
+		id = PackageXmlReader.getAttribute(parser, "id", false);
+		type = PackageXmlReader.getEnumAttribute(parser, "type", MenuItemType.class, true);
+		layoutType = PackageXmlReader.getEnumAttribute(parser, "layout", LayoutType.class, false);
+		title = PackageXmlReader.getAttribute(parser, "title", false);
+		iconPath = PackageXmlReader.getAttribute(parser, "icon", false);
+		link = PackageXmlReader.getAttribute(parser, "link", false);
+		isEnabled = PackageXmlReader.getBooleanAttribute(parser, "enabled", isEnabled);
+		headerBackground = PackageXmlReader.getAttribute(parser, "header-background", false);
+		
+		int depth = parser.getDepth();
+		
+		while (PackageXmlReader.nextChildElement(parser, depth)) {
+			if (PackageXmlReader.MENU_ITEM_ELEMENT.equals(parser.getName())) {
+				MenuItem child = new MenuItem();
+				child.readXml(parser);
+				
+				if (children == null) {
+					children = new ArrayList<MenuItem>();
+				}
+				
+				children.add(child);
+			} else {
+				PackageXmlReader.skipElement(parser);
+			}
+		}
+	}
+	
+	/**
+	 * Writes the menu item and its children to a {@link PackageIndex}. The linked content item is written as its position in the
+	 * package's content items.
+	 * 
+	 * @param outputStream			the output stream
+	 * @param contentItemPositions	the position of each content item, by identity
+	 * @throws IOException
+	 */
+	void writeIndex(DataOutputStream outputStream, Map<BaseContentItem, Integer> contentItemPositions) throws IOException {
+		PackageIndex.writeString(outputStream, id);
+		outputStream.writeByte((type != null) ? type.ordinal() : -1);
+		outputStream.writeByte((layoutType != null) ? layoutType.ordinal() : -1);
+		PackageIndex.writeString(outputStream, title);
+		PackageIndex.writeString(outputStream, iconPath);
+		PackageIndex.writeString(outputStream, link);
+		outputStream.writeBoolean(isEnabled);
+		PackageIndex.writeString(outputStream, headerBackground);
+		PackageIndex.writeString(outputStream, packageId);
+		
+		Integer linkedContentItemPosition = (linkedContentItem != null) ? contentItemPositions.get(linkedContentItem) : null;
+		outputStream.writeInt((linkedContentItemPosition != null) ? linkedContentItemPosition : -1);
+		
+		outputStream.writeInt((children != null) ? children.size() : -1);
+		
+		if (children != null) {
+			for (MenuItem child : children) {
+				child.writeIndex(outputStream, contentItemPositions);
+			}
+		}
+	}
+	
+	/**
+	 * Reads the menu item and its children from a {@link PackageIndex}, linking them to their parents and content items in the same
+	 * order as {@link Package#processItems()} does.
+	 * 
+	 * @param inputStream	the input stream
+	 * @param contentItems	the package's content items
+	 * @throws IOException
+	 */
+	void readIndex(DataInputStream inputStream, List<BaseContentItem> contentItems) throws IOException {
+		id = PackageIndex.readString(inputStream);
+		type = PackageIndex.readEnum(inputStream, MenuItemType.values());
+		layoutType = PackageIndex.readEnum(inputStream, LayoutType.values());
+		title = PackageIndex.readString(inputStream);
+		iconPath = PackageIndex.readString(inputStream);
+		link = PackageIndex.readString(inputStream);
+		isEnabled = inputStream.readBoolean();
+		headerBackground = PackageIndex.readString(inputStream);
+		packageId = PackageIndex.readString(inputStream);
+		
+		int linkedContentItemPosition = inputStream.readInt();
+		
+		if (linkedContentItemPosition >= 0) {
+			if (linkedContentItemPosition >= contentItems.size()) {
+				throw new IOException("Menu item links to content item " + linkedContentItemPosition + " of " + contentItems.size());
+			}
+			
+			linkedContentItem = contentItems.get(linkedContentItemPosition);
+			linkedContentItem.setMenuItemParent(this);
+		}
+		
+		int childCount = inputStream.readInt();
+		
+		if (childCount >= 0) {
+			children = new ArrayList<MenuItem>(childCount);
+			
+			for (int i = 0; i < childCount; i++) {
+				MenuItem child = new MenuItem();
+				child.parentMenuItem = this;
+				child.readIndex(inputStream, contentItems);
+				
+				children.add(child);
+			}
+		}
+	}
 }
\ No newline at end of file
@@ -27,15 +27,24 @@
 
 package com.tribal.mobile.model;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
 import org.simpleframework.xml.Attribute;
 import org.simpleframework.xml.ElementList;
 import org.simpleframework.xml.ElementListUnion;
 import org.simpleframework.xml.Root;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 
 import android.text.TextUtils;
 
@@ -74,6 +83,13 @@ public class Package implements Serializable {
 	private ArrayList<MenuItem> menuItems;
 	private ArrayList<BaseContentItem> contentItems;
 
+	// case-folded lookup tables, built when the items are processed or on first use
+	private transient Map<String, BaseContentItem> htmlItemsById;
+	private transient Map<String, BaseContentItem> bookItemsById;
+	private transient Map<String, BaseContentItem> videoItemsById;
+	private transient Map<String, MenuItem> menuItemsById;
+	private transient Map<String, MenuItem> menuItemsByPath;
+
 	/* Properties */
 
 	public String getId() {
@@ -143,12 +159,18 @@ public class Package implements Serializable {
 		// set content mime type
 		setContentMimeType();
 
+		// index the content items so that menu items are linked in constant time
+		buildContentItemIndexes();
+
 		// link menu items to content items
 		linkMenuItemsToContent(menuItems);
 
 		// set parent menu items
 		setParentMenuItems(menuItems);
 
+		// index the menu items that remain
+		buildMenuItemIndexes();
+
 		// set package id
 		setPackageIdOnItems();
 
@@ -159,6 +181,127 @@ public class Package implements Serializable {
 		updatePaths();
 	}
 
+	/**
+	 * Returns the number of content items and menu items in the package, which is a rough measure of the memory it holds.
+	 * 
+	 * @return	the number of items in the package
+	 */
+	public int getItemCount() {
+		return contentItems.size() + countMenuItems(menuItems);
+	}
+
+	private static int countMenuItems(List<MenuItem> items) {
+		int count = items.size();
+
+		for (MenuItem item : items) {
+			if (item.hasChildren()) {
+				count += countMenuItems(item.getChildren());
+			}
+		}
+
+		return count;
+	}
+
+	private void buildContentItemIndexes() {
+		htmlItemsById = createContentItemIndex(htmlItems);
+		bookItemsById = createContentItemIndex(bookItems);
+		videoItemsById = createContentItemIndex(videoItems);
+	}
+
+	private static Map<String, BaseContentItem> createContentItemIndex(List<? extends BaseContentItem> items) {
+		Map<String, BaseContentItem> index = new HashMap<String, BaseContentItem>(items.size() * 4 / 3 + 1);
+
+		for (BaseContentItem item : items) {
+			putFirst(index, item.getId(), item);
+		}
+
+		return index;
+	}
+
+	/**
+	 * Indexes every menu item by its id and by the id of its linked content item, keeping the first in depth-first order as a recursive
+	 * search would find, and by its full id path.
+	 */
+	private void buildMenuItemIndexes() {
+		menuItemsById = new HashMap<String, MenuItem>();
+		menuItemsByPath = new HashMap<String, MenuItem>();
+
+		addToMenuItemIndexes(menuItems, "");
+	}
+
+	/**
+	 * @param items			the menu items
+	 * @param parentPath	the full id path of their parent, an empty string at the top level, or <code>null</code> if they cannot be
+	 * 						reached by path
+	 */
+	private void addToMenuItemIndexes(List<MenuItem> items, String parentPath) {
+		for (MenuItem item : items) {
+			String id = item.getId();
+			BaseContentItem linkedContentItem = item.getLinkedContentItem();
+
+			putFirst(menuItemsById, id, item);
+
+			if (linkedContentItem != null) {
+				putFirst(menuItemsById, linkedContentItem.getId(), item);
+			}
+
+			// an item without an id cannot be reached by path, nor can its children
+			String path = (parentPath == null || id == null) ? null : (parentPath.length() == 0) ? id : parentPath + "." + id;
+
+			putFirst(menuItemsByPath, path, item);
+
+			if (item.hasChildren()) {
+				addToMenuItemIndexes(item.getChildren(), path);
+			}
+		}
+	}
+
+	private static <T> void putFirst(Map<String, T> index, String id, T item) {
+		if (id != null) {
+			String key = toKey(id);
+
+			if (!index.containsKey(key)) {
+				index.put(key, item);
+			}
+		}
+	}
+
+	private static String toKey(String id) {
+		return id.toLowerCase(Locale.ENGLISH);
+	}
+
+	private Map<String, MenuItem> getMenuItemsById() {
+		if (menuItemsById == null) {
+			buildMenuItemIndexes();
+		}
+
+		return menuItemsById;
+	}
+
+	private Map<String, MenuItem> getMenuItemsByPath() {
+		if (menuItemsByPath == null) {
+			buildMenuItemIndexes();
+		}
+
+		return menuItemsByPath;
+	}
+
+	private Map<String, BaseContentItem> getContentItemIndex(Class<? extends BaseContentItem> classType) {
+		if (htmlItemsById == null) {
+			buildContentItemIndexes();
+		}
+
+		if (classType.equals(HtmlItem.class)) {
+			return htmlItemsById;
+		} else if (classType.equals(BookItem.class)) {
+			return bookItemsById;
+		} else if (classType.equals(VideoItem.class)) {
+			return videoItemsById;
+		}
+
+		return null;
+	}
+
 	private void setContentMimeType() {
 		for (BaseContentItem contentItem : contentItems) {
 			contentItem.setMimeType();
@@ -312,7 +455,15 @@ public class Package implements Serializable {
 			path = path.replace(idPrefix, "");
 		}
 
-		return findMenuItemByPath(path, menuItems);
+		// an id alone is searched for through the whole menu
+		if (path.indexOf('.') < 0) {
+			return getMenuItemsById().get(toKey(path));
+		}
+
+		MenuItem menuItem = getMenuItemsByPath().get(toKey(path));
+
+		// fall back to walking the menu for paths that are not full id paths, such as those that skip levels
+		return (menuItem != null) ? menuItem : findMenuItemByPath(path, menuItems);
 	}
 
 	private MenuItem findMenuItemByPath(String path, List<MenuItem> menuItems) {
@@ -402,31 +553,22 @@ public class Package implements Serializable {
 			id = id.substring(packagePrefix.length());
 		}
 
+		String key = toKey(id);
 		BaseContentItem item = null;
 
-		item = findContentItemById(id, htmlItems);
+		item = getContentItemIndex(HtmlItem.class).get(key);
 		
 		if (item == null) {
-			item = findContentItemById(id, bookItems);
+			item = getContentItemIndex(BookItem.class).get(key);
 			
 			if (item == null) {
-				item = findContentItemById(id, videoItems);
+				item = getContentItemIndex(VideoItem.class).get(key);
 			}
 		}
 
 		return item;
 	}
 
-	private BaseContentItem findContentItemById(String id, ArrayList<? extends BaseContentItem> collection) {
-		for (BaseContentItem baseContentItem : collection) {
-			if (baseContentItem.getId().equalsIgnoreCase(id)) {
-				return baseContentItem;
-			}
-		}
-
-		return null;
-	}
-
 	/**
 	 * Find and return the {@link BaseContentItem} instance for a given id and class type.
 	 * 
@@ -438,25 +580,161 @@ public class Package implements Serializable {
 	@SuppressWarnings("unchecked")
 	public <T> T findContentItemById(String id,
 			Class<? extends BaseContentItem> classType) throws Exception {
-		ArrayList<? extends BaseContentItem> collection = null;
+		Map<String, BaseContentItem> index = getContentItemIndex(classType);
 
-		if (classType.equals(HtmlItem.class)) {
-			collection = htmlItems;
-		} else if (classType.equals(BookItem.class)) {
-			collection = bookItems;
-		} else if (classType.equals(VideoItem.class)) {
-			collection = videoItems;
-		} else {
+		if (index == null) {
 			throw new Exception("class type " + classType + " is not currently supported by Package.findContentItemById(...)");
 		}
 
-		for (BaseContentItem baseContentItem : collection) {
-			if (baseContentItem.getId().equalsIgnoreCase(id)) {
-				return (T) baseContentItem;
-			}
+		BaseContentItem baseContentItem = index.get(toKey(id));
+
+		if (baseContentItem != null) {
+			return (T) baseContentItem;
 		}
 
 		throw new Exception("Could not find content item with ID '" + id
 				+ "' and type '" + classType + "'.");
 	}
+	
+	/**
+	 * Reads an unprocessed package from the <code>package</code> start tag the parser is positioned on, keeping the document order of
+	 * its children as the annotations on the fields do.
+	 * 
+	 * @param parser	the parser
+	 * @return			the package
+	 * @throws XmlPullParserException	if the XML is invalid or a required attribute is missing
+	 * @throws IOException
+	 */
+	static Package readXml(XmlPullParser parser) throws XmlPullParserException, IOException {
+		Package packageObject = new Package();
+		
+		packageObject.id = PackageXmlReader.getAttribute(parser, "id", true);
+		packageObject.entryPoint = PackageXmlReader.getAttribute(parser, "entry-point", false);
+		
+		int depth = parser.getDepth();
+		
+		while (PackageXmlReader.nextChildElement(parser, depth)) {
+			String name = parser.getName();
+			BaseContentItem contentItem = null;
+			
+			if ("html".equals(name)) {
+				contentItem = new HtmlItem();
+			} else if ("book".equals(name)) {
+				contentItem = new BookItem();
+			} else if ("video".equals(name)) {
+				contentItem = new VideoItem();
+			} else if (PackageXmlReader.MENU_ITEM_ELEMENT.equals(name)) {
+				MenuItem menuItem = new MenuItem();
+				menuItem.readXml(parser);
+				
+				packageObject.children.add(menuItem);
+				continue;
+			}
+			
+			if (contentItem != null) {
+				contentItem.readXml(parser);
+				packageObject.children.add(contentItem);
+			}
+			
+			// content items have no child elements
+			PackageXmlReader.skipElement(parser);
+		}
+		
+		return packageObject;
+	}
+	
+	/**
+	 * Writes the processed package to a {@link PackageIndex}.
+	 * 
+	 * @param outputStream	the output stream
+	 * @throws IOException
+	 */
+	void writeIndex(DataOutputStream outputStream) throws IOException {
+		PackageIndex.writeString(outputStream, id);
+		PackageIndex.writeString(outputStream, entryPoint);
+		PackageIndex.writeString(outputStream, externalRootPath);
+		
+		writeContentItemsIndex(outputStream, htmlItems);
+		writeContentItemsIndex(outputStream, bookItems);
+		writeContentItemsIndex(outputStream, videoItems);
+		
+		// menu items refer to content items by their position in the content items
+		Map<BaseContentItem, Integer> contentItemPositions = new IdentityHashMap<BaseContentItem, Integer>(contentItems.size());
+		
+		for (int i = 0, contentItemsSize = contentItems.size(); i < contentItemsSize; i++) {
+			contentItemPositions.put(contentItems.get(i), i);
+		}
+		
+		outputStream.writeInt(menuItems.size());
+		
+		for (MenuItem menuItem : menuItems) {
+			menuItem.writeIndex(outputStream, contentItemPositions);
+		}
+	}
+	
+	private void writeContentItemsIndex(DataOutputStream outputStream, List<? extends BaseContentItem> items) throws IOException {
+		outputStream.writeInt(items.size());
+		
+		for (BaseContentItem item : items) {
+			item.writeIndex(outputStream);
+		}
+	}
+	
+	/**
+	 * Reads a processed package from a {@link PackageIndex}. There is no need to call {@link #processItems()} on the result.
+	 * 
+	 * @param inputStream	the input stream
+	 * @return				the package
+	 * @throws IOException
+	 */
+	static Package readIndex(DataInputStream inputStream) throws IOException {
+		Package packageObject = new Package();
+		
+		packageObject.id = PackageIndex.readString(inputStream);
+		packageObject.entryPoint = PackageIndex.readString(inputStream);
+		packageObject.externalRootPath = PackageIndex.readString(inputStream);
+		
+		packageObject.readContentItemsIndex(inputStream, packageObject.htmlItems, HtmlItem.class);
+		packageObject.readContentItemsIndex(inputStream, packageObject.bookItems, BookItem.class);
+		packageObject.readContentItemsIndex(inputStream, packageObject.videoItems, VideoItem.class);
+		
+		packageObject.contentItems.addAll(packageObject.htmlItems);
+		packageObject.contentItems.addAll(packageObject.bookItems);
+		packageObject.contentItems.addAll(packageObject.videoItems);
+		
+		int menuItemCount = inputStream.readInt();
+		
+		for (int i = 0; i < menuItemCount; i++) {
+			MenuItem menuItem = new MenuItem();
+			menuItem.readIndex(inputStream, packageObject.contentItems);
+			
+			packageObject.menuItems.add(menuItem);
+		}
+		
+		packageObject.children.addAll(packageObject.contentItems);
+		packageObject.children.addAll(packageObject.menuItems);
+		
+		return packageObject;
+	}
+	
+	private <T extends BaseContentItem> void readContentItemsIndex(DataInputStream inputStream, List<T> items, Class<T> classType) throws IOException {
+		int itemCount = inputStream.readInt();
+		
+		if (itemCount < 0) {
+			throw new IOException("Invalid content item count " + itemCount);
+		}
+		
+		try {
+			for (int i = 0; i < itemCount; i++) {
+				T item = classType.newInstance();
+				item.readIndex(inputStream);
+				
+				items.add(item);
+			}
+		} catch (InstantiationException e) {
+			throw new IOException(e.getMessage());
+		} catch (IllegalAccessException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import android.text.TextUtils;
+import android.util.Log;
+
+/**
+ * A compiled, binary copy of a processed {@link Package}, cached as <code>package.index</code> alongside its <code>package.xml</code>.
+ * Reading the index replaces parsing the XML and {@link Package#processItems()} with one sequential read.
+ * <p>
+ * The index records the size and modification time of the XML it was built from, the external root path the item paths were resolved
+ * against, and the version of the package if it is known. It is ignored, and should be rebuilt, when any of these no longer match.
+ * 
+ * @author Jon Brasted
+ */
+public class PackageIndex {
+	/* Fields */
+	
+	private final static String LOG_TAG = "PackageIndex";
+	
+	public final static String INDEX_FILE_NAME = "package.index";
+	
+	private final static int MAGIC = 0x504b4958;
+	
+	// increment whenever the layout written by the model classes changes
+	private final static int FORMAT_VERSION = 1;
+	
+	private final static int BUFFER_SIZE = 16 * 1024;
+	
+	/* Methods */
+	
+	/**
+	 * Returns the index file for a package XML file.
+	 * 
+	 * @param packageXml	the package XML file
+	 * @return				the index file
+	 */
+	public static File getIndexFile(File packageXml) {
+		return new File(packageXml.getParentFile(), INDEX_FILE_NAME);
+	}
+	
+	/**
+	 * Reads the index of a package XML file.
+	 * 
+	 * @param packageXml		the package XML file
+	 * @param externalRootPath	the external root path the package is opened from
+	 * @param version			the version of the package, or <code>null</code> if it is not known
+	 * @return					the processed package, or <code>null</code> if there is no index or it is out of date
+	 */
+	public static Package read(File packageXml, String externalRootPath, String version) {
+		File indexFile = getIndexFile(packageXml);
+		
+		if (!indexFile.exists()) {
+			return null;
+		}
+		
+		DataInputStream inputStream = null;
+		
+		try {
+			inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile), BUFFER_SIZE));
+			
+			if (inputStream.readInt() != MAGIC || inputStream.readInt() != FORMAT_VERSION) {
+				return null;
+			}
+			
+			long xmlLength = inputStream.readLong();
+			long xmlLastModified = inputStream.readLong();
+			String indexVersion = readString(inputStream);
+			
+			if (xmlLength != packageXml.length() || xmlLastModified != packageXml.lastModified()) {
+				return null;
+			}
+			
+			if (!TextUtils.isEmpty(version) && !TextUtils.isEmpty(indexVersion) && !version.equals(indexVersion)) {
+				return null;
+			}
+			
+			Package packageObject = Package.readIndex(inputStream);
+			
+			if (!TextUtils.equals(externalRootPath, packageObject.getExternalRootPath())) {
+				return null;
+			}
+			
+			return packageObject;
+		} catch (Exception e) {
+			Log.w(LOG_TAG, "Could not read " + indexFile + ": " + e.getMessage());
+			return null;
+		} finally {
+			closeQuietly(inputStream);
+		}
+	}
+	
+	/**
+	 * Writes the index of a processed package next to its package XML file, replacing any existing index.
+	 * 
+	 * @param packageObject	the processed package
+	 * @param packageXml	the package XML file the package was read from
+	 * @param version		the version of the package, or <code>null</code> if it is not known
+	 * @return				whether the index was written
+	 */
+	public static boolean write(Package packageObject, File packageXml, String version) {
+		File indexFile = getIndexFile(packageXml);
+		File temporaryFile = new File(indexFile.getPath() + ".tmp");
+		
+		DataOutputStream outputStream = null;
+		
+		try {
+			outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile), BUFFER_SIZE));
+			
+			outputStream.writeInt(MAGIC);
+			outputStream.writeInt(FORMAT_VERSION);
+			outputStream.writeLong(packageXml.length());
+			outputStream.writeLong(packageXml.lastModified());
+			writeString(outputStream, version);
+			
+			packageObject.writeIndex(outputStream);
+			
+			outputStream.close();
+			outputStream = null;
+			
+			// replace the index in one step, so that a reader never sees a partly written one
+			return temporaryFile.renameTo(indexFile);
+		} catch (Exception e) {
+			Log.w(LOG_TAG, "Could not write " + indexFile + ": " + e.getMessage());
+			return false;
+		} finally {
+			closeQuietly(outputStream);
+			temporaryFile.delete();
+		}
+	}
+	
+	/**
+	 * Deletes the index of a package XML file, if there is one.
+	 * 
+	 * @param packageXml	the package XML file
+	 */
+	public static void delete(File packageXml) {
+		getIndexFile(packageXml).delete();
+	}
+	
+	static void writeString(DataOutputStream outputStream, String value) throws IOException {
+		outputStream.writeBoolean(value != null);
+		
+		if (value != null) {
+			outputStream.writeUTF(value);
+		}
+	}
+	
+	static String readString(DataInputStream inputStream) throws IOException {
+		return inputStream.readBoolean() ? inputStream.readUTF() : null;
+	}
+	
+	static <T extends Enum<T>> T readEnum(DataInputStream inputStream, T[] values) throws IOException {
+		int ordinal = inputStream.readByte();
+		
+		if (ordinal >= values.length) {
+			throw new IOException("Invalid ordinal " + ordinal + " for " + values.getClass().getComponentType().getSimpleName());
+		}
+		
+		return (ordinal >= 0) ? values[ordinal] : null;
+	}
+	
+	private static void closeQuietly(Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+}
\ No newline at end of file
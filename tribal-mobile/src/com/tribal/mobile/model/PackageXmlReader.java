@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.model;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+/**
+ * Reads a <code>package.xml</code> file into an unprocessed {@link Package} with a streaming {@link XmlPullParser}, producing the same
+ * model as binding it with Simple-XML but without reflection or an intermediate node tree. Each model class reads its own attributes.
+ * <p>
+ * Unlike the strict Simple-XML binding, unknown elements and attributes are skipped rather than rejected. Missing required attributes
+ * and invalid enumeration values are still errors.
+ * 
+ * @author Jon Brasted
+ */
+public class PackageXmlReader {
+	/* Fields */
+	
+	private final static String PACKAGE_ELEMENT = "package";
+	final static String MENU_ITEM_ELEMENT = "menu-item";
+	
+	private final static int BUFFER_SIZE = 16 * 1024;
+	
+	private static XmlPullParserFactory parserFactory;
+	
+	/* Methods */
+	
+	/**
+	 * Reads a package XML file. The result still needs {@link Package#processItems()} to be called on it.
+	 * 
+	 * @param file	the package XML file
+	 * @return		the package
+	 * @throws XmlPullParserException	if the XML is invalid or does not describe a package
+	 * @throws IOException
+	 */
+	public static Package read(File file) throws XmlPullParserException, IOException {
+		InputStream inputStream = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+		
+		try {
+			return read(inputStream);
+		} finally {
+			inputStream.close();
+		}
+	}
+	
+	/**
+	 * Reads a package XML document from a stream, detecting its encoding. The stream is not closed.
+	 * 
+	 * @param inputStream	the input stream
+	 * @return				the package
+	 * @throws XmlPullParserException	if the XML is invalid or does not describe a package
+	 * @throws IOException
+	 */
+	public static Package read(InputStream inputStream) throws XmlPullParserException, IOException {
+		XmlPullParser parser = newPullParser();
+		parser.setInput(inputStream, null);
+		
+		int eventType = parser.getEventType();
+		
+		while (eventType != XmlPullParser.START_TAG && eventType != XmlPullParser.END_DOCUMENT) {
+			eventType = parser.next();
+		}
+		
+		if (eventType != XmlPullParser.START_TAG || !PACKAGE_ELEMENT.equals(parser.getName())) {
+			throw new XmlPullParserException("Expected a <" + PACKAGE_ELEMENT + "> root element", parser, null);
+		}
+		
+		return Package.readXml(parser);
+	}
+	
+	private static synchronized XmlPullParser newPullParser() throws XmlPullParserException {
+		if (parserFactory == null) {
+			parserFactory = XmlPullParserFactory.newInstance();
+			parserFactory.setNamespaceAware(false);
+		}
+		
+		return parserFactory.newPullParser();
+	}
+	
+	/**
+	 * Advances the parser to the next child element of the element at a given depth, skipping text.
+	 * 
+	 * @param parser	the parser, positioned on the start tag of the parent or the end tag of a previous child
+	 * @param depth		the depth of the parent element
+	 * @return			<code>true</code> if the parser is on the start tag of a child, <code>false</code> if it is on the end tag of the parent
+	 * @throws XmlPullParserException
+	 * @throws IOException
+	 */
+	static boolean nextChildElement(XmlPullParser parser, int depth) throws XmlPullParserException, IOException {
+		int eventType;
+		
+		while ((eventType = parser.next()) != XmlPullParser.END_DOCUMENT) {
+			if (eventType == XmlPullParser.START_TAG) {
+				return true;
+			}
+			
+			if (eventType == XmlPullParser.END_TAG && parser.getDepth() == depth) {
+				return false;
+			}
+		}
+		
+		throw new XmlPullParserException("Unexpected end of document", parser, null);
+	}
+	
+	/**
+	 * Skips the element the parser is positioned on, leaving it on the matching end tag.
+	 * 
+	 * @param parser	the parser, positioned on a start tag
+	 * @throws XmlPullParserException
+	 * @throws IOException
+	 */
+	static void skipElement(XmlPullParser parser) throws XmlPullParserException, IOException {
+		int depth = 1;
+		
+		while (depth > 0) {
+			switch (parser.next()) {
+				case XmlPullParser.START_TAG:
+					depth++;
+					break;
+				case XmlPullParser.END_TAG:
+					depth--;
+					break;
+				case XmlPullParser.END_DOCUMENT:
+					throw new XmlPullParserException("Unexpected end of document", parser, null);
+			}
+		}
+	}
+	
+	static String getAttribute(XmlPullParser parser, String name, boolean isRequired) throws XmlPullParserException {
+		String value = parser.getAttributeValue(null, name);
+		
+		if (value == null && isRequired) {
+			throw new XmlPullParserException("Missing attribute '" + name + "' on <" + parser.getName() + ">", parser, null);
+		}
+		
+		return value;
+	}
+	
+	static boolean getBooleanAttribute(XmlPullParser parser, String name, boolean defaultValue) {
+		String value = parser.getAttributeValue(null, name);
+		
+		return (value != null) ? Boolean.parseBoolean(value) : defaultValue;
+	}
+	
+	static <T extends Enum<T>> T getEnumAttribute(XmlPullParser parser, String name, Class<T> enumType, boolean isRequired) throws XmlPullParserException {
+		String value = getAttribute(parser, name, isRequired);
+		
+		if (value == null) {
+			return null;
+		}
+		
+		try {
+			return Enum.valueOf(enumType, value);
+		} catch (IllegalArgumentException e) {
+			throw new XmlPullParserException("Invalid value '" + value + "' for attribute '" + name + "' on <" + parser.getName() + ">", parser, e);
+		}
+	}
+}
\ No newline at end of file
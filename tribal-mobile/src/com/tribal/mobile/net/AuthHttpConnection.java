@@ -81,7 +81,23 @@ public class AuthHttpConnection extends HttpConnection {
 	 * @return					an instance of {@link AuthHttpConnection}
 	 */
 	public static AuthHttpConnection post(String url, String data, Callback callback, boolean includeUsername, Context context) {
+		return post(url, data, callback, includeUsername, RequestPriority.INTERACTIVE, context);
+	}
+	
+	/**
+	 * Retrieves an instance of {@link AuthHttpConnection} for executing an HTTP POST request with the specified priority.
+	 * 
+	 * @param url				the url
+	 * @param data				the data payload
+	 * @param callback			the callback
+	 * @param includeUsername	whether to include the username or not
+	 * @param priority			the priority with which the request is scheduled
+	 * @param context			the context
+	 * @return					an instance of {@link AuthHttpConnection}
+	 */
+	public static AuthHttpConnection post(String url, String data, Callback callback, boolean includeUsername, RequestPriority priority, Context context) {
 		final AuthHttpConnection result = new AuthHttpConnection(HttpMethod.POST, url, data, callback, includeUsername, context);
+		result.setPriority(priority);
 		ConnectionManager.getInstance().push(result);
 		return result;
 	}
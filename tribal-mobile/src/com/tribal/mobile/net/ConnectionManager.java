@@ -27,41 +27,475 @@
 
 package com.tribal.mobile.net;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.security.KeyStore;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
+import org.apache.http.ProtocolVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+
+import android.content.Context;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.tribal.mobile.preferences.PrivateSettingsKeys;
+import com.tribal.mobile.util.NativeSettingsHelper;
+import com.tribal.mobile.util.concurrent.WorkerPool;
+import com.tribal.mobile.util.concurrent.Workers;
+
 /**
  * 
  * Implementation based on
  * http://masl.cis.gvsu.edu/2010/04/05/android-code-sample-asynchronous-http-connections/
  * 
+ * <p>
+ * Requests are scheduled by {@link RequestPriority}: the highest priority pending request is started whenever a connection thread is
+ * free, subject to the concurrency limit of its priority class. Requests run on the shared {@link WorkerPool#NETWORK} pool. When a priority class's queue is full, callers off the main thread wait
+ * for space rather than having their request rejected; requests from the main thread are always accepted. Queue depth and wait time
+ * are recorded per priority class.
+ * </p>
+ * 
+ * <p>
+ * Also owns the process-wide {@link HttpClient} used by {@link HttpConnection}, so that connections are kept alive and TLS sessions
+ * are reused across requests. The client is only rebuilt when the accept self-signed certificates preference or the connection limits
+ * change, and a replaced client is only shut down once the requests running on it have finished.
+ * </p>
+ * 
  * @author Eduardo S. Nunes 
  */
 public class ConnectionManager {
 
-	private static final int MAXIMUM_POOL_SIZE = 5;
-	private static final int CORE_POOL_SIZE = 0;
-	private static final int KEEP_ALIVE = 10;
+	private static final int MAXIMUM_POOL_SIZE = WorkerPool.NETWORK.getThreadCount();
+	
+	public static final int DEFAULT_MAX_TOTAL_CONNECTIONS = MAXIMUM_POOL_SIZE;
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 2;
+	
+	private static final int SOCKET_TIMEOUT_MILLISECONDS = 25000;
 
 	private static ConnectionManager instance;
 
-	private final BlockingQueue<Runnable> workQueue = new LinkedBlockingQueue<Runnable>(
-			MAXIMUM_POOL_SIZE);
+	private static final String TAG = "ConnectionManager";
 
-	private final ThreadPoolExecutor executor = new ThreadPoolExecutor(
-			CORE_POOL_SIZE, MAXIMUM_POOL_SIZE, KEEP_ALIVE, TimeUnit.SECONDS,
-			workQueue);
+	private final Object schedulerLock = new Object();
+	private final EnumMap<RequestPriority, PriorityClass> priorityClasses = new EnumMap<RequestPriority, PriorityClass>(RequestPriority.class);
+	private int runningRequestCount;
+	
+	private HttpClient httpClient;
+	private boolean httpClientAcceptsSelfSignedCertificates;
+	
+	// number of requests using each client, including clients that have been replaced but not yet shut down
+	private final Map<HttpClient, Integer> httpClientLeaseCounts = new IdentityHashMap<HttpClient, Integer>();
+	
+	private int maxTotalConnections = DEFAULT_MAX_TOTAL_CONNECTIONS;
+	private final ConnPerRouteBean connectionsPerRoute = new ConnPerRouteBean(DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
 
-	public static ConnectionManager getInstance() {
+	public static synchronized ConnectionManager getInstance() {
 		if (instance == null) {
 			instance = new ConnectionManager();
 		}
 		return instance;
 	}
 
+	private ConnectionManager() {
+		for (RequestPriority priority : RequestPriority.values()) {
+			priorityClasses.put(priority, new PriorityClass());
+		}
+	}
+
+	/**
+	 * Schedules the connection according to its {@link RequestPriority}. If the queue for its priority class is full and this is not
+	 * the main thread, waits until there is space.
+	 * 
+	 * @param httpConnection	the connection
+	 */
 	public void push(HttpConnection httpConnection) {
-		executor.execute(httpConnection);
+		push(httpConnection, httpConnection.getPriority());
+	}
+	
+	/**
+	 * Schedules a request that does not go through {@link HttpConnection}, e.g. an image download, with the given priority. If the
+	 * queue for its priority class is full and this is not the main thread, waits until there is space.
+	 * 
+	 * @param request	the request
+	 * @param priority	the priority
+	 */
+	public void push(Runnable request, RequestPriority priority) {
+		boolean mayWait = (Looper.myLooper() != Looper.getMainLooper());
+		
+		synchronized (schedulerLock) {
+			PriorityClass priorityClass = priorityClasses.get(priority);
+			
+			while (mayWait && priorityClass.pendingRequests.size() >= priority.getQueueCapacity()) {
+				try {
+					schedulerLock.wait();
+				} catch (InterruptedException e) {
+					// accept the request anyway so that its callback is still invoked
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+			
+			priorityClass.pendingRequests.addLast(new ScheduledRequest(request, priority));
+			priorityClass.submittedCount++;
+			priorityClass.maxQueueDepth = Math.max(priorityClass.maxQueueDepth, priorityClass.pendingRequests.size());
+			
+			dispatch();
+		}
+	}
+	
+	/**
+	 * Start as many pending requests as the limits allow, highest priority first. Must be called holding the scheduler lock.
+	 */
+	private void dispatch() {
+		for (RequestPriority priority : RequestPriority.values()) {
+			PriorityClass priorityClass = priorityClasses.get(priority);
+			
+			while (runningRequestCount < MAXIMUM_POOL_SIZE && priorityClass.runningCount < priority.getMaxConcurrentRequests()
+					&& !priorityClass.pendingRequests.isEmpty()) {
+				ScheduledRequest scheduledRequest = priorityClass.pendingRequests.removeFirst();
+				
+				long waitTime = SystemClock.elapsedRealtime() - scheduledRequest.enqueuedTime;
+				priorityClass.totalWaitTime += waitTime;
+				priorityClass.maxWaitTime = Math.max(priorityClass.maxWaitTime, waitTime);
+				
+				priorityClass.runningCount++;
+				runningRequestCount++;
+				
+				// the scheduler never has more requests running than the pool has threads, so the request starts straight away
+				Workers.execute(WorkerPool.NETWORK, scheduledRequest);
+				
+				// there is space in the queue for any waiting callers
+				schedulerLock.notifyAll();
+			}
+		}
+	}
+	
+	private void onRequestFinished(RequestPriority priority) {
+		synchronized (schedulerLock) {
+			PriorityClass priorityClass = priorityClasses.get(priority);
+			
+			priorityClass.runningCount--;
+			priorityClass.completedCount++;
+			runningRequestCount--;
+			
+			dispatch();
+		}
+	}
+	
+	/**
+	 * Returns the number of requests of the priority class waiting to be started.
+	 * 
+	 * @param priority	the priority class
+	 * @return			the queue depth
+	 */
+	public int getQueueDepth(RequestPriority priority) {
+		synchronized (schedulerLock) {
+			return priorityClasses.get(priority).pendingRequests.size();
+		}
+	}
+	
+	/**
+	 * Returns the largest number of requests of the priority class that have been waiting to be started at once.
+	 * 
+	 * @param priority	the priority class
+	 * @return			the maximum queue depth
+	 */
+	public int getMaxQueueDepth(RequestPriority priority) {
+		synchronized (schedulerLock) {
+			return priorityClasses.get(priority).maxQueueDepth;
+		}
+	}
+	
+	/**
+	 * Returns the number of requests of the priority class that are currently running.
+	 * 
+	 * @param priority	the priority class
+	 * @return			the number of running requests
+	 */
+	public int getRunningCount(RequestPriority priority) {
+		synchronized (schedulerLock) {
+			return priorityClasses.get(priority).runningCount;
+		}
+	}
+	
+	/**
+	 * Returns the number of requests of the priority class that have finished.
+	 * 
+	 * @param priority	the priority class
+	 * @return			the number of finished requests
+	 */
+	public long getCompletedCount(RequestPriority priority) {
+		synchronized (schedulerLock) {
+			return priorityClasses.get(priority).completedCount;
+		}
+	}
+	
+	/**
+	 * Returns the mean time requests of the priority class have waited before being started.
+	 * 
+	 * @param priority	the priority class
+	 * @return			the mean wait time in milliseconds
+	 */
+	public long getAverageWaitTime(RequestPriority priority) {
+		synchronized (schedulerLock) {
+			PriorityClass priorityClass = priorityClasses.get(priority);
+			long startedCount = priorityClass.submittedCount - priorityClass.pendingRequests.size();
+			
+			return (startedCount == 0) ? 0 : priorityClass.totalWaitTime / startedCount;
+		}
+	}
+	
+	/**
+	 * Returns the longest time a request of the priority class has waited before being started.
+	 * 
+	 * @param priority	the priority class
+	 * @return			the maximum wait time in milliseconds
+	 */
+	public long getMaxWaitTime(RequestPriority priority) {
+		synchronized (schedulerLock) {
+			return priorityClasses.get(priority).maxWaitTime;
+		}
+	}
+	
+	/**
+	 * Logs the scheduler metrics for each priority class.
+	 */
+	public void logMetrics() {
+		for (RequestPriority priority : RequestPriority.values()) {
+			Log.d(TAG, String.format(Locale.US, "%s: queued=%d (max %d), running=%d, completed=%d, wait avg=%dms max=%dms", priority,
+					getQueueDepth(priority), getMaxQueueDepth(priority), getRunningCount(priority), getCompletedCount(priority),
+					getAverageWaitTime(priority), getMaxWaitTime(priority)));
+		}
+	}
+	
+	/**
+	 * Returns the shared {@link HttpClient} for a request, building it if it has not been built yet or if the accept self-signed
+	 * certificates preference has changed since it was built. Every call must be matched by a call to
+	 * {@link #releaseHttpClient(HttpClient)} once the request has finished with the client, so that a client that has been replaced
+	 * is only shut down when no request is using it.
+	 * 
+	 * @param context	the context
+	 * @return			the shared {@link HttpClient}
+	 */
+	public synchronized HttpClient acquireHttpClient(Context context) {
+		final boolean acceptSelfSignedCertificates = NativeSettingsHelper.getInstance(context).checkAndGetPrivateBooleanSetting(PrivateSettingsKeys.ACCEPT_SSL_SELF_SIGNED_CERTS,
+				false);
+		
+		if (httpClient == null || httpClientAcceptsSelfSignedCertificates != acceptSelfSignedCertificates) {
+			retireHttpClient();
+			
+			httpClient = createHttpClient(acceptSelfSignedCertificates);
+			httpClientAcceptsSelfSignedCertificates = acceptSelfSignedCertificates;
+		}
+		
+		Integer leaseCount = httpClientLeaseCounts.get(httpClient);
+		httpClientLeaseCounts.put(httpClient, (leaseCount == null) ? 1 : leaseCount + 1);
+		
+		return httpClient;
+	}
+	
+	/**
+	 * Releases a client returned by {@link #acquireHttpClient(Context)}. If the client has been replaced and this was the last request
+	 * using it, it is shut down.
+	 * 
+	 * @param client	the client
+	 */
+	public synchronized void releaseHttpClient(HttpClient client) {
+		Integer leaseCount = httpClientLeaseCounts.get(client);
+		
+		if (leaseCount == null) {
+			// already shut down
+			return;
+		}
+		
+		if (leaseCount > 1) {
+			httpClientLeaseCounts.put(client, leaseCount - 1);
+		} else {
+			httpClientLeaseCounts.remove(client);
+			
+			if (client != httpClient) {
+				client.getConnectionManager().shutdown();
+			}
+		}
+	}
+	
+	/**
+	 * Sets the connection limits of the shared {@link HttpClient}. The client is rebuilt on next use.
+	 * 
+	 * @param maxTotalConnections		the maximum number of pooled connections
+	 * @param maxConnectionsPerRoute	the default maximum number of pooled connections per route
+	 */
+	public synchronized void setConnectionLimits(int maxTotalConnections, int maxConnectionsPerRoute) {
+		this.maxTotalConnections = maxTotalConnections;
+		connectionsPerRoute.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+		
+		retireHttpClient();
+	}
+	
+	/**
+	 * Sets the maximum number of pooled connections for a specific route, overriding the default. The client is rebuilt on next use.
+	 * 
+	 * @param route						the route
+	 * @param maxConnectionsForRoute	the maximum number of pooled connections for the route
+	 */
+	public synchronized void setMaxConnectionsForRoute(HttpRoute route, int maxConnectionsForRoute) {
+		connectionsPerRoute.setMaxForRoute(route, maxConnectionsForRoute);
+		
+		retireHttpClient();
+	}
+	
+	/**
+	 * Closes pooled connections that have been idle for longer than the specified time.
+	 * 
+	 * @param idleTime	the idle time
+	 * @param timeUnit	the unit of the idle time
+	 */
+	public synchronized void closeIdleConnections(long idleTime, TimeUnit timeUnit) {
+		if (httpClient != null) {
+			httpClient.getConnectionManager().closeIdleConnections(idleTime, timeUnit);
+		}
+	}
+	
+	/**
+	 * Shuts down the shared {@link HttpClient}, and any replaced clients still in use, and closes all of their connections. Requests
+	 * still running on them fail.
+	 */
+	public synchronized void shutdownHttpClient() {
+		for (HttpClient client : httpClientLeaseCounts.keySet()) {
+			if (client != httpClient) {
+				client.getConnectionManager().shutdown();
+			}
+		}
+		
+		httpClientLeaseCounts.clear();
+		
+		if (httpClient != null) {
+			httpClient.getConnectionManager().shutdown();
+			httpClient = null;
+		}
+	}
+	
+	/**
+	 * Stops handing out the shared {@link HttpClient}, so that a new one is built on next use. If no request is using it, it is shut
+	 * down now; otherwise its idle connections are closed and it is shut down when the last request releases it.
+	 */
+	private void retireHttpClient() {
+		if (httpClient == null) {
+			return;
+		}
+		
+		if (httpClientLeaseCounts.containsKey(httpClient)) {
+			httpClient.getConnectionManager().closeIdleConnections(0, TimeUnit.MILLISECONDS);
+		} else {
+			httpClient.getConnectionManager().shutdown();
+		}
+		
+		httpClient = null;
+	}
+	
+	private HttpClient createHttpClient(boolean acceptSelfSignedCertificates) {
+		HttpParams httpParams = new BasicHttpParams();
+		
+		ConnManagerParams.setMaxTotalConnections(httpParams, maxTotalConnections);
+		ConnManagerParams.setMaxConnectionsPerRoute(httpParams, connectionsPerRoute);
+		
+		httpParams.setParameter(HttpProtocolParams.USE_EXPECT_CONTINUE, false);
+		ProtocolVersion protocolVersion = new ProtocolVersion("HTTP", 1, 1);
+		HttpProtocolParams.setVersion(httpParams, protocolVersion);
+		HttpProtocolParams.setContentCharset(httpParams, "utf8");
+		
+		HttpConnectionParams.setSoTimeout(httpParams, SOCKET_TIMEOUT_MILLISECONDS);
+		
+		SchemeRegistry supportedSchemes = new SchemeRegistry();
+		supportedSchemes.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+		
+		if (acceptSelfSignedCertificates) {
+			supportedSchemes.register(new Scheme("https", TrustAllSSLSocketFactory.getSocketFactory(), 443));
+		} else {
+			supportedSchemes.register(new Scheme("https", createTrustedSSLSocketFactory(), 443));
+		}
+		
+		ClientConnectionManager clientConnectionManager = new ThreadSafeClientConnManager(httpParams, supportedSchemes);
+		
+		return new DefaultHttpClient(clientConnectionManager, httpParams);
+	}
+	
+	/**
+	 * Creates an {@link SSLSocketFactory} that verifies server certificates and host names.
+	 * 
+	 * @return	the {@link SSLSocketFactory}
+	 */
+	public static SSLSocketFactory createTrustedSSLSocketFactory() {
+		try {
+			// Get an instance of the Bouncy Castle KeyStore format
+			KeyStore trusted = KeyStore.getInstance("BKS");
+
+			// Pass the keystore to the SSLSocketFactory. The factory is
+			// responsible
+			// for the verification of the server certificate.
+			SSLSocketFactory sf = new SSLSocketFactory(trusted);
+
+			// Hostname verification from certificate
+			// http://hc.apache.org/httpcomponents-client-ga/tutorial/html/connmgmt.html#d4e506
+			sf.setHostnameVerifier(SSLSocketFactory.STRICT_HOSTNAME_VERIFIER);
+			return sf;
+		} catch (Exception e) {
+			throw new AssertionError(e);
+		}
+	}
+	
+	/**
+	 * Scheduler state for a priority class.
+	 */
+	private static class PriorityClass {
+		final LinkedList<ScheduledRequest> pendingRequests = new LinkedList<ScheduledRequest>();
+		int runningCount;
+		int maxQueueDepth;
+		long submittedCount;
+		long completedCount;
+		long totalWaitTime;
+		long maxWaitTime;
+	}
+	
+	/**
+	 * A request waiting to be started, or running.
+	 */
+	private class ScheduledRequest implements Runnable {
+		final Runnable request;
+		final RequestPriority priority;
+		final long enqueuedTime = SystemClock.elapsedRealtime();
+		
+		ScheduledRequest(Runnable request, RequestPriority priority) {
+			this.request = request;
+			this.priority = priority;
+		}
+		
+		@Override
+		public void run() {
+			try {
+				request.run();
+			} finally {
+				onRequestFinished(priority);
+			}
+		}
 	}
 }
\ No newline at end of file
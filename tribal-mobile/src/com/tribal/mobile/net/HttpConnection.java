@@ -30,33 +30,19 @@ package com.tribal.mobile.net;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.security.KeyStore;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
-import org.apache.http.ProtocolVersion;
+import org.apache.http.StatusLine;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.HttpResponseException;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.conn.ClientConnectionManager;
-import org.apache.http.conn.params.ConnManagerPNames;
-import org.apache.http.conn.params.ConnPerRouteBean;
-import org.apache.http.conn.scheme.PlainSocketFactory;
-import org.apache.http.conn.scheme.Scheme;
-import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
-import org.apache.http.params.BasicHttpParams;
-import org.apache.http.params.HttpConnectionParams;
-import org.apache.http.params.HttpProtocolParams;
 
 import android.content.Context;
 
-import com.tribal.mobile.preferences.PrivateSettingsKeys;
-import com.tribal.mobile.util.NativeSettingsHelper;
-
 /**
  * Implementation based on http://masl.cis.gvsu.edu/2010/04/05/android-code-sample-asynchronous-http-connections/
  * 
@@ -68,8 +54,15 @@ public class HttpConnection implements Runnable {
 
 		void onStart();
 
+		/**
+		 * Invoked with the body of a response whose status is 2xx.
+		 */
 		void onSuccess(String data);
 
+		/**
+		 * Invoked if the request could not be made or its response could not be read, or with an {@link HttpResponseException}
+		 * carrying the status of a response that is not 2xx, so that a rejected request is never mistaken for a successful one.
+		 */
 		void onError(Throwable t);
 
 	}
@@ -101,16 +94,11 @@ public class HttpConnection implements Runnable {
 	private final String data;
 	private final boolean includeUsername;
 	private final Context context;
+	
+	private RequestPriority priority = RequestPriority.INTERACTIVE;
 
 	private static final String authorisationHeaderName = "X-AUTH";
 
-	private HttpClient httpClient;
-
-	private ClientConnectionManager connectionManager;
-
-	private static final BasicHttpParams httpParams = new BasicHttpParams();
-	private static final SchemeRegistry supportedSchemes = new SchemeRegistry();
-
 	public HttpConnection(HttpMethod method, String url, String data,
 			Callback callback, Context context) {
 		this(method, url, data, callback, false, context);
@@ -124,14 +112,24 @@ public class HttpConnection implements Runnable {
 		this.callback = callback;
 		this.includeUsername = includeUsername;
 		this.context = context;
+	}
 
-		httpParams.setParameter(ConnManagerPNames.MAX_TOTAL_CONNECTIONS, 1);
-		httpParams.setParameter(ConnManagerPNames.MAX_CONNECTIONS_PER_ROUTE, new ConnPerRouteBean(1));
-		httpParams.setParameter(HttpProtocolParams.USE_EXPECT_CONTINUE, false);
-		ProtocolVersion protocolVersion = new ProtocolVersion("HTTP", 1, 1);
-		HttpProtocolParams.setVersion(httpParams, protocolVersion);
-		HttpProtocolParams.setContentCharset(httpParams, "utf8");
-		supportedSchemes.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+	/**
+	 * Returns the priority with which {@link ConnectionManager} schedules this connection. Defaults to {@link RequestPriority#INTERACTIVE}.
+	 * 
+	 * @return	the priority
+	 */
+	public RequestPriority getPriority() {
+		return priority;
+	}
+	
+	/**
+	 * Sets the priority with which {@link ConnectionManager} schedules this connection. Must be set before the connection is pushed.
+	 * 
+	 * @param priority	the priority
+	 */
+	public void setPriority(RequestPriority priority) {
+		this.priority = priority;
 	}
 
 	protected String getData() {
@@ -142,12 +140,15 @@ public class HttpConnection implements Runnable {
 	public void run() {
 		callback.onStart();
 
-		checkSSLSelfSignedCertificatePreference();
-
-		httpClient = new DefaultHttpClient(connectionManager, httpParams);
-
-		HttpConnectionParams.setSoTimeout(httpClient.getParams(), 25000);
+		ConnectionManager connectionManager = ConnectionManager.getInstance();
+		HttpClient httpClient = null;
+		String body = null;
+		Throwable error = null;
+		
 		try {
+			// shared, pooled client, kept open until this request has finished with it
+			httpClient = connectionManager.acquireHttpClient(context);
+			
 			HttpResponse response = null;
 			switch (method) {
 				case GET:
@@ -169,66 +170,50 @@ public class HttpConnection implements Runnable {
 					response = httpClient.execute(httpPost);
 					break;
 			}
-			processEntity(response.getEntity());
+			body = readResponse(response);
 		} catch (Throwable t) {
-			callback.onError(t);
+			error = t;
+		} finally {
+			if (httpClient != null) {
+				connectionManager.releaseHttpClient(httpClient);
+			}
 		}
-	}
-
-	private void checkSSLSelfSignedCertificatePreference() {
-		final boolean acceptSelfSignedCertificates = NativeSettingsHelper.getInstance(context).checkAndGetPrivateBooleanSetting(PrivateSettingsKeys.ACCEPT_SSL_SELF_SIGNED_CERTS,
-				false);
-
-		if (acceptSelfSignedCertificates) {
-			supportedSchemes.register(new Scheme("https", TrustAllSSLSocketFactory.getSocketFactory(), 443));
+		
+		// dispatched outside the try so that a callback which throws is never reported back to itself as a failed request
+		if (error != null) {
+			callback.onError(error);
 		} else {
-			supportedSchemes.register(new Scheme("https", createNewTrustedMLearningSSLSocketFactory(context), 443));
+			callback.onSuccess(body);
 		}
-
-		connectionManager = new ThreadSafeClientConnManager(httpParams, supportedSchemes);
 	}
-	
+
 	public SSLSocketFactory createNewTrustedMLearningSSLSocketFactory(Context context) {
-		try {
-			// Get an instance of the Bouncy Castle KeyStore format
-			KeyStore trusted = KeyStore.getInstance("BKS");
-
-			// Get the raw resource, which contains the keystore with
-			// your trusted certificates (root and any intermediate certs)
-			//InputStream in = context.getResources().openRawResource(R.raw.mlearningkeystore);
-
-			/*try {
-				// Initialize the keystore with the provided trusted
-				// certificates
-				// Also provide the password of the keystore
-				trusted.load(in, "secretpassword".toCharArray());
-			} finally {
-				in.close();
-			}*/
-
-			// Pass the keystore to the SSLSocketFactory. The factory is
-			// responsible
-			// for the verification of the server certificate.
-			//SSLSocketFactory sf = new MLearningSSLSocketFactory(trusted); // SSLSocketFactory(trusted);
-			SSLSocketFactory sf = new SSLSocketFactory(trusted);
-
-			// Hostname verification from certificate
-			// http://hc.apache.org/httpcomponents-client-ga/tutorial/html/connmgmt.html#d4e506
-			sf.setHostnameVerifier(SSLSocketFactory.STRICT_HOSTNAME_VERIFIER);
-			return sf;
-		} catch (Exception e) {
-			throw new AssertionError(e);
-		}
+		return ConnectionManager.createTrustedSSLSocketFactory();
 	}
 
-	private void processEntity(HttpEntity entity) throws IllegalStateException, IOException {
+	private String readResponse(HttpResponse response) throws IllegalStateException, IOException {
+		HttpEntity entity = response.getEntity();
 		final BufferedReader reader = new BufferedReader(new InputStreamReader(entity.getContent()));
 		final StringBuilder total = new StringBuilder();
-		String line;
-		while ((line = reader.readLine()) != null) {
-			total.append(line);
+		
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				total.append(line);
+			}
+		} finally {
+			// closing the content releases the connection back to the pool
+			reader.close();
+		}
+		
+		StatusLine statusLine = response.getStatusLine();
+		int statusCode = statusLine.getStatusCode();
+		
+		if (statusCode < 200 || statusCode >= 300) {
+			throw new HttpResponseException(statusCode, statusLine.getReasonPhrase());
 		}
-		callback.onSuccess(total.toString());
+		
+		return total.toString();
 	}
 
 	/**
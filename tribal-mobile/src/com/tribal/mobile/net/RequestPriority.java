@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.net;
+
+/**
+ * Enumeration that represents the priority classes of HTTP requests scheduled by {@link ConnectionManager}, in descending order of
+ * priority. Each class has a limit on the number of its requests that may run at once and on the number that may be queued before
+ * callers off the main thread are made to wait.
+ * 
+ * @author Jon Brasted
+ */
+public enum RequestPriority {
+	/**
+	 * Requests the user is waiting on, e.g. login and the package catalogue.
+	 */
+	INTERACTIVE(5, 32),
+	
+	/**
+	 * Requests for data the user is likely to need soon, e.g. catalogue images.
+	 */
+	PREFETCH(2, 32),
+	
+	/**
+	 * Background synchronisation requests.
+	 */
+	BACKGROUND_SYNC(2, 8);
+	
+	/* Fields */
+	
+	private final int maxConcurrentRequests;
+	private final int queueCapacity;
+	
+	/* Properties */
+	
+	public int getMaxConcurrentRequests() {
+		return maxConcurrentRequests;
+	}
+	
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+	
+	/* Constructor */
+	
+	private RequestPriority(int maxConcurrentRequests, int queueCapacity) {
+		this.maxConcurrentRequests = maxConcurrentRequests;
+		this.queueCapacity = queueCapacity;
+	}
+}
\ No newline at end of file
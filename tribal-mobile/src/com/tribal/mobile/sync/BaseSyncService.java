@@ -27,7 +27,9 @@
 
 package com.tribal.mobile.sync;
 
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -35,6 +37,16 @@ import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpResponseException;
 
 import android.app.NotificationManager;
 import android.app.Service;
@@ -46,7 +58,6 @@ import android.content.SharedPreferences;
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.net.ConnectivityManager;
 import android.os.IBinder;
-import android.os.Looper;
 import android.preference.PreferenceManager;
 import android.text.TextUtils;
 import android.util.Log;
@@ -54,7 +65,7 @@ import android.util.Log;
 import com.tribal.mobile.Framework;
 import com.tribal.mobile.api.Client;
 import com.tribal.mobile.api.sync.SyncInterval;
-import com.tribal.mobile.api.tracking.TrackingEntry;
+import com.tribal.mobile.api.tracking.TrackingEntryBatch;
 import com.tribal.mobile.api.tracking.TrackingHelper;
 import com.tribal.mobile.base.BaseApplication;
 import com.tribal.mobile.base.BroadcastActions;
@@ -63,11 +74,13 @@ import com.tribal.mobile.base.ServiceBase;
 import com.tribal.mobile.net.AuthHttpConnection;
 import com.tribal.mobile.net.ConnectivityMode;
 import com.tribal.mobile.net.HttpConnection.Callback;
+import com.tribal.mobile.net.RequestPriority;
 import com.tribal.mobile.phonegap.MFSettingsKeys;
 import com.tribal.mobile.phonegap.MFStoreType;
 import com.tribal.mobile.util.ConnectivityUtils;
 import com.tribal.mobile.util.NativeSettingsHelper;
 import com.tribal.mobile.util.ServiceLayerExceptionHelper;
+import com.tribal.mobile.util.database.BaseDatabaseHelper;
 import com.tribal.mobile.util.resources.ResourceHelper;
 import com.tribal.mobile.util.resources.ResourceItemType;
 import com.tribal.mobile.util.resources.XmlResourceLookups;
@@ -82,15 +95,21 @@ public abstract class BaseSyncService extends ServiceBase implements OnSharedPre
 
 	public final static int DEFAULT_DEFER_DURATION = 15;
 	
+	/**
+	 * Default number of tracking entries sent in a single request. A value of 1 sends one entry per request.
+	 */
+	public final static int DEFAULT_SYNC_BATCH_SIZE = 50;
+	
 	// get sync url
 	private String syncUrl;
+	
+	private int syncBatchSize = DEFAULT_SYNC_BATCH_SIZE;
 
 	protected NotificationManager notificationManager;
 
 	private Map<String, BroadcastReceiver> broadcastReceivers;
 
-	private boolean continueSynchronisation = true;
-	private boolean hasApplicationShutdown = false;
+	private volatile boolean hasApplicationShutdown = false;
 
 	protected BaseApplication baseApplication;
 
@@ -101,11 +120,19 @@ public abstract class BaseSyncService extends ServiceBase implements OnSharedPre
 
 	private Timer timer;
 
-	private boolean syncInProgress = false;
-	private boolean sleepSyncProcessThread = false;
+	// maximum number of sync requests that can be awaiting a response at any one time
+	private final static int MAX_IN_FLIGHT_REQUESTS = 2;
+	
+	// single worker thread that runs one sync at a time
+	private ExecutorService syncExecutor;
+	private volatile SyncTask currentSyncTask;
+	
+	private final AtomicBoolean syncInProgress = new AtomicBoolean(false);
+	
+	// repeated sync requests are coalesced into a single pending request
+	private final AtomicBoolean syncRequested = new AtomicBoolean(false);
 	
 	private Timer deferTimer;
-	private int syncRequests = 0;
 	private boolean deferTimerIsRunning = false;
 
 	/* Constructor */
@@ -123,6 +150,9 @@ public abstract class BaseSyncService extends ServiceBase implements OnSharedPre
 
 		// create new broadcast receivers collection
 		broadcastReceivers = new HashMap<String, BroadcastReceiver>();
+		
+		// create the sync worker
+		syncExecutor = Executors.newSingleThreadExecutor();
 
 		// register broadcast receivers
 		addBroadcastReceiver(BroadcastActions.ManualSyncRequested);
@@ -178,6 +208,10 @@ public abstract class BaseSyncService extends ServiceBase implements OnSharedPre
 
 		// stop service timer
 		stopServiceTimer();
+		
+		// stop any sync in progress and the sync worker
+		cancelSync();
+		syncExecutor.shutdownNow();
 
 		super.onDestroy();
 	}
@@ -197,6 +231,11 @@ public abstract class BaseSyncService extends ServiceBase implements OnSharedPre
 					+ this.getClass().getSimpleName(),
 					"No URL specified for sync service.");
 		}
+		
+		// get the sync batch size
+		if (intent.hasExtra(IntentParameterConstants.SyncBatchSize)) {
+			syncBatchSize = Math.max(1, intent.getIntExtra(IntentParameterConstants.SyncBatchSize, DEFAULT_SYNC_BATCH_SIZE));
+		}
 
 		return Service.START_NOT_STICKY;
 	}
@@ -302,8 +341,7 @@ public abstract class BaseSyncService extends ServiceBase implements OnSharedPre
 		boolean isNetworkAvailable = isNetworkAvailable();
 		
 		// try and start syncing
-		if (isNetworkAvailable && syncRequests > 0) {
-			syncRequests--;
+		if (isNetworkAvailable && syncRequested.getAndSet(false)) {
 			startSync(false, null);
 		}
 		
@@ -338,8 +376,7 @@ public abstract class BaseSyncService extends ServiceBase implements OnSharedPre
 			
 			if (!oldValue && newValue) {
 				// check to see if there any sync requests
-				if (syncRequests > 0) {
-					syncRequests--;					
+				if (syncRequested.getAndSet(false)) {
 					startSync(false, null);
 				}
 			}
@@ -416,7 +453,7 @@ public abstract class BaseSyncService extends ServiceBase implements OnSharedPre
 		}
 	}
 
-	private void startSync(Boolean isAutomaticSync, Intent intent) {
+	private synchronized void startSync(Boolean isAutomaticSync, Intent intent) {
 		// check app tracking is enabled
 
 		boolean isApplicationRunning = baseApplication.isRunning();
@@ -425,7 +462,7 @@ public abstract class BaseSyncService extends ServiceBase implements OnSharedPre
 		if (!isApplicationRunning) {
 			// add a sync request if the request was not automatic
 			if (!isAutomaticSync) {
-				syncRequests++;
+				syncRequested.set(true);
 			}
 			
 			return;
@@ -464,8 +501,10 @@ public abstract class BaseSyncService extends ServiceBase implements OnSharedPre
 				deferTimer.scheduleAtFixedRate(new TimerTask() {
 					@Override
 					public void run() {
-						deferTimerIsRunning = false;
-						deferTimer.cancel();
+						synchronized (BaseSyncService.this) {
+							deferTimerIsRunning = false;
+							deferTimer.cancel();
+						}
 						
 						// start a new sync
 						startSync(true, null);
@@ -478,9 +517,9 @@ public abstract class BaseSyncService extends ServiceBase implements OnSharedPre
 		}
 		
 		// or if a sync is already taking place
-		if (syncInProgress) {
-			// add a sync to the queue and return
-			syncRequests++;
+		if (syncInProgress.get()) {
+			// flag that another sync is required and return
+			syncRequested.set(true);
 			return;
 		}
 
@@ -489,22 +528,43 @@ public abstract class BaseSyncService extends ServiceBase implements OnSharedPre
 		boolean isNetworkAvailable = isNetworkAvailable();
 		
 		if (isNetworkAvailable) {
-			if (syncRequests > 0) {
-				syncRequests--;
-			}
+			// this sync satisfies any pending request
+			syncRequested.set(false);
 			
-			// spin up a new thread to do the sync
-			Thread thread = new Thread(new SyncRunnable(isAutomaticSync));
-			thread.start();
+			syncInProgress.set(true);
+			
+			// hand the sync to the worker
+			SyncTask syncTask = new SyncTask(isAutomaticSync);
+			currentSyncTask = syncTask;
+			
+			try {
+				syncExecutor.execute(syncTask);
+			} catch (RejectedExecutionException e) {
+				// service is shutting down
+				syncInProgress.set(false);
+			}
 		} else {
-			// add a sync to the queue and return
-			syncRequests++;
+			// flag that a sync is required and return
+			syncRequested.set(true);
 		}
 	}
 
 	private void cancelSync() {
-		// cancel sync by setting a flag that the thread will pick up
-		continueSynchronisation = false;
+		SyncTask syncTask = currentSyncTask;
+		
+		if (syncTask != null) {
+			syncTask.cancelSync();
+		}
+	}
+	
+	private void onSyncFinished() {
+		// reset syncInProgress
+		syncInProgress.set(false);
+		
+		// look to see if another sync was requested while this one was running
+		if (syncRequested.getAndSet(false)) {
+			startSync(false, null);
+		}
 	}
 
 	/**
@@ -534,6 +594,48 @@ public abstract class BaseSyncService extends ServiceBase implements OnSharedPre
 	protected void raiseSyncFailedNotification(boolean isAutomaticSync, Exception exception) {
 	}
 	
+	/**
+	 * Wraps {@link SyncRunnable} so that the service is notified when a sync completes or is cancelled.
+	 * The notification is always raised from the sync worker, once the sync and its requests have finished, and never from the cancelling thread.
+	 * 
+	 * @author Jon Brasted
+	 */
+	private class SyncTask extends FutureTask<Void> {
+		/* Fields */
+		
+		private final SyncRunnable syncRunnable;
+		
+		/* Constructor */
+		
+		public SyncTask(boolean isAutomaticSync) {
+			this(new SyncRunnable(isAutomaticSync));
+		}
+		
+		private SyncTask(SyncRunnable syncRunnable) {
+			super(syncRunnable, null);
+			
+			this.syncRunnable = syncRunnable;
+		}
+		
+		/* Methods */
+		
+		@Override
+		public void run() {
+			try {
+				// returns straight away if the task was cancelled before it started
+				super.run();
+			} finally {
+				onSyncFinished();
+			}
+		}
+		
+		public void cancelSync() {
+			// set a flag that the worker will pick up, then interrupt any wait
+			syncRunnable.cancel();
+			cancel(true);
+		}
+	}
+	
 	/**
 	 * Syncronisation worker logic.
 	 * 
@@ -544,22 +646,39 @@ public abstract class BaseSyncService extends ServiceBase implements OnSharedPre
 		
 		boolean isAutomaticSync = true;
 		
+		private volatile boolean continueSynchronisation = true;
+		
+		// set to false if the server rejects a batched request, at which point this sync falls back to one entry per request
+		private volatile boolean isBatchSyncSupported = true;
+		
+		// released as each request completes, bounding the number of requests in flight
+		private final Semaphore inFlightRequests = new Semaphore(MAX_IN_FLIGHT_REQUESTS);
+		
+		private final AtomicInteger syncedEntryCount = new AtomicInteger(0);
+		
+		// failed batched requests, whose entries are to be resent one at a time
+		private final List<TrackingEntryBatch> retryTrackingEntryBatchList = Collections.synchronizedList(new ArrayList<TrackingEntryBatch>());
+		
 		/* Constructor */
 		
 		public SyncRunnable(boolean isAutomaticSync) {
 			this.isAutomaticSync = isAutomaticSync;
 		}
 		
+		/* Methods */
+		
+		public void cancel() {
+			continueSynchronisation = false;
+		}
+		
 		@Override
 		public void run() {
 			Log.d("Sync Services", "SyncRunnable");
-			Looper.prepare();
-
-			// set syncInProgress to true
-			syncInProgress = true;
 			
-			// set continueSynchronisation to true
-			continueSynchronisation = true;
+			if (!continueSynchronisation) {
+				// cancelled before it started
+				return;
+			}
 
 			// log sync in native settings
 			try {
@@ -571,22 +690,24 @@ public abstract class BaseSyncService extends ServiceBase implements OnSharedPre
 			}
 
 			// start the sync
-			sync();
+			try {
+				sync();
+			} catch (InterruptedException e) {
+				Log.d("Sync Services", "Sync cancelled");
+			}
 		}
 
-		private void sync() {
-			// get the list of IDs
+		private void sync() throws InterruptedException {
 			Log.d("Sync Services", "sync");
-			List<TrackingEntry> trackingEntryList = baseApplication.getDatabaseHelper().getTrackingEntriesList();
-			int trackingEntryListSize = trackingEntryList.size();
+			BaseDatabaseHelper databaseHelper = baseApplication.getDatabaseHelper();
+			int trackingEntryCount = databaseHelper.getTrackingEntryCount();
 
-			if (trackingEntryListSize > 0) {
+			if (trackingEntryCount > 0) {
 				// log the sync
 				TrackingHelper.getInstance().trackSyncWithMobileFrameworkSender();
 				
-				// get the list again so we get the sync item
-				trackingEntryList = baseApplication.getDatabaseHelper().getTrackingEntriesList();
-				trackingEntryListSize = trackingEntryList.size();
+				// count again so we include the sync item
+				trackingEntryCount = databaseHelper.getTrackingEntryCount();
 			}
 			
 			// send broadcast
@@ -595,9 +716,9 @@ public abstract class BaseSyncService extends ServiceBase implements OnSharedPre
 			sendBroadcast(syncStartedIntent);
 
 			// raise notification
-			raiseSyncProgressNotification(0, trackingEntryListSize, isAutomaticSync);
+			raiseSyncProgressNotification(0, trackingEntryCount, isAutomaticSync);
 
-			syncTrackingEntries(trackingEntryList);
+			syncTrackingEntries(trackingEntryCount);
 
 			// syncing has finished so shut down the service
 			if (hasApplicationShutdown) {
@@ -607,99 +728,153 @@ public abstract class BaseSyncService extends ServiceBase implements OnSharedPre
 			Log.d("Sync Services", "endSync");
 		}
 
-		private void syncTrackingEntries(List<TrackingEntry> trackingEntryList) {
-			int trackingEntryListTotalSize = trackingEntryList.size();
+		private void syncTrackingEntries(int trackingEntryTotalCount) throws InterruptedException {
+			// only send the entries that existed when the sync started, anything tracked from now on is left for the next sync
+			int lastTrackingEntryId = baseApplication.getDatabaseHelper().getLastTrackingEntryId();
 			
-			while (continueSynchronisation && !trackingEntryList.isEmpty()) {
-				// set sleepSyncProcessThread
-				sleepSyncProcessThread = true;
-
-				// raise notification
-				raiseSyncProgressNotification((trackingEntryListTotalSize - trackingEntryList.size()), trackingEntryListTotalSize, isAutomaticSync);
+			sendTrackingEntries(0, lastTrackingEntryId, trackingEntryTotalCount);
+			
+			// resend the entries of any rejected batches one at a time
+			if (continueSynchronisation && !retryTrackingEntryBatchList.isEmpty()) {
+				List<TrackingEntryBatch> retryList = new ArrayList<TrackingEntryBatch>(retryTrackingEntryBatchList);
+				retryTrackingEntryBatchList.clear();
 				
-				// start next sync
-				syncNextTrackingEntry(trackingEntryList);
-
-				// sleep the thread while we wait for the sync return call
-				while (sleepSyncProcessThread) {
-					try {
-						Thread.sleep(100);
-					} catch (InterruptedException e) {
-						e.printStackTrace();
+				for (TrackingEntryBatch trackingEntryBatch : retryList) {
+					if (!continueSynchronisation) {
+						break;
 					}
+					
+					sendTrackingEntries(trackingEntryBatch.getFirstId() - 1, trackingEntryBatch.getLastId(), trackingEntryTotalCount);
 				}
 			}
 
-			// if there was no tracking entries, send a complete notification
-			if (trackingEntryList.isEmpty()) {
+			// if all the tracking entries have been sent, send a complete notification
+			if (continueSynchronisation) {
 				raiseSyncProgressNotification(1, 1, isAutomaticSync);
 			}
-
-			// reset continueSynchronisation
-			continueSynchronisation = true;
-			
-			// reset syncInProgress
-			syncInProgress = false;
+		}
+		
+		private void sendTrackingEntries(int afterId, int maxId, int trackingEntryTotalCount) throws InterruptedException {
+			BaseDatabaseHelper databaseHelper = baseApplication.getDatabaseHelper();
+			int lastReadId = afterId;
 			
-			// look to see if there is more sync requests to execute
-			if (syncRequests > 0) {
-				syncRequests--;
-				startSync(false, null);
+			try {
+				while (continueSynchronisation) {
+					// wait until there is room for another request
+					inFlightRequests.acquire();
+					
+					// read the next page of entries straight into a request payload
+					TrackingEntryBatch trackingEntryBatch = null;
+					
+					if (continueSynchronisation) {
+						try {
+							trackingEntryBatch = databaseHelper.getTrackingEntryBatch(lastReadId, maxId, getCurrentBatchSize());
+						} catch (Exception e) {
+							// the entries could not be read, which must not be mistaken for there being no more to send
+							inFlightRequests.release();
+							onSyncFailed(e);
+							break;
+						}
+					}
+					
+					if (trackingEntryBatch == null) {
+						inFlightRequests.release();
+						break;
+					}
+					
+					lastReadId = trackingEntryBatch.getLastId();
+	
+					// raise notification
+					raiseSyncProgressNotification(syncedEntryCount.get(), trackingEntryTotalCount, isAutomaticSync);
+					
+					// start next sync
+					syncTrackingEntryBatch(trackingEntryBatch);
+				}
+			} finally {
+				// wait for the outstanding requests to complete, even when cancelled, so that the sync only finishes once they have
+				inFlightRequests.acquireUninterruptibly(MAX_IN_FLIGHT_REQUESTS);
+				inFlightRequests.release(MAX_IN_FLIGHT_REQUESTS);
 			}
 		}
 
-		private void syncNextTrackingEntry(final List<TrackingEntry> trackingEntryList) {
-			Runnable runnable = new Runnable() {
-				@Override
-				public void run() {
-					// get the first entry
-					final TrackingEntry trackingEntry = trackingEntryList.get(0);
-					
-					String jsonContentString = trackingEntry.getJsonContentString();
-					
-					// start the process
-					AuthHttpConnection.post(syncUrl, jsonContentString,
-							new Callback() {
-								@Override
-								public void onSuccess(String data) {
-									// remove the tracking entry from the database
-									baseApplication.getDatabaseHelper().removeTrackingEntry("" + trackingEntry.getId());
-									
-									// remove the top entry from the list
-									trackingEntryList.remove(0);
-									
-									// set sleep sync process thread variable to false
-									sleepSyncProcessThread = false;
-								}
-		
-								@Override
-								public void onStart() {
-								}
+		private int getCurrentBatchSize() {
+			return isBatchSyncSupported ? syncBatchSize : 1;
+		}
 		
-								@Override
-								public void onError(Throwable t) {
-									ServiceLayerExceptionHelper.getInstance().processException(t, baseApplication.getApplicationContext());
+		private boolean isBatchRejected(TrackingEntryBatch trackingEntryBatch, Throwable t) {
+			if (trackingEntryBatch.getSize() <= 1 || !(t instanceof HttpResponseException)) {
+				return false;
+			}
+			
+			// only the statuses with which a server that does not understand a batched payload answers
+			switch (((HttpResponseException)t).getStatusCode()) {
+				case HttpStatus.SC_BAD_REQUEST:
+				case HttpStatus.SC_NOT_FOUND:
+				case HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE:
+					return true;
+				default:
+					return false;
+			}
+		}
 		
-									// send broadcast to inform app that sync has failed
-									Intent failedSyncBroadcast = new Intent();
-									failedSyncBroadcast.setAction(BroadcastActions.SyncFailed);
-									sendBroadcast(failedSyncBroadcast);
-									
-									raiseSyncFailedNotification(isAutomaticSync, new Exception(t));
-									
-									// set continue to false
-									continueSynchronisation = false;
+		private void onSyncFailed(Throwable t) {
+			if (!continueSynchronisation) {
+				// already failed or cancelled
+				return;
+			}
+			
+			// set continue to false
+			continueSynchronisation = false;
+			
+			ServiceLayerExceptionHelper.getInstance().processException(t, baseApplication.getApplicationContext());
+
+			// send broadcast to inform app that sync has failed
+			Intent failedSyncBroadcast = new Intent();
+			failedSyncBroadcast.setAction(BroadcastActions.SyncFailed);
+			sendBroadcast(failedSyncBroadcast);
+			
+			raiseSyncFailedNotification(isAutomaticSync, new Exception(t));
+		}
+
+		private void syncTrackingEntryBatch(final TrackingEntryBatch trackingEntryBatch) {
+			// start the process
+			AuthHttpConnection.post(syncUrl, trackingEntryBatch.getJsonContentString(),
+					new Callback() {
+						@Override
+						public void onSuccess(String data) {
+							try {
+								// remove the tracking entries from the database. Entries are read in id order, so the batch is a contiguous range
+								baseApplication.getDatabaseHelper().removeTrackingEntries(trackingEntryBatch.getFirstId(), trackingEntryBatch.getLastId());
+								
+								syncedEntryCount.addAndGet(trackingEntryBatch.getSize());
+							} finally {
+								inFlightRequests.release();
+							}
+						}
+
+						@Override
+						public void onStart() {
+						}
+
+						@Override
+						public void onError(Throwable t) {
+							try {
+								if (isBatchRejected(trackingEntryBatch, t)) {
+									// the server does not accept batches, so retry the same entries one at a time for the rest of this sync
+									Log.d("Sync Services", "Batched sync rejected, falling back to one entry per request.");
+									isBatchSyncSupported = false;
 									
-									// set sleepSyncProcessThread to false
-									sleepSyncProcessThread = false;
+									retryTrackingEntryBatchList.add(trackingEntryBatch);
+									return;
 								}
-							}, baseApplication.getApplicationContext()
-					);
-				}
-			};
-			
-			Thread thread = new Thread(runnable);
-			thread.start();
+								
+								onSyncFailed(t);
+							} finally {
+								inFlightRequests.release();
+							}
+						}
+					}, false, RequestPriority.BACKGROUND_SYNC, baseApplication.getApplicationContext()
+			);
 		}
 	}
 }
\ No newline at end of file
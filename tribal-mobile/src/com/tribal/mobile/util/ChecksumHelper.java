@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Utility class to help facilitate computing and comparing MD5 checksums.
+ * 
+ * @author Jon Brasted
+ */
+public class ChecksumHelper {
+	private static final int bufferSize = 8 * 1024;
+	
+	/**
+	 * Returns a new MD5 message digest.
+	 * 
+	 * @return	a new MD5 message digest
+	 */
+	public static MessageDigest createMD5Digest() {
+		try {
+			return MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			// every Android platform provides MD5
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * Updates a message digest with the first bytes of a file.
+	 * 
+	 * @param digest	the message digest
+	 * @param file		the file
+	 * @param length	the number of bytes to read from the start of the file
+	 * @throws IOException
+	 */
+	public static void updateDigest(MessageDigest digest, File file, long length) throws IOException {
+		InputStream inputStream = new FileInputStream(file);
+		
+		try {
+			byte[] buffer = new byte[bufferSize];
+			long remaining = length;
+			int count = 0;
+			
+			while (remaining > 0 && (count = inputStream.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+				digest.update(buffer, 0, count);
+				remaining -= count;
+			}
+			
+			if (remaining > 0) {
+				throw new IOException(file + " is shorter than " + length + " bytes");
+			}
+		} finally {
+			inputStream.close();
+		}
+	}
+	
+	/**
+	 * Returns a digest as a lower case hexadecimal string.
+	 * 
+	 * @param digest	the digest bytes
+	 * @return			the hexadecimal string
+	 */
+	public static String toHexString(byte[] digest) {
+		StringBuilder builder = new StringBuilder(digest.length * 2);
+		
+		for (byte value : digest) {
+			builder.append(Character.forDigit((value >> 4) & 0xf, 16));
+			builder.append(Character.forDigit(value & 0xf, 16));
+		}
+		
+		return builder.toString();
+	}
+	
+	/**
+	 * Returns whether an expected checksum is present, i.e. whether a file can be verified against it.
+	 * 
+	 * @param expectedChecksum	the expected hexadecimal checksum
+	 * @return					whether the checksum is present
+	 */
+	public static boolean hasChecksum(String expectedChecksum) {
+		return expectedChecksum != null && expectedChecksum.trim().length() > 0;
+	}
+	
+	/**
+	 * Returns whether a hexadecimal checksum matches an expected one, ignoring case and surrounding whitespace.
+	 * 
+	 * @param expectedChecksum	the expected hexadecimal checksum
+	 * @param actualChecksum	the actual hexadecimal checksum
+	 * @return					whether the checksums match
+	 */
+	public static boolean matches(String expectedChecksum, String actualChecksum) {
+		return hasChecksum(expectedChecksum) && actualChecksum != null && expectedChecksum.trim().equalsIgnoreCase(actualChecksum.trim());
+	}
+}
\ No newline at end of file
@@ -27,12 +27,16 @@
 
 package com.tribal.mobile.util;
 
+import java.io.File;
 import java.util.Date;
 
 import android.os.AsyncTask;
 import android.util.Log;
 
+import com.tribal.mobile.api.packages.LibraryItem;
 import com.tribal.mobile.model.Package;
+import com.tribal.mobile.model.PackageIndex;
+import com.tribal.mobile.model.PackageXmlReader;
 
 /**
  * Package XML Worker asynchronous task to deserialise a package XML file into an instance of a {@link Package} object.
@@ -48,43 +52,55 @@ public class PackageXmlWorkerTask extends AsyncTask<Object, Void, Package> {
 	// automatically done on worker thread (separate from UI thread)
 	@Override
 	protected Package doInBackground(Object... params) {
-		Package packageObject = loadContent(params);
+		// first parameter should be the xml file path
+		packageFilePath = (String) params[0];
+		
+		// fourth parameter should be a callback
+		this.callback = (PackageWorkerCompleted) params[3];
+		
+		// second parameter should be the package directory
+		packageDirectory = (String) params[1];
+		
+		// third parameter should be the payload
+		if (params.length > 2) {
+			payload = params[2];
+		}
+		
+		// the version is only known when the payload is a library item
+		String version = (payload instanceof LibraryItem) ? ((LibraryItem) payload).getVersion() : null;
+		
+		// read the compiled index if it is up to date
+		Package packageObject = PackageIndex.read(new File(packageFilePath), packageDirectory, version);
+		
+		if (packageObject != null) {
+			return packageObject;
+		}
+		
+		packageObject = loadContent();
 
 		//If the parsing failed then return null and an error will be raised from this
 		if (packageObject == null) {
 			return null;
 		}
 		
-		// second parameter should be the xml file path
-		packageDirectory = (String) params[1];
 		packageObject.setExternalRootPath(packageDirectory);
-		
-		// second parameter should be the payload
-		if (params.length > 2) {
-			payload = params[2];
-		}
 
 		// process the package
 		packageObject.processItems();
+		
+		// compile the index so the package opens quickly next time
+		PackageIndex.write(packageObject, new File(packageFilePath), version);
 
 		return packageObject;
 	}
 
-	private Package loadContent(Object[] params) {
-
-		// first parameter should be the xml file path
-		packageFilePath = (String) params[0];
-
-		// second parameter should be a callback
-		this.callback = (PackageWorkerCompleted) params[3];
-
+	private Package loadContent() {
 		Package packageObject = null;
 
 		try {
-			packageObject = XmlHelper.readXmlFileFromExternalStorage(packageFilePath, Package.class);
+			packageObject = PackageXmlReader.read(new File(packageFilePath));
 		} catch (Exception e) {
-			//e.printStackTrace();
-			//Log.d("jko > load package > " + packageFilePath, e.getMessage());
+			Log.w("PackageXmlWorkerTask", "Could not read " + packageFilePath + ": " + e.getMessage());
 		}
 
 		return packageObject;
@@ -44,16 +44,21 @@ import android.util.Log;
  */
 public class XmlHelper {
 	
+	// a persister caches the reflected schema of each class it binds, so it is shared rather than created per read
+	private static final Serializer serializer = new Persister();
+	
 	public static <T> T readXmlFileFromAssets(Context context, String fileName, Class<? extends T> className) throws Exception {
 		// get the input stream for the file
 		InputStream inputStream = context.getAssets().open(fileName);
 		
-		Serializer serializer = new Persister();
-		
-		// read the stream into an object
-		T result = serializer.read(className, inputStream);
-		
-		return result;
+		try {
+			// read the stream into an object
+			T result = serializer.read(className, inputStream);
+			
+			return result;
+		} finally {
+			inputStream.close();
+		}
 	}
 	
 	public static <T> T readXmlFileFromExternalStorage(String fullFilePath, Class<? extends T> className) throws Exception {
@@ -62,8 +67,6 @@ public class XmlHelper {
 		File file = new File(fullFilePath);
 		
 		FileInputStream inputStream = new FileInputStream(file);
-
-		Serializer serializer = new Persister();
 		
 		// read the stream into an object
 		T result = null;
@@ -72,6 +75,8 @@ public class XmlHelper {
 		} catch (Exception e) {		
 			e.printStackTrace();
 			Log.d("jko > load package > ", e.getMessage());
+		} finally {
+			inputStream.close();
 		}
 		
 		return result;
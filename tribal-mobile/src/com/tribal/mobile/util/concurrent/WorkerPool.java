@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.util.concurrent;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.os.Process;
+
+/**
+ * Enumeration that represents the named worker pools shared across the framework, see {@link Workers}. Each pool creates its threads
+ * on demand and lets them die once they have been idle for a while, so an idle application holds no worker threads.
+ * 
+ * @author Jon Brasted
+ */
+public enum WorkerPool {
+	/**
+	 * Work that waits on the database or the file system, e.g. library lookups and clearing temporary folders.
+	 */
+	IO("io", 2, Process.THREAD_PRIORITY_BACKGROUND),
+	
+	/**
+	 * Work that keeps a core busy, e.g. parsing and indexing packages.
+	 */
+	CPU("cpu", Math.max(1, Runtime.getRuntime().availableProcessors()), Process.THREAD_PRIORITY_BACKGROUND),
+	
+	/**
+	 * Work that waits on the network, i.e. the HTTP requests started by {@link com.tribal.mobile.net.ConnectionManager}, which never
+	 * has more requests running than this pool has threads.
+	 */
+	NETWORK("network", 5, Process.THREAD_PRIORITY_BACKGROUND + Process.THREAD_PRIORITY_MORE_FAVORABLE);
+	
+	/* Fields */
+	
+	private final static int KEEP_ALIVE_SECONDS = 10;
+	
+	private final String name;
+	private final int threadCount;
+	private final int threadPriority;
+	
+	private ExecutorService executor;
+	
+	/* Properties */
+	
+	public String getName() {
+		return name;
+	}
+	
+	public int getThreadCount() {
+		return threadCount;
+	}
+	
+	/**
+	 * Returns the executor for this pool, creating it on first use.
+	 * 
+	 * @return	the executor
+	 */
+	synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(threadCount, threadCount, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new WorkerThreadFactory());
+			threadPoolExecutor.allowCoreThreadTimeOut(true);
+			
+			executor = threadPoolExecutor;
+		}
+		
+		return executor;
+	}
+	
+	/* Constructor */
+	
+	private WorkerPool(String name, int threadCount, int threadPriority) {
+		this.name = name;
+		this.threadCount = threadCount;
+		this.threadPriority = threadPriority;
+	}
+	
+	/**
+	 * Names the threads of the pool so that they can be told apart in traces, and runs them at the pool's priority.
+	 */
+	private class WorkerThreadFactory implements ThreadFactory {
+		private final AtomicInteger threadNumber = new AtomicInteger(1);
+		
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			Runnable prioritisedRunnable = new Runnable() {
+				@Override
+				public void run() {
+					Process.setThreadPriority(threadPriority);
+					runnable.run();
+				}
+			};
+			
+			return new Thread(prioritisedRunnable, name + "-worker-" + threadNumber.getAndIncrement());
+		}
+	}
+}
\ No newline at end of file
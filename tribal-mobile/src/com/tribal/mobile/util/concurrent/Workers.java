@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.util.concurrent;
+
+import android.annotation.SuppressLint;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.tribal.mobile.util.EnvironmentUtils;
+
+/**
+ * Static utility class that runs framework work on the shared {@link WorkerPool} executors and delivers callbacks to the main thread,
+ * in place of starting a thread per operation.
+ * 
+ * <p>
+ * Work must not call {@link Looper#prepare()} or {@link Looper#loop()}: a pool thread that loops never returns to its pool. Work that
+ * needs a looper, e.g. to start an HTTP request with a {@link com.tribal.mobile.net.HandlerCallback}, should hand that part to
+ * {@link #runOnMainThread(Runnable)}.
+ * </p>
+ * 
+ * @author Jon Brasted
+ */
+public class Workers {
+	/* Fields */
+	
+	private final static Handler mainThreadHandler = new Handler(Looper.getMainLooper());
+	
+	/* Methods */
+	
+	/**
+	 * Runs the specified runnable on the specified pool.
+	 * 
+	 * @param pool		the {@link WorkerPool}
+	 * @param runnable	the runnable
+	 */
+	public static void execute(WorkerPool pool, Runnable runnable) {
+		pool.getExecutor().execute(runnable);
+	}
+	
+	/**
+	 * Executes the specified {@link AsyncTask} on the specified pool. Must be invoked from the main thread. Before Android 3.0 a task
+	 * cannot be given an executor, so it runs on the platform's own pool.
+	 * 
+	 * @param pool		the {@link WorkerPool}
+	 * @param task		the {@link AsyncTask}
+	 * @param params	the parameters of the task
+	 */
+	@SuppressLint("NewApi")
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public static void executeAsyncTask(WorkerPool pool, AsyncTask task, Object... params) {
+		if (EnvironmentUtils.isRunningAndroid3OrLater()) {
+			task.executeOnExecutor(pool.getExecutor(), params);
+		} else {
+			task.execute(params);
+		}
+	}
+	
+	/**
+	 * Runs the specified runnable on the main thread; immediately if this is the main thread, otherwise as soon as the main thread is
+	 * free.
+	 * 
+	 * @param runnable	the runnable
+	 */
+	public static void runOnMainThread(Runnable runnable) {
+		if (isMainThread()) {
+			runnable.run();
+		} else {
+			mainThreadHandler.post(runnable);
+		}
+	}
+	
+	/**
+	 * Returns whether this is the main thread.
+	 * 
+	 * @return	whether this is the main thread
+	 */
+	public static boolean isMainThread() {
+		return Looper.myLooper() == Looper.getMainLooper();
+	}
+}
\ No newline at end of file
@@ -31,7 +31,12 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONArray;
 
 import android.content.ContentValues;
 import android.content.Context;
@@ -46,6 +51,10 @@ import com.tribal.mobile.R;
 import com.tribal.mobile.api.packages.LibraryItem;
 import com.tribal.mobile.api.packages.PackageItem;
 import com.tribal.mobile.api.tracking.TrackingEntry;
+import com.tribal.mobile.api.tracking.TrackingEntryBatch;
+import com.tribal.mobile.download.ChecksumVerification;
+import com.tribal.mobile.download.DownloadQueueEntry;
+import com.tribal.mobile.download.DownloadQueueState;
 import com.tribal.mobile.util.FileHelper;
 
 /**
@@ -57,9 +66,21 @@ public abstract class BaseDatabaseHelper extends DatabaseHelper {
 	/* Fields */
 	
 	private final static String libraryTableName = "mylibrary";
+	private final static String downloadQueueTableName = "download_queue";
 	private final static String settingsTableName = "settings";
 	private final static String trackingTableName = "tracking";
 	
+	// object id stored against settings that are not associated with an object. This is not NULL, which SQLite treats as distinct
+	// from every other NULL, so that the unique (userId, objectId, key) index also covers global settings; migration 1 converts
+	// global settings written before then
+	private final static String globalSettingObjectId = "";
+	
+	// incremented whenever a library entry is added, removed or changes state, so in-memory copies of the library know when to reload
+	private final static AtomicInteger libraryVersion = new AtomicInteger();
+	
+	private final SettingsCache settingsCache = new SettingsCache();
+	private final TrackingEntryWriter trackingEntryWriter = new TrackingEntryWriter(this);
+	
 	/* Methods */
 
 	public BaseDatabaseHelper(Context context, String name,
@@ -67,6 +88,14 @@ public abstract class BaseDatabaseHelper extends DatabaseHelper {
 		super(context, name, factory, version);
 	}
 
+	@Override
+	public void close() {
+		// make sure pending tracking entries are not lost; this must not hold the lock on this instance, which the writer needs
+		flushTrackingEntries();
+		
+		super.close();
+	}
+
 	/**
 	 * Return internal databases folder path.
 	 * 
@@ -83,6 +112,12 @@ public abstract class BaseDatabaseHelper extends DatabaseHelper {
 	 * Close and teardown all databases.
 	 */
 	public void closeAndTeardownAllDatabases() {
+		// clear the settings cache
+		clearSettingsCache();
+		
+		// the library goes with the databases
+		onLibraryChanged();
+		
 		// close application database
 		this.close();
 		
@@ -98,6 +133,27 @@ public abstract class BaseDatabaseHelper extends DatabaseHelper {
 		}
 	}
 
+	@Override
+	protected List<DatabaseMigration> getMigrations() {
+		List<DatabaseMigration> migrations = super.getMigrations();
+		
+		migrations.add(new DatabaseMigration(1, context.getString(R.string.migration_1_description), context.getString(R.string.migration_1_sql)));
+		migrations.add(new DatabaseMigration(2, context.getString(R.string.migration_2_description), context.getString(R.string.migration_2_sql)));
+		migrations.add(new DatabaseMigration(3, context.getString(R.string.migration_3_description), context.getString(R.string.migration_3_sql)));
+		migrations.add(new DatabaseMigration(4, context.getString(R.string.migration_4_description), context.getString(R.string.migration_4_sql)));
+		migrations.add(new DatabaseMigration(5, context.getString(R.string.migration_5_description), context.getString(R.string.migration_5_sql)));
+		migrations.add(new DatabaseMigration(6, context.getString(R.string.migration_6_description), context.getString(R.string.migration_6_sql)));
+		
+		return migrations;
+	}
+
+	/**
+	 * Clear the in-memory settings cache. Should be invoked when the user logs out or changes.
+	 */
+	public void clearSettingsCache() {
+		settingsCache.clear();
+	}
+
 	/**
 	 * Get setting from database (synchronous).
 	 * 
@@ -105,45 +161,11 @@ public abstract class BaseDatabaseHelper extends DatabaseHelper {
 	 * @return
 	 */
 	public String getSetting(String settingName) {
-		String value = null;
-
-		// construct statement
-
-		String[] columns = new String[] { "value" };
-
-		String queryString = "key=? AND userId=? AND objectId IS NULL";
-		String[] queryParameters = new String[] { settingName,
-				Framework.getClient().getUserUsername() };
-
-		Cursor settingsCursor = null;
-
-		try {
-			settingsCursor = executeSelect(settingsTableName, columns,
-					queryString, queryParameters, null);
-
-			if (settingsCursor.getCount() == 1) {
-				settingsCursor.moveToFirst();
-
-				// get the value
-				value = settingsCursor.getString(settingsCursor
-						.getColumnIndex("value"));
-			}
-		} catch (SQLException e) {
-			e.printStackTrace();
-		} catch (IOException e) {
-			e.printStackTrace();
-		} catch (Exception e) {
-			e.printStackTrace();
-
-		} finally {
-			if (settingsCursor != null) {
-				// close the cursor
-				settingsCursor.close();
-			}
-		}
+		// get the global settings for the current user, loading them if necessary
+		Map<String, String> settings = getSettings(null);
 
 		// return the value
-		return value;
+		return settings.get(settingName);
 	}
 	
 	/**
@@ -154,26 +176,59 @@ public abstract class BaseDatabaseHelper extends DatabaseHelper {
 	 * @return
 	 */
 	public String getSettingByObjectId(String settingName, String objectId) {
-		String value = null;
+		if (objectId == null) {
+			return null;
+		}
+		
+		// get the settings for the object id for the current user, loading them if necessary
+		Map<String, String> settings = getSettings(objectId);
+
+		// return the value
+		return settings.get(settingName);
+	}
+	
+	/**
+	 * Return all settings for the current user and the specified object id from the settings cache, loading them from the database
+	 * if they are not cached.
+	 * 
+	 * @param objectId	the object id, or <code>null</code> for global settings
+	 * @return			a map of setting keys to values
+	 */
+	private Map<String, String> getSettings(String objectId) {
+		String userId = Framework.getClient().getUserUsername();
+		
+		Map<String, String> settings = settingsCache.get(userId, objectId);
+		
+		if (settings != null) {
+			return settings;
+		}
+		
+		// writes made while the settings are read must not be overwritten by this load
+		long cacheGeneration = settingsCache.getGeneration();
+		
+		settings = new HashMap<String, String>();
 
 		// construct statement
 
-		String[] columns = new String[] { "value" };
+		String[] columns = new String[] { "key", "value" };
 
-		String queryString = "key=? AND userId=? AND objectId=?";
-		String[] queryParameters = new String[] { settingName, Framework.getClient().getUserUsername(), objectId };
+		String queryString = "userId=? AND objectId=?";
+		String[] queryParameters = new String[] { userId, (objectId == null) ? globalSettingObjectId : objectId };
 
 		Cursor settingsCursor = null;
 
 		try {
 			settingsCursor = executeSelect(settingsTableName, columns, queryString, queryParameters, null);
 
-			if (settingsCursor.getCount() == 1) {
-				settingsCursor.moveToFirst();
-
-				// get the value
-				value = settingsCursor.getString(settingsCursor.getColumnIndex("value"));
+			int keyIndex = settingsCursor.getColumnIndex("key");
+			int valueIndex = settingsCursor.getColumnIndex("value");
+			
+			while (settingsCursor.moveToNext()) {
+				settings.put(settingsCursor.getString(keyIndex), settingsCursor.getString(valueIndex));
 			}
+			
+			// cache the settings
+			settingsCache.put(userId, objectId, settings, cacheGeneration);
 		} catch (SQLException e) {
 			e.printStackTrace();
 		} catch (IOException e) {
@@ -188,8 +243,7 @@ public abstract class BaseDatabaseHelper extends DatabaseHelper {
 			}
 		}
 
-		// return the value
-		return value;
+		return settings;
 	}
 
 	/**
@@ -200,19 +254,7 @@ public abstract class BaseDatabaseHelper extends DatabaseHelper {
 	 * @return				whether the operation was successful
 	 */
 	public boolean createOrUpdateSetting(String settingName, String value) {
-		String existingValue = getSetting(settingName);
-
-		if (existingValue == null) {
-			// create
-			return createSetting(settingName, value);
-		} else {
-			if (!existingValue.equalsIgnoreCase(value)) {
-				// update
-				return updateSetting(settingName, value);
-			}
-		}
-
-		return true;
+		return upsertSetting(settingName, value, null);
 	}
 
 	/**
@@ -224,71 +266,69 @@ public abstract class BaseDatabaseHelper extends DatabaseHelper {
 	 * @return				whether the operation was successful
 	 */
 	public boolean createOrUpdateSettingWithObjectId(String settingName, String value, String objectId) {
-		String existingValue = getSettingByObjectId(settingName, objectId);
-
-		if (existingValue == null) {
-			// create
-			return createSettingWithObjectId(settingName, value, objectId);
-		} else {
-			if (!existingValue.equalsIgnoreCase(value)) {
-				// update
-				return updateSettingWithObjectId(settingName, value, objectId);
-			}
+		if (objectId == null) {
+			return false;
 		}
-
-		return true;
+		
+		return upsertSetting(settingName, value, objectId);
 	}
 	
 	/**
-	 * Create setting.
+	 * Create or update setting in a single statement, relying on the unique (userId, objectId, key) index on the settings table.
 	 * 
 	 * @param settingName	the setting name
 	 * @param value			the value
+	 * @param objectId		the object id, or <code>null</code> for a global setting
 	 * @return				whether the operation was successful
 	 */
-	public boolean createSetting(String settingName, String value) {
-		// construct parameters
-
-		ContentValues contentValues = new ContentValues();
-		contentValues.put("key", settingName);
-		contentValues.put("value", value);
-		contentValues.put("userId", Framework.getClient().getUserUsername());
-
-		boolean hasCreatedSetting = false;
-
+	private boolean upsertSetting(String settingName, String value, String objectId) {
+		String userId = Framework.getClient().getUserUsername();
+		
+		String sql = context.getString(R.string.upsert_setting_sql);
+		String[] bindArgs = new String[] { userId, (objectId == null) ? globalSettingObjectId : objectId, settingName, value };
+		
+		boolean hasUpsertedSetting = false;
+		
 		try {
-			hasCreatedSetting = executeCreate(settingsTableName, contentValues);
+			hasUpsertedSetting = (executeInsertStatement(sql, bindArgs) > 0);
+			
+			if (hasUpsertedSetting) {
+				settingsCache.update(userId, objectId, settingName, value);
+			}
 		} catch (SQLException e) {
 			e.printStackTrace();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
-
+		
 		// return the result
-		return hasCreatedSetting;
+		return hasUpsertedSetting;
 	}
 	
 	/**
-	 * Create setting with object id.
+	 * Create setting.
 	 * 
 	 * @param settingName	the setting name
 	 * @param value			the value
-	 * @param objectId		the object id
 	 * @return				whether the operation was successful
 	 */
-	public boolean createSettingWithObjectId(String settingName, String value, String objectId) {
+	public boolean createSetting(String settingName, String value) {
 		// construct parameters
 
 		ContentValues contentValues = new ContentValues();
 		contentValues.put("key", settingName);
 		contentValues.put("value", value);
 		contentValues.put("userId", Framework.getClient().getUserUsername());
-		contentValues.put("objectId", objectId);
+		contentValues.put("objectId", globalSettingObjectId);
 
 		boolean hasCreatedSetting = false;
 
 		try {
 			hasCreatedSetting = executeCreate(settingsTableName, contentValues);
+			
+			if (hasCreatedSetting) {
+				settingsCache.update(Framework.getClient().getUserUsername(), null, settingName, value);
+			}
 		} catch (SQLException e) {
 			e.printStackTrace();
 		} catch (IOException e) {
@@ -298,60 +338,32 @@ public abstract class BaseDatabaseHelper extends DatabaseHelper {
 		// return the result
 		return hasCreatedSetting;
 	}
-
-	/**
-	 * Update setting.
-	 * 
-	 * @param settingName	the setting name
-	 * @param value			the value
-	 * @return				whether the operation was successful
-	 */
-	private boolean updateSetting(String settingName, String value) {
-		// construct parameters
-
-		ContentValues contentValues = new ContentValues();
-		contentValues.put("value", value);
-
-		String queryString = "key=? AND userId=? AND objectId IS NULL";
-		String[] queryParameters = new String[] { settingName,
-				Framework.getClient().getUserUsername() };
-
-		boolean hasUpdatedSetting = false;
-
-		try {
-			hasUpdatedSetting = executeUpdate(settingsTableName, contentValues,
-					queryString, queryParameters);
-		} catch (SQLException e) {
-			e.printStackTrace();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-
-		// return the result
-		return hasUpdatedSetting;
-	}
 	
 	/**
-	 * Update setting with object id.
+	 * Create setting with object id.
 	 * 
 	 * @param settingName	the setting name
 	 * @param value			the value
 	 * @param objectId		the object id
 	 * @return				whether the operation was successful
 	 */
-	private boolean updateSettingWithObjectId(String settingName, String value, String objectId) {
+	public boolean createSettingWithObjectId(String settingName, String value, String objectId) {
 		// construct parameters
 
 		ContentValues contentValues = new ContentValues();
+		contentValues.put("key", settingName);
 		contentValues.put("value", value);
+		contentValues.put("userId", Framework.getClient().getUserUsername());
+		contentValues.put("objectId", objectId);
 
-		String queryString = "key=? AND userId=? AND objectId=?";
-		String[] queryParameters = new String[] { settingName, Framework.getClient().getUserUsername(), objectId };
-
-		boolean hasUpdatedSetting = false;
+		boolean hasCreatedSetting = false;
 
 		try {
-			hasUpdatedSetting = executeUpdate(settingsTableName, contentValues, queryString, queryParameters);
+			hasCreatedSetting = executeCreate(settingsTableName, contentValues);
+			
+			if (hasCreatedSetting) {
+				settingsCache.update(Framework.getClient().getUserUsername(), objectId, settingName, value);
+			}
 		} catch (SQLException e) {
 			e.printStackTrace();
 		} catch (IOException e) {
@@ -359,9 +371,9 @@ public abstract class BaseDatabaseHelper extends DatabaseHelper {
 		}
 
 		// return the result
-		return hasUpdatedSetting;
+		return hasCreatedSetting;
 	}
-	
+
 	/**
 	 * Delete all settings with object id and current user id.
 	 * 
@@ -387,6 +399,8 @@ public abstract class BaseDatabaseHelper extends DatabaseHelper {
 			e.printStackTrace();
 		} catch (IOException e) {
 			e.printStackTrace();
+		} finally {
+			settingsCache.invalidateObjectIdPrefix(objectId + ".");
 		}
 	}
 	
@@ -409,6 +423,8 @@ public abstract class BaseDatabaseHelper extends DatabaseHelper {
 			e.printStackTrace();
 		} catch (IOException e) {
 			e.printStackTrace();
+		} finally {
+			clearSettingsCache();
 		}
 	}
 
@@ -419,6 +435,9 @@ public abstract class BaseDatabaseHelper extends DatabaseHelper {
 	 * @return tracking entries cursor
 	 */
 	public Cursor getTrackingEntries() {
+		// write queued tracking entries first
+		flushTrackingEntries();
+		
 		// get statement
 
 		// get username
@@ -494,6 +513,128 @@ public abstract class BaseDatabaseHelper extends DatabaseHelper {
 		return trackingEntryList;
 	}
 	
+	/**
+	 * Return the number of tracking entries for the current user.
+	 * 
+	 * @return	the number of tracking entries for the current user
+	 */
+	public int getTrackingEntryCount() {
+		// write queued tracking entries first
+		flushTrackingEntries();
+		
+		String username = Framework.getClient().getUserUsername();
+		String sqlQuery = context.getString(R.string.get_tracking_entries_count_sql);
+		
+		Cursor countCursor = null;
+		int count = 0;
+		
+		try {
+			countCursor = executeSelectQuery(sqlQuery, new String[] { username });
+			
+			if (countCursor.moveToFirst()) {
+				count = countCursor.getInt(0);
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			if (countCursor != null) {
+				countCursor.close();
+			}
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Return the highest tracking entry id for the current user.
+	 * 
+	 * @return	the highest tracking entry id for the current user, or 0 if there are no entries
+	 */
+	public int getLastTrackingEntryId() {
+		// write queued tracking entries first
+		flushTrackingEntries();
+		
+		String username = Framework.getClient().getUserUsername();
+		String sqlQuery = context.getString(R.string.get_tracking_entries_max_id_sql);
+		
+		Cursor maxIdCursor = null;
+		int maxId = 0;
+		
+		try {
+			maxIdCursor = executeSelectQuery(sqlQuery, new String[] { username });
+			
+			if (maxIdCursor.moveToFirst() && !maxIdCursor.isNull(0)) {
+				maxId = maxIdCursor.getInt(0);
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			if (maxIdCursor != null) {
+				maxIdCursor.close();
+			}
+		}
+		
+		return maxId;
+	}
+	
+	/**
+	 * Read the next page of tracking entries for the current user, serialising the rows straight into a JSON content string.
+	 * Pages are keyed by id, so only one page is held in memory at a time.
+	 * 
+	 * @param afterId	the id of the last entry already read; only entries with a greater id are returned
+	 * @param maxId		the highest id to return
+	 * @param pageSize	the maximum number of entries to return
+	 * @return			a {@link TrackingEntryBatch} or <code>null</code> if there are no more entries
+	 * @throws SQLException	if the entries could not be read
+	 * @throws IOException	if the database could not be opened
+	 */
+	public TrackingEntryBatch getTrackingEntryBatch(int afterId, int maxId, int pageSize) throws SQLException, IOException {
+		String username = Framework.getClient().getUserUsername();
+		String sqlQuery = context.getString(R.string.get_tracking_entries_page_sql);
+		
+		Cursor trackingEntriesCursor = null;
+		
+		try {
+			trackingEntriesCursor = executeSelectQuery(sqlQuery, new String[] { username, "" + afterId, "" + maxId, "" + pageSize });
+			
+			if (!trackingEntriesCursor.moveToFirst()) {
+				return null;
+			}
+			
+			// get the column index for the entries
+			int idIndex = trackingEntriesCursor.getColumnIndex("_id");
+			int objectIdIndex = trackingEntriesCursor.getColumnIndex("objectId");
+			int senderIndex = trackingEntriesCursor.getColumnIndex("sender");
+			int deviceTimestampIndex = trackingEntriesCursor.getColumnIndex("deviceTimestamp");
+			int addInfoIndex = trackingEntriesCursor.getColumnIndex("addInfo");
+			
+			JSONArray jsonArray = new JSONArray();
+			int firstId = trackingEntriesCursor.getInt(idIndex);
+			int lastId = firstId;
+			String addInfo = null;
+			
+			// iterate over the cursor
+			do {
+				lastId = trackingEntriesCursor.getInt(idIndex);
+				addInfo = trackingEntriesCursor.isNull(addInfoIndex) ? null : trackingEntriesCursor.getString(addInfoIndex);
+				
+				jsonArray.put(TrackingEntry.createJsonObject(trackingEntriesCursor.getString(objectIdIndex), trackingEntriesCursor.getString(senderIndex),
+						trackingEntriesCursor.getString(deviceTimestampIndex), addInfo));
+			} while (trackingEntriesCursor.moveToNext());
+			
+			return new TrackingEntryBatch(jsonArray.toString(), firstId, lastId, jsonArray.length());
+		} finally {
+			if (trackingEntriesCursor != null) {
+				// close the tracking entries cursor
+				trackingEntriesCursor.close();
+			}
+		}
+	}
+	
 	/**
 	 * Delete tracking entry.
 	 * 
@@ -510,12 +651,40 @@ public abstract class BaseDatabaseHelper extends DatabaseHelper {
 		}
 	}
 
+	/**
+	 * Delete all tracking entries for the current user with an id between <code>fromId</code> and <code>toId</code> inclusive, in a single statement.
+	 * Tracking entries are returned in id order, so a contiguous run of entries that have been sent can be removed in one go.
+	 * 
+	 * @param fromId	the lowest tracking entry id to remove
+	 * @param toId		the highest tracking entry id to remove
+	 * @return			whether the operation was successful
+	 */
+	public boolean removeTrackingEntries(int fromId, int toId) {
+		String username = Framework.getClient().getUserUsername();
+		
+		try {
+			String deleteTrackingEntryRangeWhereClauseSql = context.getString(R.string.delete_tracking_entry_range_where_clause_sql);
+			executeDelete(trackingTableName, deleteTrackingEntryRangeWhereClauseSql, new String[] { username, "" + fromId, "" + toId });
+			
+			return true;
+		} catch (SQLException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		
+		return false;
+	}
+
 	/**
 	 * Clear the tracking log.
 	 * 
 	 * @return
 	 */
 	public boolean clearTrackingLog() {
+		// write queued tracking entries first so they are cleared too
+		flushTrackingEntries();
+		
 		try {
 			return executeDelete(trackingTableName, null, null);
 		} catch (SQLException e) {
@@ -528,28 +697,34 @@ public abstract class BaseDatabaseHelper extends DatabaseHelper {
 	}
 
 	/**
-	 * Create a tracking entry.
+	 * Create a tracking entry. The entry is queued, not written: it is written to the tracking table in the background shortly
+	 * afterwards, or by {@link #flushTrackingEntries()}, so it is not yet returned by the tracking queries when this method returns
+	 * and is lost if the process dies first. Callers that need the entry to be durable must flush.
 	 * 
 	 * @param sender			the sender
 	 * @param objectId			the object id
 	 * @param additionalInfo	the additional info
-	 * @return					whether the operation was successful
+	 * @return					whether the entry was queued to be written; <code>false</code> if the queue is full and cannot be written
 	 */
 	public boolean createTrackingEntry(String sender, String objectId,
 			String additionalInfo) {
-		// construct parameters
-
-		ContentValues contentValues = new ContentValues();
-		contentValues.put("userId", Framework.getClient().getUserUsername());
-		contentValues.put("objectId", objectId);
-		contentValues.put("sender", sender);
-		contentValues.put("addInfo", additionalInfo);
-
-		boolean hasCreatedTrackingEntry = false;
+		// queue the tracking entry; it is written in the background
+		return trackingEntryWriter.append(Framework.getClient().getUserUsername(), objectId, sender, additionalInfo);
+	}
+	
+	/**
+	 * Write queued tracking entries to the database in a single transaction. Invoked by {@link TrackingEntryWriter}.
+	 * 
+	 * @param trackingEntryRows		the rows, each containing the userId, objectId, sender, deviceTimestamp and addInfo values
+	 * @return						whether the operation was successful
+	 */
+	boolean createTrackingEntries(List<String[]> trackingEntryRows) {
+		String sql = context.getString(R.string.insert_tracking_entry_sql);
+		
+		boolean hasCreatedTrackingEntries = false;
 
 		try {
-			hasCreatedTrackingEntry = executeCreate(trackingTableName,
-					contentValues);
+			hasCreatedTrackingEntries = (executeInsertStatementInTransaction(sql, trackingEntryRows) == trackingEntryRows.size());
 		} catch (SQLException e) {
 			e.printStackTrace();
 		} catch (IOException e) {
@@ -557,7 +732,17 @@ public abstract class BaseDatabaseHelper extends DatabaseHelper {
 		}
 
 		// return the result
-		return hasCreatedTrackingEntry;
+		return hasCreatedTrackingEntries;
+	}
+	
+	/**
+	 * Write all queued tracking entries to the database on the calling thread. Should be invoked when the application is paused,
+	 * hidden or torn down, when a service is destroyed and before the user logs out.
+	 * 
+	 * @return	whether the queued entries were written; if not, they remain queued
+	 */
+	public boolean flushTrackingEntries() {
+		return trackingEntryWriter.flush();
 	}
 
 	/**
@@ -681,11 +866,30 @@ public abstract class BaseDatabaseHelper extends DatabaseHelper {
 			e.printStackTrace();
 		} catch (IOException e) {
 			e.printStackTrace();
+		} finally {
+			onLibraryChanged();
 		}
 
 		return false;
 	}
 	
+	/**
+	 * Return the version of the MyLibrary table, which changes whenever an entry is added, removed or changes state.
+	 * Callers holding an in-memory copy of the library compare this against the version they loaded.
+	 * 
+	 * @return	the library version
+	 */
+	public int getLibraryVersion() {
+		return libraryVersion.get();
+	}
+	
+	/**
+	 * Invalidate in-memory copies of the library.
+	 */
+	private void onLibraryChanged() {
+		libraryVersion.incrementAndGet();
+	}
+	
 	/**
 	 * Update status field for a particular row in the MyLibrary table by unique id.
 	 * 
@@ -710,12 +914,44 @@ public abstract class BaseDatabaseHelper extends DatabaseHelper {
 			e.printStackTrace();
 		} catch (IOException e) {
 			e.printStackTrace();
+		} finally {
+			onLibraryChanged();
 		}
 
 		// return the result
 		return hasUpdatedStatus;
 	}
 	
+	/**
+	 * Update the checksum verification field for a particular row in the MyLibrary table by unique id.
+	 * 
+	 * @param id					the unique id
+	 * @param checksumVerification	the result of verifying the package against its checksum
+	 * @return						whether the operation was successful
+	 */
+	public boolean updateLibraryEntryChecksumVerification(String id, ChecksumVerification checksumVerification) {
+		// construct parameters
+
+		ContentValues contentValues = new ContentValues();
+		contentValues.put("md5Verification", checksumVerification.name());
+
+		String queryString = "uniqueId=?";
+		String[] queryParameters = new String[] { id };
+
+		boolean hasUpdatedChecksumVerification = false;
+
+		try {
+			hasUpdatedChecksumVerification = executeUpdate(libraryTableName, contentValues, queryString, queryParameters);
+		} catch (SQLException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		// return the result
+		return hasUpdatedChecksumVerification;
+	}
+	
 	/**
 	 * Create a MyLibrary entry.
 	 * 
@@ -752,9 +988,161 @@ public abstract class BaseDatabaseHelper extends DatabaseHelper {
 			e.printStackTrace();
 		} catch (IOException e) {
 			e.printStackTrace();
+		} finally {
+			onLibraryChanged();
 		}
 
 		// return the result
 		return hasCreatedMyLibraryEntry;
 	}
+	
+	/**
+	 * Add a package to the end of the persisted download queue in the <code>QUEUED</code> state, replacing any existing entry for it.
+	 * 
+	 * @param packageItem	the {@link PackageItem} object
+	 * @return				whether the operation was successful
+	 */
+	public boolean createDownloadQueueEntry(PackageItem packageItem) {
+		String sql = context.getString(R.string.upsert_download_queue_entry_sql);
+		String[] bindArgs = new String[] { packageItem.getUniqueId(), DownloadQueueEntry.serializePackageItem(packageItem), DownloadQueueState.QUEUED.name() };
+		
+		boolean hasCreatedDownloadQueueEntry = false;
+		
+		try {
+			hasCreatedDownloadQueueEntry = (executeInsertStatement(sql, bindArgs) > 0);
+		} catch (SQLException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		
+		// return the result
+		return hasCreatedDownloadQueueEntry;
+	}
+	
+	/**
+	 * Update the state of a package in the persisted download queue, keeping its position.
+	 * 
+	 * @param uniqueId				the unique id of the package
+	 * @param state					the state
+	 * @param file					the downloaded file, or <code>null</code> if it has not been downloaded
+	 * @param isExtracted			whether the file was extracted while it downloaded
+	 * @param checksumVerification	the result of verifying the file against its checksum, or <code>null</code>
+	 * @return						whether the operation was successful
+	 */
+	public boolean updateDownloadQueueEntry(String uniqueId, DownloadQueueState state, File file, boolean isExtracted, ChecksumVerification checksumVerification) {
+		// construct parameters
+		
+		ContentValues contentValues = new ContentValues();
+		contentValues.put("state", state.name());
+		contentValues.put("filePath", (file != null) ? file.getAbsolutePath() : null);
+		contentValues.put("isExtracted", isExtracted ? 1 : 0);
+		contentValues.put("md5Verification", (checksumVerification != null) ? checksumVerification.name() : null);
+		
+		boolean hasUpdatedDownloadQueueEntry = false;
+		
+		try {
+			hasUpdatedDownloadQueueEntry = executeUpdate(downloadQueueTableName, contentValues, "uniqueId=?", new String[] { uniqueId });
+		} catch (SQLException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		
+		// return the result
+		return hasUpdatedDownloadQueueEntry;
+	}
+	
+	/**
+	 * Remove a package from the persisted download queue.
+	 * 
+	 * @param uniqueId	the unique id of the package
+	 * @return			whether the operation was successful
+	 */
+	public boolean removeDownloadQueueEntry(String uniqueId) {
+		try {
+			return executeDelete(downloadQueueTableName, "uniqueId=?", new String[] { uniqueId });
+		} catch (SQLException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Return the packages in the persisted download queue, in the order they were queued. Entries whose package item can no longer be
+	 * read are removed.
+	 * 
+	 * @return	a {@link List} of {@link DownloadQueueEntry} objects
+	 */
+	public List<DownloadQueueEntry> getDownloadQueueEntries() {
+		List<DownloadQueueEntry> downloadQueueEntries = new ArrayList<DownloadQueueEntry>();
+		List<String> unreadableUniqueIds = new ArrayList<String>();
+		
+		Cursor downloadQueueCursor = null;
+		
+		try {
+			downloadQueueCursor = executeSelectQuery(context.getString(R.string.get_download_queue_entries_sql), null);
+			
+			while (downloadQueueCursor.moveToNext()) {
+				String uniqueId = downloadQueueCursor.getString(0);
+				PackageItem packageItem = DownloadQueueEntry.deserializePackageItem(downloadQueueCursor.getString(1));
+				
+				if (packageItem == null) {
+					unreadableUniqueIds.add(uniqueId);
+					continue;
+				}
+				
+				DownloadQueueState state = DownloadQueueState.valueOf(downloadQueueCursor.getString(2));
+				File file = downloadQueueCursor.isNull(3) ? null : new File(downloadQueueCursor.getString(3));
+				boolean isExtracted = (downloadQueueCursor.getInt(4) != 0);
+				ChecksumVerification checksumVerification = downloadQueueCursor.isNull(5) ? null : ChecksumVerification.valueOf(downloadQueueCursor.getString(5));
+				
+				downloadQueueEntries.add(new DownloadQueueEntry(packageItem, state, file, isExtracted, checksumVerification));
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			if (downloadQueueCursor != null) {
+				downloadQueueCursor.close();
+			}
+		}
+		
+		for (String uniqueId : unreadableUniqueIds) {
+			removeDownloadQueueEntry(uniqueId);
+		}
+		
+		return downloadQueueEntries;
+	}
+	
+	/**
+	 * Reset the status field of MyLibrary rows left in a state by work that is no longer in the persisted download queue, e.g. because
+	 * the process was killed while the package was downloading.
+	 * 
+	 * @param staleState	the state to reset
+	 * @param state			the state to reset it to
+	 * @return				whether the operation was successful
+	 */
+	public boolean resetStaleLibraryEntryStates(String staleState, String state) {
+		ContentValues contentValues = new ContentValues();
+		contentValues.put("state", state);
+		
+		String whereClause = context.getString(R.string.reset_stale_library_entry_states_where_clause_sql);
+		
+		try {
+			return executeUpdate(libraryTableName, contentValues, whereClause, new String[] { staleState });
+		} catch (SQLException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			onLibraryChanged();
+		}
+		
+		return false;
+	}
 }
\ No newline at end of file
@@ -28,6 +28,12 @@
 package com.tribal.mobile.util.database;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import android.content.ContentValues;
 import android.content.Context;
@@ -36,7 +42,9 @@ import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteDatabase.CursorFactory;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.text.TextUtils;
+import android.util.Log;
 
 /**
  * Class that encapsulates {@link SQLiteOpenHelper} and provides convenience methods for various operations.
@@ -47,9 +55,18 @@ public abstract class DatabaseHelper extends SQLiteOpenHelper {
 	/* Fields */
 
 	public static String DEFAULT_DB_NAME = "database.sqlite";
+	
+	private final static String TAG = DatabaseHelper.class.getSimpleName();
+	
+	// the database version is the application version code, so the schema version is tracked separately
+	private final static String schemaMigrationsTableName = "schema_migrations";
 
 	protected SQLiteDatabase database;	
 	protected final Context context;
+	
+	// precompiled statements, keyed by sql, for the database they were compiled against
+	private final Map<String, SQLiteStatement> compiledStatements = new HashMap<String, SQLiteStatement>();
+	private SQLiteDatabase compiledStatementsDatabase;
 
 	/* Properties */
 	
@@ -77,6 +94,8 @@ public abstract class DatabaseHelper extends SQLiteOpenHelper {
 	
 	@Override
 	public synchronized void close() {
+		closeCompiledStatements();
+		
 		if (database != null) {
 			database.close();
 		}
@@ -90,6 +109,9 @@ public abstract class DatabaseHelper extends SQLiteOpenHelper {
 		
 		if (!TextUtils.isEmpty(createDatabaseSql)) {
 			processCreateUpdateSql(db, createDatabaseSql);
+			
+			// the new database already has the schema of these migrations, so they must not be applied to it
+			recordMigrations(db, getCreateDatabaseSchemaVersion());
 		}
 		
 		database = db;
@@ -107,6 +129,128 @@ public abstract class DatabaseHelper extends SQLiteOpenHelper {
 			processCreateUpdateSql(db, updateDatabaseSql);
 		}
 	}
+	
+	@Override
+	public void onOpen(SQLiteDatabase db) {
+		super.onOpen(db);
+		
+		if (!db.isReadOnly()) {
+			applyMigrations(db);
+		}
+	}
+
+	/**
+	 * Returns the schema migrations for the database. Migration versions must be unique and, once released, a migration must never
+	 * be changed or renumbered; add a new migration instead.
+	 * 
+	 * @return	the schema migrations
+	 */
+	protected List<DatabaseMigration> getMigrations() {
+		return new ArrayList<DatabaseMigration>();
+	}
+	
+	/**
+	 * Returns the schema version of the database, i.e. the version of the last migration applied.
+	 * 
+	 * @param db	the database
+	 * @return		the schema version, or 0 if no migrations have been applied
+	 */
+	protected int getSchemaVersion(SQLiteDatabase db) {
+		db.execSQL("CREATE TABLE IF NOT EXISTS " + schemaMigrationsTableName + " (version INTEGER PRIMARY KEY NOT NULL, description TEXT, applied_date DATETIME NOT NULL DEFAULT (CURRENT_TIMESTAMP))");
+		
+		Cursor cursor = db.rawQuery("SELECT MAX(version) FROM " + schemaMigrationsTableName, null);
+		
+		try {
+			if (cursor.moveToFirst()) {
+				return cursor.getInt(0);
+			}
+		} finally {
+			cursor.close();
+		}
+		
+		return 0;
+	}
+	
+	/**
+	 * Record the migrations up to and including the given version as applied, without applying them.
+	 * 
+	 * @param db		the database
+	 * @param version	the version
+	 */
+	private void recordMigrations(SQLiteDatabase db, int version) {
+		int schemaVersion = getSchemaVersion(db);
+		
+		if (version <= schemaVersion) {
+			return;
+		}
+		
+		List<DatabaseMigration> migrations = getMigrations();
+		
+		if (migrations == null) {
+			return;
+		}
+		
+		for (DatabaseMigration migration : migrations) {
+			if (migration.getVersion() > schemaVersion && migration.getVersion() <= version) {
+				db.execSQL("INSERT INTO " + schemaMigrationsTableName + " (version, description) VALUES (?, ?)", new Object[] { migration.getVersion(), migration.getDescription() });
+			}
+		}
+	}
+	
+	/**
+	 * Apply any migrations that have not yet been applied to the database, in version order. Each migration runs in its own
+	 * transaction together with the recording of its version, so a failed migration is rolled back and retried the next time the
+	 * database is opened. The rest of the framework relies on the migrated schema, so a failure is rethrown and the database is not
+	 * opened.
+	 * 
+	 * @param db	the database
+	 * @throws SQLException	if a migration fails
+	 */
+	protected void applyMigrations(SQLiteDatabase db) {
+		List<DatabaseMigration> migrations = getMigrations();
+		
+		if (migrations == null || migrations.isEmpty()) {
+			return;
+		}
+		
+		// sort by version
+		migrations = new ArrayList<DatabaseMigration>(migrations);
+		
+		Collections.sort(migrations, new Comparator<DatabaseMigration>() {
+			@Override
+			public int compare(DatabaseMigration lhs, DatabaseMigration rhs) {
+				return (lhs.getVersion() < rhs.getVersion()) ? -1 : ((lhs.getVersion() == rhs.getVersion()) ? 0 : 1);
+			}
+		});
+		
+		int schemaVersion = getSchemaVersion(db);
+		
+		for (DatabaseMigration migration : migrations) {
+			if (migration.getVersion() <= schemaVersion) {
+				continue;
+			}
+			
+			db.beginTransaction();
+			
+			try {
+				migration.migrate(db);
+				
+				db.execSQL("INSERT INTO " + schemaMigrationsTableName + " (version, description) VALUES (?, ?)", new Object[] { migration.getVersion(), migration.getDescription() });
+				
+				db.setTransactionSuccessful();
+			} catch (SQLException e) {
+				Log.e(TAG, "Migration " + migration + " failed", e);
+				
+				SQLException migrationException = new SQLException("Migration " + migration + " failed");
+				migrationException.initCause(e);
+				throw migrationException;
+			} finally {
+				db.endTransaction();
+			}
+			
+			schemaVersion = migration.getVersion();
+		}
+	}
 
 	/**
 	 * Returns sql required for database creation.
@@ -117,6 +261,17 @@ public abstract class DatabaseHelper extends SQLiteOpenHelper {
 		return null;
 	}
 	
+	/**
+	 * Returns the schema version that the sql from {@link #getCreateDatabaseSql()} creates, i.e. the version of the last migration
+	 * whose changes it already contains. Those migrations are recorded as applied when the database is created rather than run
+	 * against it. Must be raised whenever the create sql is brought up to date with a newer migration.
+	 * 
+	 * @return	the schema version of the create sql, or 0 if it creates the schema that precedes every migration
+	 */
+	protected int getCreateDatabaseSchemaVersion() {
+		return 0;
+	}
+	
 	/**
 	 * Returns sql required for database update. 
 	 * 
@@ -261,4 +416,112 @@ public abstract class DatabaseHelper extends SQLiteOpenHelper {
 
 		return (numberOfRowsAffected > 0);
 	}
-}
\ No newline at end of file
+	
+	/**
+	 * Execute a precompiled SQL INSERT statement. The statement is compiled the first time the sql is used and reused for subsequent
+	 * calls until the database is closed or reopened.
+	 * 
+	 * @param sql				the SQL string
+	 * @param bindArgs			the bind arguments; <code>null</code> values are bound as NULL
+	 * @return					the row id of the inserted row, or -1 if the insert failed
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	protected synchronized long executeInsertStatement(String sql, String[] bindArgs) throws SQLException, IOException {
+		SQLiteStatement statement = getCompiledStatement(sql);
+		
+		bindStatementArgs(statement, bindArgs);
+		
+		return statement.executeInsert();
+	}
+	
+	/**
+	 * Execute a precompiled SQL INSERT statement once for each set of bind arguments, inside a single transaction.
+	 * 
+	 * @param sql				the SQL string
+	 * @param bindArgsList		the bind arguments for each insert; <code>null</code> values are bound as NULL
+	 * @return					the number of rows inserted
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	protected synchronized int executeInsertStatementInTransaction(String sql, List<String[]> bindArgsList) throws SQLException, IOException {
+		SQLiteStatement statement = getCompiledStatement(sql);
+		
+		int numberOfRowsInserted = 0;
+		
+		database.beginTransaction();
+		
+		try {
+			for (String[] bindArgs : bindArgsList) {
+				bindStatementArgs(statement, bindArgs);
+				
+				if (statement.executeInsert() > 0) {
+					numberOfRowsInserted++;
+				}
+			}
+			
+			database.setTransactionSuccessful();
+		} finally {
+			database.endTransaction();
+		}
+		
+		return numberOfRowsInserted;
+	}
+	
+	/**
+	 * Bind arguments to a precompiled statement, replacing any previous bindings.
+	 * 
+	 * @param statement		the statement
+	 * @param bindArgs		the bind arguments; <code>null</code> values are bound as NULL
+	 */
+	private void bindStatementArgs(SQLiteStatement statement, String[] bindArgs) {
+		statement.clearBindings();
+		
+		for (int i = 0; i < bindArgs.length; i++) {
+			if (bindArgs[i] == null) {
+				statement.bindNull(i + 1);
+			} else {
+				statement.bindString(i + 1, bindArgs[i]);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the precompiled statement for the sql, compiling it if necessary.
+	 * 
+	 * @param sql	the SQL string
+	 * @return		the compiled statement
+	 */
+	private SQLiteStatement getCompiledStatement(String sql) {
+		if (!database.isOpen()) {
+			database = getWritableDatabase();
+		}
+		
+		if (compiledStatementsDatabase != database) {
+			// statements belong to the database they were compiled against
+			closeCompiledStatements();
+			compiledStatementsDatabase = database;
+		}
+		
+		SQLiteStatement statement = compiledStatements.get(sql);
+		
+		if (statement == null) {
+			statement = database.compileStatement(sql);
+			compiledStatements.put(sql, statement);
+		}
+		
+		return statement;
+	}
+	
+	/**
+	 * Close all precompiled statements.
+	 */
+	private synchronized void closeCompiledStatements() {
+		for (SQLiteStatement statement : compiledStatements.values()) {
+			statement.close();
+		}
+		
+		compiledStatements.clear();
+		compiledStatementsDatabase = null;
+	}
+}
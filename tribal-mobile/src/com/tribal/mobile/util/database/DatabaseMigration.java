@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.util.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
+
+/**
+ * A single numbered step in the evolution of a database schema. Migrations are applied in version order by {@link DatabaseHelper}
+ * and each one is applied exactly once per database. The default implementation executes a series of semicolon separated SQL
+ * statements; subclasses can override {@link #migrate(SQLiteDatabase)} for steps that need to run code.
+ * 
+ * @author Jon Brasted
+ */
+public class DatabaseMigration {
+	/* Fields */
+	
+	private final int version;
+	private final String description;
+	private final String sql;
+	
+	/* Properties */
+	
+	public int getVersion() {
+		return version;
+	}
+	
+	public String getDescription() {
+		return description;
+	}
+	
+	public String getSql() {
+		return sql;
+	}
+	
+	/* Constructor */
+	
+	public DatabaseMigration(int version, String description) {
+		this(version, description, null);
+	}
+	
+	public DatabaseMigration(int version, String description, String sql) {
+		this.version = version;
+		this.description = description;
+		this.sql = sql;
+	}
+	
+	/* Methods */
+	
+	/**
+	 * Apply the migration. This is invoked inside a transaction, so any exception causes the migration to be rolled back.
+	 * 
+	 * @param db	the database
+	 */
+	public void migrate(SQLiteDatabase db) {
+		if (TextUtils.isEmpty(sql)) {
+			return;
+		}
+		
+		// split by semicolon
+		String[] sqlStrings = sql.split("[;]");
+		
+		for (String sqlString : sqlStrings) {
+			if (!TextUtils.isEmpty(sqlString.trim())) {
+				db.execSQL(sqlString);
+			}
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return version + ": " + description;
+	}
+}
\ No newline at end of file
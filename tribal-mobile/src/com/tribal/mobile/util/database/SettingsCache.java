@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.util.database;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.text.TextUtils;
+
+/**
+ * In-memory cache of the settings table for a single user. Settings are grouped by object id; each group is loaded from the database
+ * in one go the first time it is requested and kept up to date by {@link BaseDatabaseHelper} as settings are written (write-through).
+ * The number of object id groups held is bounded and the least recently used group is evicted first.
+ * 
+ * <p>
+ * Loads happen outside the cache lock, so every change to the cache advances a generation. A load only populates the cache if the
+ * generation has not moved since the load began, so a write that lands while settings are being read cannot be overwritten with the
+ * stale values.
+ * </p>
+ * 
+ * @author Jon Brasted
+ */
+public class SettingsCache {
+	/* Fields */
+	
+	public final static int DEFAULT_MAX_OBJECT_IDS = 64;
+	
+	// key used for settings that are not associated with an object id
+	private final static String GLOBAL_OBJECT_ID_KEY = "";
+	
+	private final int maxObjectIds;
+	
+	private String userId;
+	private long generation;
+	private final LinkedHashMap<String, Map<String, String>> objectIdSettings;
+	
+	/* Constructor */
+	
+	public SettingsCache() {
+		this(DEFAULT_MAX_OBJECT_IDS);
+	}
+	
+	public SettingsCache(final int maxObjectIds) {
+		this.maxObjectIds = maxObjectIds;
+		
+		// access ordered, so the eldest entry is the least recently used
+		objectIdSettings = new LinkedHashMap<String, Map<String, String>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Map<String, String>> eldest) {
+				return size() > SettingsCache.this.maxObjectIds;
+			}
+		};
+	}
+	
+	/* Methods */
+	
+	/**
+	 * Returns the cached settings for a user and object id, or <code>null</code> if they have not been loaded.
+	 * If the user is not the user the cache currently holds, the cache is cleared.
+	 * 
+	 * @param userId	the user id
+	 * @param objectId	the object id, or <code>null</code> for global settings
+	 * @return			the cached settings or <code>null</code>
+	 */
+	public synchronized Map<String, String> get(String userId, String objectId) {
+		checkUser(userId);
+		
+		return objectIdSettings.get(getObjectIdKey(objectId));
+	}
+	
+	/**
+	 * Returns the current generation, to be read before loading settings from the database and passed to
+	 * {@link #put(String, String, Map, long)}.
+	 * 
+	 * @return	the current generation
+	 */
+	public synchronized long getGeneration() {
+		return generation;
+	}
+	
+	/**
+	 * Stores the complete set of settings for a user and object id, as loaded from the database, unless the cache has changed since
+	 * the load began.
+	 * 
+	 * @param userId		the user id
+	 * @param objectId		the object id, or <code>null</code> for global settings
+	 * @param settings		the settings
+	 * @param generation	the generation read before the settings were loaded
+	 * @return				whether the settings were stored
+	 */
+	public synchronized boolean put(String userId, String objectId, Map<String, String> settings, long generation) {
+		checkUser(userId);
+		
+		if (generation != this.generation) {
+			// a write or invalidation happened during the load, so the settings may be stale
+			return false;
+		}
+		
+		objectIdSettings.put(getObjectIdKey(objectId), Collections.synchronizedMap(new HashMap<String, String>(settings)));
+		
+		return true;
+	}
+	
+	/**
+	 * Updates a single setting if the settings for the object id are cached. Called after the setting has been written to the database.
+	 * 
+	 * @param userId	the user id
+	 * @param objectId	the object id, or <code>null</code> for global settings
+	 * @param key		the setting key
+	 * @param value		the setting value
+	 */
+	public synchronized void update(String userId, String objectId, String key, String value) {
+		checkUser(userId);
+		
+		// a load in progress may have read the old value, even if the object id is not cached yet
+		generation++;
+		
+		Map<String, String> settings = objectIdSettings.get(getObjectIdKey(objectId));
+		
+		if (settings != null) {
+			settings.put(key, value);
+		}
+	}
+	
+	/**
+	 * Removes the cached settings for all object ids that start with the specified prefix.
+	 * 
+	 * @param objectIdPrefix	the object id prefix
+	 */
+	public synchronized void invalidateObjectIdPrefix(String objectIdPrefix) {
+		generation++;
+		
+		Iterator<String> iterator = objectIdSettings.keySet().iterator();
+		
+		while (iterator.hasNext()) {
+			if (iterator.next().startsWith(objectIdPrefix)) {
+				iterator.remove();
+			}
+		}
+	}
+	
+	/**
+	 * Removes all cached settings.
+	 */
+	public synchronized void clear() {
+		generation++;
+		
+		objectIdSettings.clear();
+		userId = null;
+	}
+	
+	private void checkUser(String userId) {
+		if (!TextUtils.equals(this.userId, userId)) {
+			// user has changed, so nothing in the cache is valid
+			generation++;
+			
+			objectIdSettings.clear();
+			this.userId = userId;
+		}
+	}
+	
+	private String getObjectIdKey(String objectId) {
+		return (objectId == null) ? GLOBAL_OBJECT_ID_KEY : objectId;
+	}
+}
\ No newline at end of file
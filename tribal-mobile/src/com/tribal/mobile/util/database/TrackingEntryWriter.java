@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2012, TATRC and Tribal
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ * * Neither the name of TATRC or TRIBAL nor the
+ *   names of its contributors may be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL TATRC OR TRIBAL BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.tribal.mobile.util.database;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind queue for tracking entries. Entries are appended to a bounded in-memory ring buffer and written to the tracking table
+ * in a single transaction on a background thread, either once {@link #DEFAULT_FLUSH_THRESHOLD} entries are pending or
+ * {@link #DEFAULT_FLUSH_INTERVAL_MILLISECONDS} after the first pending entry was appended, whichever is sooner. The device timestamp
+ * and user id are captured when an entry is appended, not when it is written.
+ * 
+ * <p>
+ * {@link #flush()} writes all pending entries on the calling thread and should be invoked whenever they must be durable, e.g. when
+ * the application is paused or the user logs out.
+ * </p>
+ * 
+ * <p>
+ * If a write fails, e.g. because the database is closed during teardown, the entries are put back at the head of the queue in their
+ * original order and written by the next flush. While the queue is full and cannot be written, new entries are refused.
+ * </p>
+ * 
+ * @author Jon Brasted
+ */
+public class TrackingEntryWriter {
+	/* Fields */
+	
+	public final static int DEFAULT_CAPACITY = 256;
+	public final static int DEFAULT_FLUSH_THRESHOLD = 20;
+	public final static long DEFAULT_FLUSH_INTERVAL_MILLISECONDS = 2000;
+	
+	// matches the format of CURRENT_TIMESTAMP, which is the default for the deviceTimestamp column
+	private final static String TIMESTAMP_FORMAT = "yyyy-MM-dd HH:mm:ss";
+	
+	private final BaseDatabaseHelper databaseHelper;
+	private final int flushThreshold;
+	private final long flushIntervalMilliseconds;
+	
+	// ring buffer of pending rows; may grow beyond its capacity to take back rows whose write failed
+	private String[][] pendingRows;
+	private int head;
+	private int size;
+	
+	private boolean isFlushScheduled;
+	private boolean isFlushRequested;
+	
+	private final Object flushLock = new Object();
+	private final ScheduledExecutorService flushExecutor = Executors.newSingleThreadScheduledExecutor();
+	private final SimpleDateFormat timestampFormat;
+	
+	private final Runnable flushRunnable = new Runnable() {
+		@Override
+		public void run() {
+			flush();
+		}
+	};
+	
+	/* Constructor */
+	
+	public TrackingEntryWriter(BaseDatabaseHelper databaseHelper) {
+		this(databaseHelper, DEFAULT_CAPACITY, DEFAULT_FLUSH_THRESHOLD, DEFAULT_FLUSH_INTERVAL_MILLISECONDS);
+	}
+	
+	public TrackingEntryWriter(BaseDatabaseHelper databaseHelper, int capacity, int flushThreshold, long flushIntervalMilliseconds) {
+		this.databaseHelper = databaseHelper;
+		this.flushThreshold = flushThreshold;
+		this.flushIntervalMilliseconds = flushIntervalMilliseconds;
+		
+		pendingRows = new String[capacity][];
+		
+		timestampFormat = new SimpleDateFormat(TIMESTAMP_FORMAT, Locale.US);
+		timestampFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+	}
+	
+	/* Methods */
+	
+	/**
+	 * Append a tracking entry to the queue. If the queue is full, the pending entries are written on the calling thread first.
+	 * 
+	 * @param userId			the user id
+	 * @param objectId			the object id
+	 * @param sender			the sender
+	 * @param additionalInfo	the additional info
+	 * @return					whether the entry was queued; <code>false</code> if the queue is full and could not be written
+	 */
+	public boolean append(String userId, String objectId, String sender, String additionalInfo) {
+		String deviceTimestamp;
+		
+		synchronized (timestampFormat) {
+			deviceTimestamp = timestampFormat.format(new Date());
+		}
+		
+		String[] row = new String[] { userId, objectId, sender, deviceTimestamp, additionalInfo };
+		
+		while (!offer(row)) {
+			// the buffer is full
+			if (!flush()) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Write all pending tracking entries to the database on the calling thread. If the write fails, the entries remain queued.
+	 * 
+	 * @return	whether the pending entries were written
+	 */
+	public boolean flush() {
+		synchronized (flushLock) {
+			List<String[]> rows = drain();
+			
+			if (rows.isEmpty()) {
+				return true;
+			}
+			
+			boolean hasWrittenRows = false;
+			
+			try {
+				hasWrittenRows = databaseHelper.createTrackingEntries(rows);
+			} finally {
+				if (!hasWrittenRows) {
+					requeue(rows);
+				}
+			}
+			
+			return hasWrittenRows;
+		}
+	}
+	
+	/**
+	 * Returns the number of tracking entries that have not yet been written.
+	 * 
+	 * @return	the number of pending tracking entries
+	 */
+	public synchronized int getPendingCount() {
+		return size;
+	}
+	
+	private synchronized boolean offer(String[] row) {
+		if (size == pendingRows.length) {
+			return false;
+		}
+		
+		pendingRows[(head + size) % pendingRows.length] = row;
+		size++;
+		
+		if (size >= flushThreshold) {
+			if (!isFlushRequested) {
+				isFlushRequested = true;
+				flushExecutor.execute(flushRunnable);
+			}
+		} else if (!isFlushScheduled) {
+			isFlushScheduled = true;
+			flushExecutor.schedule(flushRunnable, flushIntervalMilliseconds, TimeUnit.MILLISECONDS);
+		}
+		
+		return true;
+	}
+	
+	private synchronized List<String[]> drain() {
+		List<String[]> rows = new ArrayList<String[]>(size);
+		
+		while (size > 0) {
+			rows.add(pendingRows[head]);
+			pendingRows[head] = null;
+			
+			head = (head + 1) % pendingRows.length;
+			size--;
+		}
+		
+		isFlushScheduled = false;
+		isFlushRequested = false;
+		
+		return rows;
+	}
+	
+	/**
+	 * Put rows whose write failed back at the head of the queue, ahead of any appended since they were drained. The next append
+	 * schedules another flush.
+	 * 
+	 * @param rows	the rows, in the order they were drained
+	 */
+	private synchronized void requeue(List<String[]> rows) {
+		if (size + rows.size() > pendingRows.length) {
+			// make room, keeping the pending rows in order from index 0
+			String[][] grownRows = new String[size + rows.size()][];
+			
+			for (int i = 0; i < size; i++) {
+				grownRows[i] = pendingRows[(head + i) % pendingRows.length];
+			}
+			
+			pendingRows = grownRows;
+			head = 0;
+		}
+		
+		for (int i = rows.size() - 1; i >= 0; i--) {
+			head = (head - 1 + pendingRows.length) % pendingRows.length;
+			pendingRows[head] = rows.get(i);
+			size++;
+		}
+	}
+}
\ No newline at end of file